@@ -0,0 +1,75 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.cm;
+
+
+import java.io.IOException;
+import java.util.Dictionary;
+import java.util.Map;
+
+import org.osgi.annotation.versioning.ProviderType;
+import org.osgi.service.cm.ReadOnlyConfigurationException;
+
+
+/**
+ * The <code>BatchConfigurationAdmin</code> is an extension service registered
+ * by the Apache Felix Configuration Admin Service next to the
+ * <code>ConfigurationAdmin</code> service. It allows to update and delete a
+ * number of configurations at once, which persists them in one go and sends
+ * the configuration events of the whole batch together.
+ * <p>
+ * Like the <code>ConfigurationAdmin</code> service, this service is a service
+ * factory handing out a separate instance to each bundle, which is used for
+ * the implicit binding of new configurations.
+ *
+ * @since 1.3
+ */
+@ProviderType
+public interface BatchConfigurationAdmin
+{
+    /**
+     * Updates and deletes a number of configurations in one batch. This has
+     * the same effect as calling
+     * {@link org.osgi.service.cm.ConfigurationAdmin#getConfiguration(String)}
+     * for each PID and then
+     * {@link org.osgi.service.cm.Configuration#update(Dictionary)} or
+     * {@link org.osgi.service.cm.Configuration#delete()} on the returned
+     * configuration, except that all configurations are persisted at once
+     * and configuration events and updates to managed services are only
+     * dispatched after all of them have been persisted. If the calling thread
+     * is in a coordination, this dispatch is further deferred until the
+     * coordination ends.
+     * <p>
+     * All configurations are checked before any of them is created or
+     * modified: if any configuration is read-only or bound to a bundle for
+     * which the caller lacks permission, no configuration is created or
+     * modified.
+     *
+     * @param updates The new properties indexed by configuration PID. A
+     *      <code>null</code> value deletes the configuration; configurations
+     *      to delete which do not exist are ignored.
+     * @throws IOException If persisting the configurations fails
+     * @throws ReadOnlyConfigurationException If a configuration to update is
+     *      read-only
+     * @throws SecurityException If the caller does not have permission to
+     *      configure one of the configurations
+     * @throws IllegalStateException If this service is not valid anymore
+     */
+    void updateConfigurations( Map<String, Dictionary<String, ?>> updates ) throws IOException;
+}
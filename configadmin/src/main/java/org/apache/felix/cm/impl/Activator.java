@@ -18,6 +18,8 @@
  */
 package org.apache.felix.cm.impl;
 
+import java.io.File;
+import java.io.IOException;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
 import java.util.ArrayList;
@@ -27,6 +29,7 @@ import java.util.List;
 
 import org.apache.felix.cm.PersistenceManager;
 import org.apache.felix.cm.file.FilePersistenceManager;
+import org.apache.felix.cm.impl.persistence.JournalPersistenceManager;
 import org.apache.felix.cm.impl.persistence.MemoryPersistenceManager;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleActivator;
@@ -53,6 +56,12 @@ import org.osgi.service.log.LogService;
  * this property is not set the <code>config</code> directory in the current
  * working directory as specified in the <code>user.dir</code> system property
  * is used.
+ * <p>
+ * In addition a {@link JournalPersistenceManager} is registered with the name
+ * <code>journal</code>. It is only created when it is selected through the
+ * <code>felix.cm.pm</code> framework property and stores its files in the
+ * directory given by the <code>felix.cm.journal.dir</code> framework property
+ * or the <code>journal</code> directory in the bundle's data area.
  */
 public class Activator implements BundleActivator
 {
@@ -87,6 +96,19 @@ public class Activator implements BundleActivator
      */
     public static final String CM_CONFIG_PLUGINS = "felix.cm.config.plugins";
 
+    /**
+     * The name of the framework context property defining the location for the
+     * files of the journal persistence manager (value is "felix.cm.journal.dir").
+     */
+    private static final String CM_JOURNAL_DIR = "felix.cm.journal.dir";
+
+    /**
+     * The name of the framework context property defining the maximum number
+     * of milliseconds between a write to the journal and syncing it to the
+     * storage device (value is "felix.cm.journal.sync").
+     */
+    private static final String CM_JOURNAL_SYNC = "felix.cm.journal.sync";
+
     private volatile DependencyTracker tracker;
 
     // the service registration of the default file persistence manager
@@ -95,6 +117,12 @@ public class Activator implements BundleActivator
     // the service registration of the memory persistence manager
     private volatile ServiceRegistration<PersistenceManager> memorypmRegistration;
 
+    // the service registration of the journal persistence manager
+    private volatile ServiceRegistration<PersistenceManager> journalpmRegistration;
+
+    // the journal persistence manager, if it has been created
+    private volatile JournalPersistenceManager journalpm;
+
     @Override
     public void start( final BundleContext bundleContext ) throws BundleException
     {
@@ -107,6 +135,9 @@ public class Activator implements BundleActivator
         // register memory persistence manager
         registerMemoryPersistenceManager(bundleContext);
 
+        // register journal persistence manager
+        registerJournalPersistenceManager(bundleContext);
+
         try
         {
             this.tracker = new DependencyTracker(bundleContext, defaultFactory,
@@ -161,9 +192,10 @@ public class Activator implements BundleActivator
             this.tracker = null;
         }
 
-        // shutdown the file and memory persistence manager and unregister
+        // shutdown the file, memory and journal persistence manager and unregister
         this.unregisterFilePersistenceManager();
         this.unregisterMemoryPersistenceManager();
+        this.unregisterJournalPersistenceManager();
     }
 
     private ServiceFactory<PersistenceManager> registerFilePersistenceManager(final BundleContext bundleContext)
@@ -209,6 +241,67 @@ public class Activator implements BundleActivator
         memorypmRegistration = bundleContext.registerService(PersistenceManager.class, mpm, props);
     }
 
+    private void registerJournalPersistenceManager(final BundleContext bundleContext) {
+        final Dictionary<String, Object> props = new Hashtable<>();
+        props.put(Constants.SERVICE_DESCRIPTION, "Platform Journal Persistence Manager");
+        props.put(Constants.SERVICE_VENDOR, "The Apache Software Foundation");
+        props.put(PersistenceManager.PROPERTY_NAME, JournalPersistenceManager.PERSISTENCE_MANAGER_NAME);
+
+        final ServiceFactory<PersistenceManager> factory = new ServiceFactory<PersistenceManager>()
+        {
+
+            @Override
+            public PersistenceManager getService(Bundle bundle, ServiceRegistration<PersistenceManager> registration) {
+                synchronized (this) {
+                    if (journalpm == null) {
+                        journalpm = createJournalPersistenceManager(bundleContext);
+                    }
+                    return journalpm;
+                }
+            }
+
+            @Override
+            public void ungetService(Bundle bundle, ServiceRegistration<PersistenceManager> registration,
+                    PersistenceManager service) {
+                // nothing to do
+            }
+
+        };
+        journalpmRegistration = bundleContext.registerService(PersistenceManager.class, factory, props);
+    }
+
+    private JournalPersistenceManager createJournalPersistenceManager(final BundleContext bundleContext) {
+        File location = null;
+        final String dir = bundleContext.getProperty(CM_JOURNAL_DIR);
+        if (dir != null && !dir.isEmpty()) {
+            location = new File(dir);
+        } else {
+            location = bundleContext.getDataFile(JournalPersistenceManager.DEFAULT_JOURNAL_DIR);
+            if (location == null) {
+                location = new File(JournalPersistenceManager.DEFAULT_JOURNAL_DIR).getAbsoluteFile();
+            }
+        }
+
+        long syncInterval = JournalPersistenceManager.DEFAULT_SYNC_INTERVAL;
+        final String sync = bundleContext.getProperty(CM_JOURNAL_SYNC);
+        if (sync != null && !sync.isEmpty()) {
+            try {
+                syncInterval = Long.parseLong(sync.trim());
+            } catch (final NumberFormatException nfe) {
+                Log.logger.log(LogService.LOG_WARNING, "Ignoring invalid journal sync interval {0}",
+                        new Object[] { sync });
+            }
+        }
+
+        try {
+            return new JournalPersistenceManager(location, syncInterval, JournalPersistenceManager.COMPACT_MIN_GARBAGE);
+        } catch (final IOException ioe) {
+            Log.logger.log(LogService.LOG_ERROR, "Cannot open configuration journal in {0}",
+                    new Object[] { location, ioe });
+            return null;
+        }
+    }
+
     private void unregisterFilePersistenceManager()
     {
         if ( this.filepmRegistration != null )
@@ -225,6 +318,18 @@ public class Activator implements BundleActivator
         }
     }
 
+    private void unregisterJournalPersistenceManager() {
+        if (this.journalpmRegistration != null) {
+            this.journalpmRegistration.unregister();
+            this.journalpmRegistration = null;
+        }
+        final JournalPersistenceManager jpm = this.journalpm;
+        if (jpm != null) {
+            jpm.close();
+            this.journalpm = null;
+        }
+    }
+
     public static String getLocation(final Bundle bundle)
     {
         if (System.getSecurityManager() != null)
@@ -20,12 +20,17 @@ package org.apache.felix.cm.impl;
 
 
 import java.io.IOException;
+import java.util.Dictionary;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
+import org.apache.felix.cm.BatchConfigurationAdmin;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.InvalidSyntaxException;
 import org.osgi.service.cm.Configuration;
 import org.osgi.service.cm.ConfigurationAdmin;
 import org.osgi.service.cm.ConfigurationPermission;
+import org.osgi.service.cm.ReadOnlyConfigurationException;
 import org.osgi.service.log.LogService;
 
 
@@ -33,9 +38,9 @@ import org.osgi.service.log.LogService;
  * The <code>ConfigurationAdminImpl</code> is the per-bundle frontend to the
  * configuration manager. Instances of this class are created on-demand for
  * each bundle trying to get hold of the <code>ConfigurationAdmin</code>
- * service.
+ * or the <code>BatchConfigurationAdmin</code> service.
  */
-public class ConfigurationAdminImpl implements ConfigurationAdmin
+public class ConfigurationAdminImpl implements ConfigurationAdmin, BatchConfigurationAdmin
 {
 
     // The configuration manager to which most of the tasks are delegated
@@ -402,4 +407,67 @@ public class ConfigurationAdminImpl implements ConfigurationAdmin
         return this.wrap( config );
     }
 
+
+    //---------- BatchConfigurationAdmin interface ----------------------------
+
+    /* (non-Javadoc)
+     * @see org.apache.felix.cm.BatchConfigurationAdmin#updateConfigurations(java.util.Map)
+     */
+    @Override
+    public void updateConfigurations( final Map<String, Dictionary<String, ?>> updates ) throws IOException
+    {
+        final ConfigurationManager configurationManager = getConfigurationManager();
+
+        Log.logger.log( LogService.LOG_DEBUG, "updateConfigurations(pids={0})", new Object[]
+                { updates.keySet() } );
+
+        // check all existing configurations before creating or modifying any
+        final Map<String, ConfigurationImpl> existing = new LinkedHashMap<>();
+        for ( final Map.Entry<String, Dictionary<String, ?>> entry : updates.entrySet() )
+        {
+            final ConfigurationImpl config = configurationManager.getConfiguration( entry.getKey() );
+            if ( config == null )
+            {
+                continue;
+            }
+
+            if ( config.getBundleLocation() != null )
+            {
+                // CM 1.4 / 104.13.2.3
+                this.checkPermission( configurationManager, config.getBundleLocation(), false );
+            }
+
+            if ( entry.getValue() != null && config.isLocked() )
+            {
+                throw new ReadOnlyConfigurationException( "Configuration " + config.getPid() + " is read-only" );
+            }
+            existing.put( entry.getKey(), config );
+        }
+
+        final String location = Activator.getLocation( getBundle() );
+        final Map<ConfigurationImpl, Dictionary<String, ?>> configs = new LinkedHashMap<>();
+        final Map<ConfigurationImpl, String> bindings = new LinkedHashMap<>();
+        for ( final Map.Entry<String, Dictionary<String, ?>> entry : updates.entrySet() )
+        {
+            ConfigurationImpl config = existing.get( entry.getKey() );
+            if ( config == null )
+            {
+                if ( entry.getValue() == null )
+                {
+                    continue;
+                }
+                config = configurationManager.createConfiguration( entry.getKey(), null );
+            }
+
+            // FELIX-3360: implicit binding is dynamic
+            if ( entry.getValue() != null && config.getBundleLocation() == null )
+            {
+                bindings.put( config, location );
+            }
+            configs.put( config, entry.getValue() );
+        }
+
+        configurationManager.updateBatch( configs, bindings );
+    }
+
 }
@@ -449,15 +449,12 @@ public class ConfigurationImpl
      */
     public void update( Dictionary<String, ?> properties ) throws IOException
     {
-        CaseInsensitiveDictionary newProperties = new CaseInsensitiveDictionary( properties );
+        CaseInsensitiveDictionary newProperties = prepareUpdate( properties );
 
         Log.logger.log( LogService.LOG_DEBUG, "Updating config {0} with {1}", new Object[]
             { getPidString(), newProperties } );
 
-        setAutoProperties( newProperties, true );
-
         // persist new configuration
-        newProperties.put( PROPERTY_REVISION, Long.valueOf(getRevision()) );
         persistenceManager.store( getPidString(), newProperties );
 
         // finally assign the configuration for use
@@ -468,6 +465,52 @@ public class ConfigurationImpl
     }
 
 
+    /**
+     * Returns the properties to be persisted when updating this configuration
+     * with the given properties. This configuration is not modified.
+     */
+    CaseInsensitiveDictionary prepareUpdate( final Dictionary<String, ?> properties )
+    {
+        final CaseInsensitiveDictionary newProperties = new CaseInsensitiveDictionary( properties );
+        setAutoProperties( newProperties, true );
+        newProperties.put( PROPERTY_REVISION, Long.valueOf(getRevision()) );
+        return newProperties;
+    }
+
+
+    /**
+     * Assigns the properties returned from {@link #prepareUpdate(Dictionary)}
+     * after they have been persisted as part of a batch update. Events and
+     * updates are dispatched by the caller.
+     */
+    void batchUpdated( final CaseInsensitiveDictionary newProperties )
+    {
+        configure( newProperties );
+    }
+
+
+    /**
+     * Marks this configuration deleted after it has been removed from
+     * persistence as part of a batch update. The dynamic binding is removed
+     * and events and updates are dispatched by the caller.
+     */
+    void batchDeleted()
+    {
+        this.isDeleted = true;
+    }
+
+
+    /**
+     * Dynamically binds this configuration to the given location as part of
+     * a batch update without persisting the binding, which is done by the
+     * caller.
+     */
+    void batchBind( final String bundleLocation )
+    {
+        this.dynamicBundleLocation = bundleLocation;
+    }
+
+
     //---------- Object overwrites --------------------------------------------
 
     @Override
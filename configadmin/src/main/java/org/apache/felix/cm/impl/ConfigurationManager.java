@@ -31,11 +31,14 @@ import java.util.Dictionary;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Hashtable;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import java.util.Set;
 
+import org.apache.felix.cm.BatchConfigurationAdmin;
 import org.apache.felix.cm.PersistenceManager;
 import org.apache.felix.cm.impl.helper.BaseTracker;
 import org.apache.felix.cm.impl.helper.ConfigurationMap;
@@ -79,7 +82,8 @@ import org.osgi.util.tracker.ServiceTracker;
  * {@link PersistenceManager} instances being registered to support different
  * configuration persistence layers.
  * <li>A {@link ConfigurationAdminFactory} instance is registered as the
- * <code>ConfigurationAdmin</code> service.
+ * <code>ConfigurationAdmin</code> service and as the
+ * {@link BatchConfigurationAdmin} service.
  * <li>Last but not least this instance manages all tasks laid out in the
  * specification such as maintaining configuration, taking care of configuration
  * events, etc.
@@ -87,6 +91,15 @@ import org.osgi.util.tracker.ServiceTracker;
  */
 public class ConfigurationManager implements BundleListener
 {
+    /**
+     * The name of the framework context property defining the number of
+     * threads used to deliver configuration updates to managed services and
+     * managed service factories (value is "felix.cm.update.threads"). Updates
+     * for the same service PID or factory PID are always delivered in order.
+     * The default is a single thread.
+     */
+    static final String CM_UPDATE_THREADS = "felix.cm.update.threads";
+
     // random number generator to create configuration PIDs for factory
     // configurations
     private static Random numberGenerator;
@@ -97,6 +110,12 @@ public class ConfigurationManager implements BundleListener
     // the service registration of the configuration admin
     private volatile ServiceRegistration<ConfigurationAdmin> configurationAdminRegistration;
 
+    // the service registration of the batch configuration admin
+    private volatile ServiceRegistration<?> batchConfigurationAdminRegistration;
+
+    // the service registration of the delivery statistics command
+    private volatile ServiceRegistration<?> deliveryStatisticsRegistration;
+
     // the service registration properties
     private volatile Dictionary<String, Object> serviceProperties;
 
@@ -171,7 +190,7 @@ public class ConfigurationManager implements BundleListener
         // initialize the asynchonous updater thread
         ThreadGroup tg = new ThreadGroup( "Configuration Admin Service" );
         tg.setDaemon( true );
-        this.updateThread = new UpdateThread( tg, "CM Configuration Updater" );
+        this.updateThread = new UpdateThread( tg, "CM Configuration Updater", getUpdateThreads() );
         this.eventThread = new UpdateThread( tg, "CM Event Dispatcher" );
 
         // register as bundle and service listener
@@ -199,10 +218,26 @@ public class ConfigurationManager implements BundleListener
         configurationAdminRegistration = bundleContext.registerService(ConfigurationAdmin.class, caf,
                 serviceProperties);
 
+        // the batch extension is handed out by the same factory
+        final Dictionary<String, Object> batchProperties = new Hashtable<>();
+        batchProperties.put(Constants.SERVICE_DESCRIPTION, "Apache Felix Configuration Admin Batch Update");
+        batchProperties.put(Constants.SERVICE_VENDOR, "The Apache Software Foundation");
+        batchConfigurationAdminRegistration = bundleContext.registerService(BatchConfigurationAdmin.class.getName(),
+                caf, batchProperties);
+
         // start handling ManagedService[Factory] services
         managedServiceTracker = new ManagedServiceTracker(this);
         managedServiceFactoryTracker = new ManagedServiceFactoryTracker(this);
 
+        // expose the delivery statistics of the trackers as a shell command
+        final Dictionary<String, Object> commandProperties = new Hashtable<>();
+        commandProperties.put(Constants.SERVICE_DESCRIPTION, "Apache Felix Configuration Admin Delivery Statistics");
+        commandProperties.put(Constants.SERVICE_VENDOR, "The Apache Software Foundation");
+        commandProperties.put("osgi.command.scope", "cm");
+        commandProperties.put("osgi.command.function", new String[] { DeliveryStatisticsCommand.FUNCTION });
+        deliveryStatisticsRegistration = bundleContext.registerService(DeliveryStatisticsCommand.class.getName(),
+                new DeliveryStatisticsCommand(managedServiceTracker, managedServiceFactoryTracker), commandProperties);
+
         // start processing the event queues only after registering the service
         // see FELIX-2813 for details
         this.updateThread.start();
@@ -212,12 +247,38 @@ public class ConfigurationManager implements BundleListener
     }
 
 
+    private int getUpdateThreads()
+    {
+        final String value = bundleContext.getProperty( CM_UPDATE_THREADS );
+        if ( value != null )
+        {
+            try
+            {
+                return Integer.parseInt( value.trim() );
+            }
+            catch ( NumberFormatException nfe )
+            {
+                Log.logger.log( LogService.LOG_WARNING, "Ignoring invalid {0} value {1}", new Object[]
+                        { CM_UPDATE_THREADS, value } );
+            }
+        }
+        return 1;
+    }
+
+
     public void stop( )
     {
 
         // stop handling bundle events immediately
         handleBundleEvents = false;
 
+        final ServiceRegistration<?> commandReg = deliveryStatisticsRegistration;
+        deliveryStatisticsRegistration = null;
+        if ( commandReg != null )
+        {
+            commandReg.unregister();
+        }
+
         // stop handling ManagedService[Factory] services
         if (managedServiceFactoryTracker != null) {
             managedServiceFactoryTracker.close();
@@ -241,6 +302,12 @@ public class ConfigurationManager implements BundleListener
         // clearing the field before actually unregistering the service
         // prevents IllegalStateException in getServiceReference() if
         // the field is not null but the service already unregistered
+        final ServiceRegistration<?> batchReg = batchConfigurationAdminRegistration;
+        batchConfigurationAdminRegistration = null;
+        if ( batchReg != null )
+        {
+            batchReg.unregister();
+        }
         final ServiceRegistration<ConfigurationAdmin> caReg = configurationAdminRegistration;
         configurationAdminRegistration = null;
         if ( caReg != null )
@@ -524,7 +591,12 @@ public class ConfigurationManager implements BundleListener
 
         List<ConfigurationImpl> configList = new ArrayList<>();
 
-        Collection<Dictionary> configs = this.persistenceManager.getDictionaries(filter );
+        // the caching persistence manager can hand out shared read-only
+        // dictionaries, these are only copied if a new configuration is created
+        final boolean caching = this.persistenceManager instanceof CachingPersistenceManagerProxy;
+        Collection<Dictionary> configs = caching
+                ? ((CachingPersistenceManagerProxy) this.persistenceManager).getReadOnlyDictionaries( filter )
+                : this.persistenceManager.getDictionaries( filter );
         for(final Dictionary config : configs)
         {
             // ignore non-Configuration dictionaries
@@ -549,11 +621,11 @@ public class ConfigurationManager implements BundleListener
 
             // ensure the service.pid and returned a cached config if available
             ConfigurationImpl cfg = null;
-            if ( this.persistenceManager instanceof CachingPersistenceManagerProxy)
+            if ( caching )
             {
                 cfg = getCachedConfiguration( pid );
                 if (cfg == null) {
-                    cfg = new ConfigurationImpl(this, this.persistenceManager, config);
+                    cfg = new ConfigurationImpl(this, this.persistenceManager, new CaseInsensitiveDictionary( config ));
                     // add the to configurations cache if it wasn't in the cache
                     cacheConfiguration(cfg);
                 }
@@ -637,13 +709,138 @@ public class ConfigurationManager implements BundleListener
     }
 
 
+    /**
+     * Updates, deletes and dynamically binds the given configurations as one
+     * batch. All configurations are persisted with a single call to the
+     * persistence manager and the dynamic bindings are stored once. Only
+     * afterwards the configuration events are sent in one pass over the
+     * listeners and the managed services are updated. If the calling thread
+     * is in a coordination, the events and updates are delivered when the
+     * coordination ends.
+     *
+     * @param updates The new properties of the configurations to update or
+     *      <code>null</code> for configurations to delete
+     * @param bindings The locations to dynamically bind configurations to
+     * @throws IOException If persisting the configurations fails. In this
+     *      case no configuration has been modified but some may have been
+     *      persisted.
+     */
+    void updateBatch( final Map<ConfigurationImpl, Dictionary<String, ?>> updates,
+        final Map<ConfigurationImpl, String> bindings ) throws IOException
+    {
+        final Map<String, Dictionary> stores = new LinkedHashMap<>();
+        final List<String> deletes = new ArrayList<>();
+        final Map<ConfigurationImpl, CaseInsensitiveDictionary> newProperties = new HashMap<>();
+        for ( final Map.Entry<ConfigurationImpl, Dictionary<String, ?>> entry : updates.entrySet() )
+        {
+            final ConfigurationImpl config = entry.getKey();
+            if ( entry.getValue() == null )
+            {
+                deletes.add( config.getPidString() );
+            }
+            else
+            {
+                final CaseInsensitiveDictionary props = config.prepareUpdate( entry.getValue() );
+                newProperties.put( config, props );
+                stores.put( config.getPidString(), props );
+            }
+        }
+
+        persistenceManager.storeAll( stores, deletes );
+
+        final List<Integer> types = new ArrayList<>();
+        final List<ConfigurationImpl> eventConfigs = new ArrayList<>();
+        final List<Runnable> tasks = new ArrayList<>();
+
+        // dynamic bindings, CM_LOCATION_CHANGED for existing configurations
+        final Map<String, String> locations = new HashMap<>();
+        for ( final Map.Entry<ConfigurationImpl, String> entry : bindings.entrySet() )
+        {
+            final ConfigurationImpl config = entry.getKey();
+            config.batchBind( entry.getValue() );
+            locations.put( config.getPidString(), entry.getValue() );
+            if ( !config.isNew() )
+            {
+                types.add( ConfigurationEvent.CM_LOCATION_CHANGED );
+                eventConfigs.add( config );
+            }
+        }
+        for ( final String pid : deletes )
+        {
+            locations.put( pid, null );
+        }
+        if ( dynamicBindings != null && !locations.isEmpty() )
+        {
+            try
+            {
+                dynamicBindings.putLocations( locations );
+            }
+            catch ( IOException ioe )
+            {
+                Log.logger.log( LogService.LOG_ERROR, "Failed storing dynamic configuration bindings for {0}", new Object[]
+                        { locations.keySet(), ioe } );
+            }
+        }
+
+        // assign the persisted state
+        for ( final ConfigurationImpl config : updates.keySet() )
+        {
+            final CaseInsensitiveDictionary props = newProperties.get( config );
+            if ( props == null )
+            {
+                config.batchDeleted();
+                removeConfiguration( config );
+                types.add( ConfigurationEvent.CM_DELETED );
+                tasks.add( new DeleteConfiguration( config ) );
+            }
+            else
+            {
+                config.batchUpdated( props );
+                types.add( ConfigurationEvent.CM_UPDATED );
+                tasks.add( new UpdateConfiguration( config ) );
+            }
+            eventConfigs.add( config );
+        }
+
+        // send all events and schedule the updates
+        final int[] eventTypes = new int[types.size()];
+        final String[] pids = new String[eventTypes.length];
+        final String[] factoryPids = new String[eventTypes.length];
+        for ( int i = 0; i < eventTypes.length; i++ )
+        {
+            eventTypes[i] = types.get( i );
+            pids[i] = eventConfigs.get( i ).getPidString();
+            factoryPids[i] = eventConfigs.get( i ).getFactoryPidString();
+        }
+        if ( eventTypes.length > 0 )
+        {
+            fireConfigurationEvents( eventTypes, pids, factoryPids );
+        }
+        for ( final Runnable task : tasks )
+        {
+            if ( this.coordinator == null || !CoordinatorUtil.addToCoordination(this.coordinator, updateThread, task) )
+            {
+                updateThread.schedule( task );
+            }
+        }
+        Log.logger.log( LogService.LOG_DEBUG, "Batch of {0} updates and {1} deletions scheduled", new Object[]
+                { stores.size(), deletes.size() } );
+    }
+
+
     void fireConfigurationEvent( int type, String pid, String factoryPid )
+    {
+        fireConfigurationEvents( new int[] { type }, new String[] { pid }, new String[] { factoryPid } );
+    }
+
+
+    private void fireConfigurationEvents( final int[] types, final String[] pids, final String[] factoryPids )
     {
         // prevent event senders
-        FireConfigurationEvent asyncSender = new FireConfigurationEvent( this.configurationListenerTracker, type, pid,
-                factoryPid );
-        FireConfigurationEvent syncSender = new FireConfigurationEvent( this.syncConfigurationListenerTracker, type,
-                pid, factoryPid );
+        FireConfigurationEvent asyncSender = new FireConfigurationEvent( this.configurationListenerTracker, types, pids,
+                factoryPids );
+        FireConfigurationEvent syncSender = new FireConfigurationEvent( this.syncConfigurationListenerTracker, types,
+                pids, factoryPids );
 
         // send synchronous events
         if ( syncSender.hasConfigurationEventListeners() )
@@ -1267,7 +1464,7 @@ public class ConfigurationManager implements BundleListener
         }
     }
 
-    private abstract class ConfigurationProvider<T> implements Runnable
+    private abstract class ConfigurationProvider<T> implements UpdateThread.KeyedTask
     {
 
         protected final ConfigurationImpl config;
@@ -1298,6 +1495,18 @@ public class ConfigurationManager implements BundleListener
         }
 
 
+        /**
+         * Tasks are keyed by the service PID of the managed service or the
+         * factory PID of the managed service factory such that updates to
+         * the same targets are delivered in order.
+         */
+        @Override
+        public String getKey()
+        {
+            return getTargetedServicePid().getServicePid();
+        }
+
+
         protected BaseTracker<T> getHelper()
         {
             if ( this.helper == null )
@@ -1582,13 +1791,18 @@ public class ConfigurationManager implements BundleListener
         }
     }
 
+    /**
+     * The <code>FireConfigurationEvent</code> sends one or more events to
+     * the configuration listeners. Each listener receives all events in
+     * order before the next listener is called.
+     */
     private class FireConfigurationEvent implements Runnable
     {
-        private final int type;
+        private final int[] types;
 
-        private final String pid;
+        private final String[] pids;
 
-        private final String factoryPid;
+        private final String[] factoryPids;
 
         private final ServiceReference[] listenerReferences;
 
@@ -1596,13 +1810,19 @@ public class ConfigurationManager implements BundleListener
 
         private final Bundle[] listenerProvider;
 
-        private ConfigurationEvent event;
+        private final ConfigurationEvent[] events;
 
         private FireConfigurationEvent( final ServiceTracker listenerTracker, final int type, final String pid, final String factoryPid)
         {
-            this.type = type;
-            this.pid = pid;
-            this.factoryPid = factoryPid;
+            this( listenerTracker, new int[] { type }, new String[] { pid }, new String[] { factoryPid } );
+        }
+
+        private FireConfigurationEvent( final ServiceTracker listenerTracker, final int[] types, final String[] pids, final String[] factoryPids)
+        {
+            this.types = types;
+            this.pids = pids;
+            this.factoryPids = factoryPids;
+            this.events = new ConfigurationEvent[types.length];
 
             final ServiceReference[] srs = listenerTracker.getServiceReferences();
             if ( srs == null || srs.length == 0 )
@@ -1632,6 +1852,12 @@ public class ConfigurationManager implements BundleListener
 
 
         String getTypeName()
+        {
+            return types.length == 1 ? getTypeName( types[0] ) : "batched";
+        }
+
+
+        private String getTypeName( final int type )
         {
             switch ( type )
             {
@@ -1652,7 +1878,7 @@ public class ConfigurationManager implements BundleListener
         {
             for ( int i = 0; i < listeners.length; i++ )
             {
-                sendEvent( i );
+                sendEvents( i );
             }
         }
 
@@ -1660,28 +1886,30 @@ public class ConfigurationManager implements BundleListener
         @Override
         public String toString()
         {
-            return "Fire ConfigurationEvent: pid=" + pid;
+            if ( pids.length == 1 )
+            {
+                return "Fire ConfigurationEvent: pid=" + pids[0];
+            }
+            return "Fire ConfigurationEvents: count=" + pids.length;
         }
 
 
-        private ConfigurationEvent getConfigurationEvent(ServiceReference<ConfigurationAdmin> serviceReference)
+        private ConfigurationEvent getConfigurationEvent(ServiceReference<ConfigurationAdmin> serviceReference, final int eventIndex)
         {
-            if ( event == null )
+            if ( events[eventIndex] == null )
             {
-                this.event = new ConfigurationEvent( serviceReference, type, factoryPid, pid );
+                this.events[eventIndex] = new ConfigurationEvent( serviceReference, types[eventIndex],
+                    factoryPids[eventIndex], pids[eventIndex] );
             }
-            return event;
+            return events[eventIndex];
         }
 
 
-        private void sendEvent( final int serviceIndex )
+        private void sendEvents( final int serviceIndex )
         {
             if ( (listenerProvider[serviceIndex].getState() & (Bundle.ACTIVE | Bundle.STARTING)) > 0
                     && this.listeners[serviceIndex] != null )
             {
-                Log.logger.log( LogService.LOG_DEBUG, "Sending {0} event for {1} to {2}", new Object[]
-                        { getTypeName(), pid, listenerReferences[serviceIndex]} );
-
                 final ServiceReference<ConfigurationAdmin> serviceReference = getServiceReference();
 
                 if (serviceReference == null)
@@ -1694,36 +1922,52 @@ public class ConfigurationManager implements BundleListener
 
                 try
                 {
-                    if ( System.getSecurityManager() != null )
+                    for ( int i = 0; i < types.length; i++ )
                     {
-                        AccessController.doPrivileged(
-                            new PrivilegedAction<Object>()
-                            {
-                                @Override
-                                public Void run()
-                                {
-                                    listeners[serviceIndex].configurationEvent(getConfigurationEvent(serviceReference));
-                                    return null;
-                                }
-                            }, BaseTracker.getAccessControlContext(listenerProvider[serviceIndex])
-                        );
-                    }
-                    else
-                    {
-                        listeners[serviceIndex].configurationEvent(getConfigurationEvent(serviceReference));
+                        sendEvent( serviceIndex, serviceReference, i );
                     }
                 }
-                catch ( Throwable t )
-                {
-                    Log.logger.log( LogService.LOG_ERROR, "Unexpected problem delivering configuration event to {0}", new Object[]
-                            { listenerReferences[serviceIndex], t } );
-                }
                 finally
                 {
                     this.listeners[serviceIndex] = null;
                 }
             }
         }
+
+
+        private void sendEvent( final int serviceIndex, final ServiceReference<ConfigurationAdmin> serviceReference,
+            final int eventIndex )
+        {
+            Log.logger.log( LogService.LOG_DEBUG, "Sending {0} event for {1} to {2}", new Object[]
+                    { getTypeName( types[eventIndex] ), pids[eventIndex], listenerReferences[serviceIndex]} );
+
+            try
+            {
+                if ( System.getSecurityManager() != null )
+                {
+                    AccessController.doPrivileged(
+                        new PrivilegedAction<Object>()
+                        {
+                            @Override
+                            public Void run()
+                            {
+                                listeners[serviceIndex].configurationEvent(getConfigurationEvent(serviceReference, eventIndex));
+                                return null;
+                            }
+                        }, BaseTracker.getAccessControlContext(listenerProvider[serviceIndex])
+                    );
+                }
+                else
+                {
+                    listeners[serviceIndex].configurationEvent(getConfigurationEvent(serviceReference, eventIndex));
+                }
+            }
+            catch ( Throwable t )
+            {
+                Log.logger.log( LogService.LOG_ERROR, "Unexpected problem delivering configuration event to {0}", new Object[]
+                        { listenerReferences[serviceIndex], t } );
+            }
+        }
     }
 
     public void setCoordinator(final Object service)
@@ -78,7 +78,7 @@ public class CoordinatorUtil
             Notifier n = null;
             for(final Participant p : c.getParticipants())
             {
-                if ( p instanceof Notifier )
+                if ( p instanceof Notifier && ( ( Notifier ) p ).thread == thread )
                 {
                     n = (Notifier) p;
                     break;
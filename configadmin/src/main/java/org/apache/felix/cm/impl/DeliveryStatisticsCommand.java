@@ -0,0 +1,59 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.cm.impl;
+
+import org.apache.felix.cm.impl.helper.BaseTracker;
+
+
+/**
+ * The <code>DeliveryStatisticsCommand</code> is registered as a Gogo shell
+ * command <code>cm:deliveries</code> printing the time taken to deliver
+ * configuration to each <code>ManagedService</code> and
+ * <code>ManagedServiceFactory</code> service.
+ * <p>
+ * The command is registered with the <code>osgi.command.scope</code> and
+ * <code>osgi.command.function</code> service properties only, so no
+ * dependency on the shell is required.
+ */
+public class DeliveryStatisticsCommand
+{
+
+    static final String FUNCTION = "deliveries";
+
+    private final BaseTracker<?> managedServiceTracker;
+
+    private final BaseTracker<?> managedServiceFactoryTracker;
+
+
+    DeliveryStatisticsCommand( final BaseTracker<?> managedServiceTracker,
+        final BaseTracker<?> managedServiceFactoryTracker )
+    {
+        this.managedServiceTracker = managedServiceTracker;
+        this.managedServiceFactoryTracker = managedServiceFactoryTracker;
+    }
+
+
+    public void deliveries()
+    {
+        System.out.println( "ManagedService deliveries:" );
+        managedServiceTracker.printDeliveryStatistics( System.out );
+        System.out.println( "ManagedServiceFactory deliveries:" );
+        managedServiceFactoryTracker.printDeliveryStatistics( System.out );
+    }
+}
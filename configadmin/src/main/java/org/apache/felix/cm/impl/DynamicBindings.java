@@ -21,12 +21,14 @@ package org.apache.felix.cm.impl;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Dictionary;
 import java.util.Enumeration;
 import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.apache.felix.cm.PersistenceManager;
@@ -103,16 +105,29 @@ class DynamicBindings
 
 
     void putLocation( final String pid, final String location ) throws IOException
+    {
+        putLocations( Collections.singletonMap( pid, location ) );
+    }
+
+
+    /**
+     * Sets or, for <code>null</code> values, removes the locations of all
+     * given PIDs and stores the bindings once.
+     */
+    void putLocations( final Map<String, String> locations ) throws IOException
     {
         synchronized ( this )
         {
-            if ( location == null )
-            {
-                this.bindings.remove( pid );
-            }
-            else
+            for ( final Map.Entry<String, String> entry : locations.entrySet() )
             {
-                this.bindings.put( pid, location );
+                if ( entry.getValue() == null )
+                {
+                    this.bindings.remove( entry.getKey() );
+                }
+                else
+                {
+                    this.bindings.put( entry.getKey(), entry.getValue() );
+                }
             }
 
             if (this.bindings.isEmpty()) {
@@ -22,8 +22,16 @@ import java.security.AccessControlContext;
 import java.security.AccessController;
 import java.security.PrivilegedActionException;
 import java.security.PrivilegedExceptionAction;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.BlockingDeque;
 import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.osgi.service.log.LogService;
 
@@ -31,10 +39,31 @@ import org.osgi.service.log.LogService;
 /**
  * The <code>UpdateThread</code> is the thread used to update managed services
  * and managed service factories as well as to send configuration events.
+ * <p>
+ * By default all tasks are run one after the other in the order they have
+ * been scheduled. If the thread is created with a parallelism larger than one,
+ * tasks implementing {@link KeyedTask} are handed off to a pool of worker
+ * threads: tasks with the same key are still run one after the other in
+ * scheduling order, while tasks with different keys may run concurrently.
+ * All other tasks act as barriers: they are only run once all keyed tasks
+ * scheduled before them have completed and no task scheduled after them is
+ * started before they have completed.
  */
 public class UpdateThread implements Runnable
 {
 
+    /**
+     * A task which may be run concurrently with tasks of other keys.
+     */
+    public interface KeyedTask extends Runnable
+    {
+        /**
+         * Returns the key of this task. Tasks with the same key are never run
+         * concurrently and are run in the order they have been scheduled.
+         */
+        String getKey();
+    }
+
     // the thread group into which the worker thread will be placed
     private final ThreadGroup workerThreadGroup;
 
@@ -50,11 +79,30 @@ public class UpdateThread implements Runnable
     // the access control context
     private final AccessControlContext acc;
 
+    // the number of threads running keyed tasks
+    private final int parallelism;
+
+    // the lanes of keyed tasks currently queued or running indexed by key,
+    // also used as the lock for lane handling
+    private final Map<String, Lane> lanes = new HashMap<>();
+
+    // the pool running the lanes, only used if parallelism is larger than one
+    private volatile ThreadPoolExecutor pool;
+
+    // set when terminating to stop processing queued keyed tasks
+    private volatile boolean terminated;
+
     public UpdateThread( final ThreadGroup tg, final String name )
+    {
+        this( tg, name, 1 );
+    }
+
+    public UpdateThread( final ThreadGroup tg, final String name, final int parallelism )
     {
         this.workerThreadGroup = tg;
         this.workerBaseName = name;
         this.acc = AccessController.getContext();
+        this.parallelism = Math.max( 1, parallelism );
     }
 
 
@@ -72,25 +120,16 @@ public class UpdateThread implements Runnable
             // return if the task is this thread itself
             while ((task = updateTasks.take()) != this)
             {
-                // otherwise execute the task, log any issues
-                try
-                {
-                    // set the thread name indicating the current task
-                    Thread.currentThread().setName( workerBaseName + " (" + task + ")" );
-
-                    Log.logger.log( LogService.LOG_DEBUG, "Running task {0}", new Object[]
-                        { task } );
-
-                    run0(task);
-                }
-                catch ( Throwable t )
+                if ( pool != null && task instanceof KeyedTask )
                 {
-                    Log.logger.log( LogService.LOG_ERROR, "Unexpected problem executing task", t );
+                    // hand off to the lane of the task's key
+                    dispatch( ( KeyedTask ) task );
                 }
-                finally
+                else
                 {
-                    // reset the thread name to "idle"
-                    Thread.currentThread().setName( workerBaseName );
+                    // barrier: wait for all keyed tasks before running
+                    awaitLanes();
+                    execute( task, workerBaseName );
                 }
             }
         }
@@ -100,6 +139,62 @@ public class UpdateThread implements Runnable
         }
     }
 
+    // executes the task, logs any issues
+    private void execute( final Runnable task, final String threadName )
+    {
+        try
+        {
+            // set the thread name indicating the current task
+            Thread.currentThread().setName( threadName + " (" + task + ")" );
+
+            Log.logger.log( LogService.LOG_DEBUG, "Running task {0}", new Object[]
+                { task } );
+
+            run0(task);
+        }
+        catch ( Throwable t )
+        {
+            Log.logger.log( LogService.LOG_ERROR, "Unexpected problem executing task", t );
+        }
+        finally
+        {
+            // reset the thread name to "idle"
+            Thread.currentThread().setName( threadName );
+        }
+    }
+
+    // appends the task to the lane of its key, starting the lane if needed
+    private void dispatch( final KeyedTask task )
+    {
+        synchronized ( lanes )
+        {
+            Lane lane = lanes.get( task.getKey() );
+            if ( lane == null )
+            {
+                lane = new Lane( task.getKey() );
+                lanes.put( lane.key, lane );
+                lane.tasks.add( task );
+                pool.execute( lane );
+            }
+            else
+            {
+                lane.tasks.add( task );
+            }
+        }
+    }
+
+    // waits until all lanes have completed their tasks
+    private void awaitLanes() throws InterruptedException
+    {
+        synchronized ( lanes )
+        {
+            while ( !lanes.isEmpty() )
+            {
+                lanes.wait();
+            }
+        }
+    }
+
     void run0(final Runnable task) throws Throwable {
         if (System.getSecurityManager() != null) {
             try {
@@ -131,6 +226,14 @@ public class UpdateThread implements Runnable
     {
         if ( this.worker == null )
         {
+            this.terminated = false;
+            if ( this.parallelism > 1 )
+            {
+                this.pool = new ThreadPoolExecutor( parallelism, parallelism, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new WorkerFactory() );
+                this.pool.allowCoreThreadTimeOut( true );
+            }
+
             Thread workerThread = new Thread( workerThreadGroup, this, workerBaseName );
             workerThread.setDaemon( true );
             workerThread.start();
@@ -161,6 +264,8 @@ public class UpdateThread implements Runnable
             Thread workerThread = this.worker;
             this.worker = null;
 
+            // stop the lanes after their current task
+            this.terminated = true;
             updateTasks.offerFirst( this );
 
             // wait for all updates to terminate (<= 10 seconds !)
@@ -180,6 +285,31 @@ public class UpdateThread implements Runnable
                         { workerBaseName } );
                 workerThread.stop();
             }
+
+            if ( this.pool != null )
+            {
+                this.pool.shutdown();
+                try
+                {
+                    if ( !this.pool.awaitTermination( 5, TimeUnit.SECONDS ) )
+                    {
+                        Log.logger.log( LogService.LOG_ERROR,
+                            "Worker threads {0} did not terminate within 5 seconds; interrupting", new Object[]
+                                { workerBaseName } );
+                        this.pool.shutdownNow();
+                    }
+                }
+                catch ( InterruptedException ie )
+                {
+                    // don't really care
+                }
+                this.pool = null;
+                synchronized ( lanes )
+                {
+                    lanes.clear();
+                    lanes.notifyAll();
+                }
+            }
         }
     }
 
@@ -193,4 +323,57 @@ public class UpdateThread implements Runnable
         // append to the task queue
         updateTasks.offer( update );
     }
+
+    /**
+     * The queue of tasks of a single key. A lane is run by a pool thread
+     * until its queue is empty at which point it removes itself.
+     */
+    private class Lane implements Runnable
+    {
+        final String key;
+
+        final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+
+        Lane( final String key )
+        {
+            this.key = key;
+        }
+
+        @Override
+        public void run()
+        {
+            final String threadName = Thread.currentThread().getName();
+            while ( true )
+            {
+                final Runnable task;
+                synchronized ( lanes )
+                {
+                    task = terminated ? null : tasks.poll();
+                    if ( task == null )
+                    {
+                        lanes.remove( key );
+                        lanes.notifyAll();
+                        return;
+                    }
+                }
+                execute( task, threadName );
+            }
+        }
+    }
+
+    /**
+     * Creates the daemon pool threads in the worker thread group.
+     */
+    private class WorkerFactory implements ThreadFactory
+    {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread( final Runnable r )
+        {
+            final Thread thread = new Thread( workerThreadGroup, r, workerBaseName + " #" + counter.incrementAndGet() );
+            thread.setDaemon( true );
+            return thread;
+        }
+    }
 }
@@ -19,16 +19,21 @@
 package org.apache.felix.cm.impl.helper;
 
 
+import java.io.PrintStream;
 import java.security.AccessControlContext;
 import java.security.AccessController;
 import java.security.DomainCombiner;
 import java.security.Permission;
 import java.security.ProtectionDomain;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Dictionary;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.felix.cm.impl.CaseInsensitiveDictionary;
 import org.apache.felix.cm.impl.ConfigurationManager;
@@ -50,13 +55,25 @@ import org.osgi.util.tracker.ServiceTracker;
  * services. It maps their <code>ServiceRegistration</code> to the
  * {@link ConfigurationMap} mapping their service PIDs to provided
  * configuration.
+ * <p>
+ * The time taken by each call to a service is recorded per service, whether
+ * the call succeeds or fails. Calls taking longer than one second are logged
+ * as warnings together with the delivery statistics of the service to help
+ * identifying slow consumers. The statistics of all services are available
+ * through {@link #printDeliveryStatistics(PrintStream)}.
  */
 public abstract class BaseTracker<S> extends ServiceTracker<S, ConfigurationMap<?>>
 {
+    // calls to services taking longer than this are logged as warnings
+    private static final long SLOW_DELIVERY_NANOS = TimeUnit.SECONDS.toNanos( 1 );
+
     protected final ConfigurationManager cm;
 
     private final boolean managedServiceFactory;
 
+    // delivery statistics per service indexed by service.id
+    private final ConcurrentMap<Object, DeliveryStatistics> deliveryStatistics = new ConcurrentHashMap<>();
+
     protected BaseTracker( final ConfigurationManager cm, final boolean managedServiceFactory )
     {
         super( cm.getBundleContext(), ( managedServiceFactory ? ManagedServiceFactory.class.getName()
@@ -101,6 +118,8 @@ public abstract class BaseTracker<S> extends ServiceTracker<S, ConfigurationMap<
         // just log
         Log.logger.log( LogService.LOG_DEBUG, "Unregistering service {0}", new Object[]
             { reference } );
+
+        deliveryStatistics.remove( reference.getProperty( Constants.SERVICE_ID ) );
     }
 
 
@@ -223,6 +242,62 @@ public abstract class BaseTracker<S> extends ServiceTracker<S, ConfigurationMap<
     }
 
 
+    /**
+     * Records the time taken to deliver the configuration to the service.
+     * This is to be called from a {@code finally} block such that failed
+     * deliveries are recorded as well.
+     *
+     * @param target The service to which the configuration was delivered
+     * @param pid The configuration delivered
+     * @param start The {@link System#nanoTime()} before calling the service
+     * @param failed Whether the service threw an exception
+     */
+    protected final void recordDelivery( final ServiceReference<?> target, final TargetedPID pid, final long start,
+        final boolean failed )
+    {
+        final long duration = System.nanoTime() - start;
+        final Object serviceId = target.getProperty( Constants.SERVICE_ID );
+        DeliveryStatistics stats = deliveryStatistics.get( serviceId );
+        if ( stats == null )
+        {
+            final DeliveryStatistics newStats = new DeliveryStatistics( target );
+            stats = deliveryStatistics.putIfAbsent( serviceId, newStats );
+            if ( stats == null )
+            {
+                stats = newStats;
+            }
+        }
+        stats.record( duration, failed );
+
+        if ( duration >= SLOW_DELIVERY_NANOS )
+        {
+            Log.logger.log( LogService.LOG_WARNING,
+                "{0}: Delivering configuration {1} took {2}ms ({3})", new Object[]
+                    { target, pid, TimeUnit.NANOSECONDS.toMillis( duration ), stats } );
+        }
+        else if ( Log.logger.isLogEnabled( LogService.LOG_DEBUG ) )
+        {
+            Log.logger.log( LogService.LOG_DEBUG, "{0}: Delivered configuration {1} in {2}us{3}", new Object[]
+                { target, pid, TimeUnit.NANOSECONDS.toMicros( duration ), failed ? " (failed)" : "" } );
+        }
+    }
+
+
+    /**
+     * Prints the delivery statistics of all services currently tracked,
+     * one line per service.
+     *
+     * @param out The stream to print to
+     */
+    public final void printDeliveryStatistics( final PrintStream out )
+    {
+        for ( final DeliveryStatistics stats : deliveryStatistics.values() )
+        {
+            out.println( stats.describe() );
+        }
+    }
+
+
     protected final void handleCallBackError( final Throwable error, final ServiceReference target, final TargetedPID pid )
     {
         if ( error instanceof ConfigurationException )
@@ -297,6 +372,53 @@ public abstract class BaseTracker<S> extends ServiceTracker<S, ConfigurationMap<
         return new AccessControlContext(AccessController.getContext(), new CMDomainCombiner(bundle));
     }
 
+    /**
+     * Number, failures, average and maximum time of the deliveries to a
+     * service.
+     */
+    private static class DeliveryStatistics
+    {
+        private final ServiceReference<?> target;
+
+        private long count;
+
+        private long failures;
+
+        private long total;
+
+        private long max;
+
+        DeliveryStatistics( final ServiceReference<?> target )
+        {
+            this.target = target;
+        }
+
+        synchronized void record( final long duration, final boolean failed )
+        {
+            count++;
+            if ( failed )
+            {
+                failures++;
+            }
+            total += duration;
+            max = Math.max( max, duration );
+        }
+
+        String describe()
+        {
+            return "[" + target.getProperty( Constants.SERVICE_ID ) + "] "
+                + Arrays.toString( getServicePid( target ) ) + ": " + this;
+        }
+
+        @Override
+        public synchronized String toString()
+        {
+            return "deliveries=" + count + ", failures=" + failures + ", average="
+                + TimeUnit.NANOSECONDS.toMillis( total / count ) + "ms, max=" + TimeUnit.NANOSECONDS.toMillis( max )
+                + "ms";
+        }
+    }
+
     private static class CMDomainCombiner implements DomainCombiner {
         private final CMProtectionDomain domain;
 
@@ -84,22 +84,37 @@ public class ManagedServiceFactoryTracker extends BaseTracker<ManagedServiceFact
         // are available, so the service can be updated with the
         // configuration (which may be null)
 
-        if ( configs.shallTake( configPid, factoryPid, revision ) )
+        // serialize calls to the service, which may be configured with
+        // multiple factory PIDs updated concurrently
+        synchronized ( configs )
         {
-            try
-            {
-                Dictionary props = getProperties( properties, reference, configPid.toString(),
-                    factoryPid.toString() );
-                updated( reference, service, configPid.toString(), props );
-                configs.record( configPid, factoryPid, revision );
-            }
-            catch ( Throwable t )
-            {
-                this.handleCallBackError( t, reference, configPid );
-            }
-            finally
+            if ( configs.shallTake( configPid, factoryPid, revision ) )
             {
-                this.ungetRealService( reference );
+                try
+                {
+                    Dictionary props = getProperties( properties, reference, configPid.toString(),
+                        factoryPid.toString() );
+                    final long start = System.nanoTime();
+                    boolean failed = true;
+                    try
+                    {
+                        updated( reference, service, configPid.toString(), props );
+                        failed = false;
+                    }
+                    finally
+                    {
+                        this.recordDelivery( reference, configPid, start, failed );
+                    }
+                    configs.record( configPid, factoryPid, revision );
+                }
+                catch ( Throwable t )
+                {
+                    this.handleCallBackError( t, reference, configPid );
+                }
+                finally
+                {
+                    this.ungetRealService( reference );
+                }
             }
         }
     }
@@ -113,20 +128,33 @@ public class ManagedServiceFactoryTracker extends BaseTracker<ManagedServiceFact
         final ConfigurationMap configs = this.getService( reference );
         if ( service != null && configs != null)
         {
-            if ( configs.removeConfiguration( configPid, factoryPid ) )
+            synchronized ( configs )
             {
-                try
+                if ( configs.removeConfiguration( configPid, factoryPid ) )
                 {
-                    deleted( reference, service, configPid.toString() );
-                    configs.record( configPid, factoryPid, -1 );
-                }
-                catch ( Throwable t )
-                {
-                    this.handleCallBackError( t, reference, configPid );
-                }
-                finally
-                {
-                    this.ungetRealService( reference );
+                    try
+                    {
+                        final long start = System.nanoTime();
+                        boolean failed = true;
+                        try
+                        {
+                            deleted( reference, service, configPid.toString() );
+                            failed = false;
+                        }
+                        finally
+                        {
+                            this.recordDelivery( reference, configPid, start, failed );
+                        }
+                        configs.record( configPid, factoryPid, -1 );
+                    }
+                    catch ( Throwable t )
+                    {
+                        this.handleCallBackError( t, reference, configPid );
+                    }
+                    finally
+                    {
+                        this.ungetRealService( reference );
+                    }
                 }
             }
         }
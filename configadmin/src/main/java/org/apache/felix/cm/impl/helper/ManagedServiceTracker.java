@@ -120,45 +120,60 @@ public class ManagedServiceTracker extends BaseTracker<ManagedService>
         // are available, so the service can be updated with the
         // configuration (which may be null)
 
-        boolean doUpdate = false;
-        if ( properties == null )
+        // serialize calls to the service, which may be configured with
+        // multiple PIDs updated concurrently
+        synchronized ( configs )
         {
-            doUpdate = configs.removeConfiguration( configPid, null );
-        }
-        else if ( properties == INITIAL_MARKER )
-        {
-            // initial call to ManagedService may supply null properties
-            properties = null;
-            revision = -1;
-            doUpdate = true;
-        }
-        else if ( revision < 0 || configs.shallTake( configPid, null, revision ) )
-        {
-            // run the plugins and cause the update
-            properties = getProperties( properties, service, configPid.toString(), null );
-            doUpdate = true;
-            revision = Math.abs( revision );
-        }
-        else
-        {
-            // new configuration is not a better match, don't update
-            doUpdate = false;
-        }
-
-        if ( doUpdate )
-        {
-            try
+            boolean doUpdate = false;
+            if ( properties == null )
             {
-                updated( service, srv, properties );
-                configs.record( configPid, null, revision );
+                doUpdate = configs.removeConfiguration( configPid, null );
             }
-            catch ( Throwable t )
+            else if ( properties == INITIAL_MARKER )
             {
-                this.handleCallBackError( t, service, configPid );
+                // initial call to ManagedService may supply null properties
+                properties = null;
+                revision = -1;
+                doUpdate = true;
             }
-            finally
+            else if ( revision < 0 || configs.shallTake( configPid, null, revision ) )
             {
-                this.ungetRealService( service );
+                // run the plugins and cause the update
+                properties = getProperties( properties, service, configPid.toString(), null );
+                doUpdate = true;
+                revision = Math.abs( revision );
+            }
+            else
+            {
+                // new configuration is not a better match, don't update
+                doUpdate = false;
+            }
+
+            if ( doUpdate )
+            {
+                try
+                {
+                    final long start = System.nanoTime();
+                    boolean failed = true;
+                    try
+                    {
+                        updated( service, srv, properties );
+                        failed = false;
+                    }
+                    finally
+                    {
+                        this.recordDelivery( service, configPid, start, failed );
+                    }
+                    configs.record( configPid, null, revision );
+                }
+                catch ( Throwable t )
+                {
+                    this.handleCallBackError( t, service, configPid );
+                }
+                finally
+                {
+                    this.ungetRealService( service );
+                }
             }
         }
     }
@@ -0,0 +1,46 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.cm.impl.persistence;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Dictionary;
+import java.util.Map;
+
+import org.apache.felix.cm.PersistenceManager;
+
+/**
+ * A {@link PersistenceManager} which can store and delete a number of
+ * configurations in one operation, for example with a single write to
+ * the storage device.
+ */
+public interface BatchPersistenceManager extends PersistenceManager
+{
+    /**
+     * Stores and deletes the given configurations. If a PID is contained
+     * in both arguments, the configuration is stored.
+     *
+     * @param configurations The configurations to store indexed by PID
+     * @param deletedPids The PIDs of the configurations to delete
+     * @throws IOException If an error occurs persisting the configurations.
+     *      Some of the configurations may have been persisted nevertheless.
+     */
+    @SuppressWarnings("rawtypes")
+    void storeAll( Map<String, Dictionary> configurations, Collection<String> deletedPids ) throws IOException;
+}
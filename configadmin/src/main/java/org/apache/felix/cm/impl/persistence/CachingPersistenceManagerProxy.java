@@ -46,9 +46,27 @@ import org.osgi.service.cm.ConfigurationAdmin;
  * underlying actual {@link PersistenceManager} implementation. All API calls
  * are also (or primarily) routed through a local cache of dictionaries indexed
  * by the <code>service.pid</code>.
+ * <p>
+ * In addition secondary indexes are maintained for the properties listed in
+ * {@link #INDEXED_PROPERTIES}. Filters which are a simple equality test on
+ * one of these properties, or a conjunction containing such a test, are only
+ * evaluated against the configurations found in the index.
  */
 public class CachingPersistenceManagerProxy implements ExtPersistenceManager
 {
+    /** The properties for which secondary indexes are maintained. */
+    private static final String[] INDEXED_PROPERTIES = {
+        Constants.SERVICE_PID,
+        ConfigurationAdmin.SERVICE_FACTORYPID,
+        ConfigurationAdmin.SERVICE_BUNDLELOCATION
+    };
+
+    /**
+     * Index key for configurations whose indexed property value is not a
+     * string. These configurations are candidates for every lookup of the
+     * property as the filter may still match them after type coercion.
+     */
+    private static final Object NOT_A_STRING = new Object();
 
     /** The actual PersistenceManager */
     private final PersistenceManager pm;
@@ -66,8 +84,13 @@ public class CachingPersistenceManagerProxy implements ExtPersistenceManager
      */
     private volatile boolean fullyLoaded;
 
-    /** Factory configuration cache. */
-    private final Map<String, Set<String>> factoryConfigCache = new HashMap<>();
+    /**
+     * Secondary indexes of the cached dictionaries: the outer map is keyed
+     * by the property name as listed in {@link #INDEXED_PROPERTIES}, the
+     * inner map by the property value. The values are the PIDs of the
+     * configurations having the property value.
+     */
+    private final Map<String, Map<Object, Set<String>>> indexes = new HashMap<>();
 
     /**
      * Creates a new caching layer for the given actual {@link PersistenceManager}.
@@ -96,23 +119,7 @@ public class CachingPersistenceManagerProxy implements ExtPersistenceManager
         try
         {
             lock.lock();
-            final Dictionary props = cache.remove( pid );
-            if ( props != null )
-            {
-                final String factoryPid = (String)props.get(ConfigurationAdmin.SERVICE_FACTORYPID);
-                if ( factoryPid != null )
-                {
-                    final Set<String> factoryPids = this.factoryConfigCache.get(factoryPid);
-                    if ( factoryPids != null )
-                    {
-                        factoryPids.remove(pid);
-                        if ( factoryPids.isEmpty() )
-                        {
-                            this.factoryConfigCache.remove(factoryPid);
-                        }
-                    }
-                }
-            }
+            this.uncache( pid );
             pm.delete(pid);
         }
         finally
@@ -170,24 +177,136 @@ public class CachingPersistenceManagerProxy implements ExtPersistenceManager
             {
                 dict = new CaseInsensitiveDictionary(props);
                 cache.put( pid, dict );
-                final String factoryPid = (String)props.get(ConfigurationAdmin.SERVICE_FACTORYPID);
-                if ( factoryPid != null )
+                for ( final String name : INDEXED_PROPERTIES )
                 {
-                    Set<String> factoryPids = this.factoryConfigCache.get(factoryPid);
-                    if ( factoryPids == null )
+                    final Object value = dict.get( name );
+                    if ( value != null )
                     {
-                        factoryPids = new HashSet<>();
-                        this.factoryConfigCache.put(factoryPid, factoryPids);
+                        Map<Object, Set<String>> index = this.indexes.get( name );
+                        if ( index == null )
+                        {
+                            index = new HashMap<>();
+                            this.indexes.put( name, index );
+                        }
+                        final Object key = value instanceof String ? value : NOT_A_STRING;
+                        Set<String> pids = index.get( key );
+                        if ( pids == null )
+                        {
+                            pids = new HashSet<>();
+                            index.put( key, pids );
+                        }
+                        pids.add( pid );
                     }
-                    factoryPids.add(pid);
                 }
             }
         }
         return dict;
     }
 
+    private final void uncache( final String pid )
+    {
+        final CaseInsensitiveDictionary dict = cache.remove( pid );
+        if ( dict != null )
+        {
+            for ( final String name : INDEXED_PROPERTIES )
+            {
+                final Object value = dict.get( name );
+                final Map<Object, Set<String>> index = this.indexes.get( name );
+                if ( value != null && index != null )
+                {
+                    final Object key = value instanceof String ? value : NOT_A_STRING;
+                    final Set<String> pids = index.get( key );
+                    if ( pids != null )
+                    {
+                        pids.remove( pid );
+                        if ( pids.isEmpty() )
+                        {
+                            index.remove( key );
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the PIDs of the configurations which may match the filter
+     * according to the secondary indexes or <code>null</code> if the
+     * indexes cannot be used for the filter. The returned collection must
+     * not be modified.
+     */
+    private Collection<String> getCandidatePids( final SimpleFilter filter )
+    {
+        if ( filter == null )
+        {
+            return null;
+        }
+        if ( filter.getOperation() == SimpleFilter.EQ && filter.getValue() instanceof String )
+        {
+            for ( final String name : INDEXED_PROPERTIES )
+            {
+                if ( name.equalsIgnoreCase( filter.getName() ) )
+                {
+                    final Map<Object, Set<String>> index = this.indexes.get( name );
+                    if ( index == null )
+                    {
+                        return Collections.emptySet();
+                    }
+                    final Set<String> matching = index.get( filter.getValue() );
+                    final Set<String> notIndexed = index.get( NOT_A_STRING );
+                    if ( notIndexed == null )
+                    {
+                        return matching == null ? Collections.<String> emptySet() : matching;
+                    }
+                    final Set<String> pids = new HashSet<>( notIndexed );
+                    if ( matching != null )
+                    {
+                        pids.addAll( matching );
+                    }
+                    return pids;
+                }
+            }
+        }
+        else if ( filter.getOperation() == SimpleFilter.AND )
+        {
+            // any indexed term of a conjunction restricts the candidates,
+            // so use the most selective one
+            Collection<String> candidates = null;
+            @SuppressWarnings("unchecked")
+            final List<SimpleFilter> terms = (List<SimpleFilter>) filter.getValue();
+            for ( final SimpleFilter term : terms )
+            {
+                final Collection<String> termCandidates = getCandidatePids( term );
+                if ( termCandidates != null && ( candidates == null || termCandidates.size() < candidates.size() ) )
+                {
+                    candidates = termCandidates;
+                }
+            }
+            return candidates;
+        }
+        return null;
+    }
+
     @Override
     public Collection<Dictionary> getDictionaries( final SimpleFilter filter ) throws IOException
+    {
+        return getDictionaries( filter, true );
+    }
+
+    /**
+     * Returns the configurations matching the filter without copying them.
+     * The dictionaries returned are unmodifiable views of the cached
+     * configurations and must be copied by callers which need to modify them.
+     *
+     * @param filter The filter to match or <code>null</code> to return all
+     *      configurations.
+     */
+    public Collection<Dictionary> getReadOnlyDictionaries( final SimpleFilter filter ) throws IOException
+    {
+        return getDictionaries( filter, false );
+    }
+
+    private Collection<Dictionary> getDictionaries( final SimpleFilter filter, final boolean copy ) throws IOException
     {
         Lock lock = globalLock.readLock();
         try
@@ -212,13 +331,34 @@ public class CachingPersistenceManagerProxy implements ExtPersistenceManager
                 }
             }
 
-            // Deep copy the configuration to avoid any threading issue
+            final Collection<CaseInsensitiveDictionary> candidates;
+            final Collection<String> candidatePids = getCandidatePids( filter );
+            if ( candidatePids == null )
+            {
+                candidates = cache.values();
+            }
+            else
+            {
+                candidates = new ArrayList<>( candidatePids.size() );
+                for ( final String pid : candidatePids )
+                {
+                    final CaseInsensitiveDictionary d = cache.get( pid );
+                    if ( d != null )
+                    {
+                        candidates.add( d );
+                    }
+                }
+            }
+
+            // Cached dictionaries are replaced but never modified, so
+            // unmodifiable views are safe to use outside of the lock.
+            // Otherwise deep copy the configuration to avoid any threading issue
             final List<Dictionary> configs = new ArrayList<>();
-            for (final Dictionary d : cache.values())
+            for (final CaseInsensitiveDictionary d : candidates)
             {
                 if ( d.get( Constants.SERVICE_PID ) != null && ( filter == null || filter.matches( d ) ) )
                 {
-                    configs.add( new CaseInsensitiveDictionary( d ) );
+                    configs.add( copy ? new CaseInsensitiveDictionary( d ) : CaseInsensitiveDictionary.unmodifiable( d ) );
                 }
             }
             return configs;
@@ -289,7 +429,7 @@ public class CachingPersistenceManagerProxy implements ExtPersistenceManager
         {
             lock.lock();
             pm.store( pid, properties );
-            this.cache.remove(pid);
+            this.uncache(pid);
             this.cache(properties);
         }
         finally
@@ -298,6 +438,81 @@ public class CachingPersistenceManagerProxy implements ExtPersistenceManager
         }
     }
 
+    /**
+     * Stores and deletes the configurations in the underlying persistence
+     * manager, in one batch if it supports it, and updates the cache
+     * afterwards.
+     */
+    @Override
+    public void storeAll( final Map<String, Dictionary> configurations, final Collection<String> deletedPids )
+        throws IOException
+    {
+        final Lock lock = globalLock.writeLock();
+        try
+        {
+            lock.lock();
+            try
+            {
+                if ( pm instanceof BatchPersistenceManager )
+                {
+                    ( ( BatchPersistenceManager ) pm ).storeAll( configurations, deletedPids );
+                }
+                else
+                {
+                    for ( final String pid : deletedPids )
+                    {
+                        if ( !configurations.containsKey( pid ) )
+                        {
+                            pm.delete( pid );
+                        }
+                    }
+                    for ( final Map.Entry<String, Dictionary> entry : configurations.entrySet() )
+                    {
+                        pm.store( entry.getKey(), entry.getValue() );
+                    }
+                }
+            }
+            catch ( final IOException ioe )
+            {
+                // some configurations may have been persisted, reload them
+                final Set<String> pids = new HashSet<>( deletedPids );
+                pids.addAll( configurations.keySet() );
+                for ( final String pid : pids )
+                {
+                    this.uncache( pid );
+                    try
+                    {
+                        final Dictionary props = pm.load( pid );
+                        if ( props != null )
+                        {
+                            this.cache( props );
+                        }
+                    }
+                    catch ( final IOException | RuntimeException e )
+                    {
+                        // keep reporting the failed store, not the reload
+                        ioe.addSuppressed( e );
+                    }
+                }
+                throw ioe;
+            }
+
+            for ( final String pid : deletedPids )
+            {
+                this.uncache( pid );
+            }
+            for ( final Map.Entry<String, Dictionary> entry : configurations.entrySet() )
+            {
+                this.uncache( entry.getKey() );
+                this.cache( entry.getValue() );
+            }
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
     @Override
     public Set<String> getFactoryConfigurationPids(final List<String> targetedFactoryPids )
     throws IOException
@@ -326,12 +541,16 @@ public class CachingPersistenceManagerProxy implements ExtPersistenceManager
                 lock = globalLock.readLock();
                 lock.lock();
             }
-            for(final String targetFactoryPid : targetedFactoryPids)
+            final Map<Object, Set<String>> factoryPidIndex = this.indexes.get(ConfigurationAdmin.SERVICE_FACTORYPID);
+            if ( factoryPidIndex != null )
             {
-                final Set<String> cachedPids = this.factoryConfigCache.get(targetFactoryPid);
-                if ( cachedPids != null )
+                for(final String targetFactoryPid : targetedFactoryPids)
                 {
-                    pids.addAll(cachedPids);
+                    final Set<String> cachedPids = factoryPidIndex.get(targetFactoryPid);
+                    if ( cachedPids != null )
+                    {
+                        pids.addAll(cachedPids);
+                    }
                 }
             }
         }
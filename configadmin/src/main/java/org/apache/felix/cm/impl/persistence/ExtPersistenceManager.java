@@ -29,8 +29,12 @@ import org.apache.felix.cm.impl.SimpleFilter;
 
 /**
  * Extension of the {@link PersistenceManager}.
+ * <p>
+ * The {@link #storeAll(java.util.Map, Collection)} method delegates to the
+ * underlying persistence manager if it is a {@link BatchPersistenceManager}
+ * and otherwise stores and deletes the configurations one by one.
  */
-public interface ExtPersistenceManager extends PersistenceManager
+public interface ExtPersistenceManager extends BatchPersistenceManager
 {
     Collection<Dictionary> getDictionaries( SimpleFilter filter ) throws IOException;
 
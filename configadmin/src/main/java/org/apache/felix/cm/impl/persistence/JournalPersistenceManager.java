@@ -0,0 +1,1036 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.cm.impl.persistence;
+
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.security.AccessControlContext;
+import java.security.AccessController;
+import java.security.PrivilegedActionException;
+import java.security.PrivilegedExceptionAction;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Dictionary;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.zip.CRC32;
+
+import org.apache.felix.cm.file.ConfigurationHandler;
+import org.apache.felix.cm.impl.Log;
+import org.osgi.service.log.LogService;
+
+
+/**
+ * The <code>JournalPersistenceManager</code> stores all configurations in a
+ * single append-only journal file instead of one file per PID.
+ * <p>
+ * Each {@link #store(String, Dictionary)} and {@link #delete(String)} appends
+ * a record to the journal. Records consist of a header holding the length
+ * and a CRC32 checksum of the record body, followed by the body containing
+ * the record type, the PID and, for stored configurations, the configuration
+ * data in the format of the {@link ConfigurationHandler}. The position of the
+ * latest record of each PID is kept in memory such that loading a single
+ * configuration is one positioned read.
+ * <p>
+ * When the journal contains more superseded records than live ones (and at
+ * least {@link #COMPACT_MIN_GARBAGE} bytes of them), it is compacted by
+ * copying the live records to a new journal which then replaces the old one.
+ * After compaction and on {@link #close()} the record positions are written
+ * to an index file. On startup the index is memory-mapped and only the part
+ * of the journal written after the index needs to be replayed.
+ * <p>
+ * Writes are forced to the storage device in batches: after a write, the
+ * journal is synced at the latest after the configured sync interval. A sync
+ * interval of zero syncs after every write, a negative interval leaves
+ * syncing to the operating system.
+ * <p>
+ * All methods of this class are synchronized on the instance.
+ */
+public class JournalPersistenceManager implements BatchPersistenceManager
+{
+
+    /**
+     * The name of this persistence manager when registered in the service
+     * registry (value is "journal").
+     */
+    public static final String PERSISTENCE_MANAGER_NAME = "journal";
+
+    /**
+     * The default directory for the journal if no location is configured
+     * (value is "journal").
+     */
+    public static final String DEFAULT_JOURNAL_DIR = "journal";
+
+    /**
+     * The default sync interval in milliseconds (value is 100).
+     */
+    public static final long DEFAULT_SYNC_INTERVAL = 100;
+
+    /**
+     * The minimum number of bytes of superseded records before the journal
+     * is compacted (value is 1MB).
+     */
+    public static final long COMPACT_MIN_GARBAGE = 1024 * 1024;
+
+    private static final String JOURNAL_FILE = "configurations.journal";
+
+    private static final String INDEX_FILE = "configurations.index";
+
+    private static final String TMP_EXT = ".tmp";
+
+    private static final int JOURNAL_MAGIC = 0x46434a31;
+
+    private static final int INDEX_MAGIC = 0x46434931;
+
+    /** magic and generation */
+    private static final int JOURNAL_HEADER_SIZE = 12;
+
+    /** body length and checksum */
+    private static final int RECORD_HEADER_SIZE = 8;
+
+    private static final byte TYPE_STORE = 1;
+
+    private static final byte TYPE_DELETE = 2;
+
+    private static final Charset UTF8 = Charset.forName( "UTF-8" );
+
+    /**
+     * The access control context we use in the presence of a security manager.
+     */
+    private final AccessControlContext acc;
+
+    private final File journalFile;
+
+    private final File indexFile;
+
+    private final long syncInterval;
+
+    private final long compactMinGarbage;
+
+    /** The position of the latest store record per PID. */
+    private final Map<String, Long> positions = new HashMap<>();
+
+    /** The size of the latest store record per PID. */
+    private final Map<String, Integer> sizes = new HashMap<>();
+
+    private RandomAccessFile journal;
+
+    private FileChannel channel;
+
+    /** The file of the open journal, the temporary file while a compacted journal could not be renamed. */
+    private File journalInUse;
+
+    private long generation;
+
+    /** The number of bytes of live records in the journal. */
+    private long liveBytes;
+
+    private boolean dirty;
+
+    private boolean syncScheduled;
+
+    private Timer syncTimer;
+
+
+    /**
+     * Creates a journal persistence manager storing its files in the given
+     * directory with the default sync interval.
+     *
+     * @param location The directory for the journal and index files. The
+     *      directory is created if it does not exist.
+     *
+     * @throws IOException If the journal cannot be opened.
+     * @throws IllegalArgumentException If the location exists but is not a
+     *      directory or does not exist and cannot be created.
+     */
+    public JournalPersistenceManager( final File location ) throws IOException
+    {
+        this( location, DEFAULT_SYNC_INTERVAL, COMPACT_MIN_GARBAGE );
+    }
+
+
+    /**
+     * Creates a journal persistence manager storing its files in the given
+     * directory.
+     *
+     * @param location The directory for the journal and index files. The
+     *      directory is created if it does not exist.
+     * @param syncInterval The maximum number of milliseconds between a write
+     *      and syncing the journal. Zero syncs on every write, a negative
+     *      value never explicitly syncs.
+     * @param compactMinGarbage The minimum number of bytes of superseded
+     *      records before the journal is compacted.
+     *
+     * @throws IOException If the journal cannot be opened.
+     * @throws IllegalArgumentException If the location exists but is not a
+     *      directory or does not exist and cannot be created.
+     */
+    public JournalPersistenceManager( final File location, final long syncInterval, final long compactMinGarbage )
+        throws IOException
+    {
+        // setup the access control context from the calling setup
+        if ( System.getSecurityManager() != null )
+        {
+            acc = AccessController.getContext();
+        }
+        else
+        {
+            acc = null;
+        }
+
+        if ( !location.isDirectory() )
+        {
+            if ( location.exists() )
+            {
+                throw new IllegalArgumentException( location + " is not a directory" );
+            }
+            if ( !location.mkdirs() )
+            {
+                throw new IllegalArgumentException( "Cannot create directory " + location );
+            }
+        }
+
+        this.journalFile = new File( location, JOURNAL_FILE );
+        this.indexFile = new File( location, INDEX_FILE );
+        this.syncInterval = syncInterval;
+        this.compactMinGarbage = compactMinGarbage;
+
+        open();
+    }
+
+
+    /**
+     * Returns the journal file.
+     */
+    public File getJournalFile()
+    {
+        return journalFile;
+    }
+
+
+    /**
+     * Returns whether writes are waiting for the scheduled sync of the journal.
+     */
+    synchronized boolean hasUnsyncedWrites()
+    {
+        return dirty;
+    }
+
+
+    /**
+     * Renames the compacted journal to the journal file.
+     */
+    boolean renameJournal( final File compacted )
+    {
+        return compacted.renameTo( journalFile );
+    }
+
+
+    @Override
+    public synchronized boolean exists( final String pid )
+    {
+        return positions.containsKey( pid );
+    }
+
+
+    @SuppressWarnings("rawtypes")
+    @Override
+    public synchronized Dictionary load( final String pid ) throws IOException
+    {
+        final Long position = positions.get( pid );
+        if ( position == null )
+        {
+            return null;
+        }
+        ensureOpen();
+
+        return privileged( new PrivilegedExceptionAction<Dictionary>()
+        {
+            @Override
+            public Dictionary run() throws IOException
+            {
+                return readConfiguration( position, sizes.get( pid ) );
+            }
+        } );
+    }
+
+
+    /**
+     * Returns all configurations stored in the journal. The configurations
+     * are read in the order of their position in the journal.
+     */
+    @SuppressWarnings("rawtypes")
+    @Override
+    public synchronized Enumeration getDictionaries() throws IOException
+    {
+        ensureOpen();
+        final List<Map.Entry<String, Long>> entries = new ArrayList<>( positions.entrySet() );
+        Collections.sort( entries, new Comparator<Map.Entry<String, Long>>()
+        {
+            @Override
+            public int compare( final Map.Entry<String, Long> o1, final Map.Entry<String, Long> o2 )
+            {
+                return o1.getValue().compareTo( o2.getValue() );
+            }
+        } );
+
+        return privileged( new PrivilegedExceptionAction<Enumeration>()
+        {
+            @Override
+            public Enumeration run() throws IOException
+            {
+                final List<Dictionary> result = new ArrayList<>( entries.size() );
+                for ( final Map.Entry<String, Long> entry : entries )
+                {
+                    result.add( readConfiguration( entry.getValue(), sizes.get( entry.getKey() ) ) );
+                }
+                return Collections.enumeration( result );
+            }
+        } );
+    }
+
+
+    @SuppressWarnings("rawtypes")
+    @Override
+    public synchronized void store( final String pid, final Dictionary properties ) throws IOException
+    {
+        ensureOpen();
+        final ByteArrayOutputStream data = new ByteArrayOutputStream();
+        ConfigurationHandler.write( data, properties );
+
+        privileged( new PrivilegedExceptionAction<Void>()
+        {
+            @Override
+            public Void run() throws IOException
+            {
+                final int size = append( TYPE_STORE, pid, data.toByteArray() );
+                final Integer oldSize = sizes.put( pid, size );
+                liveBytes += size - ( oldSize == null ? 0 : oldSize );
+                afterWrite();
+                return null;
+            }
+        } );
+    }
+
+
+    @Override
+    public synchronized void delete( final String pid ) throws IOException
+    {
+        if ( !positions.containsKey( pid ) )
+        {
+            return;
+        }
+        ensureOpen();
+
+        privileged( new PrivilegedExceptionAction<Void>()
+        {
+            @Override
+            public Void run() throws IOException
+            {
+                append( TYPE_DELETE, pid, null );
+                positions.remove( pid );
+                liveBytes -= sizes.remove( pid );
+                afterWrite();
+                return null;
+            }
+        } );
+    }
+
+
+    /**
+     * Appends the records of all configurations to store and delete with
+     * a single write and syncs the journal at most once. The batch is not
+     * atomic: after a crash a prefix of the records may have been written.
+     */
+    @SuppressWarnings("rawtypes")
+    @Override
+    public synchronized void storeAll( final Map<String, Dictionary> configurations,
+        final Collection<String> deletedPids ) throws IOException
+    {
+        ensureOpen();
+        final List<String> pids = new ArrayList<>();
+        final List<ByteBuffer> records = new ArrayList<>();
+        for ( final String pid : deletedPids )
+        {
+            if ( positions.containsKey( pid ) && !configurations.containsKey( pid ) )
+            {
+                pids.add( pid );
+                records.add( createRecord( TYPE_DELETE, pid, null ) );
+            }
+        }
+        final int deletes = records.size();
+        for ( final Map.Entry<String, Dictionary> entry : configurations.entrySet() )
+        {
+            final ByteArrayOutputStream data = new ByteArrayOutputStream();
+            ConfigurationHandler.write( data, entry.getValue() );
+            pids.add( entry.getKey() );
+            records.add( createRecord( TYPE_STORE, entry.getKey(), data.toByteArray() ) );
+        }
+        if ( records.isEmpty() )
+        {
+            return;
+        }
+
+        privileged( new PrivilegedExceptionAction<Void>()
+        {
+            @Override
+            public Void run() throws IOException
+            {
+                final ByteBuffer[] buffers = records.toArray( new ByteBuffer[records.size()] );
+                final int[] recordSizes = new int[buffers.length];
+                long total = 0;
+                for ( int i = 0; i < buffers.length; i++ )
+                {
+                    recordSizes[i] = buffers[i].remaining();
+                    total += recordSizes[i];
+                }
+
+                long position = channel.size();
+                channel.position( position );
+                while ( total > 0 )
+                {
+                    total -= channel.write( buffers );
+                }
+
+                for ( int i = 0; i < recordSizes.length; i++ )
+                {
+                    final String pid = pids.get( i );
+                    if ( i < deletes )
+                    {
+                        positions.remove( pid );
+                        liveBytes -= sizes.remove( pid );
+                    }
+                    else
+                    {
+                        positions.put( pid, position );
+                        final Integer oldSize = sizes.put( pid, recordSizes[i] );
+                        liveBytes += recordSizes[i] - ( oldSize == null ? 0 : oldSize );
+                    }
+                    position += recordSizes[i];
+                }
+                afterWrite();
+                return null;
+            }
+        } );
+    }
+
+
+    /**
+     * Syncs the journal, writes the index and closes the journal. After
+     * this method has been called, this instance must not be used anymore.
+     */
+    public synchronized void close()
+    {
+        if ( syncTimer != null )
+        {
+            syncTimer.cancel();
+            syncTimer = null;
+        }
+        if ( channel != null )
+        {
+            try
+            {
+                privileged( new PrivilegedExceptionAction<Void>()
+                {
+                    @Override
+                    public Void run() throws IOException
+                    {
+                        channel.force( false );
+                        writeIndex();
+                        return null;
+                    }
+                } );
+            }
+            catch ( final IOException ioe )
+            {
+                Log.logger.log( LogService.LOG_WARNING, "Failed to write journal index {0}", new Object[]
+                    { indexFile, ioe } );
+            }
+            closeJournal();
+        }
+    }
+
+
+    // ---------- journal handling
+
+    private void open() throws IOException
+    {
+        privileged( new PrivilegedExceptionAction<Void>()
+        {
+            @Override
+            public Void run() throws IOException
+            {
+                // pick up a compacted journal which could not be renamed
+                final File tmpFile = new File( journalFile.getPath() + TMP_EXT );
+                if ( !journalFile.exists() && tmpFile.isFile() && renameJournal( tmpFile ) )
+                {
+                    syncDirectory( journalFile.getParentFile() );
+                }
+
+                openJournal( journalFile.isFile() || !tmpFile.isFile() ? journalFile : tmpFile );
+                if ( channel.size() < JOURNAL_HEADER_SIZE )
+                {
+                    // new (or unusable) journal: start with a fresh header
+                    channel.truncate( 0 );
+                    writeJournalHeader( channel, System.currentTimeMillis() );
+                    channel.force( true );
+                }
+
+                final ByteBuffer header = ByteBuffer.allocate( JOURNAL_HEADER_SIZE );
+                readFully( channel, header, 0 );
+                header.flip();
+                if ( header.getInt() != JOURNAL_MAGIC )
+                {
+                    closeJournal();
+                    throw new IOException( "File " + journalFile + " is not a configuration journal" );
+                }
+                generation = header.getLong();
+
+                final long replayFrom = readIndex();
+                replay( replayFrom );
+                return null;
+            }
+        } );
+    }
+
+
+    private void ensureOpen() throws IOException
+    {
+        if ( channel == null )
+        {
+            throw new IOException( "Configuration journal " + journalFile + " is closed" );
+        }
+    }
+
+
+    private void openJournal( final File file ) throws IOException
+    {
+        journal = new RandomAccessFile( file, "rw" );
+        channel = journal.getChannel();
+        journalInUse = file;
+    }
+
+
+    private void closeJournal()
+    {
+        try
+        {
+            journal.close();
+        }
+        catch ( final IOException ioe )
+        {
+            // ignore
+        }
+        journal = null;
+        channel = null;
+        journalInUse = null;
+    }
+
+
+    private static void writeJournalHeader( final FileChannel target, final long generation ) throws IOException
+    {
+        final ByteBuffer header = ByteBuffer.allocate( JOURNAL_HEADER_SIZE );
+        header.putInt( JOURNAL_MAGIC ).putLong( generation );
+        header.flip();
+        writeFully( target, header, 0 );
+    }
+
+
+    /**
+     * Reads the records of the journal starting at the given position and
+     * updates the in memory positions. A trailing incomplete or corrupt
+     * record, as left by a crash during a write, is cut off.
+     */
+    private void replay( long position ) throws IOException
+    {
+        final long end = channel.size();
+        final ByteBuffer header = ByteBuffer.allocate( RECORD_HEADER_SIZE );
+        while ( position + RECORD_HEADER_SIZE <= end )
+        {
+            header.clear();
+            readFully( channel, header, position );
+            header.flip();
+            final int length = header.getInt();
+            final int checksum = header.getInt();
+            if ( length <= 0 || position + RECORD_HEADER_SIZE + length > end )
+            {
+                break;
+            }
+
+            final ByteBuffer body = ByteBuffer.allocate( length );
+            readFully( channel, body, position + RECORD_HEADER_SIZE );
+            if ( checksum( body.array(), 0, length ) != checksum )
+            {
+                break;
+            }
+
+            body.flip();
+            final byte type = body.get();
+            final String pid = getString( body );
+            final int size = RECORD_HEADER_SIZE + length;
+            final Integer oldSize;
+            if ( type == TYPE_STORE )
+            {
+                positions.put( pid, position );
+                oldSize = sizes.put( pid, size );
+                liveBytes += size;
+            }
+            else
+            {
+                positions.remove( pid );
+                oldSize = sizes.remove( pid );
+            }
+            if ( oldSize != null )
+            {
+                liveBytes -= oldSize;
+            }
+            position += size;
+        }
+
+        if ( position < end )
+        {
+            Log.logger.log( LogService.LOG_WARNING, "Discarding {0} bytes of incomplete records at the end of {1}",
+                new Object[]
+                    { end - position, journalFile } );
+            channel.truncate( position );
+            channel.force( true );
+        }
+    }
+
+
+    /**
+     * Appends a record to the journal and returns its size.
+     */
+    private int append( final byte type, final String pid, final byte[] data ) throws IOException
+    {
+        final ByteBuffer record = createRecord( type, pid, data );
+        final int size = record.remaining();
+        final long position = channel.size();
+        writeFully( channel, record, position );
+        if ( type == TYPE_STORE )
+        {
+            positions.put( pid, position );
+        }
+        return size;
+    }
+
+
+    private static ByteBuffer createRecord( final byte type, final String pid, final byte[] data )
+    {
+        final byte[] pidBytes = pid.getBytes( UTF8 );
+        final int length = 1 + 4 + pidBytes.length + ( data == null ? 0 : data.length );
+        final ByteBuffer record = ByteBuffer.allocate( RECORD_HEADER_SIZE + length );
+        record.position( RECORD_HEADER_SIZE );
+        record.put( type );
+        record.putInt( pidBytes.length );
+        record.put( pidBytes );
+        if ( data != null )
+        {
+            record.put( data );
+        }
+        record.putInt( 0, length );
+        record.putInt( 4, checksum( record.array(), RECORD_HEADER_SIZE, length ) );
+        record.flip();
+        return record;
+    }
+
+
+    @SuppressWarnings("rawtypes")
+    private Dictionary readConfiguration( final long position, final int size ) throws IOException
+    {
+        final ByteBuffer record = ByteBuffer.allocate( size );
+        readFully( channel, record, position );
+        record.flip();
+        record.position( RECORD_HEADER_SIZE + 1 );
+        final int pidLength = record.getInt();
+        final int offset = record.position() + pidLength;
+        return ConfigurationHandler.read( new ByteArrayInputStream( record.array(), offset, size - offset ) );
+    }
+
+
+    /**
+     * Syncs or schedules syncing of the journal and compacts the journal
+     * if it contains too many superseded records.
+     */
+    private void afterWrite() throws IOException
+    {
+        final long garbage = channel.size() - JOURNAL_HEADER_SIZE - liveBytes;
+        if ( garbage >= compactMinGarbage && garbage > liveBytes )
+        {
+            compact();
+        }
+        else if ( syncInterval == 0 )
+        {
+            channel.force( false );
+        }
+        else if ( syncInterval > 0 )
+        {
+            dirty = true;
+            if ( !syncScheduled )
+            {
+                syncScheduled = true;
+                if ( syncTimer == null )
+                {
+                    syncTimer = new Timer( "Configuration Journal Sync", true );
+                }
+                syncTimer.schedule( new TimerTask()
+                {
+                    @Override
+                    public void run()
+                    {
+                        sync();
+                    }
+                }, syncInterval );
+            }
+        }
+    }
+
+
+    private synchronized void sync()
+    {
+        syncScheduled = false;
+        if ( dirty && channel != null )
+        {
+            dirty = false;
+            try
+            {
+                privileged( new PrivilegedExceptionAction<Void>()
+                {
+                    @Override
+                    public Void run() throws IOException
+                    {
+                        channel.force( false );
+                        return null;
+                    }
+                } );
+            }
+            catch ( final IOException ioe )
+            {
+                Log.logger.log( LogService.LOG_ERROR, "Failed to sync configuration journal {0}", new Object[]
+                    { journalFile, ioe } );
+            }
+        }
+    }
+
+
+    /**
+     * Copies the live records into a new journal, replaces the journal with
+     * it and writes a new index.
+     */
+    private void compact() throws IOException
+    {
+        final File tmpFile = new File( journalFile.getPath() + TMP_EXT );
+        if ( tmpFile.equals( journalInUse ) )
+        {
+            // a previous compaction could not rename the compacted journal,
+            // which must be moved into place before it can be compacted again
+            closeJournal();
+            final boolean renamed = renameJournal( tmpFile );
+            openJournal( renamed ? journalFile : tmpFile );
+            if ( !renamed )
+            {
+                throw new IOException( "Failed to rename compacted configuration journal " + tmpFile );
+            }
+            syncDirectory( journalFile.getParentFile() );
+        }
+
+        final long newGeneration = Math.max( System.currentTimeMillis(), generation + 1 );
+        final Map<String, Long> newPositions = new HashMap<>();
+
+        final List<Map.Entry<String, Long>> entries = new ArrayList<>( positions.entrySet() );
+        Collections.sort( entries, new Comparator<Map.Entry<String, Long>>()
+        {
+            @Override
+            public int compare( final Map.Entry<String, Long> o1, final Map.Entry<String, Long> o2 )
+            {
+                return o1.getValue().compareTo( o2.getValue() );
+            }
+        } );
+
+        try ( RandomAccessFile tmp = new RandomAccessFile( tmpFile, "rw" ) )
+        {
+            final FileChannel target = tmp.getChannel();
+            target.truncate( 0 );
+            writeJournalHeader( target, newGeneration );
+            long position = JOURNAL_HEADER_SIZE;
+            for ( final Map.Entry<String, Long> entry : entries )
+            {
+                final int size = sizes.get( entry.getKey() );
+                long copied = 0;
+                while ( copied < size )
+                {
+                    copied += channel.transferTo( entry.getValue() + copied, size - copied, target.position( position + copied ) );
+                }
+                newPositions.put( entry.getKey(), position );
+                position += size;
+            }
+            target.force( true );
+        }
+
+        // replace the journal; the old journal is only removed if the new
+        // journal cannot simply be renamed over it (e.g. on Windows). Should
+        // the rename still fail, the compacted journal is used under its
+        // temporary name and renamed on the next compaction or start
+        closeJournal();
+        if ( !renameJournal( tmpFile ) )
+        {
+            if ( !journalFile.delete() )
+            {
+                tmpFile.delete();
+                openJournal( journalFile );
+                throw new IOException( "Failed to replace configuration journal " + journalFile );
+            }
+            if ( !renameJournal( tmpFile ) )
+            {
+                openJournal( tmpFile );
+                positions.clear();
+                positions.putAll( newPositions );
+                generation = newGeneration;
+                dirty = false;
+                throw new IOException( "Failed to rename compacted configuration journal " + tmpFile );
+            }
+        }
+        syncDirectory( journalFile.getParentFile() );
+        openJournal( journalFile );
+
+        positions.clear();
+        positions.putAll( newPositions );
+        generation = newGeneration;
+        dirty = false;
+        try
+        {
+            writeIndex();
+        }
+        catch ( final IOException ioe )
+        {
+            // the index is an optimization only, an outdated index is
+            // ignored on startup as it refers to the previous generation
+            Log.logger.log( LogService.LOG_WARNING, "Failed to write journal index {0}", new Object[]
+                { indexFile, ioe } );
+        }
+
+        Log.logger.log( LogService.LOG_DEBUG, "Compacted configuration journal {0} to {1} bytes", new Object[]
+            { journalFile, channel.size() } );
+    }
+
+
+    // ---------- index handling
+
+    /**
+     * Reads the index and returns the position in the journal up to which
+     * the index is valid. If there is no usable index the position of the
+     * first record is returned and the journal has to be replayed completely.
+     */
+    private long readIndex() throws IOException
+    {
+        if ( !indexFile.isFile() )
+        {
+            return JOURNAL_HEADER_SIZE;
+        }
+
+        try ( RandomAccessFile index = new RandomAccessFile( indexFile, "r" ) )
+        {
+            final MappedByteBuffer buffer = index.getChannel().map( FileChannel.MapMode.READ_ONLY, 0, index.length() );
+            if ( buffer.getInt() != INDEX_MAGIC || buffer.getLong() != generation )
+            {
+                return JOURNAL_HEADER_SIZE;
+            }
+            final long indexedLength = buffer.getLong();
+            if ( indexedLength > channel.size() )
+            {
+                return JOURNAL_HEADER_SIZE;
+            }
+            final long indexedLiveBytes = buffer.getLong();
+            final int count = buffer.getInt();
+            final Map<String, Long> indexedPositions = new HashMap<>( count * 2 );
+            final Map<String, Integer> indexedSizes = new HashMap<>( count * 2 );
+            for ( int i = 0; i < count; i++ )
+            {
+                final String pid = getString( buffer );
+                indexedPositions.put( pid, buffer.getLong() );
+                indexedSizes.put( pid, buffer.getInt() );
+            }
+
+            positions.putAll( indexedPositions );
+            sizes.putAll( indexedSizes );
+            liveBytes = indexedLiveBytes;
+            return indexedLength;
+        }
+        catch ( final RuntimeException re )
+        {
+            // BufferUnderflowException or similar: treat like a missing index
+            Log.logger.log( LogService.LOG_WARNING, "Ignoring corrupt journal index {0}", new Object[]
+                { indexFile, re } );
+            positions.clear();
+            sizes.clear();
+            liveBytes = 0;
+            return JOURNAL_HEADER_SIZE;
+        }
+    }
+
+
+    private void writeIndex() throws IOException
+    {
+        final List<byte[]> pids = new ArrayList<>( positions.size() );
+        int length = 4 + 8 + 8 + 8 + 4;
+        for ( final String pid : positions.keySet() )
+        {
+            final byte[] pidBytes = pid.getBytes( UTF8 );
+            pids.add( pidBytes );
+            length += 4 + pidBytes.length + 8 + 4;
+        }
+
+        final ByteBuffer buffer = ByteBuffer.allocate( length );
+        buffer.putInt( INDEX_MAGIC );
+        buffer.putLong( generation );
+        buffer.putLong( channel.size() );
+        buffer.putLong( liveBytes );
+        buffer.putInt( positions.size() );
+        int i = 0;
+        for ( final Map.Entry<String, Long> entry : positions.entrySet() )
+        {
+            final byte[] pidBytes = pids.get( i++ );
+            buffer.putInt( pidBytes.length );
+            buffer.put( pidBytes );
+            buffer.putLong( entry.getValue() );
+            buffer.putInt( sizes.get( entry.getKey() ) );
+        }
+        buffer.flip();
+
+        final File tmpFile = new File( indexFile.getPath() + TMP_EXT );
+        try ( RandomAccessFile tmp = new RandomAccessFile( tmpFile, "rw" ) )
+        {
+            tmp.setLength( 0 );
+            writeFully( tmp.getChannel(), buffer, 0 );
+            tmp.getChannel().force( true );
+        }
+        if ( !tmpFile.renameTo( indexFile ) )
+        {
+            indexFile.delete();
+            if ( !tmpFile.renameTo( indexFile ) )
+            {
+                tmpFile.delete();
+                throw new IOException( "Failed to write configuration journal index " + indexFile );
+            }
+        }
+        syncDirectory( indexFile.getParentFile() );
+    }
+
+
+    // ---------- helpers
+
+    /**
+     * Flushes the directory entries of renamed files to disk, such that the
+     * rename survives a crash. Directories cannot be opened on all platforms,
+     * for example on Windows, where this is not needed anyway.
+     */
+    private static void syncDirectory( final File directory )
+    {
+        try ( FileChannel dir = FileChannel.open( directory.toPath(), StandardOpenOption.READ ) )
+        {
+            dir.force( true );
+        }
+        catch ( final IOException ioe )
+        {
+            // not supported on this platform
+        }
+    }
+
+    private static String getString( final ByteBuffer buffer )
+    {
+        final byte[] bytes = new byte[buffer.getInt()];
+        buffer.get( bytes );
+        return new String( bytes, UTF8 );
+    }
+
+
+    private static int checksum( final byte[] data, final int offset, final int length )
+    {
+        final CRC32 crc = new CRC32();
+        crc.update( data, offset, length );
+        return ( int ) crc.getValue();
+    }
+
+
+    private static void readFully( final FileChannel source, final ByteBuffer buffer, long position ) throws IOException
+    {
+        while ( buffer.hasRemaining() )
+        {
+            final int read = source.read( buffer, position );
+            if ( read < 0 )
+            {
+                throw new IOException( "Unexpected end of configuration journal" );
+            }
+            position += read;
+        }
+    }
+
+
+    private static void writeFully( final FileChannel target, final ByteBuffer buffer, long position ) throws IOException
+    {
+        while ( buffer.hasRemaining() )
+        {
+            position += target.write( buffer, position );
+        }
+    }
+
+
+    private <T> T privileged( final PrivilegedExceptionAction<T> action ) throws IOException
+    {
+        if ( System.getSecurityManager() == null )
+        {
+            try
+            {
+                return action.run();
+            }
+            catch ( final IOException ioe )
+            {
+                throw ioe;
+            }
+            catch ( final Exception e )
+            {
+                throw new IOException( e );
+            }
+        }
+
+        try
+        {
+            return AccessController.doPrivileged( action, acc );
+        }
+        catch ( final PrivilegedActionException pae )
+        {
+            throw ( IOException ) pae.getException();
+        }
+    }
+}
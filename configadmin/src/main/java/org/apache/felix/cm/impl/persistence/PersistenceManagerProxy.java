@@ -26,6 +26,7 @@ import java.util.Dictionary;
 import java.util.Enumeration;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
@@ -208,6 +209,38 @@ public class PersistenceManagerProxy implements ExtPersistenceManager
         }
     }
 
+    @Override
+    public void storeAll( Map<String, Dictionary> configurations, Collection<String> deletedPids ) throws IOException
+    {
+        Lock lock = globalLock.writeLock();
+        try
+        {
+            lock.lock();
+            if ( pm instanceof BatchPersistenceManager )
+            {
+                ( ( BatchPersistenceManager ) pm ).storeAll( configurations, deletedPids );
+            }
+            else
+            {
+                for ( final String pid : deletedPids )
+                {
+                    if ( !configurations.containsKey( pid ) )
+                    {
+                        pm.delete( pid );
+                    }
+                }
+                for ( final Map.Entry<String, Dictionary> entry : configurations.entrySet() )
+                {
+                    pm.store( entry.getKey(), entry.getValue() );
+                }
+            }
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
     @Override
     public Set<String> getFactoryConfigurationPids(List<String> targetedFactoryPids) throws IOException {
         final Set<String> pids = new HashSet<>();
@@ -0,0 +1,372 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.cm.impl;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Dictionary;
+import java.util.Hashtable;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.felix.cm.MockBundle;
+import org.apache.felix.cm.MockBundleContext;
+import org.apache.felix.cm.MockPersistenceManager;
+import org.apache.felix.cm.MockServiceReference;
+import org.apache.felix.cm.impl.persistence.CachingPersistenceManagerProxy;
+import org.junit.Before;
+import org.junit.Test;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.Constants;
+import org.osgi.framework.ServiceReference;
+import org.osgi.framework.ServiceRegistration;
+import org.osgi.service.cm.ConfigurationAdmin;
+import org.osgi.service.cm.ConfigurationEvent;
+import org.osgi.service.cm.ConfigurationListener;
+import org.osgi.service.cm.ReadOnlyConfigurationException;
+import org.osgi.service.cm.SynchronousConfigurationListener;
+import org.osgi.service.coordinator.Coordination;
+import org.osgi.service.coordinator.Coordinator;
+import org.osgi.service.coordinator.Participant;
+import org.osgi.util.tracker.ServiceTracker;
+
+
+public class ConfigurationAdminBatchTest
+{
+
+    private static final String LOCATION = "test:batch";
+
+    private MockPersistenceManager pm;
+
+    private ConfigurationManager configMgr;
+
+    private ConfigurationAdminImpl admin;
+
+    // the synchronous events received, prefixed with the listener name
+    private final List<String> events = new ArrayList<>();
+
+    private final List<Runnable> scheduledUpdates = new ArrayList<>();
+
+    private final List<Runnable> scheduledEvents = new ArrayList<>();
+
+
+    @Before
+    public void setUp() throws Exception
+    {
+        pm = new MockPersistenceManager();
+        configMgr = new ConfigurationManager( new CachingPersistenceManagerProxy( pm ), null );
+
+        setField( "syncConfigurationListenerTracker", createTracker( new RecordingListener( "L1" ), new RecordingListener( "L2" ) ) );
+        setField( "configurationListenerTracker", createTracker( new ConfigurationListener()
+        {
+            @Override
+            public void configurationEvent( ConfigurationEvent event )
+            {
+            }
+        } ) );
+        setField( "configurationAdminRegistration", new ServiceRegistration<ConfigurationAdmin>()
+        {
+            @Override
+            public ServiceReference<ConfigurationAdmin> getReference()
+            {
+                return new MockServiceReference<>();
+            }
+
+            @Override
+            public void setProperties( Dictionary<String, ?> properties )
+            {
+            }
+
+            @Override
+            public void unregister()
+            {
+            }
+        } );
+        setField( "updateThread", new RecordingUpdateThread( scheduledUpdates ) );
+        setField( "eventThread", new RecordingUpdateThread( scheduledEvents ) );
+
+        admin = new ConfigurationAdminImpl( configMgr, new MockBundle( new MockBundleContext(), LOCATION ) );
+    }
+
+
+    @Test
+    public void testUpdateConfigurations() throws Exception
+    {
+        final Dictionary<String, Object> existing = new Hashtable<>();
+        existing.put( Constants.SERVICE_PID, "pid.delete" );
+        existing.put( "key", "old" );
+        pm.store( "pid.delete", existing );
+
+        final Map<String, Dictionary<String, ?>> updates = new LinkedHashMap<>();
+        updates.put( "pid.a", props( "a" ) );
+        updates.put( "pid.b", props( "b" ) );
+        updates.put( "pid.delete", null );
+        updates.put( "pid.missing", null );
+        admin.updateConfigurations( updates );
+
+        assertEquals( "a", pm.load( "pid.a" ).get( "key" ) );
+        assertEquals( "b", pm.load( "pid.b" ).get( "key" ) );
+        assertFalse( pm.exists( "pid.delete" ) );
+        assertFalse( pm.exists( "pid.missing" ) );
+
+        final ConfigurationImpl a = configMgr.getConfiguration( "pid.a" );
+        assertEquals( "a", a.getProperties( true ).get( "key" ) );
+        assertEquals( LOCATION, a.getBundleLocation() );
+        assertNull( configMgr.getConfiguration( "pid.delete" ) );
+        assertNull( configMgr.getConfiguration( "pid.missing" ) );
+
+        // each listener gets all events of the batch before the next one
+        assertEquals( Arrays.asList(
+                "L1:" + ConfigurationEvent.CM_UPDATED + ":pid.a",
+                "L1:" + ConfigurationEvent.CM_UPDATED + ":pid.b",
+                "L1:" + ConfigurationEvent.CM_DELETED + ":pid.delete",
+                "L2:" + ConfigurationEvent.CM_UPDATED + ":pid.a",
+                "L2:" + ConfigurationEvent.CM_UPDATED + ":pid.b",
+                "L2:" + ConfigurationEvent.CM_DELETED + ":pid.delete" ), events );
+
+        // the asynchronous events are sent as a single task
+        assertEquals( 1, scheduledEvents.size() );
+        assertEquals( 3, scheduledUpdates.size() );
+    }
+
+
+    @Test
+    public void testReadOnlyConfigurationRejectsBatch() throws Exception
+    {
+        final ConfigurationImpl locked = configMgr.createConfiguration( "pid.locked", LOCATION );
+        locked.setLocked( true );
+
+        final Map<String, Dictionary<String, ?>> updates = new LinkedHashMap<>();
+        updates.put( "pid.new", props( "new" ) );
+        updates.put( "pid.locked", props( "locked" ) );
+        try
+        {
+            admin.updateConfigurations( updates );
+            fail( "Expected ReadOnlyConfigurationException" );
+        }
+        catch ( ReadOnlyConfigurationException expected )
+        {
+            // expected
+        }
+
+        // nothing has been created or modified
+        assertNull( configMgr.getConfiguration( "pid.new" ) );
+        assertFalse( pm.exists( "pid.new" ) );
+        assertNull( configMgr.getConfiguration( "pid.locked" ).getProperties( true ) );
+        assertTrue( events.isEmpty() );
+        assertTrue( scheduledEvents.isEmpty() );
+        assertTrue( scheduledUpdates.isEmpty() );
+    }
+
+
+    @Test
+    public void testDeleteReadOnlyConfiguration() throws Exception
+    {
+        final ConfigurationImpl locked = configMgr.createConfiguration( "pid.locked", LOCATION );
+        locked.setLocked( true );
+
+        final Map<String, Dictionary<String, ?>> updates = new LinkedHashMap<>();
+        updates.put( "pid.locked", null );
+        admin.updateConfigurations( updates );
+
+        assertNull( configMgr.getConfiguration( "pid.locked" ) );
+        assertEquals( Arrays.asList(
+                "L1:" + ConfigurationEvent.CM_DELETED + ":pid.locked",
+                "L2:" + ConfigurationEvent.CM_DELETED + ":pid.locked" ), events );
+    }
+
+
+    @Test
+    public void testCoordinationDefersDispatch() throws Exception
+    {
+        final List<Participant> participants = new ArrayList<>();
+        configMgr.setCoordinator( createCoordinator( participants ) );
+
+        final Map<String, Dictionary<String, ?>> updates = new LinkedHashMap<>();
+        updates.put( "pid.a", props( "a" ) );
+        updates.put( "pid.b", props( "b" ) );
+        admin.updateConfigurations( updates );
+
+        // persisted and synchronous listeners called right away
+        assertTrue( pm.exists( "pid.a" ) );
+        assertTrue( pm.exists( "pid.b" ) );
+        assertEquals( 4, events.size() );
+
+        // asynchronous events and updates wait for the coordination
+        assertTrue( scheduledEvents.isEmpty() );
+        assertTrue( scheduledUpdates.isEmpty() );
+        assertEquals( 2, participants.size() );
+
+        for ( final Participant p : participants )
+        {
+            p.ended( null );
+        }
+        assertEquals( 1, scheduledEvents.size() );
+        assertEquals( 2, scheduledUpdates.size() );
+    }
+
+
+    private static Dictionary<String, Object> props( final String value )
+    {
+        final Dictionary<String, Object> props = new Hashtable<>();
+        props.put( "key", value );
+        return props;
+    }
+
+
+    private void setField( final String name, final Object value ) throws Exception
+    {
+        final Field field = ConfigurationManager.class.getDeclaredField( name );
+        field.setAccessible( true );
+        field.set( configMgr, value );
+    }
+
+
+    private static ServiceTracker createTracker( final Object... services )
+    {
+        final Map<ServiceReference, Object> refMap = new LinkedHashMap<>();
+        for ( final Object svc : services )
+        {
+            refMap.put( new ActiveServiceReference(), svc );
+        }
+
+        return new ServiceTracker( new MockBundleContext(), "", null )
+        {
+            @Override
+            public ServiceReference[] getServiceReferences()
+            {
+                return refMap.keySet().toArray( new ServiceReference[0] );
+            }
+
+            @Override
+            public Object getService( ServiceReference reference )
+            {
+                return refMap.get( reference );
+            }
+        };
+    }
+
+
+    /**
+     * Creates a coordinator with an ongoing coordination collecting the
+     * participants in the given list.
+     */
+    private static Coordinator createCoordinator( final List<Participant> participants )
+    {
+        final Coordination coordination = ( Coordination ) Proxy.newProxyInstance(
+                ConfigurationAdminBatchTest.class.getClassLoader(), new Class[] { Coordination.class },
+                new InvocationHandler()
+                {
+                    @Override
+                    public Object invoke( Object proxy, Method method, Object[] args )
+                    {
+                        switch ( method.getName() )
+                        {
+                            case "isTerminated":
+                                return false;
+                            case "getParticipants":
+                                return new ArrayList<>( participants );
+                            case "addParticipant":
+                                participants.add( ( Participant ) args[0] );
+                                return null;
+                            default:
+                                throw new UnsupportedOperationException( method.getName() );
+                        }
+                    }
+                } );
+        return ( Coordinator ) Proxy.newProxyInstance(
+                ConfigurationAdminBatchTest.class.getClassLoader(), new Class[] { Coordinator.class },
+                new InvocationHandler()
+                {
+                    @Override
+                    public Object invoke( Object proxy, Method method, Object[] args )
+                    {
+                        if ( "peek".equals( method.getName() ) )
+                        {
+                            return coordination;
+                        }
+                        throw new UnsupportedOperationException( method.getName() );
+                    }
+                } );
+    }
+
+
+    private class RecordingListener implements SynchronousConfigurationListener
+    {
+        private final String name;
+
+        RecordingListener( final String name )
+        {
+            this.name = name;
+        }
+
+        @Override
+        public void configurationEvent( ConfigurationEvent event )
+        {
+            events.add( name + ":" + event.getType() + ":" + event.getPid() );
+        }
+    }
+
+
+    private static class ActiveServiceReference extends MockServiceReference<Object>
+    {
+        @Override
+        public Bundle getBundle()
+        {
+            return new MockBundle( new MockBundleContext(), "test:listener" )
+            {
+                @Override
+                public int getState()
+                {
+                    return Bundle.ACTIVE;
+                }
+            };
+        }
+    }
+
+
+    private static class RecordingUpdateThread extends UpdateThread
+    {
+        private final List<Runnable> scheduled;
+
+        RecordingUpdateThread( final List<Runnable> scheduled )
+        {
+            super( null, "Test recorder" );
+            this.scheduled = scheduled;
+        }
+
+        @Override
+        void schedule( Runnable update )
+        {
+            scheduled.add( update );
+        }
+    }
+}
@@ -19,11 +19,15 @@
 package org.apache.felix.cm.impl;
 
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
 import org.junit.Test;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 
@@ -50,4 +54,124 @@ public class UpdateThreadTest
             updateThread.terminate();
         }
     }
+
+    @Test
+    public void testKeyedTasksRunConcurrently() throws Exception {
+        final UpdateThread updateThread = new UpdateThread(null, "name", 2);
+        updateThread.start();
+        final CountDownLatch release = new CountDownLatch(1);
+        try {
+            final CountDownLatch done = new CountDownLatch(1);
+            updateThread.schedule(new Task("a") {
+                @Override
+                public void run() {
+                    await(release);
+                }
+            });
+            updateThread.schedule(new Task("b") {
+                @Override
+                public void run() {
+                    done.countDown();
+                }
+            });
+
+            // the task of b is not blocked by the task of a
+            assertTrue(done.await(1L, TimeUnit.MINUTES));
+        } finally {
+            release.countDown();
+            updateThread.terminate();
+        }
+    }
+
+    @Test
+    public void testKeyedTasksKeepOrder() throws Exception {
+        final UpdateThread updateThread = new UpdateThread(null, "name", 4);
+        updateThread.start();
+        try {
+            final List<Integer> order = Collections.synchronizedList(new ArrayList<Integer>());
+            final CountDownLatch counter = new CountDownLatch(COUNT);
+            for (int i = 0; i < COUNT; ++i) {
+                final int index = i;
+                updateThread.schedule(new Task("a") {
+                    @Override
+                    public void run() {
+                        order.add(index);
+                        counter.countDown();
+                    }
+                });
+            }
+            assertTrue(counter.await(1L, TimeUnit.MINUTES));
+            for (int i = 0; i < COUNT; ++i) {
+                assertEquals(Integer.valueOf(i), order.get(i));
+            }
+        } finally {
+            updateThread.terminate();
+        }
+    }
+
+    @Test
+    public void testBarrierWaitsForKeyedTasks() throws Exception {
+        final UpdateThread updateThread = new UpdateThread(null, "name", 2);
+        updateThread.start();
+        try {
+            final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+            final CountDownLatch done = new CountDownLatch(1);
+            updateThread.schedule(new Task("a") {
+                @Override
+                public void run() {
+                    sleep();
+                    order.add("a");
+                }
+            });
+            updateThread.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    order.add("barrier");
+                }
+            });
+            updateThread.schedule(new Task("b") {
+                @Override
+                public void run() {
+                    order.add("b");
+                    done.countDown();
+                }
+            });
+            assertTrue(done.await(1L, TimeUnit.MINUTES));
+            assertEquals(3, order.size());
+            assertEquals("a", order.get(0));
+            assertEquals("barrier", order.get(1));
+            assertEquals("b", order.get(2));
+        } finally {
+            updateThread.terminate();
+        }
+    }
+
+    private static abstract class Task implements UpdateThread.KeyedTask {
+        private final String key;
+
+        Task(final String key) {
+            this.key = key;
+        }
+
+        @Override
+        public String getKey() {
+            return key;
+        }
+
+        static void await(final CountDownLatch latch) {
+            try {
+                latch.await(1L, TimeUnit.MINUTES);
+            } catch (InterruptedException ie) {
+                // terminated
+            }
+        }
+
+        static void sleep() {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException ie) {
+                // terminated
+            }
+        }
+    }
 }
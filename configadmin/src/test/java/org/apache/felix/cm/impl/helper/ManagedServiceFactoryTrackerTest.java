@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.cm.impl.helper;
+
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.Field;
+import java.util.Dictionary;
+import java.util.Hashtable;
+
+import org.apache.felix.cm.MockBundleContext;
+import org.apache.felix.cm.MockNotCachablePersistenceManager;
+import org.apache.felix.cm.impl.ConfigurationManager;
+import org.apache.felix.cm.impl.persistence.CachingPersistenceManagerProxy;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.osgi.framework.Constants;
+import org.osgi.framework.ServiceReference;
+import org.osgi.service.cm.ConfigurationException;
+import org.osgi.service.cm.ManagedServiceFactory;
+
+import junit.framework.TestCase;
+
+
+public class ManagedServiceFactoryTrackerTest
+{
+
+    @Test
+    public void test_failedDeliveryIsRecorded() throws Exception
+    {
+        final ManagedServiceFactory factory = new ManagedServiceFactory()
+        {
+            @Override
+            public String getName()
+            {
+                return "failing";
+            }
+
+            @Override
+            public void updated( String pid, Dictionary<String, ?> properties ) throws ConfigurationException
+            {
+                throw new ConfigurationException( null, "failed on purpose" );
+            }
+
+            @Override
+            public void deleted( String pid )
+            {
+            }
+        };
+
+        final ConfigurationManager configMgr = new ConfigurationManager(
+            new CachingPersistenceManagerProxy( new MockNotCachablePersistenceManager() ), null );
+        final Field bcField = configMgr.getClass().getDeclaredField( "bundleContext" );
+        bcField.setAccessible( true );
+        bcField.set( configMgr, new MockBundleContext()
+        {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <S> S getService( ServiceReference<S> reference )
+            {
+                return ( S ) factory;
+            }
+        } );
+
+        @SuppressWarnings("unchecked")
+        final ServiceReference<ManagedServiceFactory> ref = Mockito.mock( ServiceReference.class );
+        Mockito.when( ref.getProperty( Constants.OBJECTCLASS ) ).thenReturn( new String[]
+            { ManagedServiceFactory.class.getName() } );
+        Mockito.when( ref.getProperty( Constants.SERVICE_ID ) ).thenReturn( 1L );
+        Mockito.when( ref.getProperty( Constants.SERVICE_PID ) ).thenReturn( "my.factory" );
+
+        final ManagedServiceFactoryTracker tracker = new ManagedServiceFactoryTracker( configMgr );
+        final Dictionary<String, Object> props = new Hashtable<>();
+        props.put( "hello", "world" );
+        tracker.provideConfiguration( ref, new TargetedPID( "my.factory~one" ), new TargetedPID( "my.factory" ),
+            props, 1, new ManagedServiceFactoryConfigurationMap( new String[]
+                { "my.factory" } ) );
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        tracker.printDeliveryStatistics( new PrintStream( out, true ) );
+        final String stats = out.toString();
+        TestCase.assertTrue( stats, stats.startsWith( "[1] [my.factory]: deliveries=1, failures=1," ) );
+    }
+}
@@ -20,13 +20,20 @@ package org.apache.felix.cm.impl.persistence;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Dictionary;
+import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.Hashtable;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Set;
 
 import org.apache.felix.cm.MockPersistenceManager;
@@ -178,4 +185,129 @@ public class CachingPersistenceManagerProxyTest
         assertTrue(pids.contains("new_pid_for_newf1"));
         assertTrue(pids.contains("new_pid_for_newf2"));
     }
-}
\ No newline at end of file
+
+    @Test public void testIndexedFilters() throws Exception
+    {
+        final CachingPersistenceManagerProxy cpm = new CachingPersistenceManagerProxy(this.createAndPopulatePersistenceManager());
+
+        assertEquals(1, cpm.getDictionaries(SimpleFilter.parse("(service.pid=" + PID_A + ")")).size());
+        assertEquals(1, cpm.getDictionaries(SimpleFilter.parse("(SERVICE.PID=" + PID_A + ")")).size());
+        assertEquals(3, cpm.getDictionaries(SimpleFilter.parse("(service.factoryPid=" + FACTORY_PID_A + ")")).size());
+        assertEquals(1, cpm.getDictionaries(SimpleFilter.parse("(&(service.factoryPid=" + FACTORY_PID_A + ")(value=" + PREFIX + FA_PID_B + "))")).size());
+        assertEquals(0, cpm.getDictionaries(SimpleFilter.parse("(&(service.factoryPid=" + FACTORY_PID_B + ")(value=" + PREFIX + FA_PID_B + "))")).size());
+        assertEquals(0, cpm.getDictionaries(SimpleFilter.parse("(service.bundleLocation=location)")).size());
+
+        // index must follow modifications
+        final Dictionary<String, Object> located = createConfiguration(PID_A, null);
+        located.put(ConfigurationAdmin.SERVICE_BUNDLELOCATION, "location");
+        cpm.store(PID_A, located);
+        assertEquals(1, cpm.getDictionaries(SimpleFilter.parse("(service.bundleLocation=location)")).size());
+
+        cpm.delete(FA_PID_A);
+        assertEquals(2, cpm.getDictionaries(SimpleFilter.parse("(service.factoryPid=" + FACTORY_PID_A + ")")).size());
+
+        // non indexed filters still work
+        assertEquals(7, cpm.getDictionaries(SimpleFilter.parse("(value=" + PREFIX + "*)")).size());
+        assertEquals(2, cpm.getDictionaries(SimpleFilter.parse("(|(service.pid=" + PID_B + ")(service.pid=" + PID_C + "))")).size());
+    }
+
+    @Test public void testReadOnlyDictionaries() throws Exception
+    {
+        final CachingPersistenceManagerProxy cpm = new CachingPersistenceManagerProxy(this.createAndPopulatePersistenceManager());
+
+        final Collection<Dictionary> dicts = cpm.getReadOnlyDictionaries(SimpleFilter.parse("(service.pid=" + PID_A + ")"));
+        assertEquals(1, dicts.size());
+        final Dictionary dict = dicts.iterator().next();
+        dict.remove(Constants.SERVICE_PID);
+        assertEquals(PID_A, dict.get(Constants.SERVICE_PID));
+        assertEquals(PID_A, cpm.load(PID_A).get(Constants.SERVICE_PID));
+    }
+
+    @SuppressWarnings("rawtypes")
+    @Test public void testStoreAll() throws Exception
+    {
+        final PersistenceManager pm = this.createAndPopulatePersistenceManager();
+        final CachingPersistenceManagerProxy cpm = new CachingPersistenceManagerProxy(pm);
+        assertEquals(3, cpm.getDictionaries(SimpleFilter.parse("(service.factoryPid=" + FACTORY_PID_A + ")")).size());
+
+        final Map<String, Dictionary> stores = new HashMap<>();
+        final Dictionary<String, Object> changed = createConfiguration(PID_A, null);
+        changed.put("value", "changed");
+        stores.put(PID_A, changed);
+        stores.put("foo.d", createConfiguration("foo.d", null));
+        cpm.storeAll(stores, Arrays.asList(FA_PID_A, FA_PID_B));
+
+        // underlying persistence manager and cache are updated
+        assertEquals("changed", pm.load(PID_A).get("value"));
+        assertTrue(pm.exists("foo.d"));
+        assertFalse(pm.exists(FA_PID_A));
+        assertEquals("changed", cpm.load(PID_A).get("value"));
+        assertTrue(cpm.exists("foo.d"));
+        assertFalse(cpm.exists(FA_PID_B));
+        assertEquals(1, cpm.getDictionaries(SimpleFilter.parse("(service.factoryPid=" + FACTORY_PID_A + ")")).size());
+    }
+
+    @SuppressWarnings("rawtypes")
+    @Test public void testStoreAllKeepsStoreFailureWhenReloadFails() throws Exception
+    {
+        final IOException storeFailure = new IOException("store");
+        final PersistenceManager delegate = new MockPersistenceManager();
+        final PersistenceManager pm = new PersistenceManager()
+        {
+            @Override
+            public boolean exists(final String pid)
+            {
+                return delegate.exists(pid);
+            }
+
+            @Override
+            public Dictionary load(final String pid) throws IOException
+            {
+                // fails for foo.d as it has never been stored
+                return delegate.load(pid);
+            }
+
+            @Override
+            public Enumeration getDictionaries() throws IOException
+            {
+                return delegate.getDictionaries();
+            }
+
+            @Override
+            public void store(final String pid, final Dictionary properties) throws IOException
+            {
+                if ( "foo.d".equals(pid) )
+                {
+                    throw storeFailure;
+                }
+                delegate.store(pid, properties);
+            }
+
+            @Override
+            public void delete(final String pid) throws IOException
+            {
+                delegate.delete(pid);
+            }
+        };
+        pm.store(PID_A, createConfiguration(PID_A, null));
+        final CachingPersistenceManagerProxy cpm = new CachingPersistenceManagerProxy(pm);
+
+        final Map<String, Dictionary> stores = new LinkedHashMap<>();
+        final Dictionary<String, Object> changed = createConfiguration(PID_A, null);
+        changed.put("value", "changed");
+        stores.put(PID_A, changed);
+        stores.put("foo.d", createConfiguration("foo.d", null));
+        try
+        {
+            cpm.storeAll(stores, Collections.<String>emptyList());
+            fail("Expected an IOException");
+        }
+        catch (final IOException e)
+        {
+            assertSame(storeFailure, e);
+            assertEquals(1, e.getSuppressed().length);
+        }
+        // the configuration stored before the failure has been reloaded
+        assertEquals("changed", cpm.load(PID_A).get("value"));
+    }
+}
@@ -0,0 +1,316 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.cm.impl.persistence;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Dictionary;
+import java.util.Enumeration;
+import java.util.Hashtable;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.osgi.framework.Constants;
+
+
+public class JournalPersistenceManagerTest
+{
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private File location;
+
+    // all instances opened by a test, some are left open to simulate a crash
+    private final List<JournalPersistenceManager> managers = new ArrayList<>();
+
+    private JournalPersistenceManager jpm;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        location = new File( tempFolder.getRoot(), "config-journal" );
+        jpm = open( 0 );
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        for ( final JournalPersistenceManager manager : managers )
+        {
+            manager.close();
+        }
+        managers.clear();
+    }
+
+    private JournalPersistenceManager open( final long syncInterval ) throws IOException
+    {
+        final JournalPersistenceManager manager = new JournalPersistenceManager( location, syncInterval, 1024 );
+        managers.add( manager );
+        return manager;
+    }
+
+    private Dictionary<String, Object> createConfiguration( final String pid, final Object value )
+    {
+        final Dictionary<String, Object> dict = new Hashtable<>();
+        dict.put( Constants.SERVICE_PID, pid );
+        dict.put( "value", value );
+        return dict;
+    }
+
+    private int count( final Enumeration<?> e )
+    {
+        int count = 0;
+        while ( e.hasMoreElements() )
+        {
+            e.nextElement();
+            count++;
+        }
+        return count;
+    }
+
+    @Test
+    public void testStoreLoadDelete() throws IOException
+    {
+        assertFalse( jpm.exists( "a" ) );
+        assertNull( jpm.load( "a" ) );
+
+        jpm.store( "a", createConfiguration( "a", "one" ) );
+        jpm.store( "b", createConfiguration( "b", new String[] { "x", "y" } ) );
+        jpm.store( "a", createConfiguration( "a", "two" ) );
+
+        assertTrue( jpm.exists( "a" ) );
+        assertEquals( "two", jpm.load( "a" ).get( "value" ) );
+        assertEquals( "y", ( ( String[] ) jpm.load( "b" ).get( "value" ) )[1] );
+        assertEquals( 2, count( jpm.getDictionaries() ) );
+
+        jpm.delete( "a" );
+        assertFalse( jpm.exists( "a" ) );
+        assertNull( jpm.load( "a" ) );
+        assertEquals( 1, count( jpm.getDictionaries() ) );
+    }
+
+    @SuppressWarnings("rawtypes")
+    @Test
+    public void testStoreAll() throws IOException
+    {
+        jpm.store( "a", createConfiguration( "a", "one" ) );
+        jpm.store( "b", createConfiguration( "b", "two" ) );
+
+        final Map<String, Dictionary> stores = new LinkedHashMap<>();
+        stores.put( "b", createConfiguration( "b", "changed" ) );
+        stores.put( "c", createConfiguration( "c", "three" ) );
+        jpm.storeAll( stores, Arrays.asList( "a", "x" ) );
+
+        assertFalse( jpm.exists( "a" ) );
+        assertEquals( "changed", jpm.load( "b" ).get( "value" ) );
+        assertEquals( "three", jpm.load( "c" ).get( "value" ) );
+
+        // the batch is replayed from the journal
+        jpm.close();
+        jpm = open( 0 );
+        assertFalse( jpm.exists( "a" ) );
+        assertEquals( "changed", jpm.load( "b" ).get( "value" ) );
+        assertEquals( "three", jpm.load( "c" ).get( "value" ) );
+        assertEquals( 2, count( jpm.getDictionaries() ) );
+    }
+
+    @Test
+    public void testReopenWithIndex() throws IOException
+    {
+        jpm.store( "a", createConfiguration( "a", "one" ) );
+        jpm.store( "b", createConfiguration( "b", "two" ) );
+        jpm.close();
+
+        jpm = open( 0 );
+        assertEquals( "one", jpm.load( "a" ).get( "value" ) );
+        assertEquals( "two", jpm.load( "b" ).get( "value" ) );
+
+        // records written after the index are replayed, the instance is
+        // not closed to leave the index behind as after a crash
+        jpm.delete( "a" );
+        jpm.store( "c", createConfiguration( "c", "three" ) );
+        final File journalFile = jpm.getJournalFile();
+        jpm = open( 0 );
+        assertFalse( jpm.exists( "a" ) );
+        assertEquals( "two", jpm.load( "b" ).get( "value" ) );
+        assertEquals( "three", jpm.load( "c" ).get( "value" ) );
+        assertTrue( journalFile.isFile() );
+    }
+
+    @Test
+    public void testTruncatedRecordIsDiscarded() throws IOException
+    {
+        jpm.store( "a", createConfiguration( "a", "one" ) );
+        jpm.store( "b", createConfiguration( "b", "two" ) );
+        final File journalFile = jpm.getJournalFile();
+
+        // simulate a crash while writing the last record, the instance is
+        // not closed so no index is written
+        try ( RandomAccessFile raf = new RandomAccessFile( journalFile, "rw" ) )
+        {
+            raf.setLength( raf.length() - 3 );
+        }
+
+        jpm = open( 0 );
+        assertEquals( "one", jpm.load( "a" ).get( "value" ) );
+        assertFalse( jpm.exists( "b" ) );
+
+        jpm.store( "b", createConfiguration( "b", "again" ) );
+        assertEquals( "again", jpm.load( "b" ).get( "value" ) );
+    }
+
+    @Test
+    public void testCompaction() throws IOException
+    {
+        for ( int i = 0; i < 200; i++ )
+        {
+            jpm.store( "a", createConfiguration( "a", "value-" + i ) );
+            jpm.store( "b" + ( i % 5 ), createConfiguration( "b" + ( i % 5 ), "value-" + i ) );
+        }
+
+        // 6 live records, all others compacted away
+        assertTrue( jpm.getJournalFile().length() < 3 * 1024 );
+        assertEquals( "value-199", jpm.load( "a" ).get( "value" ) );
+        assertEquals( 6, count( jpm.getDictionaries() ) );
+
+        jpm.close();
+        jpm = open( 0 );
+        assertEquals( "value-199", jpm.load( "a" ).get( "value" ) );
+        assertEquals( "value-195", jpm.load( "b0" ).get( "value" ) );
+        assertEquals( 6, count( jpm.getDictionaries() ) );
+    }
+
+    @Test
+    public void testFailedRenameAfterCompaction() throws IOException
+    {
+        jpm.close();
+        final AtomicInteger failRenames = new AtomicInteger();
+        jpm = new JournalPersistenceManager( location, 0, 1024 )
+        {
+            @Override
+            boolean renameJournal( final File compacted )
+            {
+                if ( failRenames.get() > 0 )
+                {
+                    failRenames.decrementAndGet();
+                    return false;
+                }
+                return super.renameJournal( compacted );
+            }
+        };
+        managers.add( jpm );
+        final File journalFile = jpm.getJournalFile();
+        final File tmpFile = new File( journalFile.getPath() + ".tmp" );
+
+        // the compacted journal can neither be renamed over the journal nor
+        // after deleting the journal
+        failRenames.set( 2 );
+        int i = 0;
+        IOException failure = null;
+        while ( failure == null && i < 200 )
+        {
+            try
+            {
+                jpm.store( "a", createConfiguration( "a", "value-" + i ) );
+                i++;
+            }
+            catch ( final IOException ioe )
+            {
+                failure = ioe;
+            }
+        }
+        assertTrue( failure != null );
+        assertFalse( journalFile.exists() );
+        assertTrue( tmpFile.isFile() );
+
+        // the compacted journal is used in place
+        assertEquals( "value-" + i, jpm.load( "a" ).get( "value" ) );
+        jpm.store( "b", createConfiguration( "b", "two" ) );
+        assertEquals( "two", jpm.load( "b" ).get( "value" ) );
+
+        // and moved into place by the next compaction
+        for ( int j = 0; j < 200; j++ )
+        {
+            jpm.store( "a", createConfiguration( "a", "again-" + j ) );
+        }
+        assertTrue( journalFile.isFile() );
+        assertFalse( tmpFile.exists() );
+
+        jpm.close();
+        jpm = open( 0 );
+        assertEquals( "again-199", jpm.load( "a" ).get( "value" ) );
+        assertEquals( "two", jpm.load( "b" ).get( "value" ) );
+    }
+
+    @Test
+    public void testCompactedJournalIsPickedUpOnStart() throws IOException
+    {
+        jpm.store( "a", createConfiguration( "a", "one" ) );
+        jpm.close();
+
+        // as left behind by a compaction which could not rename the journal
+        final File journalFile = jpm.getJournalFile();
+        final File tmpFile = new File( journalFile.getPath() + ".tmp" );
+        assertTrue( journalFile.renameTo( tmpFile ) );
+
+        jpm = open( 0 );
+        assertTrue( journalFile.isFile() );
+        assertFalse( tmpFile.exists() );
+        assertEquals( "one", jpm.load( "a" ).get( "value" ) );
+    }
+
+    @Test
+    public void testScheduledSync() throws Exception
+    {
+        jpm.close();
+        jpm = open( 50 );
+        jpm.store( "a", createConfiguration( "a", "one" ) );
+        jpm.store( "b", createConfiguration( "b", "two" ) );
+        assertTrue( jpm.hasUnsyncedWrites() );
+
+        final long end = System.currentTimeMillis() + 5000;
+        while ( jpm.hasUnsyncedWrites() && System.currentTimeMillis() < end )
+        {
+            Thread.sleep( 10 );
+        }
+        assertFalse( jpm.hasUnsyncedWrites() );
+
+        // the synced records are replayed, the instance is not closed to
+        // leave no index behind as after a crash
+        final JournalPersistenceManager reopened = open( 50 );
+        assertEquals( "one", reopened.load( "a" ).get( "value" ) );
+        assertEquals( "two", reopened.load( "b" ).get( "value" ) );
+        assertEquals( 2, count( reopened.getDictionaries() ) );
+    }
+}
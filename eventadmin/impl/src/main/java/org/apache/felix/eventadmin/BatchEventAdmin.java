@@ -0,0 +1,51 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.eventadmin;
+
+import java.util.Collection;
+
+import org.osgi.service.event.Event;
+
+/**
+ * The <code>BatchEventAdmin</code> is an extension service registered by
+ * the Apache Felix Event Admin next to the <code>EventAdmin</code> service.
+ * It allows to post many events at once, which saves the handler lookup
+ * and the hand over to the delivery thread for each single event.
+ * <p>
+ * Delivery to a single handler is the same as if each event was posted
+ * on its own through {@link org.osgi.service.event.EventAdmin#postEvent(Event)}
+ * in the order of the collection.
+ *
+ * @author <a href="mailto:dev@felix.apache.org">Felix Project Team</a>
+ */
+public interface BatchEventAdmin
+{
+    /**
+     * Initiate asynchronous, ordered delivery of the events. This method
+     * returns to the caller before delivery of the events is completed.
+     *
+     * @param events The events to send to all listeners which subscribe to
+     *      the topic of the respective event.
+     *
+     * @throws SecurityException If the caller does not have
+     *      <code>TopicPermission[topic,PUBLISH]</code> for the topic of
+     *      one of the events. In this case none of the events is posted.
+     */
+    void postEvents(Collection<Event> events);
+}
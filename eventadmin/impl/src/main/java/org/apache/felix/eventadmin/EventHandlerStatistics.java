@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.eventadmin;
+
+import java.util.Collection;
+
+/**
+ * The <code>EventHandlerStatistics</code> service is registered by the
+ * Apache Felix Event Admin and provides the number of delivered events
+ * and the delivery latency of each event handler. It allows to find
+ * slow handlers before they are put on the deny list.
+ * <p>
+ * All times are in microseconds. The statistics of the handlers are
+ * reset if the Event Admin configuration changes.
+ *
+ * @author <a href="mailto:dev@felix.apache.org">Felix Project Team</a>
+ */
+public interface EventHandlerStatistics
+{
+    /**
+     * Get the statistics of all event handlers currently tracked.
+     *
+     * @return The statistics, never <code>null</code>
+     */
+    Collection<HandlerStatistics> getHandlerStatistics();
+
+    /**
+     * Reset the statistics of all event handlers.
+     */
+    void reset();
+
+    /**
+     * The statistics of a single event handler.
+     */
+    interface HandlerStatistics
+    {
+        /**
+         * The service id of the event handler.
+         */
+        long getServiceId();
+
+        /**
+         * A description of the event handler service and its bundle.
+         */
+        String getHandler();
+
+        /**
+         * Is the handler on the deny list?
+         */
+        boolean isDenied();
+
+        /**
+         * The number of events delivered to the handler.
+         */
+        long getCount();
+
+        /**
+         * The accumulated time spent in the handler.
+         */
+        long getTotalTime();
+
+        /**
+         * The longest time spent to handle a single event.
+         */
+        long getMaxTime();
+
+        /**
+         * The time within which the given percentage of the events were
+         * handled. The value is an upper bound with a relative error of
+         * at most 12.5 percent.
+         *
+         * @param percentile The percentile, between 0 and 100
+         */
+        long getPercentile(double percentile);
+    }
+}
@@ -25,13 +25,17 @@ import java.util.Dictionary;
 import java.util.Hashtable;
 import java.util.StringTokenizer;
 
+import org.apache.felix.eventadmin.BatchEventAdmin;
+import org.apache.felix.eventadmin.EventHandlerStatistics;
 import org.apache.felix.eventadmin.impl.adapter.AbstractAdapter;
 import org.apache.felix.eventadmin.impl.adapter.BundleEventAdapter;
 import org.apache.felix.eventadmin.impl.adapter.FrameworkEventAdapter;
 import org.apache.felix.eventadmin.impl.adapter.LogEventAdapter;
 import org.apache.felix.eventadmin.impl.adapter.ServiceEventAdapter;
 import org.apache.felix.eventadmin.impl.handler.EventAdminImpl;
+import org.apache.felix.eventadmin.impl.handler.EventHandlerStatisticsImpl;
 import org.apache.felix.eventadmin.impl.security.SecureEventAdminFactory;
+import org.apache.felix.eventadmin.impl.tasks.AsyncDeliverTasks.OverflowPolicy;
 import org.apache.felix.eventadmin.impl.tasks.DefaultThreadPool;
 import org.apache.felix.eventadmin.impl.util.LogWrapper;
 import org.osgi.framework.BundleContext;
@@ -116,6 +120,25 @@ import org.osgi.service.metatype.MetaTypeProvider;
  * </p>
  * <p>
  * <p>
+ *      <tt>org.apache.felix.eventadmin.AsyncQueueSize</tt> - The maximum number of
+ *          events waiting for asynchronous delivery per posting thread.
+ * </p>
+ * The default value is 0 which means the queues are not bounded. A batch of
+ * events posted at once counts as a single entry.
+ * </p>
+ * <p>
+ * <p>
+ *      <tt>org.apache.felix.eventadmin.AsyncQueuePolicy</tt> - What to do with
+ *          an event posted while the queue of the posting thread is full.
+ * </p>
+ * One of <tt>block</tt> (the default) to wait for space in the queue,
+ * <tt>dropOldest</tt> to discard the oldest pending event, <tt>dropNewest</tt>
+ * to discard the posted event, or <tt>sync</tt> to deliver the posted event
+ * with the posting thread. The number of pending, dropped and synchronously
+ * delivered events is available through the handler info MBean.
+ * </p>
+ * <p>
+ * <p>
  * These properties are read at startup and serve as a default configuration.
  * If a configuration admin is configured, the event admin can be configured
  * through the config admin.
@@ -135,6 +158,8 @@ public class Configuration
     static final String PROP_IGNORE_TIMEOUT = "org.apache.felix.eventadmin.IgnoreTimeout";
     static final String PROP_IGNORE_TOPIC = "org.apache.felix.eventadmin.IgnoreTopic";
     static final String PROP_LOG_LEVEL = "org.apache.felix.eventadmin.LogLevel";
+    static final String PROP_ASYNC_QUEUE_SIZE = "org.apache.felix.eventadmin.AsyncQueueSize";
+    static final String PROP_ASYNC_QUEUE_POLICY = "org.apache.felix.eventadmin.AsyncQueuePolicy";
 
     /** The bundle context. */
     private final BundleContext m_bundleContext;
@@ -155,6 +180,10 @@ public class Configuration
 
     private int m_logLevel;
 
+    private int m_asyncQueueSize;
+
+    private OverflowPolicy m_asyncQueuePolicy;
+
     // The thread pool used - this is a member because we need to close it on stop
     private volatile DefaultThreadPool m_sync_pool;
 
@@ -169,9 +198,15 @@ public class Configuration
     // The registration of the security decorator factory (i.e., the service)
     private volatile ServiceRegistration<EventAdmin> m_registration;
 
+    // The registration of the batch extension service, secured the same way
+    private volatile ServiceRegistration<?> m_batchRegistration;
+
     // The registration of the mbean
     private volatile ServiceRegistration<Object> m_mbeanreg;
 
+    // The registration of the handler statistics service and command
+    private volatile ServiceRegistration<EventHandlerStatistics> m_statisticsReg;
+
     // all adapters
     private AbstractAdapter[] m_adapters;
 
@@ -332,6 +367,13 @@ public class Configuration
                     m_bundleContext.getProperty(PROP_LOG_LEVEL),
                     LogWrapper.LOG_WARNING, // default log level is WARNING
                     LogWrapper.LOG_ERROR);
+
+            // The maximum number of pending events per posting thread - 0
+            // (the default) does not bound the queues.
+            m_asyncQueueSize = getIntProperty(PROP_ASYNC_QUEUE_SIZE,
+                    m_bundleContext.getProperty(PROP_ASYNC_QUEUE_SIZE), 0, 0);
+            m_asyncQueuePolicy = getPolicyProperty(PROP_ASYNC_QUEUE_POLICY,
+                    m_bundleContext.getProperty(PROP_ASYNC_QUEUE_POLICY));
         }
         else
         {
@@ -374,6 +416,8 @@ public class Configuration
                     config.get(PROP_LOG_LEVEL),
                     LogWrapper.LOG_WARNING, // default log level is WARNING
                     LogWrapper.LOG_ERROR);
+            m_asyncQueueSize = getIntProperty(PROP_ASYNC_QUEUE_SIZE, config.get(PROP_ASYNC_QUEUE_SIZE), 0, 0);
+            m_asyncQueuePolicy = getPolicyProperty(PROP_ASYNC_QUEUE_POLICY, config.get(PROP_ASYNC_QUEUE_POLICY));
         }
         // a timeout less or equals to 100 means : disable timeout
         if ( m_timeout <= 100 )
@@ -398,6 +442,10 @@ public class Configuration
             PROP_TIMEOUT + "=" + m_timeout);
         LogWrapper.getLogger().log(LogWrapper.LOG_DEBUG,
             PROP_REQUIRE_TOPIC + "=" + m_requireTopic);
+        LogWrapper.getLogger().log(LogWrapper.LOG_DEBUG,
+            PROP_ASYNC_QUEUE_SIZE + "=" + m_asyncQueueSize);
+        LogWrapper.getLogger().log(LogWrapper.LOG_DEBUG,
+            PROP_ASYNC_QUEUE_POLICY + "=" + m_asyncQueuePolicy.getValue());
 
         // Note that this uses a lazy thread pool that will create new threads on
         // demand - in case none of its cached threads is free - until threadPoolSize
@@ -439,16 +487,25 @@ public class Configuration
             // appropriated permissions of each calling bundle
             m_registration = m_bundleContext.registerService(EventAdmin.class,
                     new SecureEventAdminFactory(m_admin), null);
+            m_batchRegistration = m_bundleContext.registerService(BatchEventAdmin.class.getName(),
+                    new SecureEventAdminFactory(m_admin), null);
 
             final Dictionary<String, Object> mbeanProps = new Hashtable<>();
             mbeanProps.put("jmx.objectname", "org.apache.felix.eventadmin:type=handlerinfo,name=EventAdmin");
 
             m_mbeanreg = m_bundleContext.registerService(Object.class, m_admin.getHandlerInfoMBean(), mbeanProps);
+
+            final Dictionary<String, Object> statisticsProps = new Hashtable<>();
+            statisticsProps.put("osgi.command.scope", "eventadmin");
+            statisticsProps.put("osgi.command.function", EventHandlerStatisticsImpl.FUNCTIONS);
+            m_statisticsReg = m_bundleContext.registerService(EventHandlerStatistics.class,
+                    new EventHandlerStatisticsImpl(m_admin), statisticsProps);
         }
         else
         {
             m_admin.update(m_timeout, m_ignoreTimeout, m_requireTopic, m_ignoreTopics);
         }
+        m_admin.updateQueue(m_asyncQueueSize, m_asyncQueuePolicy);
 
     }
 
@@ -476,11 +533,21 @@ public class Configuration
                 m_managedServiceReg.unregister();
                 m_managedServiceReg = null;
             }
+            if ( m_statisticsReg != null )
+            {
+                m_statisticsReg.unregister();
+                m_statisticsReg = null;
+            }
             // We need to unregister manually
             if ( m_mbeanreg != null ) {
                 m_mbeanreg.unregister();
                 m_mbeanreg = null;
             }
+            if ( m_batchRegistration != null )
+            {
+                m_batchRegistration.unregister();
+                m_batchRegistration = null;
+            }
             if ( m_registration != null )
             {
                 m_registration.unregister();
@@ -522,7 +589,8 @@ public class Configuration
         {
             return new MetaTypeProviderImpl((ManagedService)managedService,
                     m_threadPoolSize, m_timeout, m_requireTopic,
-                    m_ignoreTimeout, m_ignoreTopics, m_asyncToSyncThreadRatio);
+                    m_ignoreTimeout, m_ignoreTopics, m_asyncToSyncThreadRatio,
+                    m_asyncQueueSize, m_asyncQueuePolicy.getValue());
         }
         catch (final Throwable t)
         {
@@ -633,6 +701,28 @@ public class Configuration
         return defaultValue;
     }
 
+    /**
+     * Returns the overflow policy for the value of the property or the
+     * default (block) if the property is not set or has an unknown value.
+     * Additionally, a warning is generated in case the value is unknown.
+     */
+    private OverflowPolicy getPolicyProperty(final String key, final Object value)
+    {
+        if ( null != value )
+        {
+            final OverflowPolicy result = OverflowPolicy.fromValue(value.toString().trim());
+            if ( result != null )
+            {
+                return result;
+            }
+
+            LogWrapper.getLogger().log(LogWrapper.LOG_WARNING,
+                    "Value for property: " + key + " is unknown - Using default");
+        }
+
+        return OverflowPolicy.BLOCK;
+    }
+
     /**
      * Returns true if the value of the property is set and is either 1, true, or yes
      * Returns false if the value of the property is set and is either 0, false, or no
@@ -22,6 +22,7 @@ import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Dictionary;
 
+import org.apache.felix.eventadmin.impl.tasks.AsyncDeliverTasks.OverflowPolicy;
 import org.osgi.service.cm.ConfigurationException;
 import org.osgi.service.cm.ManagedService;
 import org.osgi.service.metatype.AttributeDefinition;
@@ -42,6 +43,8 @@ public class MetaTypeProviderImpl
     private final String[] m_ignoreTimeout;
     private final String[] m_ignoreTopic;
     private final double m_asyncThreadPoolRatio;
+    private final int m_asyncQueueSize;
+    private final String m_asyncQueuePolicy;
 
     private final ManagedService m_delegatee;
 
@@ -50,7 +53,9 @@ public class MetaTypeProviderImpl
             final int timeout, final boolean requireTopic,
             final String[] ignoreTimeout,
             final String[] ignoreTopic,
-            final double asyncThreadPoolRatio)
+            final double asyncThreadPoolRatio,
+            final int asyncQueueSize,
+            final String asyncQueuePolicy)
     {
         m_threadPoolSize = threadPoolSize;
         m_timeout = timeout;
@@ -59,6 +64,8 @@ public class MetaTypeProviderImpl
         m_ignoreTimeout = ignoreTimeout;
         m_ignoreTopic = ignoreTopic;
         m_asyncThreadPoolRatio = asyncThreadPoolRatio;
+        m_asyncQueueSize = asyncQueueSize;
+        m_asyncQueuePolicy = asyncQueuePolicy;
     }
 
     private ObjectClassDefinition ocd;
@@ -143,6 +150,19 @@ public class MetaTypeProviderImpl
                     "are ignored. If a single value neither ends with a dot nor with a start, this is assumed " +
                     "to define an exact topic. A single star can be used to disable delivery completely.",
                     AttributeDefinition.STRING, m_ignoreTopic, Integer.MAX_VALUE, null, null));
+            adList.add( new AttributeDefinitionImpl( Configuration.PROP_ASYNC_QUEUE_SIZE, "Async Queue Size",
+                    "The maximum number of events waiting for asynchronous delivery per posting thread. " +
+                    "A batch of events posted at once counts as a single entry. The default value of 0 " +
+                    "does not limit the queues.",
+                    m_asyncQueueSize ) );
+            adList.add( new AttributeDefinitionImpl( Configuration.PROP_ASYNC_QUEUE_POLICY, "Async Queue Policy",
+                    "What to do with an event posted while the queue of the posting thread is full. " +
+                    "The posting thread can wait for space in the queue, the oldest pending event or the " +
+                    "posted event can be discarded, or the posting thread can deliver the event itself.",
+                    AttributeDefinition.STRING, new String[] { m_asyncQueuePolicy }, 0,
+                    new String[] { "Block", "Drop oldest", "Drop newest", "Deliver synchronously" },
+                    new String[] { OverflowPolicy.BLOCK.getValue(), OverflowPolicy.DROP_OLDEST.getValue(),
+                            OverflowPolicy.DROP_NEWEST.getValue(), OverflowPolicy.SYNC.getValue() }));
             ocd = new ObjectClassDefinition()
             {
 
@@ -19,8 +19,13 @@
 package org.apache.felix.eventadmin.impl.handler;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
+import org.apache.felix.eventadmin.BatchEventAdmin;
 import org.apache.felix.eventadmin.impl.tasks.AsyncDeliverTasks;
 import org.apache.felix.eventadmin.impl.tasks.DefaultThreadPool;
 import org.apache.felix.eventadmin.impl.tasks.SyncDeliverTasks;
@@ -42,7 +47,7 @@ import org.osgi.service.event.EventAdmin;
  *
  * @author <a href="mailto:dev@felix.apache.org">Felix Project Team</a>
  */
-public class EventAdminImpl implements EventAdmin
+public class EventAdminImpl implements EventAdmin, BatchEventAdmin
 {
     /** The tracker for the event handlers. */
     private volatile EventHandlerTracker tracker;
@@ -133,6 +138,55 @@ public class EventAdminImpl implements EventAdmin
         }
     }
 
+    /**
+     * Post a batch of asynchronous events. The handlers are resolved once
+     * for each distinct topic and the whole batch is handed over to the
+     * asynchronous delivery as a single task.
+     *
+     * @param events The events to be posted by this service
+     *
+     * @throws IllegalStateException - In case we are stopped
+     *
+     * @see org.apache.felix.eventadmin.BatchEventAdmin#postEvents(java.util.Collection)
+     */
+    @Override
+    public void postEvents(final Collection<Event> events)
+    {
+        final EventHandlerTracker localTracker = this.getTracker();
+
+        final Map<String, EventHandlerProxy[]> candidatesByTopic = new HashMap<>();
+        final Map<EventHandlerProxy, List<Event>> batch = new LinkedHashMap<>();
+        for(final Event event : events)
+        {
+            if ( checkTopic(event) )
+            {
+                EventHandlerProxy[] candidates = candidatesByTopic.get(event.getTopic());
+                if ( candidates == null )
+                {
+                    candidates = localTracker.getCandidates(event.getTopic());
+                    candidatesByTopic.put(event.getTopic(), candidates);
+                }
+                for(final EventHandlerProxy p : candidates)
+                {
+                    if ( p.canDeliver(event) )
+                    {
+                        List<Event> handlerEvents = batch.get(p);
+                        if ( handlerEvents == null )
+                        {
+                            handlerEvents = new ArrayList<>();
+                            batch.put(p, handlerEvents);
+                        }
+                        handlerEvents.add(event);
+                    }
+                }
+            }
+        }
+        if ( !batch.isEmpty() )
+        {
+            m_postManager.execute(batch);
+        }
+    }
+
     /**
      * Send a synchronous event.
      *
@@ -175,6 +229,14 @@ public class EventAdminImpl implements EventAdmin
         this.m_ignoreTopics = Matchers.createEventTopicMatchers(ignoreTopics);
     }
 
+    /**
+     * Update the bound of the asynchronous delivery queues.
+     */
+    public void updateQueue(final int queueSize, final AsyncDeliverTasks.OverflowPolicy overflowPolicy)
+    {
+        this.m_postManager.update(queueSize, overflowPolicy);
+    }
+
     /**
      * This is a utility method that will throw a <tt>NullPointerException</tt>
      * in case that the given object is null. The message will be of the form
@@ -188,9 +250,23 @@ public class EventAdminImpl implements EventAdmin
         }
     }
 
+    /**
+     * The proxies of all tracked event handlers.
+     */
+    Collection<EventHandlerProxy> getHandlerProxies()
+    {
+        return this.getTracker().getProxies();
+    }
+
     public interface EventHandlerMBean {
 
         String[] getDeniedEventHandlers();
+
+        int getAsyncQueueDepth();
+
+        long getAsyncDroppedCount();
+
+        long getAsyncDeliveredSynchronouslyCount();
     }
 
     public Object getHandlerInfoMBean() {
@@ -205,6 +281,21 @@ public class EventAdminImpl implements EventAdmin
 
                 return names.toArray(new String[names.size()]);
             }
+
+            @Override
+            public int getAsyncQueueDepth() {
+                return m_postManager.getQueueDepth();
+            }
+
+            @Override
+            public long getAsyncDroppedCount() {
+                return m_postManager.getDroppedCount();
+            }
+
+            @Override
+            public long getAsyncDeliveredSynchronouslyCount() {
+                return m_postManager.getDeliveredSynchronouslyCount();
+            }
         };
     }
 }
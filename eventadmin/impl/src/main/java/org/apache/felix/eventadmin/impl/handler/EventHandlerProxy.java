@@ -22,6 +22,7 @@ import java.util.Collection;
 import java.util.Iterator;
 
 import org.apache.felix.eventadmin.impl.security.PermissionsUtil;
+import org.apache.felix.eventadmin.impl.util.LatencyHistogram;
 import org.apache.felix.eventadmin.impl.util.LogWrapper;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.Filter;
@@ -66,6 +67,9 @@ public class EventHandlerProxy {
     /** Deliver async ordered. */
     private boolean asyncOrderedDelivery;
 
+    /** The delivery latencies of this handler. */
+    private final LatencyHistogram latencies = new LatencyHistogram();
+
     /**
      * Create an EventHandlerProxy.
      *
@@ -274,6 +278,20 @@ public class EventHandlerProxy {
         return this.reference.toString() + " [Bundle " + this.reference.getBundle() + "]";
     }
 
+    /**
+     * The reference of the event handler service.
+     */
+    public ServiceReference<EventHandler> getReference() {
+        return this.reference;
+    }
+
+    /**
+     * The delivery latencies of this handler.
+     */
+    public LatencyHistogram getLatencies() {
+        return this.latencies;
+    }
+
     /**
      * Dispose the proxy and release the handler
      */
@@ -417,6 +435,7 @@ public class EventHandlerProxy {
             return;
         }
 
+        final long start = System.nanoTime();
         try
         {
             handlerService.handleEvent(event);
@@ -431,6 +450,10 @@ public class EventHandlerProxy {
                                             + this.reference + " | Bundle("
                                             + this.reference.getBundle() + ")]", e);
         }
+        finally
+        {
+            this.latencies.record((System.nanoTime() - start) / 1000);
+        }
     }
 
     /**
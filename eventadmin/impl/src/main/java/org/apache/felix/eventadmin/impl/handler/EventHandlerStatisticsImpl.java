@@ -0,0 +1,159 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.eventadmin.impl.handler;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+import org.apache.felix.eventadmin.EventHandlerStatistics;
+import org.apache.felix.eventadmin.impl.util.LatencyHistogram;
+import org.osgi.framework.Constants;
+
+/**
+ * The implementation of the {@link EventHandlerStatistics} service. The
+ * service is also registered as a gogo command in the <tt>eventadmin</tt>
+ * scope providing the <tt>handlers</tt> and <tt>reset</tt> functions.
+ *
+ * @author <a href="mailto:dev@felix.apache.org">Felix Project Team</a>
+ */
+public class EventHandlerStatisticsImpl implements EventHandlerStatistics
+{
+    /** The command functions. */
+    public static final String[] FUNCTIONS = new String[] {"handlers", "reset"};
+
+    private final EventAdminImpl admin;
+
+    public EventHandlerStatisticsImpl(final EventAdminImpl admin)
+    {
+        this.admin = admin;
+    }
+
+    @Override
+    public Collection<HandlerStatistics> getHandlerStatistics()
+    {
+        final List<HandlerStatistics> result = new ArrayList<>();
+        for(final EventHandlerProxy proxy : this.admin.getHandlerProxies())
+        {
+            result.add(new ProxyStatistics(proxy));
+        }
+        return result;
+    }
+
+    @Override
+    public void reset()
+    {
+        for(final EventHandlerProxy proxy : this.admin.getHandlerProxies())
+        {
+            proxy.getLatencies().reset();
+        }
+    }
+
+    /**
+     * Command listing the handlers with the highest 99th percentile first.
+     */
+    public String handlers()
+    {
+        final List<HandlerStatistics> stats = new ArrayList<>(this.getHandlerStatistics());
+        Collections.sort(stats, new Comparator<HandlerStatistics>()
+        {
+            @Override
+            public int compare(final HandlerStatistics o1, final HandlerStatistics o2)
+            {
+                return Long.compare(o2.getPercentile(99), o1.getPercentile(99));
+            }
+        });
+
+        final StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.ENGLISH, "%6s %10s %10s %10s %10s %10s %s%n",
+                "ID", "Count", "Mean(us)", "P50(us)", "P99(us)", "Max(us)", "Handler"));
+        for(final HandlerStatistics s : stats)
+        {
+            sb.append(String.format(Locale.ENGLISH, "%6d %10d %10d %10d %10d %10d %s%s%n",
+                    s.getServiceId(),
+                    s.getCount(),
+                    s.getCount() == 0 ? 0 : s.getTotalTime() / s.getCount(),
+                    s.getPercentile(50),
+                    s.getPercentile(99),
+                    s.getMaxTime(),
+                    s.isDenied() ? "(denied) " : "",
+                    s.getHandler()));
+        }
+        return sb.toString();
+    }
+
+    private static final class ProxyStatistics implements HandlerStatistics
+    {
+        private final EventHandlerProxy proxy;
+
+        private final LatencyHistogram latencies;
+
+        public ProxyStatistics(final EventHandlerProxy proxy)
+        {
+            this.proxy = proxy;
+            this.latencies = proxy.getLatencies();
+        }
+
+        @Override
+        public long getServiceId()
+        {
+            final Object id = this.proxy.getReference().getProperty(Constants.SERVICE_ID);
+            return id instanceof Long ? (Long)id : -1;
+        }
+
+        @Override
+        public String getHandler()
+        {
+            return this.proxy.getInfo();
+        }
+
+        @Override
+        public boolean isDenied()
+        {
+            return this.proxy.isDenied();
+        }
+
+        @Override
+        public long getCount()
+        {
+            return this.latencies.getCount();
+        }
+
+        @Override
+        public long getTotalTime()
+        {
+            return this.latencies.getTotal();
+        }
+
+        @Override
+        public long getMaxTime()
+        {
+            return this.latencies.getMax();
+        }
+
+        @Override
+        public long getPercentile(final double percentile)
+        {
+            return this.latencies.getPercentile(percentile);
+        }
+    }
+}
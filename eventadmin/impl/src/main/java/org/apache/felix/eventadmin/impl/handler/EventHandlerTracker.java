@@ -18,8 +18,14 @@
  */
 package org.apache.felix.eventadmin.impl.handler;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -40,6 +46,9 @@ import org.osgi.util.tracker.ServiceTracker;
  */
 public class EventHandlerTracker extends ServiceTracker<EventHandler, EventHandlerProxy> {
 
+    /** The maximum number of topics for which the matching handlers are cached. */
+    static final int MAX_CACHED_TOPICS = 1024;
+
     /** The proxies in this list match all events. */
 	private final List<EventHandlerProxy> matchingAllEvents;
 
@@ -57,6 +66,13 @@ public class EventHandlerTracker extends ServiceTracker<EventHandler, EventHandl
 	/** The context for the proxies. */
 	private HandlerContext handlerContext;
 
+    /**
+     * The immutable topic trie built from the collections above or
+     * <code>null</code> if it needs to be rebuilt because the registered
+     * handlers changed.
+     */
+    private volatile TopicSnapshot snapshot;
+
     public EventHandlerTracker(final BundleContext context) {
 		super(context, EventHandler.class.getName(), null);
 
@@ -138,6 +154,7 @@ public class EventHandlerTracker extends ServiceTracker<EventHandler, EventHandl
 	 * corresponding collections.
 	 */
 	private synchronized void put(final EventHandlerProxy proxy) {
+	    this.snapshot = null;
 		final String[] topics = proxy.getTopics();
 		if ( topics == null )
 		{
@@ -168,6 +185,7 @@ public class EventHandlerTracker extends ServiceTracker<EventHandler, EventHandl
      * corresponding collections.
      */
 	private synchronized void remove(final EventHandlerProxy proxy) {
+	    this.snapshot = null;
         final String[] topics = proxy.getTopics();
         if ( topics == null )
         {
@@ -194,35 +212,81 @@ public class EventHandlerTracker extends ServiceTracker<EventHandler, EventHandl
 	/**
 	 * Get all handlers for this event
 	 *
+	 * The handlers registered for the topic are taken from the topic
+	 * snapshot, and only the per event checks (filter, permission, denial)
+	 * are evaluated here. If all candidates accept the event, the cached
+	 * collection is returned as is.
+	 *
 	 * @param event The event topic
 	 * @return All handlers for the event
 	 */
 	public Collection<EventHandlerProxy> getHandlers(final Event event) {
-	    final String topic = event.getTopic();
-
-		final Set<EventHandlerProxy> handlers = new HashSet<>();
+	    final TopicMatch match = this.getSnapshot().getMatch(event.getTopic());
 
-		// Add all handlers matching everything
-        this.checkHandlerAndAdd(handlers, this.matchingAllEvents, event);
+	    final EventHandlerProxy[] candidates = match.proxies;
+	    for(int i = 0; i < candidates.length; i++)
+	    {
+	        if ( !candidates[i].canDeliver(event) )
+	        {
+	            // at least one handler rejects the event, copy the others
+	            final List<EventHandlerProxy> handlers = new ArrayList<>(candidates.length - 1);
+	            for(int n = 0; n < i; n++)
+	            {
+	                handlers.add(candidates[n]);
+	            }
+	            for(int n = i + 1; n < candidates.length; n++)
+	            {
+	                if ( candidates[n].canDeliver(event) )
+	                {
+	                    handlers.add(candidates[n]);
+	                }
+	            }
+	            return handlers;
+	        }
+	    }
+	    return match.handlers;
+	}
 
-		// Now check for prefix matches
-		if ( !this.matchingPrefixTopic.isEmpty() )
-		{
-		    int pos = topic.lastIndexOf('/');
-			while (pos != -1)
-			{
-			    final String prefix = topic.substring(0, pos);
-		        this.checkHandlerAndAdd(handlers, this.matchingPrefixTopic.get(prefix), event);
-
-				pos = prefix.lastIndexOf('/');
-			}
-		}
+    /**
+     * Get the handlers registered for the topic without evaluating
+     * the per event checks. The returned array must not be modified.
+     */
+    EventHandlerProxy[] getCandidates(final String topic)
+    {
+        return this.getSnapshot().getMatch(topic).proxies;
+    }
 
-		// Add the handlers for matching topic names
-		this.checkHandlerAndAdd(handlers, this.matchingTopic.get(topic), event);
+    /**
+     * Get the current topic snapshot, building it if the handlers
+     * changed since it was last built.
+     */
+    private TopicSnapshot getSnapshot()
+    {
+        TopicSnapshot s = this.snapshot;
+        if ( s == null )
+        {
+            synchronized ( this )
+            {
+                s = this.snapshot;
+                if ( s == null )
+                {
+                    s = new TopicSnapshot(this.matchingAllEvents, this.matchingTopic, this.matchingPrefixTopic);
+                    this.snapshot = s;
+                }
+            }
+        }
+        return s;
+    }
 
-		return handlers;
-	}
+    /**
+     * Get the proxies of all tracked handlers
+     *
+     * @return The proxies, including those with an invalid configuration
+     */
+    public Collection<EventHandlerProxy> getProxies() {
+        final Map<ServiceReference<EventHandler>, EventHandlerProxy> tracked = this.getTracked();
+        return new ArrayList<>(tracked.values());
+    }
 
 	   /**
      * Get all handlers for this event
@@ -257,25 +321,151 @@ public class EventHandlerTracker extends ServiceTracker<EventHandler, EventHandl
         return handlers;
     }
 
-	/**
-	 * Checks each handler from the proxy list if it can deliver the event
-	 * If the event can be delivered, the proxy is added to the handlers.
-	 */
-	private void checkHandlerAndAdd( final Set<EventHandlerProxy> handlers,
-	        final List<EventHandlerProxy> proxies,
-	        final Event event)
-	{
-	    if ( proxies != null )
-	    {
-            for(final EventHandlerProxy p : proxies)
+    /**
+     * The handlers matching a single topic, regardless of the event
+     * properties.
+     */
+    private static final class TopicMatch
+    {
+        /** The matching handlers. */
+        public final EventHandlerProxy[] proxies;
+
+        /** Read only view of {@link #proxies}. */
+        public final Collection<EventHandlerProxy> handlers;
+
+        public TopicMatch(final EventHandlerProxy[] proxies)
+        {
+            this.proxies = proxies;
+            this.handlers = Collections.unmodifiableList(Arrays.asList(proxies));
+        }
+    }
+
+    /**
+     * A node of the topic trie. Each node represents one topic segment.
+     */
+    private static final class TopicNode
+    {
+        /** The child nodes keyed by the next topic segment. */
+        public final Map<String, TopicNode> children = new HashMap<>();
+
+        /** Handlers registered for exactly this topic. */
+        public List<EventHandlerProxy> exact;
+
+        /** Handlers registered for this topic followed by <code>/*</code>. */
+        public List<EventHandlerProxy> wildcard;
+
+        public TopicNode getOrCreate(final String segment)
+        {
+            TopicNode node = this.children.get(segment);
+            if ( node == null )
             {
-                if ( p.canDeliver(event) )
+                node = new TopicNode();
+                this.children.put(segment, node);
+            }
+            return node;
+        }
+    }
+
+    /**
+     * Immutable view of the registered handlers organized as a trie
+     * of topic segments. The result of a topic lookup is memoized in a
+     * bounded cache which is discarded together with the snapshot.
+     */
+    private static final class TopicSnapshot
+    {
+        private final EventHandlerProxy[] matchingAllEvents;
+
+        private final TopicNode root = new TopicNode();
+
+        private final Map<String, TopicMatch> cache = new ConcurrentHashMap<>();
+
+        public TopicSnapshot(final List<EventHandlerProxy> matchingAllEvents,
+                final Map<String, List<EventHandlerProxy>> matchingTopic,
+                final Map<String, List<EventHandlerProxy>> matchingPrefixTopic)
+        {
+            this.matchingAllEvents = matchingAllEvents.toArray(new EventHandlerProxy[matchingAllEvents.size()]);
+            for(final Map.Entry<String, List<EventHandlerProxy>> entry : matchingTopic.entrySet())
+            {
+                this.getNode(entry.getKey()).exact = new ArrayList<>(entry.getValue());
+            }
+            for(final Map.Entry<String, List<EventHandlerProxy>> entry : matchingPrefixTopic.entrySet())
+            {
+                this.getNode(entry.getKey()).wildcard = new ArrayList<>(entry.getValue());
+            }
+        }
+
+        private TopicNode getNode(final String topic)
+        {
+            TopicNode node = this.root;
+            for(final String segment : topic.split("/", -1))
+            {
+                node = node.getOrCreate(segment);
+            }
+            return node;
+        }
+
+        /**
+         * Get the handlers for the topic, from the cache if possible.
+         */
+        public TopicMatch getMatch(final String topic)
+        {
+            TopicMatch match = this.cache.get(topic);
+            if ( match == null )
+            {
+                match = this.match(topic);
+                if ( this.cache.size() >= MAX_CACHED_TOPICS )
                 {
-                    handlers.add(p);
+                    // evict an arbitrary entry to stay within the bound
+                    final Iterator<String> i = this.cache.keySet().iterator();
+                    if ( i.hasNext() )
+                    {
+                        i.next();
+                        i.remove();
+                    }
                 }
+                this.cache.put(topic, match);
             }
-	    }
-	}
+            return match;
+        }
+
+        /**
+         * Walk the trie along the topic segments. Wildcard handlers of
+         * all nodes before the last segment match, exact handlers only
+         * on the node of the last segment.
+         */
+        private TopicMatch match(final String topic)
+        {
+            final Set<EventHandlerProxy> result = new LinkedHashSet<>();
+            result.addAll(Arrays.asList(this.matchingAllEvents));
+
+            final String[] segments = topic.split("/", -1);
+            TopicNode node = this.root;
+            for(int i = 0; i < segments.length && node != null; i++)
+            {
+                node = node.children.get(segments[i]);
+                if ( node != null )
+                {
+                    if ( i < segments.length - 1 )
+                    {
+                        addAll(result, node.wildcard);
+                    }
+                    else
+                    {
+                        addAll(result, node.exact);
+                    }
+                }
+            }
+            return new TopicMatch(result.toArray(new EventHandlerProxy[result.size()]));
+        }
+
+        private static void addAll(final Set<EventHandlerProxy> result, final List<EventHandlerProxy> proxies)
+        {
+            if ( proxies != null )
+            {
+                result.addAll(proxies);
+            }
+        }
+    }
 
     /**
      * The context object passed to the proxies.
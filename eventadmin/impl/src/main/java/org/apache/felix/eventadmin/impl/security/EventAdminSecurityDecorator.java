@@ -19,7 +19,9 @@
 package org.apache.felix.eventadmin.impl.security;
 
 import java.security.Permission;
+import java.util.Collection;
 
+import org.apache.felix.eventadmin.BatchEventAdmin;
 import org.osgi.framework.Bundle;
 import org.osgi.service.event.Event;
 import org.osgi.service.event.EventAdmin;
@@ -34,7 +36,7 @@ import org.osgi.service.event.EventAdmin;
  *
  * @author <a href="mailto:dev@felix.apache.org">Felix Project Team</a>
  */
-public class EventAdminSecurityDecorator implements EventAdmin
+public class EventAdminSecurityDecorator implements EventAdmin, BatchEventAdmin
 {
     // The bundle used to determine appropriate permissions
     private final Bundle m_bundle;
@@ -79,6 +81,37 @@ public class EventAdminSecurityDecorator implements EventAdmin
         m_admin.postEvent(event);
     }
 
+    /**
+     * This method checks whether the given (i.e., calling) bundle has
+     * appropriate permissions to post each of the events to its topic. A
+     * <tt>SecurityException</tt> is thrown in case it has not, and none
+     * of the events is posted. Otherwise, the events are posted using this
+     * decorator's service instance.
+     *
+     * @param events The events that should be posted
+     *
+     * @see org.apache.felix.eventadmin.BatchEventAdmin#postEvents(java.util.Collection)
+     */
+    public void postEvents(final Collection<Event> events)
+    {
+        for(final Event event : events)
+        {
+            checkPermission(event.getTopic());
+        }
+
+        if ( m_admin instanceof BatchEventAdmin )
+        {
+            ((BatchEventAdmin) m_admin).postEvents(events);
+        }
+        else
+        {
+            for(final Event event : events)
+            {
+                m_admin.postEvent(event);
+            }
+        }
+    }
+
     /**
      * This method checks whether the given (i.e., calling) bundle has
      * appropriate permissions to send an event to the targeted topic. A
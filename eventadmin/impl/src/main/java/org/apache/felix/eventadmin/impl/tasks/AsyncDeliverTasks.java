@@ -18,11 +18,18 @@
  */
 package org.apache.felix.eventadmin.impl.tasks;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.felix.eventadmin.impl.handler.EventHandlerProxy;
+import org.apache.felix.eventadmin.impl.util.LogWrapper;
 import org.osgi.service.event.Event;
 
 /**
@@ -32,6 +39,56 @@ import org.osgi.service.event.Event;
  */
 public class AsyncDeliverTasks
 {
+    /**
+     * What to do with an event posted by a thread whose queue of
+     * pending events is full.
+     */
+    public enum OverflowPolicy
+    {
+        /** Block the posting thread until the queue has space. */
+        BLOCK("block"),
+
+        /** Discard the oldest pending event of the queue. */
+        DROP_OLDEST("dropOldest"),
+
+        /** Discard the posted event. */
+        DROP_NEWEST("dropNewest"),
+
+        /** Deliver the posted event with the posting thread. */
+        SYNC("sync");
+
+        private final String value;
+
+        OverflowPolicy(final String value)
+        {
+            this.value = value;
+        }
+
+        /**
+         * The value used in the configuration.
+         */
+        public String getValue()
+        {
+            return this.value;
+        }
+
+        /**
+         * Get the policy for the configuration value.
+         * @return The policy or <code>null</code> if the value is unknown.
+         */
+        public static OverflowPolicy fromValue(final String value)
+        {
+            for(final OverflowPolicy p : values())
+            {
+                if ( p.value.equalsIgnoreCase(value) )
+                {
+                    return p;
+                }
+            }
+            return null;
+        }
+    }
+
     /** The thread pool to use to spin-off new threads. */
     private final DefaultThreadPool m_pool;
 
@@ -44,6 +101,21 @@ public class AsyncDeliverTasks
     /** A map of running threads currently delivering async events. */
     private final Map<Long, TaskExecuter> m_running_threads = new ConcurrentHashMap<Long, TaskExecuter>();
 
+    /** The maximum number of pending entries per posting thread, 0 for no limit. */
+    private volatile int m_queueSize;
+
+    /** The policy applied if the queue of a posting thread is full. */
+    private volatile OverflowPolicy m_overflowPolicy = OverflowPolicy.BLOCK;
+
+    /** The number of pending entries of all posting threads. */
+    private final AtomicInteger m_queueDepth = new AtomicInteger();
+
+    /** The number of entries discarded because of a full queue. */
+    private final AtomicLong m_dropped = new AtomicLong();
+
+    /** The number of entries delivered synchronously because of a full queue. */
+    private final AtomicLong m_deliveredSynchronously = new AtomicLong();
+
     /**
      * The constructor of the class that will use the asynchronous.
      *
@@ -58,40 +130,145 @@ public class AsyncDeliverTasks
         m_deliver_task = deliverTask;
     }
 
+    /**
+     * Update the queue configuration.
+     *
+     * @param queueSize The maximum number of pending events or batches per
+     *      posting thread, a value of 0 or less disables the limit
+     * @param overflowPolicy The policy applied if the limit is reached
+     */
+    public void update(final int queueSize, final OverflowPolicy overflowPolicy)
+    {
+        m_queueSize = queueSize;
+        m_overflowPolicy = overflowPolicy;
+    }
+
+    /**
+     * The number of events or batches waiting for asynchronous delivery.
+     */
+    public int getQueueDepth()
+    {
+        return m_queueDepth.get();
+    }
+
+    /**
+     * The number of events or batches discarded because the queue of the
+     * posting thread was full.
+     */
+    public long getDroppedCount()
+    {
+        return m_dropped.get();
+    }
+
+    /**
+     * The number of events or batches delivered by the posting thread
+     * because its queue was full.
+     */
+    public long getDeliveredSynchronouslyCount()
+    {
+        return m_deliveredSynchronously.get();
+    }
+
     /**
      * This does not block an unrelated thread used to send a synchronous event.
+     * <p>
+     * Handlers requiring ordered delivery (the default) receive the events
+     * posted by a thread one after the other in the order they were posted.
+     * Handlers registered with <tt>event.delivery=async.unordered</tt> are
+     * each delivered to by a separate task on the thread pool and may
+     * therefore receive events concurrently and out of order.
      *
      * @param tasks The event handler dispatch tasks to execute
      *
      */
     public void execute(final Collection<EventHandlerProxy> tasks, final Event event)
     {
-        /*
-        final Iterator i = tasks.iterator();
-        boolean hasOrdered = false;
-        while ( i.hasNext() )
+        Collection<EventHandlerProxy> ordered = tasks;
+        for ( final EventHandlerProxy task : tasks )
         {
-            final EventHandlerProxy task = (EventHandlerProxy)i.next();
             if ( !task.isAsyncOrderedDelivery() )
             {
-                // do somethimg
+                ordered = this.executeUnordered(tasks, event);
+                break;
+            }
+        }
+
+        if ( !ordered.isEmpty() )
+        {
+            this.enqueue(new TaskInfo(ordered, event, null));
+        }
+    }
+
+    /**
+     * Deliver a batch of events posted by the current thread. Each handler
+     * receives its events in the given order, and the batch is ordered with
+     * respect to other events posted by the same thread. Handlers not
+     * requiring ordered delivery get their events by a separate task.
+     *
+     * @param batch The events to deliver keyed by the handler
+     */
+    public void execute(final Map<EventHandlerProxy, List<Event>> batch)
+    {
+        final Map<EventHandlerProxy, List<Event>> ordered = new LinkedHashMap<EventHandlerProxy, List<Event>>();
+        for ( final Map.Entry<EventHandlerProxy, List<Event>> entry : batch.entrySet() )
+        {
+            if ( entry.getKey().isAsyncOrderedDelivery() )
+            {
+                ordered.put(entry.getKey(), entry.getValue());
             }
             else
             {
-                hasOrdered = true;
+                this.executeUnordered(new UnorderedTask(m_deliver_task, entry.getKey(), entry.getValue()));
             }
+        }
+
+        if ( !ordered.isEmpty() )
+        {
+            this.enqueue(new TaskInfo(null, null, ordered));
+        }
+    }
 
+    /**
+     * Append the task to the queue of the current thread and start the
+     * executer if it is not running. If the queue is full, the configured
+     * overflow policy is applied.
+     */
+    private void enqueue(final TaskInfo info)
+    {
+        final Long currentThreadId = Thread.currentThread().getId();
+        TaskExecuter executer = m_running_threads.get(currentThreadId);
+        if ( executer == null )
+        {
+            executer = new TaskExecuter(currentThreadId, m_running_threads, m_queueDepth);
         }
-        if ( hasOrdered )
-        {*/
-            final TaskInfo info = new TaskInfo(tasks, event);
-            final Long currentThreadId = Thread.currentThread().getId();
-            TaskExecuter executer = m_running_threads.get(currentThreadId);
-            if ( executer == null )
+        final int queueSize = m_queueSize;
+        boolean enqueue = true;
+        synchronized ( executer )
+        {
+            if ( queueSize > 0 && executer.size() >= queueSize )
             {
-                executer = new TaskExecuter(currentThreadId, m_running_threads);
+                switch ( m_overflowPolicy )
+                {
+                    case DROP_NEWEST:
+                        m_dropped.incrementAndGet();
+                        return;
+
+                    case DROP_OLDEST:
+                        executer.removeFirst();
+                        m_dropped.incrementAndGet();
+                        break;
+
+                    case SYNC:
+                        m_deliveredSynchronously.incrementAndGet();
+                        // the posting thread delivers the event itself
+                        enqueue = false;
+                        break;
+
+                    default:
+                        executer.awaitSpace(queueSize);
+                }
             }
-            synchronized ( executer )
+            if ( enqueue )
             {
                 executer.add(info);
                 if ( !executer.isActive() )
@@ -105,19 +282,104 @@ public class AsyncDeliverTasks
                     }
                     m_running_threads.put(currentThreadId, executer);
                 }
+                return;
+            }
+        }
+        info.deliver(m_deliver_task);
+    }
+
+    /**
+     * Hands off the event to each handler not requiring ordered delivery
+     * in a separate task and returns the handlers requiring ordered delivery.
+     */
+    private Collection<EventHandlerProxy> executeUnordered(final Collection<EventHandlerProxy> tasks, final Event event)
+    {
+        final List<EventHandlerProxy> ordered = new ArrayList<EventHandlerProxy>(tasks.size());
+        for ( final EventHandlerProxy task : tasks )
+        {
+            if ( task.isAsyncOrderedDelivery() )
+            {
+                ordered.add(task);
+            }
+            else
+            {
+                this.executeUnordered(new UnorderedTask(m_deliver_task, task, Collections.singletonList(event)));
+            }
+        }
+        return ordered;
+    }
+
+    private void executeUnordered(final UnorderedTask unordered)
+    {
+        if ( !m_pool.executeTask(unordered) )
+        {
+            // scheduling failed: last resort, call directly
+            unordered.run();
+        }
+    }
+
+    /**
+     * Delivers events to a single handler not requiring ordered delivery.
+     * The events are delivered by the pool thread running this task: as
+     * no other thread waits for the delivery, a handler exceeding the
+     * timeout is denied once its call returns.
+     */
+    private final static class UnorderedTask implements Runnable
+    {
+        private final SyncDeliverTasks m_deliver_task;
+
+        private final EventHandlerProxy handler;
+
+        private final List<Event> events;
+
+        public UnorderedTask(final SyncDeliverTasks deliverTask, final EventHandlerProxy handler, final List<Event> events)
+        {
+            this.m_deliver_task = deliverTask;
+            this.handler = handler;
+            this.events = events;
+        }
+
+        @Override
+        public void run()
+        {
+            final long timeout = m_deliver_task.getTimeout();
+            final HandlerTask task = new HandlerTask(handler, events, timeout, new DenylistLatch(1, timeout/2));
+            if ( task.useTimeout() )
+            {
+                task.run();
+            }
+            else
+            {
+                task.runWithoutDenylistTiming();
             }
-        //}
+        }
     }
 
     private final static class TaskInfo {
         public final Collection<EventHandlerProxy> tasks;
         public final Event event;
 
+        /** The events keyed by handler if this is a batch. */
+        public final Map<EventHandlerProxy, List<Event>> batch;
+
         public TaskInfo next;
 
-        public TaskInfo(final Collection<EventHandlerProxy> tasks, final Event event) {
+        public TaskInfo(final Collection<EventHandlerProxy> tasks, final Event event,
+                final Map<EventHandlerProxy, List<Event>> batch) {
             this.tasks = tasks;
             this.event = event;
+            this.batch = batch;
+        }
+
+        public void deliver(final SyncDeliverTasks deliverTask) {
+            if ( this.batch != null )
+            {
+                deliverTask.execute(this.batch);
+            }
+            else
+            {
+                deliverTask.execute(this.tasks, this.event, true);
+            }
         }
     }
 
@@ -132,9 +394,17 @@ public class AsyncDeliverTasks
 
         private final long threadId;
 
-        public TaskExecuter(final long threadId, final Map<Long, TaskExecuter> runningThreads) {
+        /** The number of pending entries of all executers. */
+        private final AtomicInteger m_queueDepth;
+
+        /** The number of pending entries, guarded by this. */
+        private int size;
+
+        public TaskExecuter(final long threadId, final Map<Long, TaskExecuter> runningThreads,
+                final AtomicInteger queueDepth) {
             m_running_threads = runningThreads;
             this.threadId = threadId;
+            m_queueDepth = queueDepth;
         }
 
         public boolean isActive()
@@ -156,14 +426,11 @@ public class AsyncDeliverTasks
                 TaskInfo info = null;
                 synchronized ( this )
                 {
-                    info = first;
-                    first = info.next;
-                    if ( first == null )
-                    {
-                        last = null;
-                    }
+                    info = this.removeFirst();
+                    // wake up publishers waiting for space
+                    this.notifyAll();
                 }
-                m_deliver_task.execute(info.tasks, info.event, true);
+                info.deliver(m_deliver_task);
                 synchronized ( this )
                 {
                     running = first != null;
@@ -188,6 +455,49 @@ public class AsyncDeliverTasks
                 last.next = info;
                 last = info;
             }
+            size++;
+            m_queueDepth.incrementAndGet();
+        }
+
+        public TaskInfo removeFirst()
+        {
+            final TaskInfo info = first;
+            first = info.next;
+            if ( first == null )
+            {
+                last = null;
+            }
+            size--;
+            m_queueDepth.decrementAndGet();
+            return info;
+        }
+
+        public int size()
+        {
+            return size;
+        }
+
+        /**
+         * Wait until the number of pending entries is below the limit.
+         * Must be called while holding the lock of this executer.
+         */
+        public void awaitSpace(final int limit)
+        {
+            while ( size >= limit && this.isActive() )
+            {
+                try
+                {
+                    this.wait();
+                }
+                catch (final InterruptedException e)
+                {
+                    // exceed the limit rather than losing the event
+                    Thread.currentThread().interrupt();
+                    LogWrapper.getLogger().log(LogWrapper.LOG_WARNING,
+                            "Interrupted while waiting for space in the event queue.");
+                    return;
+                }
+            }
         }
     }
 }
@@ -18,6 +18,9 @@
  */
 package org.apache.felix.eventadmin.impl.tasks;
 
+import java.util.Collections;
+import java.util.List;
+
 import org.apache.felix.eventadmin.impl.handler.EventHandlerProxy;
 import org.osgi.service.event.Event;
 
@@ -29,7 +32,7 @@ public class HandlerTask implements Runnable
 {
 	private final EventHandlerProxy task;
 
-	private final Event event;
+	private final List<Event> events;
 
 	private final long timeout;
 
@@ -48,9 +51,23 @@ public class HandlerTask implements Runnable
 	 * @param handlerLatch The latch used to ensure events fire in proper order
 	 */
 	public HandlerTask(final EventHandlerProxy task, final Event event, final long timeout, final DenylistLatch handlerLatch)
+	{
+		this(task, Collections.singletonList(event), timeout, handlerLatch);
+	}
+
+	/**
+	 * Create a task delivering several events, one after the other, to
+	 * the same handler. The timeout applies to each single event.
+	 *
+	 * @param task Proxy to the event handler
+	 * @param events The events to send to the handler in order
+	 * @param timeout Timeout for handler denying
+	 * @param handlerLatch The latch used to ensure events fire in proper order
+	 */
+	public HandlerTask(final EventHandlerProxy task, final List<Event> events, final long timeout, final DenylistLatch handlerLatch)
 	{
 		this.task = task;
-		this.event = event;
+		this.events = events;
 		this.timeout = timeout;
 		this.handlerLatch = handlerLatch;
 		this.startTime = -1l;
@@ -65,11 +82,20 @@ public class HandlerTask implements Runnable
     {
         try
         {
-            startTime = System.currentTimeMillis();
-            // execute the task
-            task.sendEvent(event);
-            endTime = System.currentTimeMillis();
-            checkForDenylist();
+            for(final Event event : this.events)
+            {
+                // a handler denied during a batch does not get the remaining events
+                if ( task.isDenied() )
+                {
+                    break;
+                }
+                endTime = -1l;
+                startTime = System.currentTimeMillis();
+                // execute the task
+                task.sendEvent(event);
+                endTime = System.currentTimeMillis();
+                checkForDenylist();
+            }
         }
         finally
         {
@@ -79,7 +105,10 @@ public class HandlerTask implements Runnable
 
     public void runWithoutDenylistTiming()
     {
-    	task.sendEvent(event);
+        for(final Event event : this.events)
+        {
+            task.sendEvent(event);
+        }
     	handlerLatch.countDown();
     }
 
@@ -20,6 +20,8 @@ package org.apache.felix.eventadmin.impl.tasks;
 
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 
 import org.apache.felix.eventadmin.impl.handler.EventHandlerProxy;
 import org.osgi.service.event.Event;
@@ -78,6 +80,14 @@ public class SyncDeliverTasks
         this.timeout = timeout;
     }
 
+    /**
+     * The configured timeout
+     */
+    public long getTimeout()
+    {
+        return this.timeout;
+    }
+
     /**
      * This blocks an unrelated thread used to send a synchronous event until the
      * event is send (or a timeout occurs).
@@ -99,30 +109,57 @@ public class SyncDeliverTasks
             HandlerTask handlerTask = new HandlerTask(task, event, this.timeout, handlerLatch);
 //            if ( !filterAsyncUnordered || task.isAsyncOrderedDelivery() )
 //            {
-                if( !handlerTask.useTimeout() )
-                {
-                	handlerTask.runWithoutDenylistTiming();
-                }
-            	else if ( syncThread != null  )
-                {
-                    // if this is a cascaded event, we directly use this thread
-                    // otherwise we could end up in a starvation
-                    handlerTask.run();
-                }
-                else
-                {
-
-                	handlerLatch.addToDenylistCheck(handlerTask);
-                    if ( !this.pool.executeTask(handlerTask) )
-                    {
-                        // scheduling failed: last resort, call directly
-                        handlerTask.run();
-                    }
-                }
-
+                this.run(handlerTask, handlerLatch, syncThread);
 //            }
         }
         handlerLatch.awaitAndDenylistCheck();
 
     }
+
+    /**
+     * This blocks the calling thread until each handler received all of
+     * its events (or a timeout occurs). Each handler gets its events in
+     * the given order by a single task, the handlers are processed in
+     * the same way as for a single event.
+     *
+     * @param batch The events to deliver keyed by the handler
+     */
+    public void execute(final Map<EventHandlerProxy, List<Event>> batch)
+    {
+        final Thread sleepingThread = Thread.currentThread();
+        final SyncThread syncThread = sleepingThread instanceof SyncThread ? (SyncThread)sleepingThread : null;
+
+        final DenylistLatch handlerLatch = new DenylistLatch(batch.size(), this.timeout/2);
+
+        for ( final Map.Entry<EventHandlerProxy, List<Event>> entry : batch.entrySet() )
+        {
+            this.run(new HandlerTask(entry.getKey(), entry.getValue(), this.timeout, handlerLatch),
+                    handlerLatch, syncThread);
+        }
+        handlerLatch.awaitAndDenylistCheck();
+    }
+
+    private void run(final HandlerTask handlerTask, final DenylistLatch handlerLatch, final SyncThread syncThread)
+    {
+        if( !handlerTask.useTimeout() )
+        {
+            handlerTask.runWithoutDenylistTiming();
+        }
+        else if ( syncThread != null  )
+        {
+            // if this is a cascaded event, we directly use this thread
+            // otherwise we could end up in a starvation
+            handlerTask.run();
+        }
+        else
+        {
+
+            handlerLatch.addToDenylistCheck(handlerTask);
+            if ( !this.pool.executeTask(handlerTask) )
+            {
+                // scheduling failed: last resort, call directly
+                handlerTask.run();
+            }
+        }
+    }
 }
@@ -0,0 +1,159 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.eventadmin.impl.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock free histogram of latencies in microseconds.
+ *
+ * Values are recorded into log-linear buckets: the values from 0 to 7 have
+ * their own bucket, and each further power of two range is split into
+ * eight buckets. This bounds the relative error of a bucket to 12.5 percent
+ * while the complete histogram is a fixed array of a few hundred counters.
+ * Recording a value is a couple of atomic increments.
+ */
+public class LatencyHistogram
+{
+    /** The number of bits used to split a power of two range. */
+    private static final int SUB_BUCKET_BITS = 3;
+
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /** The highest value tracked, about 19 hours. Larger values are clamped. */
+    static final long MAX_VALUE = (1L << 36) - 1;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(getBucketIndex(MAX_VALUE) + 1);
+
+    private final AtomicLong count = new AtomicLong();
+
+    private final AtomicLong total = new AtomicLong();
+
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Record a latency.
+     *
+     * @param micros The latency in microseconds
+     */
+    public void record(final long micros)
+    {
+        final long value = micros < 0 ? 0 : (micros > MAX_VALUE ? MAX_VALUE : micros);
+        this.buckets.incrementAndGet(getBucketIndex(value));
+        this.count.incrementAndGet();
+        this.total.addAndGet(value);
+
+        long current = this.max.get();
+        while ( value > current && !this.max.compareAndSet(current, value) )
+        {
+            current = this.max.get();
+        }
+    }
+
+    /**
+     * The number of recorded values.
+     */
+    public long getCount()
+    {
+        return this.count.get();
+    }
+
+    /**
+     * The sum of all recorded values.
+     */
+    public long getTotal()
+    {
+        return this.total.get();
+    }
+
+    /**
+     * The highest recorded value.
+     */
+    public long getMax()
+    {
+        return this.max.get();
+    }
+
+    /**
+     * The upper bound of the bucket containing the value at the percentile.
+     *
+     * @param percentile The percentile, between 0 and 100
+     * @return The value or 0 if nothing has been recorded
+     */
+    public long getPercentile(final double percentile)
+    {
+        final long recorded = this.count.get();
+        if ( recorded == 0 )
+        {
+            return 0;
+        }
+        final double p = percentile < 0 ? 0 : (percentile > 100 ? 100 : percentile);
+        final long rank = Math.max(1, (long)Math.ceil(recorded * p / 100));
+
+        long seen = 0;
+        for(int i = 0; i < this.buckets.length(); i++)
+        {
+            seen += this.buckets.get(i);
+            if ( seen >= rank )
+            {
+                return Math.min(getBucketUpperBound(i), this.max.get());
+            }
+        }
+        // concurrent recording, the buckets are ahead of the count
+        return this.max.get();
+    }
+
+    /**
+     * Reset all values. Values recorded concurrently might get lost.
+     */
+    public void reset()
+    {
+        for(int i = 0; i < this.buckets.length(); i++)
+        {
+            this.buckets.set(i, 0);
+        }
+        this.count.set(0);
+        this.total.set(0);
+        this.max.set(0);
+    }
+
+    static int getBucketIndex(final long value)
+    {
+        if ( value < SUB_BUCKETS )
+        {
+            return (int)value;
+        }
+        final int exponent = 63 - Long.numberOfLeadingZeros(value);
+        final int shift = exponent - SUB_BUCKET_BITS;
+        final int subBucket = (int)(value >>> shift) & (SUB_BUCKETS - 1);
+        return (shift + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long getBucketUpperBound(final int index)
+    {
+        if ( index < SUB_BUCKETS )
+        {
+            return index;
+        }
+        final int shift = index / SUB_BUCKETS - 1;
+        final long subBucket = index % SUB_BUCKETS;
+        return ((SUB_BUCKETS + subBucket + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,285 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.felix.eventadmin.impl.tasks;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.felix.eventadmin.impl.handler.EventHandlerProxy;
+import org.apache.felix.eventadmin.impl.tasks.AsyncDeliverTasks.OverflowPolicy;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.osgi.service.event.Event;
+
+public class AsyncDeliverTasksTest
+{
+    private static final int QUEUE_SIZE = 2;
+
+    private DefaultThreadPool pool;
+
+    private AsyncDeliverTasks tasks;
+
+    private BlockingHandler handler;
+
+    @Before public void setUp()
+    {
+        pool = new DefaultThreadPool(4, false);
+        tasks = new AsyncDeliverTasks(pool, new SyncDeliverTasks(pool, 0));
+        handler = new BlockingHandler(true);
+    }
+
+    @After public void tearDown()
+    {
+        handler.release();
+        pool.close();
+    }
+
+    @Test public void testBlock() throws Exception
+    {
+        tasks.update(QUEUE_SIZE, OverflowPolicy.BLOCK);
+        final AtomicInteger posted = new AtomicInteger();
+        final Thread poster = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                fillQueue();
+                posted.set(QUEUE_SIZE + 1);
+                post("e3");
+                posted.incrementAndGet();
+            }
+        };
+        poster.start();
+
+        // the poster waits for space while the handler is blocked
+        final long end = System.currentTimeMillis() + 5000;
+        while ( poster.getState() != Thread.State.WAITING && System.currentTimeMillis() < end )
+        {
+            Thread.sleep(10);
+        }
+        assertEquals(Thread.State.WAITING, poster.getState());
+        assertEquals(QUEUE_SIZE + 1, posted.get());
+        assertEquals(QUEUE_SIZE, tasks.getQueueDepth());
+
+        handler.release();
+        poster.join(5000);
+        assertEquals(QUEUE_SIZE + 2, posted.get());
+        assertEquals(Arrays.asList("e0", "e1", "e2", "e3"), handler.awaitDelivered(4));
+        assertEquals(0, tasks.getDroppedCount());
+    }
+
+    @Test public void testDropOldest() throws Exception
+    {
+        tasks.update(QUEUE_SIZE, OverflowPolicy.DROP_OLDEST);
+        fillQueue();
+        post("e3");
+        assertEquals(1, tasks.getDroppedCount());
+        assertEquals(QUEUE_SIZE, tasks.getQueueDepth());
+
+        handler.release();
+        assertEquals(Arrays.asList("e0", "e2", "e3"), handler.awaitDelivered(3));
+    }
+
+    @Test public void testDropNewest() throws Exception
+    {
+        tasks.update(QUEUE_SIZE, OverflowPolicy.DROP_NEWEST);
+        fillQueue();
+        post("e3");
+        assertEquals(1, tasks.getDroppedCount());
+        assertEquals(QUEUE_SIZE, tasks.getQueueDepth());
+
+        handler.release();
+        assertEquals(Arrays.asList("e0", "e1", "e2"), handler.awaitDelivered(3));
+    }
+
+    @Test public void testSync() throws Exception
+    {
+        tasks.update(QUEUE_SIZE, OverflowPolicy.SYNC);
+        fillQueue();
+        post("e3");
+        assertEquals(1, tasks.getDeliveredSynchronouslyCount());
+        assertEquals(0, tasks.getDroppedCount());
+        // delivered before the queued events by the posting thread
+        assertEquals(Arrays.asList("e0", "e3"), handler.getDelivered());
+        assertSame(Thread.currentThread(), handler.getThread("e3"));
+
+        handler.release();
+        assertEquals(Arrays.asList("e0", "e3", "e1", "e2"), handler.awaitDelivered(4));
+        assertNotSame(Thread.currentThread(), handler.getThread("e1"));
+    }
+
+    @Test public void testNoLimit() throws Exception
+    {
+        tasks.update(0, OverflowPolicy.DROP_NEWEST);
+        fillQueue();
+        for ( int i = 3; i < 10; i++ )
+        {
+            post("e" + i);
+        }
+        assertEquals(9, tasks.getQueueDepth());
+
+        handler.release();
+        assertEquals(10, handler.awaitDelivered(10).size());
+        assertEquals(0, tasks.getDroppedCount());
+    }
+
+    @Test public void testUnorderedOnSinglePoolThread() throws Exception
+    {
+        // the task delivering to the handler must not need a second pool thread
+        pool.configure(1);
+        tasks = new AsyncDeliverTasks(pool, new SyncDeliverTasks(pool, 1000));
+        final BlockingHandler unordered = new BlockingHandler(false);
+        unordered.release();
+        tasks.execute(Collections.singletonList((EventHandlerProxy) unordered),
+                new Event("u0", (Map<String, ?>) null));
+
+        assertEquals(Arrays.asList("u0"), unordered.awaitDelivered(1));
+        assertNotSame(Thread.currentThread(), unordered.getThread("u0"));
+    }
+
+    /**
+     * Posts an event the handler blocks on, then fills the queue.
+     */
+    private void fillQueue()
+    {
+        post("e0");
+        handler.awaitBlocked();
+        for ( int i = 1; i <= QUEUE_SIZE; i++ )
+        {
+            post("e" + i);
+        }
+    }
+
+    private void post(final String topic)
+    {
+        tasks.execute(Collections.singletonList((EventHandlerProxy) handler),
+                new Event(topic, (Map<String, ?>) null));
+    }
+
+    /**
+     * A handler using a timeout, blocking on the first event until released.
+     */
+    private static final class BlockingHandler extends EventHandlerProxy
+    {
+        private final boolean ordered;
+
+        private final CountDownLatch blocked = new CountDownLatch(1);
+
+        private final CountDownLatch released = new CountDownLatch(1);
+
+        private final List<String> topics = new ArrayList<String>();
+
+        private final Map<String, Thread> threads = new ConcurrentHashMap<String, Thread>();
+
+        BlockingHandler(final boolean ordered)
+        {
+            super(null, null);
+            this.ordered = ordered;
+        }
+
+        @Override
+        public boolean isAsyncOrderedDelivery()
+        {
+            return ordered;
+        }
+
+        @Override
+        public boolean useTimeout()
+        {
+            return true;
+        }
+
+        @Override
+        public void sendEvent(final Event event)
+        {
+            threads.put(event.getTopic(), Thread.currentThread());
+            synchronized ( topics )
+            {
+                topics.add(event.getTopic());
+                topics.notifyAll();
+            }
+            if ( blocked.getCount() > 0 )
+            {
+                blocked.countDown();
+                try
+                {
+                    released.await(5, TimeUnit.SECONDS);
+                }
+                catch (final InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        void awaitBlocked()
+        {
+            try
+            {
+                assertTrue(blocked.await(5, TimeUnit.SECONDS));
+            }
+            catch (final InterruptedException e)
+            {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        void release()
+        {
+            released.countDown();
+        }
+
+        Thread getThread(final String topic)
+        {
+            return threads.get(topic);
+        }
+
+        List<String> getDelivered()
+        {
+            synchronized ( topics )
+            {
+                return new ArrayList<String>(topics);
+            }
+        }
+
+        List<String> awaitDelivered(final int count) throws InterruptedException
+        {
+            final long end = System.currentTimeMillis() + 5000;
+            synchronized ( topics )
+            {
+                while ( topics.size() < count && System.currentTimeMillis() < end )
+                {
+                    topics.wait(100);
+                }
+                return new ArrayList<String>(topics);
+            }
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.felix.eventadmin.impl.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+    @Test public void testBucketBounds()
+    {
+        long previous = -1;
+        for(long value = 0; value < 100000; value++)
+        {
+            final int index = LatencyHistogram.getBucketIndex(value);
+            final long upper = LatencyHistogram.getBucketUpperBound(index);
+            assertTrue(value <= upper);
+            assertTrue(upper - value <= value / 8);
+            if ( index > 0 )
+            {
+                assertTrue(value > LatencyHistogram.getBucketUpperBound(index - 1));
+            }
+            assertTrue(upper >= previous);
+            previous = upper;
+        }
+        assertEquals(LatencyHistogram.MAX_VALUE,
+                LatencyHistogram.getBucketUpperBound(LatencyHistogram.getBucketIndex(LatencyHistogram.MAX_VALUE)));
+    }
+
+    @Test public void testEmpty()
+    {
+        final LatencyHistogram h = new LatencyHistogram();
+        assertEquals(0, h.getCount());
+        assertEquals(0, h.getMax());
+        assertEquals(0, h.getPercentile(99));
+    }
+
+    @Test public void testPercentiles()
+    {
+        final LatencyHistogram h = new LatencyHistogram();
+        for(int i = 1; i <= 1000; i++)
+        {
+            h.record(i);
+        }
+        assertEquals(1000, h.getCount());
+        assertEquals(500500, h.getTotal());
+        assertEquals(1000, h.getMax());
+
+        final long p50 = h.getPercentile(50);
+        assertTrue(p50 >= 500 && p50 <= 500 * 9 / 8);
+        final long p99 = h.getPercentile(99);
+        assertTrue(p99 >= 990 && p99 <= 1000);
+        assertEquals(1000, h.getPercentile(100));
+        assertEquals(1, h.getPercentile(0));
+    }
+
+    @Test public void testClampAndReset()
+    {
+        final LatencyHistogram h = new LatencyHistogram();
+        h.record(-5);
+        h.record(Long.MAX_VALUE);
+        assertEquals(2, h.getCount());
+        assertEquals(LatencyHistogram.MAX_VALUE, h.getMax());
+        assertEquals(0, h.getPercentile(50));
+
+        h.reset();
+        assertEquals(0, h.getCount());
+        assertEquals(0, h.getTotal());
+        assertEquals(0, h.getMax());
+    }
+}
@@ -29,6 +29,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Dictionary;
 import java.util.Hashtable;
+import java.util.List;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ThreadPoolExecutor;
@@ -37,6 +38,7 @@ import java.util.concurrent.atomic.AtomicLong;
 
 import javax.inject.Inject;
 
+import org.apache.felix.eventadmin.BatchEventAdmin;
 import org.junit.After;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -274,6 +276,79 @@ public class PerformanceTestIT {
         logger.info("Post Avg: "+average / RUNS);
     }
 
+    @Test
+    public void measureThroughputPostBatch() {
+        loadEventAdmin();
+        final BatchEventAdmin batchEventAdmin = bundleContext.getService(
+                bundleContext.getServiceReference(BatchEventAdmin.class));
+        final int chunkSize = 100;
+
+        long averageSingle = 0;
+        long averageBatch = 0;
+        for (int runs = 0; runs < RUNS;runs ++) {
+            // per event posting
+            final String singleTopic = "single/topic" + runs;
+            final CountDownLatch singleLatch = new CountDownLatch(BATCH_SIZE);
+            addListener(new Listener() {
+                @Override
+                public void handleEvent(Event event) {
+                    singleLatch.countDown();
+                }
+            }, singleTopic);
+
+            long startTime = System.nanoTime();
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                final Hashtable<String,Object> localProperties = new Hashtable<String, Object>();
+                localProperties.put("key", i);
+                eventAdmin.postEvent(new Event(singleTopic, localProperties));
+            }
+            try {
+                singleLatch.await();
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+            long milliseconds = (System.nanoTime() - startTime) / 1000000;
+            logger.info("Post Run "+runs+" Elapsed :" + milliseconds);
+            averageSingle += milliseconds;
+
+            // batched posting
+            final String batchTopic = "batch/topic" + runs;
+            final CountDownLatch batchLatch = new CountDownLatch(BATCH_SIZE);
+            addListener(new Listener() {
+                @Override
+                public void handleEvent(Event event) {
+                    batchLatch.countDown();
+                }
+            }, batchTopic);
+
+            startTime = System.nanoTime();
+            List<Event> events = new ArrayList<Event>(chunkSize);
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                final Hashtable<String,Object> localProperties = new Hashtable<String, Object>();
+                localProperties.put("key", i);
+                events.add(new Event(batchTopic, localProperties));
+                if (events.size() == chunkSize) {
+                    batchEventAdmin.postEvents(events);
+                    events = new ArrayList<Event>(chunkSize);
+                }
+            }
+            if (!events.isEmpty()) {
+                batchEventAdmin.postEvents(events);
+            }
+            try {
+                batchLatch.await();
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+            milliseconds = (System.nanoTime() - startTime) / 1000000;
+            logger.info("Post Batch Run "+runs+" Elapsed :" + milliseconds);
+            averageBatch += milliseconds;
+        }
+
+        logger.info("Post Avg: "+averageSingle / RUNS);
+        logger.info("Post Batch (" + chunkSize + " events) Avg: "+averageBatch / RUNS);
+    }
+
     @After
     public void tearDown() {
         for (Listener listener : listeners) {
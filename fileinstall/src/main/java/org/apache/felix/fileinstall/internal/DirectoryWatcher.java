@@ -30,6 +30,8 @@ import java.net.URL;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -39,10 +41,21 @@ import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.jar.JarInputStream;
 import java.util.jar.Manifest;
 import java.util.regex.Pattern;
+import java.util.zip.CRC32;
 
 import org.apache.felix.fileinstall.ArtifactInstaller;
 import org.apache.felix.fileinstall.ArtifactListener;
@@ -91,6 +104,7 @@ public class DirectoryWatcher extends Thread implements BundleListener
 {
     public final static String FILENAME = "felix.fileinstall.filename";
     public final static String POLL = "felix.fileinstall.poll";
+    public final static String DEBOUNCE = "felix.fileinstall.debounce";
     public final static String DIR = "felix.fileinstall.dir";
     public final static String LOG_LEVEL = "felix.fileinstall.log.level";
     public final static String LOG_DEFAULT = "felix.fileinstall.log.default";
@@ -110,6 +124,8 @@ public class DirectoryWatcher extends Thread implements BundleListener
     public final static String FRAGMENT_SCOPE = "felix.fileinstall.fragmentRefreshScope";
     public final static String DISABLE_NIO2 = "felix.fileinstall.disableNio2";
     public final static String SUBDIR_MODE = "felix.fileinstall.subdir.mode";
+    public final static String INSTALL_THREADS = "felix.fileinstall.install.threads";
+    public final static String PERSIST_SCAN_STATE = "felix.fileinstall.persistScanState";
 
     public final static String SCOPE_NONE = "none";
     public final static String SCOPE_MANAGED = "managed";
@@ -124,6 +140,7 @@ public class DirectoryWatcher extends Thread implements BundleListener
     File watchedDirectory;
     File tmpDir;
     long poll;
+    long debounce;
     int logLevel;
     boolean startBundles;
     boolean useStartTransient;
@@ -139,8 +156,25 @@ public class DirectoryWatcher extends Thread implements BundleListener
     String fragmentScope;
     String optionalScope;
     boolean disableNio2;
+    int installThreads;
+    boolean persistScanState;
     int frameworkStartLevel;
 
+    // File holding the persisted scan state, null when not persisted
+    File scanStateFile;
+
+    // Pool used to transform, install and start artifacts concurrently, null when processing sequentially
+    ExecutorService executor;
+
+    // Serializes the calls to artifact installers, which are not required to be thread safe
+    private final Object installerLock = new Object();
+
+    // Serializes the writes of the scan state, done by both the watcher thread and close()
+    private final Object scanStateLock = new Object();
+
+    // Serializes the installation of bundles sharing the same symbolic name
+    private final ConcurrentMap<String, Object> installLocks = new ConcurrentHashMap<String, Object>();
+
     // Map of all installed artifacts
     final Map<File, Artifact> currentManagedArtifacts = new HashMap<File, Artifact>();
 
@@ -157,12 +191,15 @@ public class DirectoryWatcher extends Thread implements BundleListener
     Set<Bundle> consistentlyFailingBundles = new HashSet<Bundle>();
 
     // Represents artifacts that could not be installed
-    final Map<File, Artifact> installationFailures = new HashMap<File, Artifact>();
+    final Map<File, Artifact> installationFailures = Collections.synchronizedMap(new HashMap<File, Artifact>());
 
     // flag (acces to which must be synchronized) that indicates wheter there's a change in state of system,
     // which may result in an attempt to start the watched bundles
     private AtomicBoolean stateChanged = new AtomicBoolean();
 
+    // set (under this object's lock) when the scanner reports changes between two scans
+    private boolean filesChanged;
+
     public DirectoryWatcher(FileInstall fileInstall, Map<String, String> properties, BundleContext context)
     {
         super("fileinstall-" + getThreadName(properties));
@@ -171,6 +208,7 @@ public class DirectoryWatcher extends Thread implements BundleListener
         this.context = context;
         systemBundle = context.getBundle(Constants.SYSTEM_BUNDLE_LOCATION);
         poll = getLong(properties, POLL, 2000);
+        debounce = getLong(properties, DEBOUNCE, 100);
         logLevel = getInt(properties, LOG_LEVEL, Util.getGlobalLogLevel(context));
         originatingFileName = properties.get(FILENAME);
         watchedDirectory = getFile(properties, DIR, new File("./load"));
@@ -188,6 +226,29 @@ public class DirectoryWatcher extends Thread implements BundleListener
         fragmentScope = properties.get(FRAGMENT_SCOPE);
         optionalScope = properties.get(OPTIONAL_SCOPE);
         disableNio2 = getBoolean(properties, DISABLE_NIO2, false);
+        installThreads = getInt(properties, INSTALL_THREADS, 1); // by default, process artifacts sequentially
+        persistScanState = getBoolean(properties, PERSIST_SCAN_STATE, false);
+        if (persistScanState)
+        {
+            CRC32 crc = new CRC32();
+            crc.update(watchedDirectory.getAbsolutePath().getBytes());
+            scanStateFile = context.getDataFile("scanstate-" + Long.toHexString(crc.getValue()));
+        }
+        if (installThreads > 1)
+        {
+            final String name = "fileinstall-" + getThreadName(properties) + "-installer-";
+            executor = Executors.newFixedThreadPool(installThreads, new ThreadFactory()
+            {
+                private final AtomicInteger count = new AtomicInteger();
+
+                public Thread newThread(Runnable r)
+                {
+                    Thread thread = new Thread(r, name + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
         this.context.addBundleListener(this);
 
         if (disableNio2) {
@@ -277,11 +338,14 @@ public class DirectoryWatcher extends Thread implements BundleListener
         try {
             log(Logger.LOG_DEBUG,
                     "{" + POLL + " (ms) = " + poll + ", "
+                            + DEBOUNCE + " (ms) = " + debounce + ", "
                             + DIR + " = " + watchedDirectory.getAbsolutePath() + ", "
                             + LOG_LEVEL + " = " + logLevel + ", "
                             + START_NEW_BUNDLES + " = " + startBundles + ", "
                             + TMPDIR + " = " + tmpDir + ", "
                             + FILTER + " = " + filter + ", "
+                            + INSTALL_THREADS + " = " + installThreads + ", "
+                            + PERSIST_SCAN_STATE + " = " + persistScanState + ", "
                             + START_LEVEL + " = " + startLevel + "}", null
             );
 
@@ -302,6 +366,16 @@ public class DirectoryWatcher extends Thread implements BundleListener
             fileInstall.lock.readLock().unlock();
         }
 
+        // With a watch service, changes wake us up instead of waiting for the next poll
+        scanner.setChangeListener(new Runnable() {
+            public void run() {
+                synchronized (DirectoryWatcher.this) {
+                    filesChanged = true;
+                    DirectoryWatcher.this.notifyAll();
+                }
+            }
+        }, debounce);
+
         while (!interrupted()) {
             try {
                 FrameworkStartLevel startLevelSvc = systemBundle.adapt(FrameworkStartLevel.class);
@@ -317,7 +391,11 @@ public class DirectoryWatcher extends Thread implements BundleListener
                     }
                 }
                 synchronized (this) {
-                    wait(poll);
+                    if (!filesChanged) {
+                        // files still being modified are checked again once the debounce period has elapsed
+                        wait(scanner.hasPendingChanges() ? debounce : poll);
+                    }
+                    filesChanged = false;
                 }
             } catch (InterruptedException e) {
                 interrupt();
@@ -372,10 +450,10 @@ public class DirectoryWatcher extends Thread implements BundleListener
 
     private void doProcess(Set<File> files) throws InterruptedException
     {
-        List<ArtifactListener> listeners = fileInstall.getListeners();
-        List<Artifact> deleted = new ArrayList<Artifact>();
-        List<Artifact> modified = new ArrayList<Artifact>();
-        List<Artifact> created = new ArrayList<Artifact>();
+        final List<ArtifactListener> listeners = fileInstall.getListeners();
+        final List<Artifact> deleted = Collections.synchronizedList(new ArrayList<Artifact>());
+        final List<Artifact> modified = Collections.synchronizedList(new ArrayList<Artifact>());
+        final List<Artifact> created = Collections.synchronizedList(new ArrayList<Artifact>());
 
         // Try to process again files that could not be processed
         synchronized (processingFailures)
@@ -384,109 +462,34 @@ public class DirectoryWatcher extends Thread implements BundleListener
             processingFailures.clear();
         }
 
-        for (File file : files) {
-            boolean exists = file.exists();
-            Artifact artifact = getArtifact(file);
-            // File has been deleted
-            if (!exists) {
-                if (artifact != null) {
-                    deleteJaredDirectory(artifact);
-                    deleteTransformedFile(artifact);
-                    deleted.add(artifact);
-                }
-            }
-            // File exists
-            else {
-                File jar = file;
-                URL jaredUrl = null;
-                try {
-                    jaredUrl = file.toURI().toURL();
-                } catch (MalformedURLException e) {
-                    // Ignore, can't happen
-                }
-                // Jar up the directory if needed
-                if (file.isDirectory()) {
-                    prepareTempDir();
-                    try {
-                        jar = new File(tmpDir, file.getName() + ".jar");
-                        Util.jarDir(file, jar);
-                        jaredUrl = new URL(JarDirUrlHandler.PROTOCOL, null, file.getPath());
-
-                    } catch (IOException e) {
-                        // Notify user of problem, won't retry until the dir is updated.
-                        log(Logger.LOG_ERROR,
-                                "Unable to create jar for: " + file.getAbsolutePath(), e);
-                        continue;
-                    }
-                }
-                // File has been modified
-                if (artifact != null) {
-                    artifact.setChecksum(scanner.getChecksum(file));
-                    // If there's no listener, this is because this artifact has been installed before
-                    // fileinstall has been restarted.  In this case, try to find a listener.
-                    if (artifact.getListener() == null) {
-                        ArtifactListener listener = findListener(jar, listeners);
-                        // If no listener can handle this artifact, we need to defer the
-                        // processing for this artifact until one is found
-                        if (listener == null) {
-                            synchronized (processingFailures) {
-                                processingFailures.add(file);
-                            }
-                            continue;
-                        }
-                        artifact.setListener(listener);
-                    }
-                    // If the listener can not handle this file anymore,
-                    // uninstall the artifact and try as if is was new
-                    if (!listeners.contains(artifact.getListener()) || !artifact.getListener().canHandle(jar)) {
-                        deleted.add(artifact);
-                    }
-                    // The listener is still ok
-                    else {
-                        deleteTransformedFile(artifact);
-                        artifact.setJaredDirectory(jar);
-                        artifact.setJaredUrl(jaredUrl);
-                        if (transformArtifact(artifact)) {
-                            modified.add(artifact);
-                        } else {
-                            deleteJaredDirectory(artifact);
-                            deleted.add(artifact);
-                        }
-                    }
-                }
-                // File has been added
-                else {
-                    // Find the listener
-                    ArtifactListener listener = findListener(jar, listeners);
-                    // If no listener can handle this artifact, we need to defer the
-                    // processing for this artifact until one is found
-                    if (listener == null) {
-                        synchronized (processingFailures) {
-                            processingFailures.add(file);
-                        }
-                        continue;
-                    }
-                    // Create the artifact
-                    artifact = new Artifact();
-                    artifact.setPath(file);
-                    artifact.setJaredDirectory(jar);
-                    artifact.setJaredUrl(jaredUrl);
-                    artifact.setListener(listener);
-                    artifact.setChecksum(scanner.getChecksum(file));
-                    if (transformArtifact(artifact)) {
-                        created.add(artifact);
-                    } else {
-                        deleteJaredDirectory(artifact);
-                    }
+        long t0 = System.nanoTime();
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        for (final File file : files) {
+            tasks.add(new Callable<Void>() {
+                public Void call() {
+                    prepare(file, listeners, deleted, modified, created);
+                    return null;
                 }
-            }
+            });
+        }
+        execute(tasks);
+        if (executor != null) {
+            // keep the order in which artifacts are processed independent of the concurrency
+            sortByPath(deleted);
+            sortByPath(modified);
+            sortByPath(created);
         }
+
         // Handle deleted artifacts
         // We do the operations in the following order:
         // uninstall, update, install, refresh & start.
+        long t1 = System.nanoTime();
         Collection<Bundle> uninstalledBundles = uninstall(deleted);
+        long t2 = System.nanoTime();
         Collection<Bundle> updatedBundles = update(modified);
+        long t3 = System.nanoTime();
         Collection<Bundle> installedBundles = install(created);
+        long t4 = System.nanoTime();
 
         if (!uninstalledBundles.isEmpty() || !updatedBundles.isEmpty() || !installedBundles.isEmpty())
         {
@@ -504,6 +507,7 @@ public class DirectoryWatcher extends Thread implements BundleListener
                 setStateChanged(true);
             }
         }
+        long t5 = System.nanoTime();
 
         if (startBundles) {
             int startLevel = systemBundle.adapt(FrameworkStartLevel.class).getStartLevel();
@@ -525,6 +529,185 @@ public class DirectoryWatcher extends Thread implements BundleListener
                 setStateChanged(false);
             }
         }
+        long t6 = System.nanoTime();
+
+        if (!deleted.isEmpty() || !modified.isEmpty() || !created.isEmpty())
+        {
+            log(Logger.LOG_INFO,
+                "Processed " + deleted.size() + " deleted, " + modified.size() + " modified and "
+                + created.size() + " created artifacts in " + millis(t0, t6) + " ms (prepare: "
+                + millis(t0, t1) + " ms, uninstall: " + millis(t1, t2) + " ms, update: "
+                + millis(t2, t3) + " ms, install: " + millis(t3, t4) + " ms, refresh: "
+                + millis(t4, t5) + " ms, start: " + millis(t5, t6) + " ms)", null);
+            storeScanState();
+        }
+    }
+
+    /**
+     * Jar up, transform and sort a changed file into the deleted, modified or created artifacts.
+     */
+    private void prepare(File file, List<ArtifactListener> listeners,
+                         List<Artifact> deleted, List<Artifact> modified, List<Artifact> created)
+    {
+        boolean exists = file.exists();
+        Artifact artifact = getArtifact(file);
+        // File has been deleted
+        if (!exists) {
+            if (artifact != null) {
+                deleteJaredDirectory(artifact);
+                deleteTransformedFile(artifact);
+                deleted.add(artifact);
+            }
+        }
+        // File exists
+        else {
+            File jar = file;
+            URL jaredUrl = null;
+            try {
+                jaredUrl = file.toURI().toURL();
+            } catch (MalformedURLException e) {
+                // Ignore, can't happen
+            }
+            // Jar up the directory if needed
+            if (file.isDirectory()) {
+                prepareTempDir();
+                try {
+                    jar = new File(tmpDir, file.getName() + ".jar");
+                    Util.jarDir(file, jar);
+                    jaredUrl = new URL(JarDirUrlHandler.PROTOCOL, null, file.getPath());
+
+                } catch (IOException e) {
+                    // Notify user of problem, won't retry until the dir is updated.
+                    log(Logger.LOG_ERROR,
+                            "Unable to create jar for: " + file.getAbsolutePath(), e);
+                    return;
+                }
+            }
+            // File has been modified
+            if (artifact != null) {
+                artifact.setChecksum(scanner.getChecksum(file));
+                // If there's no listener, this is because this artifact has been installed before
+                // fileinstall has been restarted.  In this case, try to find a listener.
+                if (artifact.getListener() == null) {
+                    ArtifactListener listener = findListener(jar, listeners);
+                    // If no listener can handle this artifact, we need to defer the
+                    // processing for this artifact until one is found
+                    if (listener == null) {
+                        synchronized (processingFailures) {
+                            processingFailures.add(file);
+                        }
+                        return;
+                    }
+                    artifact.setListener(listener);
+                }
+                // If the listener can not handle this file anymore,
+                // uninstall the artifact and try as if is was new
+                if (!listeners.contains(artifact.getListener()) || !artifact.getListener().canHandle(jar)) {
+                    deleted.add(artifact);
+                }
+                // The listener is still ok
+                else {
+                    deleteTransformedFile(artifact);
+                    artifact.setJaredDirectory(jar);
+                    artifact.setJaredUrl(jaredUrl);
+                    if (transformArtifact(artifact)) {
+                        modified.add(artifact);
+                    } else {
+                        deleteJaredDirectory(artifact);
+                        deleted.add(artifact);
+                    }
+                }
+            }
+            // File has been added
+            else {
+                // Find the listener
+                ArtifactListener listener = findListener(jar, listeners);
+                // If no listener can handle this artifact, we need to defer the
+                // processing for this artifact until one is found
+                if (listener == null) {
+                    synchronized (processingFailures) {
+                        processingFailures.add(file);
+                    }
+                    return;
+                }
+                // Create the artifact
+                artifact = new Artifact();
+                artifact.setPath(file);
+                artifact.setJaredDirectory(jar);
+                artifact.setJaredUrl(jaredUrl);
+                artifact.setListener(listener);
+                artifact.setChecksum(scanner.getChecksum(file));
+                if (transformArtifact(artifact)) {
+                    created.add(artifact);
+                } else {
+                    deleteJaredDirectory(artifact);
+                }
+            }
+        }
+    }
+
+    /**
+     * Run the given tasks, concurrently if an installation pool has been configured.
+     * Tasks are expected to handle their own failures.
+     */
+    private <T> List<T> execute(List<Callable<T>> tasks) throws InterruptedException
+    {
+        List<T> results = new ArrayList<T>(tasks.size());
+        if (executor == null || tasks.size() < 2)
+        {
+            for (Callable<T> task : tasks)
+            {
+                try
+                {
+                    results.add(task.call());
+                }
+                catch (RuntimeException e)
+                {
+                    throw e;
+                }
+                catch (Exception e)
+                {
+                    throw new RuntimeException(e);
+                }
+            }
+            return results;
+        }
+        for (Future<T> future : executor.invokeAll(tasks))
+        {
+            try
+            {
+                results.add(future.get());
+            }
+            catch (ExecutionException e)
+            {
+                if (e.getCause() instanceof RuntimeException)
+                {
+                    throw (RuntimeException) e.getCause();
+                }
+                if (e.getCause() instanceof Error)
+                {
+                    throw (Error) e.getCause();
+                }
+                throw new RuntimeException(e.getCause());
+            }
+        }
+        return results;
+    }
+
+    private static void sortByPath(List<Artifact> artifacts)
+    {
+        Collections.sort(artifacts, new Comparator<Artifact>()
+        {
+            public int compare(Artifact a1, Artifact a2)
+            {
+                return a1.getPath().compareTo(a2.getPath());
+            }
+        });
+    }
+
+    private static long millis(long start, long end)
+    {
+        return TimeUnit.NANOSECONDS.toMillis(end - start);
     }
 
     ArtifactListener findListener(File artifact, List<ArtifactListener> listeners)
@@ -638,7 +821,7 @@ public class DirectoryWatcher extends Thread implements BundleListener
      */
     private void prepareDir(File dir)
     {
-        if (!dir.exists() && !dir.mkdirs())
+        if (!dir.exists() && !dir.mkdirs() && !dir.isDirectory())
         {
             log(Logger.LOG_ERROR,
                 "Cannot create folder "
@@ -779,6 +962,11 @@ public class DirectoryWatcher extends Thread implements BundleListener
     {
         this.context.removeBundleListener(this);
         interrupt();
+        if (executor != null)
+        {
+            executor.shutdownNow();
+        }
+        storeScanState();
         for (Artifact artifact : getArtifacts()) {
             deleteTransformedFile(artifact);
             deleteJaredDirectory(artifact);
@@ -812,6 +1000,7 @@ public class DirectoryWatcher extends Thread implements BundleListener
         String watchedDirPath = watchedDirectory.toURI().normalize().getPath();
         Map<File, Long> checksums = new HashMap<File, Long>();
         Pattern filePattern = filter == null || filter.isEmpty() ? null : Pattern.compile(filter);
+        Map<File, ScanState.Entry> scanState = ScanState.load(scanStateFile);
         for (Bundle bundle : bundles) {
             // Convert to a URI because the location of a bundle
             // is typically a URI. At least, that's the case for
@@ -859,9 +1048,12 @@ public class DirectoryWatcher extends Thread implements BundleListener
             if (index != -1 && path.startsWith(watchedDirPath)) {
                 final String fileName = path.substring(index + 1);
                 if (filePattern == null || filePattern.matcher(fileName).matches()) {
+                    // The persisted scan state avoids reading the checksum of each bundle
+                    ScanState.Entry entry = scanState.get(new File(path));
                     Artifact artifact = new Artifact();
                     artifact.setBundleId(bundle.getBundleId());
-                    artifact.setChecksum(Util.loadChecksum(bundle, context));
+                    artifact.setChecksum(entry != null && entry.getBundleId() == bundle.getBundleId()
+                            ? entry.getChecksum() : Util.loadChecksum(bundle, context));
                     artifact.setListener(null);
                     artifact.setPath(new File(path));
                     setArtifact(new File(path), artifact);
@@ -869,19 +1061,50 @@ public class DirectoryWatcher extends Thread implements BundleListener
                 }
             }
         }
+        // Artifacts handled by installers are not restored: they are reported by
+        // the first scan and handed again to their installer, which is the only
+        // one to know whether they still need to be installed
         scanner.initialize(checksums);
     }
 
+    /**
+     * Persist the currently managed artifacts, if configured to do so.
+     */
+    private void storeScanState()
+    {
+        if (scanStateFile != null)
+        {
+            try
+            {
+                synchronized (scanStateLock)
+                {
+                    ScanState.store(scanStateFile, getArtifacts());
+                }
+            }
+            catch (IOException e)
+            {
+                log(Logger.LOG_WARNING, "Unable to store the scan state of " + watchedDirectory, e);
+            }
+        }
+    }
+
     /**
      * This method installs a collection of artifacts.
      * @param artifacts Collection of {@link Artifact}s to be installed
      * @return List of Bundles just installed
      */
-    private Collection<Bundle> install(Collection<Artifact> artifacts)
+    private Collection<Bundle> install(Collection<Artifact> artifacts) throws InterruptedException
     {
+        List<Callable<Bundle>> tasks = new ArrayList<Callable<Bundle>>();
+        for (final Artifact artifact : artifacts) {
+            tasks.add(new Callable<Bundle>() {
+                public Bundle call() {
+                    return install(artifact);
+                }
+            });
+        }
         List<Bundle> bundles = new ArrayList<Bundle>();
-        for (Artifact artifact : artifacts) {
-            Bundle bundle = install(artifact);
+        for (Bundle bundle : execute(tasks)) {
             if (bundle != null) {
                 bundles.add(bundle);
             }
@@ -894,11 +1117,18 @@ public class DirectoryWatcher extends Thread implements BundleListener
      * @param artifacts Collection of {@link Artifact}s to be uninstalled
      * @return Collection of Bundles that got uninstalled
      */
-    private Collection<Bundle> uninstall(Collection<Artifact> artifacts)
+    private Collection<Bundle> uninstall(Collection<Artifact> artifacts) throws InterruptedException
     {
+        List<Callable<Bundle>> tasks = new ArrayList<Callable<Bundle>>();
+        for (final Artifact artifact : artifacts) {
+            tasks.add(new Callable<Bundle>() {
+                public Bundle call() {
+                    return uninstall(artifact);
+                }
+            });
+        }
         List<Bundle> bundles = new ArrayList<Bundle>();
-        for (Artifact artifact : artifacts) {
-            Bundle bundle = uninstall(artifact);
+        for (Bundle bundle : execute(tasks)) {
             if (bundle != null) {
                 bundles.add(bundle);
             }
@@ -912,11 +1142,18 @@ public class DirectoryWatcher extends Thread implements BundleListener
      * @param artifacts    Collection of {@link Artifact}s to be updated.
      * @return Collection of bundles that got updated
      */
-    private Collection<Bundle> update(Collection<Artifact> artifacts)
+    private Collection<Bundle> update(Collection<Artifact> artifacts) throws InterruptedException
     {
+        List<Callable<Bundle>> tasks = new ArrayList<Callable<Bundle>>();
+        for (final Artifact artifact : artifacts) {
+            tasks.add(new Callable<Bundle>() {
+                public Bundle call() {
+                    return update(artifact);
+                }
+            });
+        }
         List<Bundle> bundles = new ArrayList<Bundle>();
-        for (Artifact artifact : artifacts) {
-            Bundle bundle = update(artifact);
+        for (Bundle bundle : execute(tasks)) {
             if (bundle != null) {
                 bundles.add(bundle);
             }
@@ -947,7 +1184,10 @@ public class DirectoryWatcher extends Thread implements BundleListener
             // If the listener is an installer, ask for an update
             if (artifact.getListener() instanceof ArtifactInstaller)
             {
-                ((ArtifactInstaller) artifact.getListener()).install(path);
+                synchronized (installerLock)
+                {
+                    ((ArtifactInstaller) artifact.getListener()).install(path);
+                }
             }
             // if the listener is an url transformer
             else if (artifact.getListener() instanceof ArtifactUrlTransformer)
@@ -1009,41 +1249,10 @@ public class DirectoryWatcher extends Thread implements BundleListener
             String sn = m.getMainAttributes().getValue(Constants.BUNDLE_SYMBOLICNAME);
             String vStr = m.getMainAttributes().getValue(Constants.BUNDLE_VERSION);
             Version v = vStr == null ? Version.emptyVersion : Version.parseVersion(vStr);
-            Bundle[] bundles = context.getBundles();
-            for (Bundle b : bundles) {
-                if (b.getSymbolicName() != null && b.getSymbolicName().equals(sn)) {
-                    vStr = b.getHeaders().get(Constants.BUNDLE_VERSION);
-                    Version bv = vStr == null ? Version.emptyVersion : Version.parseVersion(vStr);
-                    if (v.equals(bv)) {
-                        is.reset();
-                        if (Util.loadChecksum(b, context) != checksum) {
-                            log(Logger.LOG_WARNING,
-                                    "A bundle with the same symbolic name ("
-                                            + sn + ") and version (" + vStr
-                                            + ") is already installed.  Updating this bundle instead.", null
-                            );
-                            stopTransient(b);
-                            Util.storeChecksum(b, checksum, context);
-                            b.update(is);
-                            modified.set(true);
-                        }
-                        return b;
-                    }
-                }
-            }
-            is.reset();
-            Util.log(context, Logger.LOG_INFO, "Installing bundle " + sn
-                    + " / " + v, null);
-            Bundle b = context.installBundle(bundleLocation, is);
-            Util.storeChecksum(b, checksum, context);
-            modified.set(true);
-
-            // Set default start level at install time, the user can override it if he wants
-            if (startLevel != 0) {
-                b.adapt(BundleStartLevel.class).setStartLevel(startLevel);
+            synchronized (installLock(sn))
+            {
+                return installOrUpdateBundle(bundleLocation, is, checksum, modified, sn, v);
             }
-
-            return b;
         }
         finally
         {
@@ -1054,6 +1263,63 @@ public class DirectoryWatcher extends Thread implements BundleListener
         }
     }
 
+    private Object installLock(String symbolicName)
+    {
+        String key = symbolicName != null ? symbolicName : "";
+        Object lock = installLocks.get(key);
+        if (lock == null)
+        {
+            Object newLock = new Object();
+            lock = installLocks.putIfAbsent(key, newLock);
+            if (lock == null)
+            {
+                lock = newLock;
+            }
+        }
+        return lock;
+    }
+
+    private Bundle installOrUpdateBundle(
+        String bundleLocation, BufferedInputStream is, long checksum, AtomicBoolean modified, String sn, Version v)
+        throws IOException, BundleException
+    {
+        Bundle[] bundles = context.getBundles();
+        for (Bundle b : bundles) {
+            if (b.getSymbolicName() != null && b.getSymbolicName().equals(sn)) {
+                String vStr = b.getHeaders().get(Constants.BUNDLE_VERSION);
+                Version bv = vStr == null ? Version.emptyVersion : Version.parseVersion(vStr);
+                if (v.equals(bv)) {
+                    is.reset();
+                    if (Util.loadChecksum(b, context) != checksum) {
+                        log(Logger.LOG_WARNING,
+                                "A bundle with the same symbolic name ("
+                                        + sn + ") and version (" + vStr
+                                        + ") is already installed.  Updating this bundle instead.", null
+                        );
+                        stopTransient(b);
+                        Util.storeChecksum(b, checksum, context);
+                        b.update(is);
+                        modified.set(true);
+                    }
+                    return b;
+                }
+            }
+        }
+        is.reset();
+        Util.log(context, Logger.LOG_INFO, "Installing bundle " + sn
+                + " / " + v, null);
+        Bundle b = context.installBundle(bundleLocation, is);
+        Util.storeChecksum(b, checksum, context);
+        modified.set(true);
+
+        // Set default start level at install time, the user can override it if he wants
+        if (startLevel != 0) {
+            b.adapt(BundleStartLevel.class).setStartLevel(startLevel);
+        }
+
+        return b;
+    }
+
     /**
      * Uninstall a jar file.
      */
@@ -1075,7 +1341,10 @@ public class DirectoryWatcher extends Thread implements BundleListener
             // if the listener is an installer, uninstall the artifact
             if (artifact.getListener() instanceof ArtifactInstaller)
             {
-                ((ArtifactInstaller) artifact.getListener()).uninstall(path);
+                synchronized (installerLock)
+                {
+                    ((ArtifactInstaller) artifact.getListener()).uninstall(path);
+                }
             }
             // else we need uninstall the bundle
             else if (artifact.getBundleId() != 0)
@@ -1114,7 +1383,10 @@ public class DirectoryWatcher extends Thread implements BundleListener
             // If the listener is an installer, ask for an update
             if (artifact.getListener() instanceof ArtifactInstaller)
             {
-                ((ArtifactInstaller) artifact.getListener()).update(path);
+                synchronized (installerLock)
+                {
+                    ((ArtifactInstaller) artifact.getListener()).update(path);
+                }
             }
             // if the listener is an url transformer
             else if (artifact.getListener() instanceof ArtifactUrlTransformer)
@@ -1202,7 +1474,7 @@ public class DirectoryWatcher extends Thread implements BundleListener
      * is set to true or when a bundle is persistently started. Persistently stopped bundles
      * are ignored.
      */
-    private void startAllBundles()
+    private void startAllBundles() throws InterruptedException
     {
         FrameworkStartLevel startLevelSvc = systemBundle.adapt(FrameworkStartLevel.class);
         Set<Bundle> bundles = new LinkedHashSet<>();
@@ -1224,17 +1496,33 @@ public class DirectoryWatcher extends Thread implements BundleListener
      /**
       * Starts a bundle and removes it from the Collection when successfully started.
       */
-    private void startBundles(Set<Bundle> bundles)
+    private void startBundles(Set<Bundle> bundles) throws InterruptedException
     {
         // Check if this is the consistent set of bundles which failed previously.
-        boolean logFailures = !consistentlyFailingBundles.equals(bundles);
-        for (Iterator<Bundle> b = bundles.iterator(); b.hasNext(); )
+        final boolean logFailures = !consistentlyFailingBundles.equals(bundles);
+        if (executor == null)
         {
-            if (startBundle(b.next(), logFailures))
+            for (Iterator<Bundle> b = bundles.iterator(); b.hasNext(); )
             {
-                b.remove();
+                if (startBundle(b.next(), logFailures))
+                {
+                    b.remove();
+                }
             }
+            return;
+        }
+        List<Callable<Bundle>> tasks = new ArrayList<Callable<Bundle>>();
+        for (final Bundle bundle : bundles)
+        {
+            tasks.add(new Callable<Bundle>()
+            {
+                public Bundle call()
+                {
+                    return startBundle(bundle, logFailures) ? bundle : null;
+                }
+            });
         }
+        bundles.removeAll(execute(tasks));
     }
 
      /**
@@ -95,6 +95,7 @@ public class FileInstall implements BundleActivator, ServiceTrackerCustomizer
             Hashtable<String, String> ht = new Hashtable<String, String>();
 
             set(ht, DirectoryWatcher.POLL);
+            set(ht, DirectoryWatcher.DEBOUNCE);
             set(ht, DirectoryWatcher.DIR);
             set(ht, DirectoryWatcher.LOG_LEVEL);
             set(ht, DirectoryWatcher.LOG_DEFAULT);
@@ -114,6 +115,8 @@ public class FileInstall implements BundleActivator, ServiceTrackerCustomizer
             set(ht, DirectoryWatcher.FRAGMENT_SCOPE);
             set(ht, DirectoryWatcher.DISABLE_NIO2);
             set(ht, DirectoryWatcher.SUBDIR_MODE);
+            set(ht, DirectoryWatcher.INSTALL_THREADS);
+            set(ht, DirectoryWatcher.PERSIST_SCAN_STATE);
 
             // check if dir is an array of dirs
             String dirs = ht.get(DirectoryWatcher.DIR);
@@ -0,0 +1,151 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.fileinstall.internal;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Index of the artifacts managed in a watched directory, persisted
+ * across restarts so that the checksum of the bundles installed from
+ * unchanged files does not need to be read again.
+ *
+ * For each artifact, the index holds its path, the checksum computed by
+ * the {@link Scanner} from the file metadata, and the id of the bundle
+ * installed from it, if any.  Only the entries of bundles still installed
+ * with the same id are used on restart: artifacts handled by an installer
+ * are always checked again by their installer on the first scan.
+ */
+public class ScanState
+{
+
+    private static final int VERSION = 1;
+
+    /**
+     * An entry of the index.
+     */
+    public static class Entry
+    {
+        final File path;
+        final long checksum;
+        final long bundleId;
+
+        Entry(File path, long checksum, long bundleId)
+        {
+            this.path = path;
+            this.checksum = checksum;
+            this.bundleId = bundleId;
+        }
+
+        public File getPath()
+        {
+            return path;
+        }
+
+        public long getChecksum()
+        {
+            return checksum;
+        }
+
+        public long getBundleId()
+        {
+            return bundleId;
+        }
+    }
+
+    /**
+     * Load the index from the given file.
+     *
+     * @param file the file holding the index
+     * @return the entries of the index, or an empty map if the file does not exist or can not be read
+     */
+    public static Map<File, Entry> load(File file)
+    {
+        Map<File, Entry> entries = new HashMap<File, Entry>();
+        if (file == null || !file.isFile())
+        {
+            return entries;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file))))
+        {
+            if (in.readInt() != VERSION)
+            {
+                return entries;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++)
+            {
+                File path = new File(in.readUTF());
+                long checksum = in.readLong();
+                long bundleId = in.readLong();
+                entries.put(path, new Entry(path, checksum, bundleId));
+            }
+            return entries;
+        }
+        catch (IOException e)
+        {
+            // A truncated or corrupted index is simply ignored
+            return new HashMap<File, Entry>();
+        }
+    }
+
+    /**
+     * Store the given artifacts into the index file.
+     * The index is written to a temporary file first, so that a crash can
+     * never leave a partially written index behind.
+     *
+     * @param file the file holding the index
+     * @param artifacts the artifacts to store
+     * @throws IOException if the index can not be written
+     */
+    public static void store(File file, Collection<Artifact> artifacts) throws IOException
+    {
+        File tmp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp))))
+        {
+            out.writeInt(VERSION);
+            out.writeInt(artifacts.size());
+            for (Artifact artifact : artifacts)
+            {
+                out.writeUTF(artifact.getPath().getPath());
+                out.writeLong(artifact.getChecksum());
+                out.writeLong(artifact.getBundleId());
+            }
+        }
+        if (!tmp.renameTo(file))
+        {
+            // renaming over an existing file fails on some platforms
+            if (!file.delete() || !tmp.renameTo(file))
+            {
+                tmp.delete();
+                throw new IOException("Unable to write " + file);
+            }
+        }
+    }
+
+}
@@ -155,7 +155,7 @@ public class Scanner implements Closeable {
                 }
             }
             else {
-                if (!filter.accept(file.getParentFile(),file.getName())){
+                if (filter != null && !filter.accept(file.getParentFile(),file.getName())){
                     continue;
                 }
             }
@@ -183,6 +183,29 @@ public class Scanner implements Closeable {
         return files;
     }
 
+    /**
+     * Register a listener to be called as soon as files have changed,
+     * once no more change has been seen for the given quiet period.
+     * The default scanner needs to be polled and never calls the listener.
+     *
+     * @param listener the listener to call
+     * @param quietPeriod the time in milliseconds without changes before calling the listener
+     */
+    public void setChangeListener(Runnable listener, long quietPeriod)
+    {
+    }
+
+    /**
+     * Check if changes have been detected but not reported yet, because
+     * the files were still being modified.
+     *
+     * @return <code>true</code> if the scanner should be called again shortly
+     */
+    public boolean hasPendingChanges()
+    {
+        return false;
+    }
+
     public void close() throws IOException {
     }
 
@@ -39,6 +39,7 @@ import java.util.EnumSet;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 import static java.nio.file.LinkOption.NOFOLLOW_LINKS;
 import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
@@ -161,65 +162,98 @@ public abstract class Watcher implements Closeable {
     public void processEvents() {
         while (true) {
             WatchKey key = watcher.poll();
-            if (key == null) {
+            if (key == null || !processEvents(key)) {
                 break;
             }
-            Path dir = keys.get(key);
-            if (dir == null) {
-                warn("Could not find key for " + key);
-                continue;
-            }
-
-            for (WatchEvent<?> event : key.pollEvents()) {
-                WatchEvent.Kind kind = event.kind();
-                WatchEvent<Path> ev = (WatchEvent<Path>)event;
+        }
+    }
 
-                // Context for directory entry event is the file name of entry
-                Path name = ev.context();
-                Path child = dir.resolve(name);
+    /**
+     * Wait for file system events and process them.
+     *
+     * @param timeout the maximum time to wait in milliseconds, or a negative value to wait indefinitely
+     * @return <code>true</code> if events have been processed, <code>false</code> if the timeout elapsed
+     */
+    public boolean awaitEvents(long timeout) throws InterruptedException {
+        WatchKey key = timeout < 0 ? watcher.take() : watcher.poll(timeout, TimeUnit.MILLISECONDS);
+        if (key == null) {
+            return false;
+        }
+        if (processEvents(key)) {
+            processEvents();
+        }
+        return true;
+    }
 
-                debug("Processing event {} on path {}", kind, child);
+    /**
+     * Process the pending events of the given key.
+     *
+     * @return <code>false</code> if no directory is watched anymore
+     */
+    private boolean processEvents(WatchKey key) {
+        Path dir = keys.get(key);
+        if (dir == null) {
+            warn("Could not find key for " + key);
+            return true;
+        }
 
-                if (kind == OVERFLOW) {
-//                    rescan();
-                    continue;
-                }
+        for (WatchEvent<?> event : key.pollEvents()) {
+            WatchEvent.Kind kind = event.kind();
 
+            if (kind == OVERFLOW) {
+                // events have been lost, walk the whole tree again
+                debug("Events lost on path {}", dir);
                 try {
-                    if (kind == ENTRY_CREATE) {
-                        if (Files.isDirectory(child)) {
-
-                            // if directory is created, and watching recursively, then
-                            // register it and its sub-directories
-                            Files.walkFileTree(child, new FilteringFileVisitor());
-                        } else if (Files.isRegularFile(child)) {
-                            scan(child);
-                        }
-                    } else if (kind == ENTRY_MODIFY) {
-                        if (Files.isRegularFile(child)) {
-                            scan(child);
-                        }
-                    } else if (kind == ENTRY_DELETE) {
-                        unscan(child);
-                    }
+                    rescan();
                 } catch (IOException x) {
-                    // ignore to keep sample readbale
-                    x.printStackTrace();
+                    warn("Could not rescan " + root + ": " + x);
                 }
+                return !keys.isEmpty();
             }
 
-            // reset key and remove from set if directory no longer accessible
-            boolean valid = key.reset();
-            if (!valid) {
-                debug("Removing key " + key + " and dir " + dir + " from keys");
-                keys.remove(key);
+            WatchEvent<Path> ev = (WatchEvent<Path>)event;
 
-                // all directories are inaccessible
-                if (keys.isEmpty()) {
-                    break;
+            // Context for directory entry event is the file name of entry
+            Path name = ev.context();
+            Path child = dir.resolve(name);
+
+            debug("Processing event {} on path {}", kind, child);
+
+            try {
+                if (kind == ENTRY_CREATE) {
+                    if (Files.isDirectory(child)) {
+
+                        // if directory is created, and watching recursively, then
+                        // register it and its sub-directories
+                        Files.walkFileTree(child, new FilteringFileVisitor());
+                    } else if (Files.isRegularFile(child)) {
+                        scan(child);
+                    }
+                } else if (kind == ENTRY_MODIFY) {
+                    if (Files.isRegularFile(child)) {
+                        scan(child);
+                    }
+                } else if (kind == ENTRY_DELETE) {
+                    unscan(child);
                 }
+            } catch (IOException x) {
+                // ignore to keep sample readbale
+                x.printStackTrace();
+            }
+        }
+
+        // reset key and remove from set if directory no longer accessible
+        boolean valid = key.reset();
+        if (!valid) {
+            debug("Removing key " + key + " and dir " + dir + " from keys");
+            keys.remove(key);
+
+            // all directories are inaccessible
+            if (keys.isEmpty()) {
+                return false;
             }
         }
+        return true;
     }
 
     private void scan(final Path file) throws IOException {
@@ -20,6 +20,7 @@ package org.apache.felix.fileinstall.internal;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
 import java.nio.file.FileSystems;
 import java.nio.file.Path;
 import java.nio.file.PathMatcher;
@@ -108,6 +109,38 @@ public class WatcherScanner extends Scanner {
         }
     }
 
+    @Override
+    public void setChangeListener(final Runnable listener, final long quietPeriod) {
+        Thread thread = new Thread("fileinstall-watcher-" + directory) {
+            @Override
+            public void run() {
+                try {
+                    while (true) {
+                        watcher.awaitEvents(-1);
+                        // debounce: wait until the directory is quiet
+                        while (watcher.awaitEvents(quietPeriod)) {
+                            // keep on collecting changes
+                        }
+                        listener.run();
+                    }
+                } catch (InterruptedException e) {
+                    // Exit
+                } catch (ClosedWatchServiceException e) {
+                    // The scanner has been closed
+                }
+            }
+        };
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public boolean hasPendingChanges() {
+        synchronized (changed) {
+            return !changed.isEmpty();
+        }
+    }
+
     public void close() throws IOException {
         watcher.close();
     }
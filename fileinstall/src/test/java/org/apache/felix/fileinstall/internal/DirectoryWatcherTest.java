@@ -20,22 +20,41 @@ package org.apache.felix.fileinstall.internal;
 
 
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Hashtable;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
 import junit.framework.TestCase;
 import org.apache.felix.fileinstall.ArtifactListener;
+import org.apache.felix.fileinstall.ArtifactUrlTransformer;
 import org.easymock.EasyMock;
+import org.easymock.IAnswer;
 import org.easymock.IMocksControl;
 import org.junit.Assert;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleException;
 import org.osgi.framework.BundleListener;
 import org.osgi.framework.Constants;
 import org.osgi.framework.ServiceReference;
+import org.osgi.framework.startlevel.BundleStartLevel;
 import org.osgi.framework.startlevel.FrameworkStartLevel;
 import org.osgi.framework.wiring.BundleRevision;
 import org.osgi.service.log.LogService;
@@ -215,10 +234,270 @@ public class DirectoryWatcherTest extends TestCase
                 new File(System.getProperty("java.io.tmpdir")).getAbsolutePath()));
         assertEquals("Default START_NEW_BUNDLES parameter correctly read", true, dw.startBundles);
         assertEquals( "Default FILTER parameter correctly read", null, dw.filter );
+        assertEquals( "Default INSTALL_THREADS parameter correctly read", 1, dw.installThreads );
+        assertNull( "Artifacts are processed sequentially by default", dw.executor );
         EasyMock.verify(mockBundleContext);
     }
 
 
+    public void testInstallThreads()
+    {
+        props.put( DirectoryWatcher.INSTALL_THREADS, "4" );
+
+        mockBundleContext.addBundleListener((BundleListener) org.easymock.EasyMock.anyObject());
+        EasyMock.replay(mockBundleContext, mockBundle, mockSysBundle, mockStartLevel);
+
+        dw = new DirectoryWatcher( new FileInstall(), props, mockBundleContext );
+        try
+        {
+            assertEquals( "INSTALL_THREADS parameter correctly read", 4, dw.installThreads );
+            assertNotNull( "Artifacts are processed concurrently", dw.executor );
+        }
+        finally
+        {
+            dw.executor.shutdownNow();
+        }
+        EasyMock.verify(mockBundleContext);
+    }
+
+    /**
+     * Test the {@link DirectoryWatcher#process(java.util.Set)} of several artifacts with {@link DirectoryWatcher#INSTALL_THREADS}.
+     * Assert that all the artifacts are installed and started, that the bundles are refreshed once,
+     * and that uninstalls, updates and installs are still done in this order.
+     */
+    public void testConcurrentProcess() throws Exception
+    {
+        final File watchedDirectoryFile = new File("target/concurrent/watched").getAbsoluteFile();
+        final File dataDirectory = new File("target/concurrent/data");
+        watchedDirectoryFile.mkdirs();
+        dataDirectory.mkdirs();
+
+        final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+        final List<Bundle> bundles = new CopyOnWriteArrayList<Bundle>();
+        final Map<Long, Bundle> bundlesById = new ConcurrentHashMap<Long, Bundle>();
+        final AtomicLong nextBundleId = new AtomicLong(1);
+        final Set<String> installerThreads = Collections.synchronizedSet(new HashSet<String>());
+        final ArtifactUrlTransformer transformer = new ArtifactUrlTransformer()
+        {
+            public boolean canHandle(File artifact)
+            {
+                return artifact.getName().endsWith(".jar");
+            }
+
+            public URL transform(URL artifact)
+            {
+                return artifact;
+            }
+        };
+
+        // a deleted, a modified and several created bundles
+        final File deletedFile = new File(watchedDirectoryFile, "deleted.jar");
+        deletedFile.delete();
+        final File modifiedFile = createBundle(watchedDirectoryFile, "modified");
+        final Set<File> files = new TreeSet<File>();
+        files.add(deletedFile);
+        files.add(modifiedFile);
+        for (int i = 0; i < 8; i++)
+        {
+            files.add(createBundle(watchedDirectoryFile, "created" + i));
+        }
+        Bundle deletedBundle = createBundle(100, "deleted", events);
+        Bundle modifiedBundle = createBundle(101, "modified", events);
+        bundles.add(deletedBundle);
+        bundles.add(modifiedBundle);
+        bundlesById.put(100L, deletedBundle);
+        bundlesById.put(101L, modifiedBundle);
+
+        mockBundleContext.addBundleListener((BundleListener) org.easymock.EasyMock.anyObject());
+        mockBundleContext.removeBundleListener((BundleListener) org.easymock.EasyMock.anyObject());
+        EasyMock.expect(mockBundleContext.getBundles()).andAnswer(new IAnswer<Bundle[]>()
+        {
+            public Bundle[] answer()
+            {
+                return bundles.toArray(new Bundle[bundles.size()]);
+            }
+        }).anyTimes();
+        EasyMock.expect(mockBundleContext.getBundle(EasyMock.anyLong())).andAnswer(new IAnswer<Bundle>()
+        {
+            public Bundle answer()
+            {
+                return bundlesById.get(EasyMock.getCurrentArguments()[0]);
+            }
+        }).anyTimes();
+        EasyMock.expect(mockBundleContext.getDataFile(EasyMock.anyString())).andAnswer(new IAnswer<File>()
+        {
+            public File answer()
+            {
+                return new File(dataDirectory, (String) EasyMock.getCurrentArguments()[0]);
+            }
+        }).anyTimes();
+        EasyMock.expect(mockBundleContext.installBundle(EasyMock.anyString(), EasyMock.anyObject(InputStream.class)))
+                .andAnswer(new IAnswer<Bundle>()
+        {
+            public Bundle answer()
+            {
+                String location = (String) EasyMock.getCurrentArguments()[0];
+                String name = location.substring(location.lastIndexOf('/') + 1, location.length() - ".jar".length());
+                events.add("install " + name);
+                installerThreads.add(Thread.currentThread().getName());
+                Bundle bundle = createBundle(nextBundleId.getAndIncrement(), name, events);
+                bundles.add(bundle);
+                bundlesById.put(bundle.getBundleId(), bundle);
+                return bundle;
+            }
+        }).anyTimes();
+
+        EasyMock.replay(mockBundleContext, mockBundle, mockSysBundle, mockStartLevel);
+
+        final Scanner scanner = new Scanner(watchedDirectoryFile)
+        {
+            private boolean scanned;
+
+            // report all the files once
+            public Set<File> scan(boolean reportImmediately)
+            {
+                if (scanned)
+                {
+                    return new HashSet<File>();
+                }
+                scanned = true;
+                return new HashSet<File>(files);
+            }
+        };
+
+        FileInstall fileInstall = new FileInstall();
+        fileInstall.listeners.put(EasyMock.createNiceMock(ServiceReference.class), transformer);
+
+        props.put(DirectoryWatcher.DIR, watchedDirectoryFile.getPath());
+        props.put(DirectoryWatcher.INSTALL_THREADS, "4");
+
+        dw = new DirectoryWatcher(fileInstall, props, mockBundleContext)
+        {
+            void refresh(Collection<Bundle> refreshed)
+            {
+                events.add("refresh " + refreshed.size());
+            }
+        };
+        dw.noInitialDelay = true;
+        dw.scanner = scanner;
+        dw.currentManagedArtifacts.put(deletedFile, createArtifact(deletedFile, 100, transformer));
+        dw.currentManagedArtifacts.put(modifiedFile, createArtifact(modifiedFile, 101, transformer));
+        try
+        {
+            dw.start();
+        }
+        finally
+        {
+            dw.close();
+        }
+
+        List<String> expected = new ArrayList<String>();
+        expected.add("uninstall deleted");
+        expected.add("update modified");
+        for (int i = 0; i < 8; i++)
+        {
+            expected.add("install created" + i);
+        }
+        expected.add("refresh 10");
+        // installs and starts run concurrently, sort them to compare
+        List<String> actual = new ArrayList<String>(events);
+        Collections.sort(actual.subList(2, 10));
+        Collections.sort(actual.subList(11, actual.size()));
+        for (int i = 0; i < 8; i++)
+        {
+            expected.add("start created" + i);
+        }
+        assertEquals(expected, actual);
+        for (String thread : installerThreads)
+        {
+            assertTrue("Installed from the installation pool", thread.contains("-installer-"));
+        }
+        assertEquals(9, dw.currentManagedArtifacts.size());
+        assertNull(dw.currentManagedArtifacts.get(deletedFile));
+    }
+
+    private static File createBundle(File directory, String name) throws IOException
+    {
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().putValue(Constants.BUNDLE_SYMBOLICNAME, name);
+        File file = new File(directory, name + ".jar");
+        new JarOutputStream(new FileOutputStream(file), manifest).close();
+        return file;
+    }
+
+    private static Artifact createArtifact(File path, long bundleId, ArtifactListener listener)
+    {
+        Artifact artifact = new Artifact();
+        artifact.setPath(path);
+        artifact.setBundleId(bundleId);
+        artifact.setListener(listener);
+        return artifact;
+    }
+
+    /**
+     * Create a bundle recording the calls changing its state into the given events.
+     */
+    private static Bundle createBundle(long bundleId, final String name, final List<String> events)
+    {
+        final AtomicInteger state = new AtomicInteger(Bundle.INSTALLED);
+        Bundle bundle = EasyMock.createNiceMock(Bundle.class);
+        BundleRevision revision = EasyMock.createNiceMock(BundleRevision.class);
+        BundleStartLevel startLevel = EasyMock.createNiceMock(BundleStartLevel.class);
+        EasyMock.expect(bundle.getBundleId()).andReturn(bundleId).anyTimes();
+        EasyMock.expect(bundle.getSymbolicName()).andReturn(name).anyTimes();
+        EasyMock.expect(bundle.getLocation()).andReturn(name).anyTimes();
+        EasyMock.expect(bundle.getHeaders()).andReturn(new Hashtable<String, String>()).anyTimes();
+        EasyMock.expect(bundle.adapt(BundleRevision.class)).andReturn(revision).anyTimes();
+        EasyMock.expect(bundle.adapt(BundleStartLevel.class)).andReturn(startLevel).anyTimes();
+        EasyMock.expect(bundle.getState()).andAnswer(new IAnswer<Integer>()
+        {
+            public Integer answer()
+            {
+                return state.get();
+            }
+        }).anyTimes();
+        try
+        {
+            bundle.start(EasyMock.anyInt());
+            EasyMock.expectLastCall().andAnswer(new IAnswer<Object>()
+            {
+                public Object answer()
+                {
+                    events.add("start " + name);
+                    state.set(Bundle.ACTIVE);
+                    return null;
+                }
+            }).anyTimes();
+            bundle.update(EasyMock.anyObject(InputStream.class));
+            EasyMock.expectLastCall().andAnswer(new IAnswer<Object>()
+            {
+                public Object answer()
+                {
+                    events.add("update " + name);
+                    return null;
+                }
+            }).anyTimes();
+            bundle.uninstall();
+            EasyMock.expectLastCall().andAnswer(new IAnswer<Object>()
+            {
+                public Object answer()
+                {
+                    events.add("uninstall " + name);
+                    state.set(Bundle.UNINSTALLED);
+                    return null;
+                }
+            }).anyTimes();
+        }
+        catch (BundleException e)
+        {
+            throw new IllegalStateException(e);
+        }
+        EasyMock.replay(bundle, revision, startLevel);
+        return bundle;
+    }
+
+
     public void testIsFragment() throws Exception
     {
         mockBundleContext.addBundleListener((BundleListener) org.easymock.EasyMock.anyObject());
@@ -448,4 +727,67 @@ public class DirectoryWatcherTest extends TestCase
         EasyMock.verify(mockBundleContext, mockBundle,mockServiceReference, mockArtifactListener);
     }
 
+    /**
+     * Test a restart with {@link DirectoryWatcher#PERSIST_SCAN_STATE} when the watched directory did not change.
+     * Assert that the checksum of the installed bundle is read from the scan state instead of
+     * {@link Util#loadChecksum}, and that no listener is called as nothing is processed.
+     */
+    public void testRestartWithUnchangedScanState() throws Exception
+    {
+        final File watchedDirectoryFile = new File("target/scanstate/watched");
+        watchedDirectoryFile.mkdirs();
+        final File bundleFile = new File(watchedDirectoryFile.getAbsoluteFile(), "bundle.jar");
+        FileOutputStream out = new FileOutputStream(bundleFile);
+        out.write(new byte[] { 1, 2, 3 });
+        out.close();
+        final File scanStateFile = new File("target/scanstate/scanstate");
+
+        // the state stored before the restart
+        final Artifact stored = new Artifact();
+        stored.setBundleId(42);
+        stored.setChecksum(Scanner.checksum(bundleFile));
+        stored.setPath(bundleFile);
+        ScanState.store(scanStateFile, Collections.singletonList(stored));
+
+        // any call to the listener fails
+        final ArtifactListener mockArtifactListener = EasyMock.createMock(ArtifactListener.class);
+        final ServiceReference mockServiceReference = EasyMock.createNiceMock(ServiceReference.class);
+
+        // the scan state is the only data file read, Util.loadChecksum would read another one
+        mockBundleContext.addBundleListener((BundleListener) org.easymock.EasyMock.anyObject());
+        mockBundleContext.removeBundleListener((BundleListener) org.easymock.EasyMock.anyObject());
+        EasyMock.expect(mockBundleContext.getDataFile(EasyMock.startsWith("scanstate-"))).andReturn(scanStateFile);
+        EasyMock.expect(mockBundleContext.getBundles()).andReturn(new Bundle[]{mockBundle});
+        EasyMock.expect(mockBundle.getLocation()).andReturn(bundleFile.toURI().toString()).anyTimes();
+        EasyMock.expect(mockBundle.getBundleId()).andReturn(42L).anyTimes();
+        EasyMock.expect(mockBundleContext.getBundle(42L)).andReturn(mockBundle).anyTimes();
+        EasyMock.expect(mockBundle.getState()).andReturn(Bundle.ACTIVE).anyTimes();
+
+        EasyMock.replay(mockBundleContext, mockBundle, mockServiceReference, mockArtifactListener, mockSysBundle, mockStartLevel);
+
+        FileInstall fileInstall = new FileInstall();
+        fileInstall.listeners.put(mockServiceReference, mockArtifactListener);
+
+        props.put(DirectoryWatcher.DIR, watchedDirectoryFile.getAbsolutePath());
+        props.put(DirectoryWatcher.PERSIST_SCAN_STATE, "true");
+
+        dw = new DirectoryWatcher(fileInstall, props, mockBundleContext);
+        dw.noInitialDelay = true;
+        try
+        {
+            dw.start();
+
+            Artifact artifact = dw.currentManagedArtifacts.get(bundleFile);
+            assertNotNull(artifact);
+            assertEquals(42, artifact.getBundleId());
+            assertEquals(stored.getChecksum(), artifact.getChecksum());
+        }
+        finally
+        {
+            dw.close();
+        }
+
+        EasyMock.verify(mockBundleContext, mockBundle, mockServiceReference, mockArtifactListener);
+    }
+
 }
@@ -0,0 +1,79 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.fileinstall.internal;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ScanStateTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testStoreAndLoad() throws Exception {
+        File index = new File(folder.getRoot(), "scanstate");
+        Artifact bundle = artifact(new File(folder.getRoot(), "bundle.jar"), 1234L, 12L);
+        Artifact config = artifact(new File(folder.getRoot(), "foo.cfg"), -5L, -1L);
+        ScanState.store(index, Arrays.asList(bundle, config));
+
+        Map<File, ScanState.Entry> entries = ScanState.load(index);
+        assertEquals(2, entries.size());
+        ScanState.Entry entry = entries.get(bundle.getPath());
+        assertEquals(1234L, entry.getChecksum());
+        assertEquals(12L, entry.getBundleId());
+        entry = entries.get(config.getPath());
+        assertEquals(-5L, entry.getChecksum());
+        assertEquals(-1L, entry.getBundleId());
+
+        // the index is replaced as a whole
+        ScanState.store(index, Arrays.asList(config));
+        assertEquals(1, ScanState.load(index).size());
+        assertEquals(1, folder.getRoot().list().length);
+    }
+
+    @Test
+    public void testMissingOrCorruptedIndex() throws Exception {
+        File index = new File(folder.getRoot(), "scanstate");
+        assertTrue(ScanState.load(index).isEmpty());
+        assertTrue(ScanState.load(null).isEmpty());
+
+        try (FileOutputStream fos = new FileOutputStream(index)) {
+            fos.write(new byte[] { 0, 0, 0, 1, 0, 0, 0, 3, 0 });
+        }
+        assertTrue(ScanState.load(index).isEmpty());
+    }
+
+    private Artifact artifact(File path, long checksum, long bundleId) {
+        Artifact artifact = new Artifact();
+        artifact.setPath(path);
+        artifact.setChecksum(checksum);
+        artifact.setBundleId(bundleId);
+        return artifact;
+    }
+}
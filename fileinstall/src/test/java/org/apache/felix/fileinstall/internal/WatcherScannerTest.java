@@ -0,0 +1,111 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.fileinstall.internal;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.easymock.EasyMock;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.osgi.framework.BundleContext;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+
+public class WatcherScannerTest {
+
+    /** The default value of {@link DirectoryWatcher#POLL}. */
+    private static final long POLL = 2000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testChangesAreNotified() throws Exception {
+        BundleContext context = EasyMock.createNiceMock(BundleContext.class);
+        EasyMock.replay(context);
+        WatcherScanner scanner = new WatcherScanner(context, folder.getRoot(), null, null);
+        try {
+            final Semaphore notified = new Semaphore(0);
+            scanner.setChangeListener(new Runnable() {
+                public void run() {
+                    notified.release();
+                }
+            }, 50);
+
+            long start = System.currentTimeMillis();
+            File file = write("bundle.jar", "content");
+            assertTrue("No change notified", notified.tryAcquire(10, TimeUnit.SECONDS));
+
+            // the first scan only records the new checksum
+            Set<File> files = scanner.scan(false);
+            assertTrue(files.isEmpty());
+            assertTrue(scanner.hasPendingChanges());
+
+            // and the file is reported once it did not change anymore
+            Thread.sleep(50);
+            files = scanner.scan(false);
+            assertEquals(1, files.size());
+            assertEquals(file.getCanonicalFile(), files.iterator().next().getCanonicalFile());
+            // without the watcher the change would only be seen on the next poll
+            assertTrue("Change reported too late", System.currentTimeMillis() - start < POLL);
+
+            scanner.scan(false);
+            assertFalse(scanner.hasPendingChanges());
+
+            // deletions are notified as well
+            assertTrue(file.delete());
+            assertTrue("No change notified", notified.tryAcquire(10, TimeUnit.SECONDS));
+            files = scanner.scan(false);
+            assertEquals(1, files.size());
+            assertFalse(scanner.hasPendingChanges());
+        } finally {
+            scanner.close();
+        }
+    }
+
+    @Test
+    public void testPollingScannerHasNoPendingChanges() throws Exception {
+        Scanner scanner = new Scanner(folder.getRoot(), null, null);
+        write("bundle.jar", "content");
+        scanner.setChangeListener(new Runnable() {
+            public void run() {
+                throw new IllegalStateException();
+            }
+        }, 50);
+        assertEquals(1, scanner.scan(true).size());
+        assertFalse(scanner.hasPendingChanges());
+    }
+
+    private File write(String name, String content) throws IOException {
+        File file = new File(folder.getRoot(), name);
+        try (FileOutputStream fos = new FileOutputStream(file)) {
+            fos.write(content.getBytes());
+        }
+        return file;
+    }
+}
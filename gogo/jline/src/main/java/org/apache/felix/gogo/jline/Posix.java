@@ -44,11 +44,13 @@ import java.time.Instant;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
+import java.util.Deque;
 import java.util.EnumSet;
 import java.util.HashSet;
 import java.util.List;
@@ -472,27 +474,31 @@ public class Posix {
                     }
                 };
                 Reader reader = new InputStreamReader(isc);
-                while (true) {
-                    int h = reader.read();
-                    if (Character.isHighSurrogate((char) h)) {
-                        int l = reader.read();
-                        if (Character.isLowSurrogate((char) l)) {
-                            int cp = Character.toCodePoint((char) h, (char) l);
-                            consumer.accept(cp);
-                        } else {
-                            consumer.accept(h);
-                            if (l >= 0) {
-                                consumer.accept(l);
-                            } else {
-                                break;
+                char[] buf = new char[8192];
+                int high = -1;
+                int nb;
+                while ((nb = reader.read(buf)) >= 0) {
+                    for (int i = 0; i < nb; i++) {
+                        char c = buf[i];
+                        if (high >= 0) {
+                            if (Character.isLowSurrogate(c)) {
+                                consumer.accept(Character.toCodePoint((char) high, c));
+                                high = -1;
+                                continue;
                             }
+                            consumer.accept(high);
+                            high = -1;
+                        }
+                        if (Character.isHighSurrogate(c)) {
+                            high = c;
+                        } else {
+                            consumer.accept(c);
                         }
-                    } else if (h >= 0) {
-                        consumer.accept(h);
-                    } else {
-                        break;
                     }
                 }
+                if (high >= 0) {
+                    consumer.accept(high);
+                }
                 if (inWord.get()) {
                     words.incrementAndGet();
                 }
@@ -553,7 +559,7 @@ public class Posix {
                 process.out().println("==> " + src.getName() + " <==");
             }
             try (InputStream is = src.read()) {
-                byte[] buf = new byte[1024];
+                byte[] buf = new byte[8192];
                 int nb;
                 do {
                     nb = is.read(buf);
@@ -611,6 +617,7 @@ public class Posix {
             Path path;
             Reader reader;
             StringBuilder buffer;
+            int newlines;
             long ino;
             long size;
 
@@ -659,25 +666,27 @@ public class Posix {
                 open();
                 if (reader != null) {
                     if (buffer != null) {
-                        char[] buf = new char[1024];
+                        char[] buf = new char[8192];
                         int nb;
                         while ((nb = reader.read(buf)) > 0) {
                             buffer.append(buf, 0, nb);
                             if (bytes > 0 && buffer.length() > bytes) {
                                 buffer.delete(0, buffer.length() - bytes);
                             } else {
-                                int l = 0;
-                                int i = -1;
-                                while ((i = buffer.indexOf("\n", i + 1)) >= 0) {
-                                    l++;
+                                // only count the lines of the new chunk
+                                for (int i = 0; i < nb; i++) {
+                                    if (buf[i] == '\n') {
+                                        newlines++;
+                                    }
                                 }
-                                if (l > lines) {
-                                    i = -1;
-                                    l = l - lines;
+                                if (newlines > lines) {
+                                    int i = -1;
+                                    int l = newlines - lines;
                                     while (--l >= 0) {
                                         i = buffer.indexOf("\n", i + 1);
                                     }
                                     buffer.delete(0, i + 1);
+                                    newlines = lines;
                                 }
                             }
                         }
@@ -1419,7 +1428,11 @@ public class Posix {
             } else {
                 is = cwd.toUri().resolve(arg).toURL().openStream();
             }
-            cat(process, new BufferedReader(new InputStreamReader(is)), opt.isSet("n"));
+            if (opt.isSet("n")) {
+                cat(process, new BufferedReader(new InputStreamReader(is)), true);
+            } else {
+                copy(process, is);
+            }
         }
     }
 
@@ -1565,7 +1578,6 @@ public class Posix {
         if (before < 0) {
             before = context;
         }
-        List<String> lines = new ArrayList<>();
         boolean invertMatch = opt.isSet("invert-match");
         boolean lineNumber = opt.isSet("line-number");
         boolean count = opt.isSet("count");
@@ -1609,7 +1621,10 @@ public class Posix {
             int nb = 0;
             int lineno = 1;
             String line;
-            int lineMatch = 0;
+            // lines kept as leading context of the next match
+            Deque<String> previous = new ArrayDeque<>();
+            int lastPrinted = 0;
+            int trailing = 0;
             try (BufferedReader r = new BufferedReader(new InputStreamReader(source.read()))) {
                 while ((line = r.readLine()) != null) {
                     if (line.length() == 1 && line.charAt(0) == '\n') {
@@ -1663,51 +1678,36 @@ public class Posix {
                         sbl.append(aLine.subSequence(cur, aLine.length()));
                     }
                     if (matches ^ invertMatch) {
-                        lines.add(sbl.toAnsi(Shell.getTerminal(session)));
-                        lineMatch = lines.size();
-                    } else {
-                        if (lineMatch != 0 & lineMatch + after + before <= lines.size()) {
-                            if (!count) {
-                                if (!firstPrint && before + after > 0) {
-                                    AttributedStringBuilder sbl2 = new AttributedStringBuilder();
-                                    if (colored) {
-                                        applyStyle(sbl2, colors, "se");
-                                    }
-                                    sbl2.append("--");
-                                    process.out().println(sbl2.toAnsi(Shell.getTerminal(session)));
-                                } else {
-                                    firstPrint = false;
-                                }
-                                for (int i = 0; i < lineMatch + after; i++) {
-                                    process.out().println(lines.get(i));
+                        if (!count) {
+                            if (!firstPrint && before + after > 0 && lineno - previous.size() > lastPrinted + 1) {
+                                AttributedStringBuilder sbl2 = new AttributedStringBuilder();
+                                if (colored) {
+                                    applyStyle(sbl2, colors, "se");
                                 }
+                                sbl2.append("--");
+                                process.out().println(sbl2.toAnsi(Shell.getTerminal(session)));
                             }
-                            while (lines.size() > before) {
-                                lines.remove(0);
+                            firstPrint = false;
+                            while (!previous.isEmpty()) {
+                                process.out().println(previous.removeFirst());
                             }
-                            lineMatch = 0;
+                            process.out().println(sbl.toAnsi(Shell.getTerminal(session)));
+                            lastPrinted = lineno;
                         }
-                        lines.add(sbl.toAnsi(Shell.getTerminal(session)));
-                        while (lineMatch == 0 && lines.size() > before) {
-                            lines.remove(0);
+                        trailing = after;
+                    } else if (trailing > 0) {
+                        if (!count) {
+                            process.out().println(sbl.toAnsi(Shell.getTerminal(session)));
+                            lastPrinted = lineno;
                         }
-                    }
-                    lineno++;
-                }
-                if (!count && lineMatch > 0) {
-                    if (!firstPrint && before + after > 0) {
-                        AttributedStringBuilder sbl2 = new AttributedStringBuilder();
-                        if (colored) {
-                            applyStyle(sbl2, colors, "se");
+                        trailing--;
+                    } else if (!count && before > 0) {
+                        previous.addLast(sbl.toAnsi(Shell.getTerminal(session)));
+                        if (previous.size() > before) {
+                            previous.removeFirst();
                         }
-                        sbl2.append("--");
-                        process.out().println(sbl2.toAnsi(Shell.getTerminal(session)));
-                    } else {
-                        firstPrint = false;
-                    }
-                    for (int i = 0; i < lineMatch + after && i < lines.size(); i++) {
-                        process.out().println(lines.get(i));
                     }
+                    lineno++;
                 }
                 if (count) {
                     process.out().println(nb);
@@ -1740,6 +1740,22 @@ public class Posix {
         }
     }
 
+    /**
+     * Copies the input to the process output as is, without decoding it into lines.
+     */
+    private static void copy(Process process, InputStream is) throws IOException {
+        try {
+            byte[] buf = new byte[8192];
+            int nb;
+            while ((nb = is.read(buf)) >= 0) {
+                process.out().write(buf, 0, nb);
+            }
+            process.out().flush();
+        } finally {
+            is.close();
+        }
+    }
+
     private static void cat(Process process, final BufferedReader reader, boolean displayLineNumbers) throws IOException {
         String line;
         int lineno = 1;
@@ -101,6 +101,17 @@ public class PosixTest extends AbstractParserTest {
         assertEquals("       1       5       5", res);
     }
 
+    @Test
+    public void testGrepContext() throws Exception {
+        Context context = new Context();
+        context.addCommand("echo", new Posix(context));
+        context.addCommand("grep", new Posix(context));
+        context.addCommand("tac", this);
+
+        Object res = context.execute("echo \"a\\nx1\\nb\\nc\\nd\\nx2\\nx3\\ne\\nf\" | grep --color=never -B 1 -A 1 x | tac");
+        assertEquals("a\nx1\nb\n--\nd\nx2\nx3\ne", res);
+    }
+
     public String tac() throws IOException {
         StringWriter sw = new StringWriter();
         Reader rdr = new InputStreamReader(System.in);
@@ -0,0 +1,332 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.gogo.runtime;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * In-memory pipe connecting two stages of a pipeline.
+ * <p>
+ * Bytes written to the {@link #sink()} are copied into buffers taken from a
+ * shared pool and copied out of them into the buffer passed to the
+ * {@link #source()}, the pooled buffers are given back to the pool once
+ * fully read.  Pooling avoids allocating a buffer per write, the bytes are
+ * still copied twice.  At most {@link #MAX_BUFFERS} buffers are in
+ * flight, a writer getting ahead of its reader is blocked until the reader
+ * catches up.  Closing the source makes any pending or further write fail,
+ * so that a producer stops when its consumer is done.
+ */
+public class ChannelPipe
+{
+    /**
+     * Size of the pooled buffers.
+     */
+    public static final int BUFFER_SIZE = 8192;
+
+    /**
+     * Maximum number of buffers queued in a pipe before the writer blocks.
+     */
+    public static final int MAX_BUFFERS = 16;
+
+    /**
+     * Maximum number of free buffers kept in the pool.
+     */
+    private static final int MAX_POOLED = 64;
+
+    private static final Queue<ByteBuffer> pool = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger pooled = new AtomicInteger();
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    // buffers ready for reading, each having remaining bytes
+    private final ArrayDeque<ByteBuffer> buffers = new ArrayDeque<>();
+    private final Source source = new Source();
+    private final Sink sink = new Sink();
+    private boolean sourceClosed;
+    private boolean sinkClosed;
+
+    public ReadableByteChannel source()
+    {
+        return source;
+    }
+
+    public WritableByteChannel sink()
+    {
+        return sink;
+    }
+
+    static ByteBuffer acquire()
+    {
+        ByteBuffer buffer = pool.poll();
+        if (buffer == null)
+        {
+            return ByteBuffer.allocate(BUFFER_SIZE);
+        }
+        pooled.decrementAndGet();
+        buffer.clear();
+        return buffer;
+    }
+
+    static void release(ByteBuffer buffer)
+    {
+        if (pooled.incrementAndGet() <= MAX_POOLED)
+        {
+            pool.offer(buffer);
+        }
+        else
+        {
+            pooled.decrementAndGet();
+        }
+    }
+
+    /**
+     * Moves as many bytes as possible from src to dst.
+     */
+    private static int transfer(ByteBuffer src, ByteBuffer dst)
+    {
+        int n = Math.min(src.remaining(), dst.remaining());
+        if (n == src.remaining())
+        {
+            dst.put(src);
+        }
+        else
+        {
+            int limit = src.limit();
+            src.limit(src.position() + n);
+            dst.put(src);
+            src.limit(limit);
+        }
+        return n;
+    }
+
+    private void lock() throws IOException
+    {
+        try
+        {
+            lock.lockInterruptibly();
+        }
+        catch (InterruptedException e)
+        {
+            throw (IOException) new InterruptedIOException().initCause(e);
+        }
+    }
+
+    private static void await(Condition condition) throws IOException
+    {
+        try
+        {
+            condition.await();
+        }
+        catch (InterruptedException e)
+        {
+            throw (IOException) new InterruptedIOException().initCause(e);
+        }
+    }
+
+    private int read(ByteBuffer dst) throws IOException
+    {
+        lock();
+        try
+        {
+            while (buffers.isEmpty())
+            {
+                if (sourceClosed)
+                {
+                    throw new ClosedChannelException();
+                }
+                if (sinkClosed)
+                {
+                    return -1;
+                }
+                await(notEmpty);
+            }
+            int n = 0;
+            while (dst.hasRemaining() && !buffers.isEmpty())
+            {
+                ByteBuffer head = buffers.peekFirst();
+                n += transfer(head, dst);
+                if (!head.hasRemaining())
+                {
+                    buffers.removeFirst();
+                    release(head);
+                    notFull.signal();
+                }
+            }
+            return n;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    private int write(ByteBuffer src) throws IOException
+    {
+        int n = src.remaining();
+        lock();
+        try
+        {
+            while (src.hasRemaining())
+            {
+                if (sinkClosed)
+                {
+                    throw new ClosedChannelException();
+                }
+                if (sourceClosed)
+                {
+                    throw new IOException("Pipe closed");
+                }
+                ByteBuffer tail = buffers.peekLast();
+                if (tail != null && tail.limit() < tail.capacity())
+                {
+                    // append to the last buffer, the reader has not seen those bytes yet
+                    int position = tail.position();
+                    tail.position(tail.limit());
+                    tail.limit(tail.capacity());
+                    transfer(src, tail);
+                    tail.limit(tail.position());
+                    tail.position(position);
+                    notEmpty.signal();
+                }
+                else if (buffers.size() < MAX_BUFFERS)
+                {
+                    ByteBuffer buffer = acquire();
+                    transfer(src, buffer);
+                    buffer.flip();
+                    buffers.addLast(buffer);
+                    notEmpty.signal();
+                }
+                else
+                {
+                    await(notFull);
+                }
+            }
+            return n;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    private void closeSource()
+    {
+        lock.lock();
+        try
+        {
+            sourceClosed = true;
+            for (ByteBuffer buffer : buffers)
+            {
+                release(buffer);
+            }
+            buffers.clear();
+            notFull.signalAll();
+            notEmpty.signalAll();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    private void closeSink()
+    {
+        lock.lock();
+        try
+        {
+            sinkClosed = true;
+            notEmpty.signalAll();
+            notFull.signalAll();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    private class Source implements ReadableByteChannel
+    {
+        @Override
+        public int read(ByteBuffer dst) throws IOException
+        {
+            return ChannelPipe.this.read(dst);
+        }
+
+        @Override
+        public boolean isOpen()
+        {
+            lock.lock();
+            try
+            {
+                return !sourceClosed;
+            }
+            finally
+            {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void close()
+        {
+            closeSource();
+        }
+    }
+
+    private class Sink implements WritableByteChannel
+    {
+        @Override
+        public int write(ByteBuffer src) throws IOException
+        {
+            return ChannelPipe.this.write(src);
+        }
+
+        @Override
+        public boolean isOpen()
+        {
+            lock.lock();
+            try
+            {
+                return !sinkClosed;
+            }
+            finally
+            {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void close()
+        {
+            closeSink();
+        }
+    }
+}
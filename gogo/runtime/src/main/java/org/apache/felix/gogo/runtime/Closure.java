@@ -55,6 +55,10 @@ public class Closure implements Function, Evaluate
 
     private static final ThreadLocal<String> location = new ThreadLocal<>();
 
+    // markers stored in Token.literal
+    private static final Object NOT_LITERAL = new Object();
+    private static final Object NULL_LITERAL = new Object();
+
     private final CommandSessionImpl session;
     private final Closure parent;
     private final CharSequence source;
@@ -81,7 +85,7 @@ public class Closure implements Function, Evaluate
         {
             try
             {
-                this.program = new Parser(source).program();
+                this.program = session.compile(source);
             }
             catch (Exception e)
             {
@@ -259,23 +263,21 @@ public class Closure implements Function, Evaluate
                         ntoclose = toclose;
                         endOfPipe = true;
                     } else if (Token.eq("|", op)) {
-                        PipedInputStream pis = new PipedInputStream();
-                        PipedOutputStream pos = new PipedOutputStream(pis);
+                        ChannelPipe pipe = new ChannelPipe();
                         nstreams = streams.clone();
-                        nstreams[1] = Channels.newChannel(pos);
+                        nstreams[1] = pipe.sink();
                         ntoclose = toclose.clone();
                         ntoclose[1] = true;
-                        streams[0] = Channels.newChannel(pis);
+                        streams[0] = pipe.source();
                         toclose[0] = true;
                         endOfPipe = false;
                     } else if (Token.eq("|&", op)) {
-                        PipedInputStream pis = new PipedInputStream();
-                        PipedOutputStream pos = new PipedOutputStream(pis);
+                        ChannelPipe pipe = new ChannelPipe();
                         nstreams = streams.clone();
-                        nstreams[1] = nstreams[2] = Channels.newChannel(pos);
+                        nstreams[1] = nstreams[2] = pipe.sink();
                         ntoclose = toclose.clone();
                         ntoclose[1] = ntoclose[2] = true;
-                        streams[0] = Channels.newChannel(pis);
+                        streams[0] = pipe.source();
                         toclose[0] = true;
                         endOfPipe = false;
                     } else {
@@ -396,7 +398,12 @@ public class Closure implements Function, Evaluate
             return array((Array) t);
         }
         else {
-            Object v = Expander.expand(t, this);
+            Object v = literal(t);
+            if (v != NOT_LITERAL)
+            {
+                return convertNumeric ? (v == NULL_LITERAL ? null : v) : t;
+            }
+            v = Expander.expand(t, this);
             if (t == v)
             {
                 if (convertNumeric)
@@ -408,6 +415,33 @@ public class Closure implements Function, Evaluate
         }
     }
 
+    /**
+     * Returns the evaluated value of a token that expands to itself,
+     * computing it on first use, or NOT_LITERAL if the token needs
+     * to be expanded each time.
+     */
+    private static Object literal(Token t)
+    {
+        Object v = t.literal;
+        if (v == null)
+        {
+            if (Expander.isLiteral(t))
+            {
+                v = eval((Object) t);
+                if (v == null)
+                {
+                    v = NULL_LITERAL;
+                }
+            }
+            else
+            {
+                v = NOT_LITERAL;
+            }
+            t.literal = v;
+        }
+        return v;
+    }
+
     public Object execute(Executable executable) throws Exception
     {
         if (executable instanceof Statement)
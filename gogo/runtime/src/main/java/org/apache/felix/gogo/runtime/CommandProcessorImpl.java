@@ -35,6 +35,7 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArraySet;
 
+import org.apache.felix.gogo.runtime.Parser.Program;
 import org.apache.felix.service.command.*;
 import org.apache.felix.service.threadio.ThreadIO;
 import org.osgi.annotation.bundle.Capability;
@@ -54,6 +55,20 @@ public class CommandProcessorImpl implements CommandProcessor
     protected final WeakHashMap<CommandSession, Object> sessions = new WeakHashMap<>();
     protected boolean stopped;
 
+    /**
+     * Maximum number of parsed programs kept by {@link #compile(CharSequence)}.
+     */
+    protected static final int PROGRAM_CACHE_SIZE = 256;
+
+    private final Map<String, Program> programs = new LinkedHashMap<String, Program>(16, 0.75f, true)
+    {
+        @Override
+        protected boolean removeEldestEntry(Entry<String, Program> eldest)
+        {
+            return size() > PROGRAM_CACHE_SIZE;
+        }
+    };
+
     public CommandProcessorImpl()
     {
         this(null);
@@ -94,6 +109,39 @@ public class CommandProcessorImpl implements CommandProcessor
         }
     }
 
+    /**
+     * Parse the given source into a program.
+     * Programs are immutable, so the most recently used ones are cached
+     * by source text and closures executed repeatedly are parsed only once.
+     * Sources that fail to parse are not cached.
+     */
+    public Program compile(CharSequence source)
+    {
+        if (source instanceof Program)
+        {
+            return (Program) source;
+        }
+        if (source == null)
+        {
+            return new Parser(source).program();
+        }
+        String key = source.toString();
+        Program program;
+        synchronized (programs)
+        {
+            program = programs.get(key);
+        }
+        if (program == null)
+        {
+            program = new Parser(key).program();
+            synchronized (programs)
+            {
+                programs.put(key, program);
+            }
+        }
+        return program;
+    }
+
     void closeSession(CommandSessionImpl session)
     {
         synchronized (sessions)
@@ -257,6 +305,7 @@ public class CommandProcessorImpl implements CommandProcessor
             cmdMap = commands.get(key);
         }
         cmdMap.put(target, ranking);
+        Reflective.invalidateCache();
     }
 
     public void removeCommand(String scope, String function)
@@ -264,6 +313,7 @@ public class CommandProcessorImpl implements CommandProcessor
         // TODO: WARNING: this method does remove all mapping for scope:function
         String key = (scope + ":" + function).toLowerCase();
         commands.remove(key);
+        Reflective.invalidateCache();
     }
 
     public void removeCommand(String scope, String function, Object target)
@@ -275,6 +325,7 @@ public class CommandProcessorImpl implements CommandProcessor
         {
             cmdMap.remove(target);
         }
+        Reflective.invalidateCache();
     }
 
     public void removeCommand(Object target)
@@ -283,6 +334,7 @@ public class CommandProcessorImpl implements CommandProcessor
         {
             cmdMap.remove(target);
         }
+        Reflective.invalidateCache();
     }
 
     private String[] getFunctions(Class<?> target)
@@ -54,6 +54,7 @@ import org.apache.felix.service.command.Job;
 import org.apache.felix.service.command.Job.Status;
 import org.apache.felix.service.command.JobListener;
 import org.apache.felix.service.command.Process;
+import org.apache.felix.gogo.runtime.Parser.Program;
 import org.apache.felix.gogo.runtime.Pipe.Result;
 import org.apache.felix.service.command.CommandProcessor;
 import org.apache.felix.service.command.CommandSession;
@@ -162,6 +163,11 @@ public class CommandSessionImpl implements CommandSession, Converter
         }
     }
 
+    Program compile(CharSequence source)
+    {
+        return processor.compile(source);
+    }
+
     public Object execute(CharSequence commandline) throws Exception
     {
         assert processor != null;
@@ -73,6 +73,27 @@ public class Expander extends BaseTokenizer
         return new Expander(word, eval, inQuote, generateFileNames, semanticJoin, unquote, asPattern).expand();
     }
 
+    /**
+     * Characters that trigger variable, brace, quote or file name expansion.
+     */
+    private static final String EXPANDABLE = "%$\\\"'{*(|<[?";
+
+    /**
+     * Checks whether the given word always expands to itself, whatever
+     * the evaluation context, so that its expansion can be computed once.
+     */
+    public static boolean isLiteral(CharSequence word)
+    {
+        for (int i = 0; i < word.length(); i++)
+        {
+            if (EXPANDABLE.indexOf(word.charAt(i)) >= 0)
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
     private final Evaluate evaluate;
     private boolean inQuote;
     private boolean generateFileNames;
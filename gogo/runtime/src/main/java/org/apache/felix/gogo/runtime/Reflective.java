@@ -19,10 +19,14 @@
 package org.apache.felix.gogo.runtime;
 
 import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Array;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -32,6 +36,9 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.felix.service.command.CommandSession;
 import org.apache.felix.service.command.Parameter;
@@ -50,6 +57,33 @@ public final class Reflective
                 "finally", "long", "strictfp", "volatile", "const", "float", "native",
                 "super", "while"));
 
+    /**
+     * Maximum number of resolved overloads remembered per method name.
+     */
+    private static final int MAX_RESOLVED = 64;
+
+    private static final MethodType INVOKER_TYPE = MethodType.methodType(Object.class, Object.class, Object[].class);
+
+    private static final AtomicInteger generation = new AtomicInteger();
+
+    private static final ClassValue<MethodCache> methodCaches = new ClassValue<MethodCache>()
+    {
+        @Override
+        protected MethodCache computeValue(Class<?> type)
+        {
+            return new MethodCache(type);
+        }
+    };
+
+    /**
+     * Invalidates the cached method tables and resolved overloads.
+     * This is called when command services change.
+     */
+    public static void invalidateCache()
+    {
+        generation.incrementAndGet();
+    }
+
     /**
      * invokes the named method on the given target using the supplied args,
      * which are converted if necessary.
@@ -63,94 +97,84 @@ public final class Reflective
     public static Object invoke(CommandSession session, Object target, String name,
         List<Object> args) throws Exception
     {
-        Method[] methods = target.getClass().getMethods();
         name = name.toLowerCase(Locale.ENGLISH);
 
         String org = name;
-        String get = "get" + name;
-        String is = "is" + name;
-        String set = "set" + name;
 
         if (KEYWORDS.contains(name))
         {
             name = "_" + name;
         }
 
+        MethodTable table = null;
         if (target instanceof Class<?>)
         {
-            Method[] staticMethods = ((Class<?>) target).getMethods();
-            for (Method m : staticMethods)
+            // use the static methods if one of them matches the name
+            table = methodCaches.get((Class<?>) target).getTable(org);
+            if (table.candidates.length == 0)
             {
-                String mname = m.getName().toLowerCase(Locale.ENGLISH);
-                if (mname.equals(name) || mname.equals(get) || mname.equals(set)
-                    || mname.equals(is) || mname.equals(MAIN))
+                table = null;
+            }
+        }
+        if (table == null)
+        {
+            table = methodCaches.get(target.getClass()).getTable(org);
+        }
+
+        // The overload resolved for the same argument types is tried first. Only
+        // exact matches are remembered, as they do not depend on argument values.
+        ArgumentTypes argTypes = table.memoizable ? ArgumentTypes.of(args) : null;
+        if (argTypes != null)
+        {
+            Integer resolved = table.resolved.get(argTypes);
+            if (resolved != null)
+            {
+                int index = resolved;
+                Object[] parms = new Object[table.types[index].length];
+                if (coerce(session, target, table, index, parms, args) == 0)
                 {
-                    methods = staticMethods;
-                    break;
+                    return table.invoke(index, target, parms);
                 }
             }
         }
 
-        Method bestMethod = null;
+        int bestIndex = -1;
         Object[] bestArgs = null;
         int lowestMatch = Integer.MAX_VALUE;
         ArrayList<Class<?>[]> possibleTypes = new ArrayList<>();
 
-        for (Method m : methods)
+        for (int i = 0; i < table.candidates.length; i++)
         {
-            String mname = m.getName().toLowerCase(Locale.ENGLISH);
-            if (mname.equals(name) || mname.equals(get) || mname.equals(set)
-                || mname.equals(is) || mname.equals(MAIN))
-            {
-                Class<?>[] types = m.getParameterTypes();
-                ArrayList<Object> xargs = new ArrayList<>(args);
+            Class<?>[] types = table.types[i];
+            Object[] parms = new Object[types.length];
+            int match = coerce(session, target, table, i, parms, args);
 
-                // pass command name as argv[0] to main, so it can handle
-                // multiple commands
-                if (mname.equals(MAIN))
-                {
-                    xargs.add(0, org);
-                }
-
-                Object[] parms = new Object[types.length];
-                int match = coerce(session, target, m, types, parms, xargs);
-
-                if (match < 0)
+            if (match < 0)
+            {
+                // coerce failed
+                possibleTypes.add(types);
+            }
+            else
+            {
+                if (match < lowestMatch)
                 {
-                    // coerce failed
-                    possibleTypes.add(types);
+                    lowestMatch = match;
+                    bestIndex = i;
+                    bestArgs = parms;
                 }
-                else
-                {
-                    if (match < lowestMatch)
-                    {
-                        lowestMatch = match;
-                        bestMethod = m;
-                        bestArgs = parms;
-                    }
 
-                    if (match == 0)
-                        break; // can't get better score
-                }
+                if (match == 0)
+                    break; // can't get better score
             }
         }
 
-        if (bestMethod != null)
+        if (bestIndex >= 0)
         {
-            bestMethod.setAccessible(true);
-            try
-            {
-                return bestMethod.invoke(target, bestArgs);
-            }
-            catch (InvocationTargetException e)
+            if (argTypes != null && lowestMatch == 0)
             {
-                Throwable cause = e.getCause();
-                if (cause instanceof Exception)
-                {
-                    throw (Exception) cause;
-                }
-                throw e;
+                table.remember(argTypes, bestIndex);
             }
+            return table.invoke(bestIndex, target, bestArgs);
         }
         else
         {
@@ -206,6 +230,21 @@ public final class Reflective
         }
     }
 
+    private static int coerce(CommandSession session, Object target, MethodTable table, int index,
+        Object[] parms, List<Object> args)
+    {
+        ArrayList<Object> xargs = new ArrayList<>(args);
+
+        // pass command name as argv[0] to main, so it can handle
+        // multiple commands
+        if (table.main[index])
+        {
+            xargs.add(0, table.name);
+        }
+
+        return coerce(session, target, table.candidates[index], table.types[index], parms, xargs);
+    }
+
     /**
      * transform name/value parameters into ordered argument list.
      * params: --param2, value2, --flag1, arg3
@@ -639,4 +678,226 @@ public final class Reflective
         return null;
     }
 
+    /**
+     * The method tables of a class, one per command name.
+     */
+    private static final class MethodCache
+    {
+        private final Class<?> type;
+        private volatile int generation = Reflective.generation.get();
+        private volatile ConcurrentMap<String, MethodTable> tables = new ConcurrentHashMap<>();
+
+        MethodCache(Class<?> type)
+        {
+            this.type = type;
+        }
+
+        MethodTable getTable(String name)
+        {
+            ConcurrentMap<String, MethodTable> tables = this.tables;
+            int current = Reflective.generation.get();
+            if (generation != current)
+            {
+                tables = new ConcurrentHashMap<>();
+                this.tables = tables;
+                generation = current;
+            }
+            MethodTable table = tables.get(name);
+            if (table == null)
+            {
+                table = new MethodTable(type.getMethods(), name);
+                MethodTable existing = tables.putIfAbsent(name, table);
+                if (existing != null)
+                {
+                    table = existing;
+                }
+            }
+            return table;
+        }
+    }
+
+    /**
+     * The methods matching a command name, the overloads resolved for argument
+     * types and the compiled invokers of the methods.
+     */
+    private static final class MethodTable
+    {
+        final String name;
+        final Method[] candidates;
+        final Class<?>[][] types;
+        final boolean[] main;
+        final boolean memoizable;
+        final ConcurrentMap<ArgumentTypes, Integer> resolved = new ConcurrentHashMap<>();
+        private final MethodHandle[] invokers;
+
+        MethodTable(Method[] methods, String org)
+        {
+            String name = KEYWORDS.contains(org) ? "_" + org : org;
+            String get = "get" + org;
+            String is = "is" + org;
+            String set = "set" + org;
+
+            List<Method> list = new ArrayList<>();
+            for (Method m : methods)
+            {
+                String mname = m.getName().toLowerCase(Locale.ENGLISH);
+                if (mname.equals(name) || mname.equals(get) || mname.equals(set)
+                    || mname.equals(is) || mname.equals(MAIN))
+                {
+                    list.add(m);
+                }
+            }
+
+            this.name = org;
+            this.candidates = list.toArray(new Method[list.size()]);
+            this.types = new Class<?>[candidates.length][];
+            this.main = new boolean[candidates.length];
+            this.invokers = new MethodHandle[candidates.length];
+            boolean memoizable = true;
+            for (int i = 0; i < candidates.length; i++)
+            {
+                types[i] = candidates[i].getParameterTypes();
+                main[i] = candidates[i].getName().toLowerCase(Locale.ENGLISH).equals(MAIN);
+                // named parameters are matched against argument values
+                for (Annotation[] as : candidates[i].getParameterAnnotations())
+                {
+                    for (Annotation a : as)
+                    {
+                        memoizable &= !(a instanceof Parameter);
+                    }
+                }
+            }
+            this.memoizable = memoizable;
+        }
+
+        void remember(ArgumentTypes argTypes, int index)
+        {
+            if (resolved.size() >= MAX_RESOLVED)
+            {
+                resolved.clear();
+            }
+            resolved.put(argTypes, index);
+        }
+
+        Object invoke(int index, Object target, Object[] args) throws Exception
+        {
+            Method method = candidates[index];
+            MethodHandle invoker = invokers[index];
+            if (invoker == null)
+            {
+                method.setAccessible(true);
+                invoker = compile(method);
+                invokers[index] = invoker;
+            }
+            try
+            {
+                if (isExact(method, types[index], target, args))
+                {
+                    return (Object) invoker.invokeExact(target, args);
+                }
+                // let reflection apply widening conversions and report mismatches
+                return method.invoke(target, args);
+            }
+            catch (InvocationTargetException e)
+            {
+                Throwable cause = e.getCause();
+                if (cause instanceof Exception)
+                {
+                    throw (Exception) cause;
+                }
+                throw e;
+            }
+            catch (Exception e)
+            {
+                throw e;
+            }
+            catch (Throwable t)
+            {
+                throw new InvocationTargetException(t);
+            }
+        }
+
+        private static MethodHandle compile(Method method) throws IllegalAccessException
+        {
+            MethodHandle handle = MethodHandles.lookup().unreflect(method).asFixedArity();
+            if (Modifier.isStatic(method.getModifiers()))
+            {
+                handle = MethodHandles.dropArguments(handle, 0, Object.class);
+            }
+            return handle.asSpreader(Object[].class, method.getParameterTypes().length).asType(INVOKER_TYPE);
+        }
+
+        /**
+         * Checks whether the target and arguments can be passed to the compiled
+         * invoker without conversion.
+         */
+        private static boolean isExact(Method method, Class<?>[] types, Object target, Object[] args)
+        {
+            if (!Modifier.isStatic(method.getModifiers()) && !method.getDeclaringClass().isInstance(target))
+            {
+                return false;
+            }
+            for (int i = 0; i < types.length; i++)
+            {
+                if (types[i].isPrimitive())
+                {
+                    if (args[i] == null || args[i].getClass() != primitiveToObject(types[i]))
+                    {
+                        return false;
+                    }
+                }
+                else if (args[i] != null && !types[i].isInstance(args[i]))
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * The types of the arguments of an invocation.
+     */
+    private static final class ArgumentTypes
+    {
+        private final Class<?>[] types;
+        private final int hash;
+
+        private ArgumentTypes(Class<?>[] types)
+        {
+            this.types = types;
+            this.hash = Arrays.hashCode(types);
+        }
+
+        /**
+         * @return the argument types or null if an argument is a token, as
+         * the conversion of tokens depends on their value.
+         */
+        static ArgumentTypes of(List<Object> args)
+        {
+            Class<?>[] types = new Class<?>[args.size()];
+            int i = 0;
+            for (Object arg : args)
+            {
+                if (arg instanceof Token)
+                {
+                    return null;
+                }
+                types[i++] = arg == null ? null : arg.getClass();
+            }
+            return new ArgumentTypes(types);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            return obj instanceof ArgumentTypes && Arrays.equals(types, ((ArgumentTypes) obj).types);
+        }
+    }
 }
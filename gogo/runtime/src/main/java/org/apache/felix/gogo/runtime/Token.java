@@ -26,6 +26,9 @@ public class Token implements CharSequence {
     protected final int line;
     protected final int column;
 
+    // cached evaluation of a token that does not need expansion, see Closure
+    Object literal;
+
     public Token(CharSequence cs)
     {
         if (cs instanceof Token)
@@ -0,0 +1,137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.gogo.runtime;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ChannelPipeTest
+{
+
+    @Test
+    public void testTransfer() throws Exception
+    {
+        final ChannelPipe pipe = new ChannelPipe();
+        final byte[] data = new byte[ChannelPipe.BUFFER_SIZE * ChannelPipe.MAX_BUFFERS * 4 + 17];
+        for (int i = 0; i < data.length; i++)
+        {
+            data[i] = (byte) i;
+        }
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try
+        {
+            Future<Void> writer = executor.submit(new Callable<Void>()
+            {
+                public Void call() throws Exception
+                {
+                    // odd sized writes, larger than the pipe capacity overall
+                    for (int i = 0; i < data.length; i += 1000)
+                    {
+                        pipe.sink().write(ByteBuffer.wrap(data, i, Math.min(1000, data.length - i)));
+                    }
+                    pipe.sink().close();
+                    return null;
+                }
+            });
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            ByteBuffer bb = ByteBuffer.allocate(333);
+            while (pipe.source().read(bb) >= 0)
+            {
+                bb.flip();
+                baos.write(bb.array(), 0, bb.limit());
+                bb.clear();
+            }
+            writer.get(10, TimeUnit.SECONDS);
+            assertArrayEquals(data, baos.toByteArray());
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testBackpressure() throws Exception
+    {
+        final ChannelPipe pipe = new ChannelPipe();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try
+        {
+            Future<Void> writer = executor.submit(new Callable<Void>()
+            {
+                public Void call() throws Exception
+                {
+                    byte[] chunk = new byte[ChannelPipe.BUFFER_SIZE];
+                    while (true)
+                    {
+                        pipe.sink().write(ByteBuffer.wrap(chunk));
+                    }
+                }
+            });
+            // the writer blocks once the pipe is full
+            Thread.sleep(200);
+            assertFalse(writer.isDone());
+
+            // and fails once the reading side has been closed
+            pipe.source().close();
+            try
+            {
+                writer.get(10, TimeUnit.SECONDS);
+                fail("Expected an exception");
+            }
+            catch (ExecutionException e)
+            {
+                assertTrue(e.getCause() instanceof IOException);
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testPartialBuffersAreVisible() throws Exception
+    {
+        ChannelPipe pipe = new ChannelPipe();
+        pipe.sink().write(ByteBuffer.wrap("abc\n".getBytes()));
+        ByteBuffer bb = ByteBuffer.allocate(100);
+        assertEquals(4, pipe.source().read(bb));
+        pipe.sink().write(ByteBuffer.wrap("def\n".getBytes()));
+        pipe.sink().close();
+        assertEquals(4, pipe.source().read(bb));
+        assertEquals(-1, pipe.source().read(bb));
+        assertEquals("abc\ndef\n", new String(bb.array(), 0, bb.position()));
+    }
+}
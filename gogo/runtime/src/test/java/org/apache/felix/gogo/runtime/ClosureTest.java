@@ -23,11 +23,23 @@ import org.junit.Test;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import org.apache.felix.gogo.runtime.Parser.Program;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
 
 public class ClosureTest {
 
+    private static final Logger log = Logger.getLogger(ClosureTest.class.getName());
+
+    private static final String LOOP_SCRIPT = "a = 1 ; b = $i ; c = $a ; d = [ 1 2 $b ] ; e = { $c } ; f = $d";
+
     @Test
     public void testParentSessionClosure() throws Exception {
         CommandProcessorImpl processor = new CommandProcessorImpl(null);
@@ -41,4 +53,111 @@ public class ClosureTest {
         assertEquals("a", ((Closure) parent.get("cmd")).execute(parent, Collections.emptyList()).toString());
         assertEquals("b", ((Closure) parent.get("cmd")).execute(child, Collections.emptyList()).toString());
     }
+
+    @Test
+    public void testCompiledProgramIsCached() throws Exception {
+        CommandProcessorImpl processor = new CommandProcessorImpl(null);
+        Program program = processor.compile("a = 1 ; b = $a");
+        assertSame(program, processor.compile(new StringBuilder("a = 1 ; b = $a")));
+        assertSame(program, processor.compile(program));
+        assertNotSame(program, processor.compile("a = 2"));
+        for (int i = 0; i < 2; i++) {
+            try {
+                processor.compile("a = { b");
+                fail("incomplete input should not be cached");
+            } catch (EOFError e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void testLiteralTokens() throws Exception {
+        CommandProcessorImpl processor = new CommandProcessorImpl(null);
+        ByteArrayInputStream bais = new ByteArrayInputStream("".getBytes());
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        CommandSessionImpl session = processor.createSession(bais, baos, baos);
+        for (int i = 0; i < 3; i++) {
+            session.put("v", (long) i);
+            List<?> list = (List<?>) session.execute("[ 1 1.5 true abc $v x$v ]");
+            assertEquals(1L, list.get(0));
+            assertEquals(1.5d, list.get(1));
+            assertEquals(true, list.get(2));
+            assertEquals("abc", list.get(3));
+            // variable parts are still expanded on each execution
+            assertEquals((long) i, list.get(4));
+            assertEquals("x" + i, list.get(5).toString());
+            // values of assignments are not converted
+            assertEquals("1", session.execute("a = 1").toString());
+        }
+    }
+
+    @Test
+    public void testCompiledLoop() throws Exception {
+        CommandProcessorImpl processor = new CommandProcessorImpl(null);
+        ByteArrayInputStream bais = new ByteArrayInputStream("".getBytes());
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        CommandSessionImpl session = processor.createSession(bais, baos, baos);
+        String script = LOOP_SCRIPT;
+        Program program = processor.compile(script);
+
+        for (int i = 0; i < 100; i++) {
+            session.put("i", "v" + i);
+            session.execute(script);
+            // the cached program gives the same results as a freshly parsed one
+            assertEquals("[1, 2, v" + i + "]", session.get("f").toString());
+            assertEquals("1", ((Closure) session.get("e")).execute(session, null).toString());
+            new Closure(session, null, new Parser(script).program()).execute(session, null);
+            assertEquals("[1, 2, v" + i + "]", session.get("f").toString());
+        }
+        // and the source was only parsed once
+        assertSame(program, processor.compile(script));
+    }
+
+    @Test
+    public void testCompiledLoopBenchmark() throws Exception {
+        CommandProcessorImpl processor = new CommandProcessorImpl(null);
+        ByteArrayInputStream bais = new ByteArrayInputStream("".getBytes());
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        CommandSessionImpl session = processor.createSession(bais, baos, baos);
+        int iterations = 2000;
+
+        // warm up both paths before measuring
+        runInterpreted(session, iterations);
+        runCompiled(session, iterations);
+
+        long interpreted = runInterpreted(session, iterations);
+        long compiled = runCompiled(session, iterations);
+        assertEquals("[1, 2, v" + (iterations - 1) + "]", session.get("f").toString());
+
+        log.info(String.format("%d executions: interpreted %d ms, compiled %d ms (x%.2f)", iterations,
+                TimeUnit.NANOSECONDS.toMillis(interpreted), TimeUnit.NANOSECONDS.toMillis(compiled),
+                (double) interpreted / Math.max(compiled, 1)));
+    }
+
+    /**
+     * Executes the loop script parsing it on each iteration.
+     * @return the elapsed time in nanoseconds
+     */
+    private static long runInterpreted(CommandSessionImpl session, int iterations) throws Exception {
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            session.put("i", "v" + i);
+            new Closure(session, null, new Parser(LOOP_SCRIPT).program()).execute(session, null);
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Executes the loop script through the session, reusing the compiled program.
+     * @return the elapsed time in nanoseconds
+     */
+    private static long runCompiled(CommandSessionImpl session, int iterations) throws Exception {
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            session.put("i", "v" + i);
+            session.execute(LOOP_SCRIPT);
+        }
+        return System.nanoTime() - start;
+    }
 }
@@ -20,6 +20,7 @@ package org.apache.felix.gogo.runtime;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.*;
@@ -68,6 +69,68 @@ public class ReflectiveTest {
                 Collections.<Object>singletonList(conv));
     }
 
+    @Test
+    public void testCachedOverloadResolution() throws Exception {
+        CommandSession session = createSession();
+        Overloads target = new Overloads();
+        for (int i = 0; i < 3; i++) {
+            assertEquals("string:a", Reflective.invoke(session, target, "over", Collections.<Object>singletonList("a")));
+            assertEquals("list:[a]", Reflective.invoke(session, target, "over", Collections.<Object>singletonList(Arrays.asList("a"))));
+            // needs a conversion, so it is not remembered
+            assertEquals("string:5", Reflective.invoke(session, target, "over", Collections.<Object>singletonList(5L)));
+            Reflective.invalidateCache();
+        }
+    }
+
+    @Test
+    public void testStaticInvocation() throws Exception {
+        CommandSession session = createSession();
+        assertEquals(6, Reflective.invoke(session, Overloads.class, "twice", Collections.<Object>singletonList(3L)));
+        assertEquals(6, Reflective.invoke(session, Overloads.class, "twice", Collections.<Object>singletonList(3L)));
+    }
+
+    @Test
+    public void testInvocationErrors() throws Exception {
+        CommandSession session = createSession();
+        try {
+            Reflective.invoke(session, new Overloads(), "fail", Collections.<Object>singletonList("boom"));
+            Assert.fail();
+        } catch (IOException e) {
+            Assert.assertEquals("boom", e.getMessage());
+        }
+        try {
+            Reflective.invoke(session, new Overloads(), "twice", Collections.<Object>singletonList(null));
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            // null can't be passed as a primitive
+        }
+    }
+
+    static CommandSession createSession() {
+        InputStream in = new ByteArrayInputStream(new byte[0]);
+        OutputStream out = new ByteArrayOutputStream();
+        CommandProcessorImpl processor = new CommandProcessorImpl(null);
+        return new CommandSessionImpl(processor, in, out, out);
+    }
+
+    public static class Overloads {
+        public String over(String s) {
+            return "string:" + s;
+        }
+
+        public String over(List<?> l) {
+            return "list:" + l;
+        }
+
+        public static int twice(int i) {
+            return i * 2;
+        }
+
+        public void fail(String msg) throws IOException {
+            throw new IOException(msg);
+        }
+    }
+
     static class Target {
         public Object test1(CommandSession session, Object[] argv) {
             return argv;
@@ -19,16 +19,23 @@
 
 package org.apache.felix.http.base.internal.handler;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashSet;
 import java.util.List;
-import java.util.NoSuchElementException;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.servlet.ServletContext;
 import javax.servlet.http.HttpSession;
+import javax.servlet.http.HttpSessionActivationListener;
 import javax.servlet.http.HttpSessionBindingEvent;
 import javax.servlet.http.HttpSessionBindingListener;
 import javax.servlet.http.HttpSessionContext;
@@ -47,17 +54,11 @@ public class HttpSessionWrapper implements HttpSession
     /** All special attributes are prefixed with this prefix. */
     private static final String PREFIX = "org.apache.felix.http.session.context.";
 
-    /** For each internal session, the attributes are prefixed with this followed by the context id */
-    private static final String ATTR_PREFIX = PREFIX + "attr.";
+    /** The state of each internal session is stored in an attribute named with this prefix followed by the context id */
+    private static final String ATTR_DATA = PREFIX + "data.";
 
-    /** The created time for the internal session (appended with context id) */
-    private static final String ATTR_CREATED = PREFIX + "created.";
-
-    /** The last accessed time for the internal session (appended with context id), as Epoch time (milliseconds). */
-    private static final String ATTR_LAST_ACCESSED = PREFIX + "lastaccessed.";
-
-    /** The max inactive time (appended with context id), in seconds. */
-    private static final String ATTR_MAX_INACTIVE = PREFIX + "maxinactive.";
+    /** The names of all contexts having an internal session. */
+    private static final String ATTR_CONTEXTS = PREFIX + "names";
 
     /** The underlying container session. */
     private final HttpSession delegate;
@@ -68,21 +69,18 @@ public class HttpSessionWrapper implements HttpSession
     /** The id for this session. */
     private final String sessionId;
 
-    /** The key prefix for attributes belonging to this session. */
-    private final String keyPrefix;
+    /** The name of the container attribute holding the state of this session. */
+    private final String dataKey;
+
+    /** The state of this session. */
+    private final ContextSessionData data;
 
     /** Flag to handle the validity of this session. */
     private volatile boolean isInvalid = false;
 
-    /** The time this has been created. */
-    private final long created;
-
     /** The time this has been last accessed. */
     private final long lastAccessed;
 
-    /** The max timeout interval. */
-    private int maxTimeout;
-
     /**
      * Is this a new session?
      */
@@ -97,7 +95,7 @@ public class HttpSessionWrapper implements HttpSession
 
     public static boolean hasSession(final String contextName, final HttpSession session)
     {
-        return session.getAttribute(ATTR_CREATED.concat(contextName)) != null;
+        return session.getAttribute(ATTR_DATA.concat(contextName)) != null;
     }
 
     public static Set<String> getExpiredSessionContextNames(final HttpSession session)
@@ -105,21 +103,12 @@ public class HttpSessionWrapper implements HttpSession
         final long now = System.currentTimeMillis();
 
         final Set<String> names = new HashSet<>();
-        final Enumeration<String> attrNames = session.getAttributeNames();
-        while (attrNames.hasMoreElements())
+        for(final String id : getContextNames(session))
         {
-            final String name = attrNames.nextElement();
-            if (name.startsWith(ATTR_LAST_ACCESSED))
+            final ContextSessionData data = getContextSessionData(session, id);
+            if ( data != null && data.isExpired(now) )
             {
-                final String id = name.substring(ATTR_LAST_ACCESSED.length());
-
-                final long lastAccess = (Long) session.getAttribute(name);
-                final long maxTimeout = 1000L * ((Integer) session.getAttribute(ATTR_MAX_INACTIVE + id));
-
-                if ((maxTimeout > 0) && (lastAccess + maxTimeout) < now)
-                {
-                    names.add(id);
-                }
+                names.add(id);
             }
         }
         return names;
@@ -132,19 +121,78 @@ public class HttpSessionWrapper implements HttpSession
      */
     public static Set<String> getSessionContextNames(final HttpSession session)
     {
-        final Set<String> names = new HashSet<>();
-        final Enumeration<String> attrNames = session.getAttributeNames();
-        while (attrNames.hasMoreElements())
+        return new HashSet<>(getContextNames(session));
+    }
+
+    /**
+     * Get the state of the internal session of a context.
+     * @param session The underlying session
+     * @param contextName The name of the context
+     * @return The state or {@code null}
+     */
+    static ContextSessionData getContextSessionData(final HttpSession session, final String contextName)
+    {
+        final Object data = session.getAttribute(ATTR_DATA.concat(contextName));
+        if ( data instanceof ContextSessionData )
+        {
+            return (ContextSessionData) data;
+        }
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Set<String> getContextNames(final HttpSession session)
+    {
+        final Object names = session.getAttribute(ATTR_CONTEXTS);
+        if ( names instanceof Set )
         {
-            final String name = attrNames.nextElement();
-            if (name.startsWith(ATTR_LAST_ACCESSED))
+            return (Set<String>) names;
+        }
+        return Collections.emptySet();
+    }
+
+    /**
+     * Add a context to the set of contexts of the underlying session.
+     */
+    @SuppressWarnings("unchecked")
+    private static void addContextName(final HttpSession session, final String contextName)
+    {
+        Set<String> names;
+        synchronized ( session )
+        {
+            final Object current = session.getAttribute(ATTR_CONTEXTS);
+            if ( current instanceof Set )
             {
-                final String id = name.substring(ATTR_LAST_ACCESSED.length());
-                names.add(id);
+                names = (Set<String>) current;
             }
+            else
+            {
+                names = ConcurrentHashMap.newKeySet();
+            }
+            names.add(contextName);
         }
+        // set the attribute (again) to mark the session as changed
+        session.setAttribute(ATTR_CONTEXTS, names);
+    }
 
-        return names;
+    /**
+     * Remove a context from the set of contexts of the underlying session.
+     */
+    private static void removeContextName(final HttpSession session, final String contextName)
+    {
+        synchronized ( session )
+        {
+            final Set<String> names = getContextNames(session);
+            names.remove(contextName);
+            if ( names.isEmpty() )
+            {
+                session.removeAttribute(ATTR_CONTEXTS);
+            }
+            else
+            {
+                session.setAttribute(ATTR_CONTEXTS, names);
+            }
+        }
     }
 
     /**
@@ -159,42 +207,53 @@ public class HttpSessionWrapper implements HttpSession
         this.delegate = session;
         this.context = context;
         this.sessionId = context.getServletContextName();
-        this.keyPrefix = ATTR_PREFIX.concat(this.sessionId).concat(".");
-
-        final String createdAttrName = ATTR_CREATED.concat(this.sessionId);
+        this.dataKey = ATTR_DATA.concat(this.sessionId);
 
         final long now = System.currentTimeMillis();
-        if ( session.getAttribute(createdAttrName) == null )
+        final ContextSessionData existing = getContextSessionData(session, this.sessionId);
+        if ( existing == null )
         {
-            this.created = now;
-            this.maxTimeout = session.getMaxInactiveInterval();
+            this.data = new ContextSessionData(now, session.getMaxInactiveInterval());
             this.isNew = true;
 
-            session.setAttribute(createdAttrName, this.created);
-            session.setAttribute(ATTR_MAX_INACTIVE.concat(this.sessionId), this.maxTimeout);
+            session.setAttribute(this.dataKey, this.data);
+            addContextName(session, this.sessionId);
 
             context.getHttpSessionListener().sessionCreated(new HttpSessionEvent(this));
         }
         else
         {
-            this.created = (Long)session.getAttribute(createdAttrName);
-            this.maxTimeout = (Integer)session.getAttribute(ATTR_MAX_INACTIVE.concat(this.sessionId));
+            this.data = existing;
             this.isNew = false;
         }
 
         this.lastAccessed = now;
         if ( !terminate )
         {
-            session.setAttribute(ATTR_LAST_ACCESSED.concat(this.sessionId), this.lastAccessed);
+            this.data.lastAccessed = now;
+            // the access time is only written through to the container session
+            // once half of the timeout passed since it has last been marked as
+            // changed, a persisted access time therefore lags behind by less than
+            // half of the timeout
+            final long maxTimeout = 1000L * this.data.maxInactive;
+            if ( !this.isNew && maxTimeout > 0 && now - this.data.lastMarked >= maxTimeout / 2 )
+            {
+                this.touch();
+            }
         }
     }
 
     /**
-     * Helper method to get the real key within the real session.
+     * Set the state attribute again to mark the container session as changed,
+     * such that a container persisting or replicating sessions writes the
+     * changed state. Containers may call their attribute listeners for this,
+     * Jetty for example calls attributeReplaced, so this is only done if the
+     * state actually changed.
      */
-    private String getKey(final String name)
+    private void touch()
     {
-        return this.keyPrefix.concat(name);
+        this.data.lastMarked = System.currentTimeMillis();
+        this.delegate.setAttribute(this.dataKey, this.data);
     }
 
     /**
@@ -213,60 +272,21 @@ public class HttpSessionWrapper implements HttpSession
     public Object getAttribute(final String name)
     {
         this.checkInvalid();
-        Object result = this.delegate.getAttribute(this.getKey(name));
-        if ( result instanceof SessionBindingValueListenerWrapper )
-        {
-            result = ((SessionBindingValueListenerWrapper)result).getHttpSessionBindingListener();
-        }
-        return result;
+        return this.data.attributes.get(name);
     }
 
     @Override
     public Enumeration<String> getAttributeNames()
     {
         this.checkInvalid();
-        final Enumeration<String> e = this.delegate.getAttributeNames();
-        return new Enumeration<String>() {
-
-            String next = peek();
-
-            private String peek()
-            {
-                while ( e.hasMoreElements() )
-                {
-                    final String name = e.nextElement();
-                    if ( name.startsWith(keyPrefix))
-                    {
-                        return name.substring(keyPrefix.length());
-                    }
-                }
-                return null;
-            }
-
-            @Override
-            public boolean hasMoreElements() {
-                return next != null;
-            }
-
-            @Override
-            public String nextElement() {
-                if ( next == null )
-                {
-                    throw new NoSuchElementException();
-                }
-                final String result = next;
-                next = this.peek();
-                return result;
-            }
-        };
-
+        return Collections.enumeration(new ArrayList<>(this.data.attributes.keySet()));
     }
 
     @Override
     public long getCreationTime()
     {
         this.checkInvalid();
-        return this.created;
+        return this.data.created;
     }
 
     @Override
@@ -291,7 +311,7 @@ public class HttpSessionWrapper implements HttpSession
     public int getMaxInactiveInterval()
     {
         // no validity check conforming to the javadocs
-        return this.maxTimeout;
+        return this.data.maxInactive;
     }
 
     @Override
@@ -327,21 +347,15 @@ public class HttpSessionWrapper implements HttpSession
         // session listener must be called before the session is invalidated
         context.getHttpSessionListener().sessionDestroyed(new HttpSessionEvent(this));
 
-        this.delegate.removeAttribute(ATTR_CREATED + this.sessionId);
-        this.delegate.removeAttribute(ATTR_LAST_ACCESSED + this.sessionId);
-        this.delegate.removeAttribute(ATTR_MAX_INACTIVE + this.sessionId);
-
         // remove all attributes belonging to this session
-        final Enumeration<String> names = this.delegate.getAttributeNames();
-        while ( names.hasMoreElements() )
+        for(final String name : new ArrayList<>(this.data.attributes.keySet()))
         {
-            final String name = names.nextElement();
-
-            if ( name.startsWith(this.keyPrefix) ) {
-                this.removeAttribute(name.substring(this.keyPrefix.length()));
-            }
+            this.removeAttribute(name);
         }
 
+        this.delegate.removeAttribute(this.dataKey);
+        removeContextName(this.delegate, this.sessionId);
+
         if ( this.config.isInvalidateContainerSession() )
         {
             // if the session is empty we can invalidate
@@ -388,10 +402,10 @@ public class HttpSessionWrapper implements HttpSession
     public void removeAttribute(final String name)
     {
         this.checkInvalid();
-        final Object oldValue = this.getAttribute(name);
+        final Object oldValue = this.data.attributes.remove(name);
         if ( oldValue != null )
         {
-            this.delegate.removeAttribute(this.getKey(name));
+            this.touch();
             if ( oldValue instanceof HttpSessionBindingListener )
             {
                 ((HttpSessionBindingListener)oldValue).valueUnbound(new HttpSessionBindingEvent(this, name));
@@ -419,17 +433,10 @@ public class HttpSessionWrapper implements HttpSession
             return;
         }
 
-        final Object oldValue = this.getAttribute(name);
-        // wrap http session binding listener to avoid container calling it!
-        if ( value instanceof HttpSessionBindingListener )
-        {
-            this.delegate.setAttribute(this.getKey(name),
-                    new SessionBindingValueListenerWrapper((HttpSessionBindingListener)value));
-        }
-        else
-        {
-            this.delegate.setAttribute(this.getKey(name), value);
-        }
+        // the value is not stored in the container session, therefore the container
+        // does not call a http session binding listener
+        final Object oldValue = this.data.attributes.put(name, value);
+        this.touch();
         if ( value instanceof HttpSessionBindingListener )
         {
             ((HttpSessionBindingListener)value).valueBound(new HttpSessionBindingEvent(this, name));
@@ -455,8 +462,11 @@ public class HttpSessionWrapper implements HttpSession
         {
             this.delegate.setMaxInactiveInterval(interval);
         }
-        this.maxTimeout = interval;
-        this.delegate.setAttribute(ATTR_MAX_INACTIVE + this.sessionId, interval);
+        if ( this.data.maxInactive != interval )
+        {
+            this.data.maxInactive = interval;
+            this.touch();
+        }
     }
 
     @Override
@@ -466,21 +476,99 @@ public class HttpSessionWrapper implements HttpSession
         return this.delegate.getSessionContext();
     }
 
-    private static final class SessionBindingValueListenerWrapper implements Serializable
+    /**
+     * The state of an internal session, stored as a single attribute in the
+     * container session.
+     * As the attributes are not visible to the container, the container
+     * activation callbacks are forwarded to them, and the attributes which
+     * are not serializable are skipped when the session is persisted.
+     */
+    static final class ContextSessionData implements Serializable, HttpSessionActivationListener
     {
+        private static final long serialVersionUID = 6329472012815209617L;
+
+        /** The time the internal session has been created. */
+        final long created;
+
+        /** The last accessed time as Epoch time (milliseconds). */
+        volatile long lastAccessed;
+
+        /** The max inactive time in seconds. */
+        volatile int maxInactive;
+
+        /** The time the container session has last been marked as changed, zero after deserialization. */
+        transient volatile long lastMarked;
 
-        private static final long serialVersionUID = 4009563108883768425L;
+        /** The attributes of the internal session. */
+        transient ConcurrentMap<String, Object> attributes = new ConcurrentHashMap<>();
 
-        private final HttpSessionBindingListener listener;
+        ContextSessionData(final long created, final int maxInactive)
+        {
+            this.created = created;
+            this.lastAccessed = created;
+            this.maxInactive = maxInactive;
+            this.lastMarked = created;
+        }
 
-        public SessionBindingValueListenerWrapper(final HttpSessionBindingListener listener)
+        boolean isExpired(final long now)
         {
-            this.listener = listener;
+            final long maxTimeout = 1000L * this.maxInactive;
+            return maxTimeout > 0 && (this.lastAccessed + maxTimeout) < now;
+        }
+
+        @Override
+        public void sessionWillPassivate(final HttpSessionEvent se)
+        {
+            for(final Object value : this.attributes.values())
+            {
+                if ( value instanceof HttpSessionActivationListener )
+                {
+                    ((HttpSessionActivationListener)value).sessionWillPassivate(se);
+                }
+            }
         }
 
-        public HttpSessionBindingListener getHttpSessionBindingListener()
+        @Override
+        public void sessionDidActivate(final HttpSessionEvent se)
         {
-            return listener;
+            for(final Object value : this.attributes.values())
+            {
+                if ( value instanceof HttpSessionActivationListener )
+                {
+                    ((HttpSessionActivationListener)value).sessionDidActivate(se);
+                }
+            }
+        }
+
+        private void writeObject(final ObjectOutputStream out) throws IOException
+        {
+            out.defaultWriteObject();
+            final List<Map.Entry<String, Object>> serializable = new ArrayList<>();
+            for(final Map.Entry<String, Object> entry : this.attributes.entrySet())
+            {
+                if ( entry.getValue() instanceof Serializable )
+                {
+                    serializable.add(entry);
+                }
+            }
+            out.writeInt(serializable.size());
+            for(final Map.Entry<String, Object> entry : serializable)
+            {
+                out.writeObject(entry.getKey());
+                out.writeObject(entry.getValue());
+            }
+        }
+
+        private void readObject(final ObjectInputStream in) throws IOException, ClassNotFoundException
+        {
+            in.defaultReadObject();
+            this.attributes = new ConcurrentHashMap<>();
+            final int size = in.readInt();
+            for(int i = 0; i < size; i++)
+            {
+                final String name = (String) in.readObject();
+                this.attributes.put(name, in.readObject());
+            }
         }
     }
 
@@ -21,6 +21,8 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.jetbrains.annotations.Nullable;
 import org.jetbrains.annotations.NotNull;
@@ -43,6 +45,14 @@ public final class FilterRegistry
     /** List of all filter registrations. These are sorted by the status objects. */
     private volatile List<FilterRegistrationStatus> filters = Collections.emptyList();
 
+    /** The cached filter chains for the current list of filters. */
+    private volatile ChainCache chainCache = new ChainCache(this.filters);
+
+    /** Maximum number of cached chains per dispatcher type. */
+    private static final int MAX_CACHED_CHAINS = 1024;
+
+    private static final FilterHandler[] EMPTY_CHAIN = new FilterHandler[0];
+
     /**
      * The status object keeps track of the registration status of a filter and holds
      * the resolvers to match against a uri.
@@ -88,6 +98,191 @@ public final class FilterRegistry
             }
             return result;
         }
+
+        /**
+         * Check whether the filter applies to the request.
+         */
+        public boolean matches(@Nullable final String servletName, @NotNull final String requestURI)
+        {
+            for(final PathResolver resolver : this.resolvers)
+            {
+                if ( resolver.resolve(requestURI) != null )
+                {
+                    return true;
+                }
+            }
+            return matchesServletName(servletName);
+        }
+
+        /**
+         * Check whether the filter is registered for the servlet name.
+         */
+        public boolean matchesServletName(@Nullable final String servletName)
+        {
+            if ( servletName != null && this.handler.getFilterInfo().getServletNames() != null )
+            {
+                for(final String name : this.handler.getFilterInfo().getServletNames())
+                {
+                    if ( servletName.equals(name) )
+                    {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Check whether the filter applies to every request uri which is either
+         * empty or starts with a slash, which is the case for the pattern {@code /*}.
+         */
+        public boolean matchesAllPaths()
+        {
+            for(final PathResolver resolver : this.resolvers)
+            {
+                if ( resolver instanceof PathResolverFactory.PathMatcher && "/*".equals(resolver.getPattern()) )
+                {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * The filter chain for a servlet and a dispatcher type. The active filters
+     * for the dispatcher type are collected once, filters registered for the
+     * servlet name or for all paths do not need to be matched against the
+     * request uri.
+     */
+    private static final class CachedChain
+    {
+        /** The servlet name the chain has been computed for. */
+        public final String servletName;
+
+        /** The active filters for the dispatcher type, in order. */
+        public final FilterRegistrationStatus[] candidates;
+
+        /** Whether the candidate applies to every request uri starting with a slash. */
+        public final boolean[] always;
+
+        /** The chain if all candidates apply to every such request uri, {@code null} otherwise. */
+        public final FilterHandler[] chain;
+
+        public CachedChain(@NotNull final List<FilterRegistrationStatus> filters,
+                @Nullable final String servletName,
+                @NotNull final DispatcherType dispatcherType)
+        {
+            this.servletName = servletName;
+            final List<FilterRegistrationStatus> list = new ArrayList<FilterRegistrationStatus>();
+            for(final FilterRegistrationStatus status : filters)
+            {
+                // as soon as we encounter a failing filter, we can stop
+                if ( status.getResult() != -1 )
+                {
+                    break;
+                }
+                if ( referencesDispatcherType(status.getHandler(), dispatcherType) )
+                {
+                    list.add(status);
+                }
+            }
+            this.candidates = list.toArray(new FilterRegistrationStatus[list.size()]);
+            this.always = new boolean[this.candidates.length];
+            boolean allAlways = true;
+            for(int i = 0; i < this.candidates.length; i++)
+            {
+                this.always[i] = this.candidates[i].matchesAllPaths() || this.candidates[i].matchesServletName(servletName);
+                allAlways &= this.always[i];
+            }
+            if ( allAlways )
+            {
+                this.chain = new FilterHandler[this.candidates.length];
+                for(int i = 0; i < this.candidates.length; i++)
+                {
+                    this.chain[i] = this.candidates[i].getHandler();
+                }
+            }
+            else
+            {
+                this.chain = null;
+            }
+        }
+
+        public @NotNull FilterHandler[] getFilterHandlers(@NotNull final String requestURI)
+        {
+            final boolean rooted = requestURI.isEmpty() || requestURI.charAt(0) == '/';
+            if ( this.chain != null && rooted )
+            {
+                return this.chain;
+            }
+            final List<FilterHandler> result = new ArrayList<FilterHandler>();
+            for(int i = 0; i < this.candidates.length; i++)
+            {
+                if ( (rooted && this.always[i]) || this.candidates[i].matches(this.servletName, requestURI) )
+                {
+                    result.add(this.candidates[i].getHandler());
+                }
+            }
+            return result.isEmpty() ? EMPTY_CHAIN : result.toArray(new FilterHandler[result.size()]);
+        }
+    }
+
+    /**
+     * The cached chains for a list of filters. A new cache is created whenever
+     * the list of filters changes or a servlet is added or removed.
+     */
+    private static final class ChainCache
+    {
+        private final List<FilterRegistrationStatus> filters;
+
+        /** Chains for requests without a servlet, by dispatcher type. */
+        private final CachedChain[] withoutServlet = new CachedChain[DispatcherType.values().length];
+
+        /** Chains for requests with a servlet, by dispatcher type. */
+        private final ConcurrentMap<ServletHandler, CachedChain>[] byServlet;
+
+        @SuppressWarnings("unchecked")
+        public ChainCache(@NotNull final List<FilterRegistrationStatus> filters)
+        {
+            this.filters = filters;
+            this.byServlet = new ConcurrentMap[DispatcherType.values().length];
+            for(int i = 0; i < this.byServlet.length; i++)
+            {
+                this.byServlet[i] = new ConcurrentHashMap<ServletHandler, CachedChain>();
+            }
+        }
+
+        public @NotNull CachedChain getChain(@Nullable final ServletHandler handler,
+                @NotNull final DispatcherType dispatcherType)
+        {
+            final int index = dispatcherType.ordinal();
+            if ( handler == null )
+            {
+                CachedChain chain = this.withoutServlet[index];
+                if ( chain == null )
+                {
+                    chain = new CachedChain(this.filters, null, dispatcherType);
+                    this.withoutServlet[index] = chain;
+                }
+                return chain;
+            }
+            // check for servlet name if it's not a resource
+            final String servletName = !handler.getServletInfo().isResource() ? handler.getName() : null;
+            final ConcurrentMap<ServletHandler, CachedChain> chains = this.byServlet[index];
+            CachedChain chain = chains.get(handler);
+            // the name of a servlet without a configured name is only known once it is initialized
+            if ( chain == null || !(servletName == null ? chain.servletName == null : servletName.equals(chain.servletName)) )
+            {
+                chain = new CachedChain(this.filters, servletName, dispatcherType);
+                if ( chains.size() >= MAX_CACHED_CHAINS )
+                {
+                    chains.clear();
+                }
+                chains.put(handler, chain);
+            }
+            return chain;
+        }
     }
 
     /**
@@ -125,6 +320,7 @@ public final class FilterRegistry
         newList.add(status);
         Collections.sort(newList);
 
+        this.chainCache = new ChainCache(newList);
         this.filters = newList;
     }
 
@@ -150,6 +346,7 @@ public final class FilterRegistry
         }
         if ( found != null )
         {
+            this.chainCache = new ChainCache(newList);
             this.filters = newList;
 
             if ( found.getResult() == -1 && destroy )
@@ -159,9 +356,20 @@ public final class FilterRegistry
         }
     }
 
+    /**
+     * Drop the cached filter chains after a servlet has been added or removed.
+     * The chains are cached per servlet handler, so this makes sure chains of
+     * handlers which are not active anymore are not kept.
+     */
+    public synchronized void servletsChanged()
+    {
+        this.chainCache = new ChainCache(this.filters);
+    }
+
     public synchronized void cleanup()
     {
         this.filters = Collections.emptyList();
+        this.chainCache = new ChainCache(this.filters);
     }
 
     /**
@@ -170,53 +378,14 @@ public final class FilterRegistry
      * @param handler Optional servlet handler
      * @param dispatcherType The dispatcher type
      * @param requestURI The request uri
-     * @return The array of filter handlers, might be empty.
+     * @return The array of filter handlers, might be empty. The array might be shared
+     *         between requests and must not be modified.
      */
     public @NotNull FilterHandler[] getFilterHandlers(@Nullable final ServletHandler handler,
             @NotNull final DispatcherType dispatcherType,
             @NotNull final String requestURI)
     {
-        final List<FilterHandler> result = new ArrayList<FilterHandler>();
-        final List<FilterRegistrationStatus> allFilters = this.filters;
-
-        for(final FilterRegistrationStatus status : allFilters)
-        {
-            // as soon as we encounter a failing filter, we can stop
-            if ( status.getResult() != -1 )
-            {
-                break;
-            }
-            if (referencesDispatcherType(status.getHandler(), dispatcherType) )
-            {
-                boolean added = false;
-                for(final PathResolver resolver : status.getResolvers())
-                {
-                    if ( resolver.resolve(requestURI) != null )
-                    {
-                        result.add(status.getHandler());
-                        added = true;
-                        break;
-                    }
-                }
-                // check for servlet name if it's not a resource
-                final String servletName = (handler != null && !handler.getServletInfo().isResource()) ? handler.getName() : null;
-                if ( !added && servletName != null && status.getHandler().getFilterInfo().getServletNames() != null )
-                {
-                    for(final String name : status.getHandler().getFilterInfo().getServletNames())
-                    {
-                        if ( servletName.equals(name) )
-                        {
-                            result.add(status.getHandler());
-                            added = true;
-                            break;
-                        }
-                    }
-                }
-
-            }
-        }
-
-        return result.toArray(new FilterHandler[result.size()]);
+        return this.chainCache.getChain(handler, dispatcherType).getFilterHandlers(requestURI);
     }
 
     /**
@@ -225,7 +394,7 @@ public final class FilterRegistry
      * @param dispatcherType The requested dispatcher type
      * @return {@code true} if the filter can be applied.
      */
-    private boolean referencesDispatcherType(final FilterHandler handler, final DispatcherType dispatcherType)
+    private static boolean referencesDispatcherType(final FilterHandler handler, final DispatcherType dispatcherType)
     {
         for(final DispatcherType dt : handler.getFilterInfo().getDispatcher())
         {
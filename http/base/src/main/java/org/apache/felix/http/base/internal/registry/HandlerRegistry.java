@@ -18,8 +18,10 @@ package org.apache.felix.http.base.internal.registry;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 import javax.servlet.DispatcherType;
 
@@ -45,6 +47,9 @@ public final class HandlerRegistry
     /** Current list of context registrations. */
     private volatile List<PerContextHandlerRegistry> registrations = Collections.emptyList();
 
+    /** Index of the context registrations by context path. */
+    private volatile ContextIndex contextIndex = new ContextIndex(Collections.<PerContextHandlerRegistry>emptyList());
+
     private final HttpConfig config;
 
     public HandlerRegistry(final HttpConfig config)
@@ -71,6 +76,7 @@ public final class HandlerRegistry
     public void reset()
     {
         this.registrations.clear();
+        this.contextIndex = new ContextIndex(this.registrations);
         this.init();
     }
 
@@ -85,6 +91,7 @@ public final class HandlerRegistry
         {
             list = new ArrayList<>(this.registrations);
             this.registrations = Collections.emptyList();
+            this.contextIndex = new ContextIndex(this.registrations);
 
         }
 
@@ -110,6 +117,7 @@ public final class HandlerRegistry
                 if ( reg.getContextServiceId() == info.getServiceId() )
                 {
                     i.remove();
+                    this.contextIndex = new ContextIndex(updatedList);
                     this.registrations = updatedList;
                     break;
                 }
@@ -129,6 +137,7 @@ public final class HandlerRegistry
             updatedList.add(registry);
             Collections.sort(updatedList);
 
+            this.contextIndex = new ContextIndex(updatedList);
             this.registrations = updatedList;
         }
     }
@@ -155,18 +164,7 @@ public final class HandlerRegistry
         if ( serviceId == null )
         {
             // if the context is unknown, we use the first matching one!
-            PerContextHandlerRegistry found = null;
-            final List<PerContextHandlerRegistry> regs = this.registrations;
-            for(final PerContextHandlerRegistry r : regs)
-            {
-                final String path = r.isMatching(requestURI);
-                if ( path != null )
-                {
-                    found = r;
-                    break;
-                }
-            }
-            reg = found;
+            reg = this.getBestMatchingRegistry(requestURI);
         }
         else
         {
@@ -200,7 +198,22 @@ public final class HandlerRegistry
 
     public PathResolution resolveServlet(@NotNull final String requestURI)
     {
-        final List<PerContextHandlerRegistry> regs = this.registrations;
+        final ContextIndex index = this.contextIndex;
+        for(RadixTree.Node<PerContextHandlerRegistry[]> node = index.paths.findLongestMatch(requestURI);
+            node != null;
+            node = node.getParent())
+        {
+            final PathResolution ps = resolveServlet(node.getValue(), requestURI);
+            if ( ps != null )
+            {
+                return ps;
+            }
+        }
+        return resolveServlet(index.rootContexts, requestURI);
+    }
+
+    private static PathResolution resolveServlet(final PerContextHandlerRegistry[] regs, final String requestURI)
+    {
         for(final PerContextHandlerRegistry r : regs)
         {
             final String path = r.isMatching(requestURI);
@@ -216,7 +229,6 @@ public final class HandlerRegistry
                 }
             }
         }
-
         return null;
     }
 
@@ -259,17 +271,73 @@ public final class HandlerRegistry
     public PerContextHandlerRegistry getBestMatchingRegistry(String requestURI)
     {
         // if the context is unknown, we use the first matching one!
-        PerContextHandlerRegistry found = null;
-        final List<PerContextHandlerRegistry> regs = this.registrations;
+        final ContextIndex index = this.contextIndex;
+        for(RadixTree.Node<PerContextHandlerRegistry[]> node = index.paths.findLongestMatch(requestURI);
+            node != null;
+            node = node.getParent())
+        {
+            final PerContextHandlerRegistry found = getFirstMatching(node.getValue(), requestURI);
+            if ( found != null )
+            {
+                return found;
+            }
+        }
+        return getFirstMatching(index.rootContexts, requestURI);
+    }
+
+    private static PerContextHandlerRegistry getFirstMatching(final PerContextHandlerRegistry[] regs, final String requestURI)
+    {
         for(final PerContextHandlerRegistry r : regs)
         {
-            final String path = r.isMatching(requestURI);
-            if ( path != null )
+            if ( r.isMatching(requestURI) != null )
+            {
+                return r;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The context registrations indexed by their path. Iterating the nodes
+     * matching a request uri from the longest path to the shortest and the
+     * registrations of a node in their order visits the registrations in the
+     * same order as the sorted list. Registrations for the root path match
+     * all requests and come last.
+     */
+    private static final class ContextIndex
+    {
+        public final RadixTree<PerContextHandlerRegistry[]> paths;
+
+        public final PerContextHandlerRegistry[] rootContexts;
+
+        public ContextIndex(final List<PerContextHandlerRegistry> sortedRegistrations)
+        {
+            final Map<String, List<PerContextHandlerRegistry>> byPath = new HashMap<>();
+            final List<PerContextHandlerRegistry> root = new ArrayList<>();
+            for(final PerContextHandlerRegistry r : sortedRegistrations)
+            {
+                if ( r.getPath().equals("/") )
+                {
+                    root.add(r);
+                }
+                else
+                {
+                    List<PerContextHandlerRegistry> list = byPath.get(r.getPath());
+                    if ( list == null )
+                    {
+                        list = new ArrayList<>();
+                        byPath.put(r.getPath(), list);
+                    }
+                    list.add(r);
+                }
+            }
+            final Map<String, PerContextHandlerRegistry[]> entries = new HashMap<>();
+            for(final Map.Entry<String, List<PerContextHandlerRegistry>> entry : byPath.entrySet())
             {
-                found = r;
-                break;
+                entries.put(entry.getKey(), entry.getValue().toArray(new PerContextHandlerRegistry[entry.getValue().size()]));
             }
+            this.paths = new RadixTree<>(entries, false);
+            this.rootContexts = root.toArray(new PerContextHandlerRegistry[root.size()]);
         }
-        return found;
     }
 }
@@ -0,0 +1,255 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.felix.http.base.internal.registry;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.felix.http.base.internal.registry.PathResolverFactory.DefaultMatcher;
+import org.apache.felix.http.base.internal.registry.PathResolverFactory.ExactAndPathMatcher;
+import org.apache.felix.http.base.internal.registry.PathResolverFactory.ExactMatcher;
+import org.apache.felix.http.base.internal.registry.PathResolverFactory.ExtensionMatcher;
+import org.apache.felix.http.base.internal.registry.PathResolverFactory.PathMatcher;
+import org.apache.felix.http.base.internal.registry.PathResolverFactory.RootMatcher;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Immutable index over the active path resolvers of a servlet context.
+ *
+ * The index finds the same resolver as trying each resolver of the sorted
+ * list in turn (see {@link PathResolverFactory} for the order) but in time
+ * proportional to the length of the request uri:
+ * <ul>
+ * <li>exact and path mappings are kept in a {@link RadixTree} of their paths</li>
+ * <li>extension mappings are kept in a reversed {@link RadixTree}</li>
+ * <li>the root and the default mapping are kept directly</li>
+ * </ul>
+ * If the list contains resolvers of other types, the index falls back to
+ * the linear scan.
+ */
+public final class PathResolverIndex
+{
+    public static final PathResolverIndex EMPTY = new PathResolverIndex(Collections.<PathResolver>emptyList());
+
+    /** A resolver together with the patterns reported for it. */
+    private static final class Match
+    {
+        public final PathResolver resolver;
+
+        /** Shared by all resolutions, must be copied before handing it out. */
+        public final String[] patterns;
+
+        public Match(final PathResolver resolver)
+        {
+            this.resolver = resolver;
+            this.patterns = new String[] {resolver.getPattern()};
+        }
+
+        public PathResolution resolve(final String uri)
+        {
+            final PathResolution pr = this.resolver.resolve(uri);
+            if ( pr != null )
+            {
+                pr.patterns = this.patterns;
+            }
+            return pr;
+        }
+    }
+
+    /** The resolvers registered for a path. */
+    private static final class PathEntry
+    {
+        /** Resolver matching the path exactly. */
+        public Match exact;
+
+        /** Resolver of the http service matching sub paths of the path. */
+        public Match exactAndPath;
+
+        /** Resolver for the path mapping of the path. */
+        public Match path;
+    }
+
+    private final Match[] linear;
+
+    private final RadixTree<PathEntry> paths;
+
+    private final RadixTree<Match> extensions;
+
+    private final Match root;
+
+    private final Match defaultMatch;
+
+    /**
+     * Create a new index
+     * @param resolvers The resolvers, sorted
+     */
+    public PathResolverIndex(@NotNull final List<PathResolver> resolvers)
+    {
+        final Map<String, PathEntry> pathMap = new HashMap<>();
+        final Map<String, Match> extensionMap = new HashMap<>();
+        Match rootMatch = null;
+        Match defMatch = null;
+        boolean indexed = true;
+
+        final Match[] matches = new Match[resolvers.size()];
+        int index = 0;
+        // the resolvers are sorted, an earlier resolver takes precedence over a later one
+        for ( final PathResolver resolver : resolvers )
+        {
+            final Match match = new Match(resolver);
+            matches[index++] = match;
+            if ( resolver instanceof ExactMatcher )
+            {
+                final PathEntry entry = getEntry(pathMap, resolver.getPattern());
+                if ( entry.exact == null )
+                {
+                    entry.exact = match;
+                }
+            }
+            else if ( resolver instanceof ExactAndPathMatcher )
+            {
+                final PathEntry entry = getEntry(pathMap, resolver.getPattern());
+                if ( entry.exact == null )
+                {
+                    entry.exact = match;
+                }
+                if ( entry.exactAndPath == null )
+                {
+                    entry.exactAndPath = match;
+                }
+            }
+            else if ( resolver instanceof PathMatcher )
+            {
+                final String pattern = resolver.getPattern();
+                final PathEntry entry = getEntry(pathMap, pattern.substring(0, pattern.length() - 2));
+                if ( entry.path == null )
+                {
+                    entry.path = match;
+                }
+            }
+            else if ( resolver instanceof ExtensionMatcher )
+            {
+                final String extension = resolver.getPattern().substring(1);
+                if ( !extensionMap.containsKey(extension) )
+                {
+                    extensionMap.put(extension, match);
+                }
+            }
+            else if ( resolver instanceof RootMatcher )
+            {
+                if ( rootMatch == null )
+                {
+                    rootMatch = match;
+                }
+            }
+            else if ( resolver instanceof DefaultMatcher )
+            {
+                if ( defMatch == null )
+                {
+                    defMatch = match;
+                }
+            }
+            else
+            {
+                indexed = false;
+            }
+        }
+        this.linear = indexed ? null : matches;
+        this.paths = new RadixTree<>(pathMap, false);
+        this.extensions = new RadixTree<>(extensionMap, true);
+        this.root = rootMatch;
+        this.defaultMatch = defMatch;
+    }
+
+    private static PathEntry getEntry(final Map<String, PathEntry> pathMap, final String path)
+    {
+        PathEntry entry = pathMap.get(path);
+        if ( entry == null )
+        {
+            entry = new PathEntry();
+            pathMap.put(path, entry);
+        }
+        return entry;
+    }
+
+    /**
+     * Resolve a request uri
+     *
+     * @param uri The request uri
+     * @return A path resolution if a servlet matched, {@code null} otherwise
+     */
+    public @Nullable PathResolution resolve(@NotNull final String uri)
+    {
+        if ( this.linear != null )
+        {
+            for ( final Match match : this.linear )
+            {
+                final PathResolution pr = match.resolve(uri);
+                if ( pr != null )
+                {
+                    return pr;
+                }
+            }
+            return null;
+        }
+
+        final int length = uri.length();
+        final RadixTree.Node<PathEntry> longest = this.paths.findLongestMatch(uri);
+
+        // exact match
+        if ( longest != null && longest.getLength() == length && longest.getValue().exact != null )
+        {
+            return longest.getValue().exact.resolve(uri);
+        }
+        // longest sub path of an http service registration
+        for ( RadixTree.Node<PathEntry> node = longest; node != null; node = node.getParent() )
+        {
+            final Match match = node.getValue().exactAndPath;
+            if ( match != null && node.getLength() < length && uri.charAt(node.getLength()) == '/' )
+            {
+                return match.resolve(uri);
+            }
+        }
+        // longest path mapping
+        for ( RadixTree.Node<PathEntry> node = longest; node != null; node = node.getParent() )
+        {
+            final Match match = node.getValue().path;
+            if ( match != null && (node.getLength() == length || uri.charAt(node.getLength()) == '/') )
+            {
+                return match.resolve(uri);
+            }
+        }
+        // longest extension mapping
+        final RadixTree.Node<Match> extension = this.extensions.findLongestMatch(uri);
+        if ( extension != null )
+        {
+            return extension.getValue().resolve(uri);
+        }
+        if ( this.root != null && (length == 0 || (length == 1 && uri.charAt(0) == '/')) )
+        {
+            return this.root.resolve(uri);
+        }
+        if ( this.defaultMatch != null )
+        {
+            return this.defaultMatch.resolve(uri);
+        }
+        return null;
+    }
+}
@@ -130,6 +130,15 @@ public final class PerContextHandlerRegistry implements Comparable<PerContextHan
         return result;
     }
 
+    /**
+     * The context path
+     * @return The context path
+     */
+    public @NotNull String getPath()
+    {
+        return this.path;
+    }
+
     public String isMatching(@NotNull final String requestURI)
     {
         if (requestURI.equals(this.path))
@@ -216,6 +225,7 @@ public final class PerContextHandlerRegistry implements Comparable<PerContextHan
     {
         this.servletRegistry.addServlet(handler);
         this.errorPageRegistry.addServlet(handler);
+        this.filterRegistry.servletsChanged();
     }
 
     /**
@@ -227,6 +237,7 @@ public final class PerContextHandlerRegistry implements Comparable<PerContextHan
     {
         this.servletRegistry.removeServlet(servletInfo, destroy);
         this.errorPageRegistry.removeServlet(servletInfo, destroy);
+        this.filterRegistry.servletsChanged();
     }
 
     /**
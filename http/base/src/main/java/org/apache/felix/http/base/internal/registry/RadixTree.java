@@ -0,0 +1,229 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.felix.http.base.internal.registry;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * An immutable radix tree mapping strings to values.
+ *
+ * The tree supports a single lookup operation, finding the longest key
+ * which is a prefix (or, for a reversed tree, a suffix) of a given string.
+ * Shorter keys matching the string can be reached through
+ * {@link Node#getParent()}. Lookups do not allocate any objects.
+ *
+ * @param <V> The value type
+ */
+public final class RadixTree<V>
+{
+    /**
+     * A node of the tree with a value.
+     */
+    public static final class Node<V>
+    {
+        private final char[] label;
+
+        private final char[] firstChars;
+
+        private final Node<V>[] children;
+
+        private final V value;
+
+        private final int length;
+
+        private final Node<V> parent;
+
+        private Node(final char[] label, final char[] firstChars, final Node<V>[] children, final V value,
+                final int length, final Node<V> parent)
+        {
+            this.label = label;
+            this.firstChars = firstChars;
+            this.children = children;
+            this.value = value;
+            this.length = length;
+            this.parent = parent;
+        }
+
+        /**
+         * The value of this node, {@code null} only for the root node
+         * if the empty string has no value.
+         */
+        public V getValue()
+        {
+            return this.value;
+        }
+
+        /**
+         * The length of the key of this node.
+         */
+        public int getLength()
+        {
+            return this.length;
+        }
+
+        /**
+         * The node of the longest key which is a prefix (suffix) of the key of this node.
+         */
+        public @Nullable Node<V> getParent()
+        {
+            return this.parent;
+        }
+
+        private Node<V> getChild(final char c)
+        {
+            int low = 0;
+            int high = this.firstChars.length - 1;
+            while ( low <= high )
+            {
+                final int mid = (low + high) >>> 1;
+                final char midChar = this.firstChars[mid];
+                if ( midChar < c )
+                {
+                    low = mid + 1;
+                }
+                else if ( midChar > c )
+                {
+                    high = mid - 1;
+                }
+                else
+                {
+                    return this.children[mid];
+                }
+            }
+            return null;
+        }
+    }
+
+    /** Mutable node used while building the tree. */
+    private static final class Builder<V>
+    {
+        public final Map<Character, Builder<V>> children = new TreeMap<>();
+
+        public V value;
+    }
+
+    private final Node<V> root;
+
+    private final boolean reverse;
+
+    /**
+     * Create a new tree
+     * @param entries The keys and values
+     * @param reverse If {@code true} the keys are matched against the end of a string
+     */
+    public RadixTree(@NotNull final Map<String, V> entries, final boolean reverse)
+    {
+        this.reverse = reverse;
+        final Builder<V> rootBuilder = new Builder<>();
+        for ( final Map.Entry<String, V> entry : entries.entrySet() )
+        {
+            final String key = entry.getKey();
+            Builder<V> current = rootBuilder;
+            for ( int i = 0; i < key.length(); i++ )
+            {
+                final Character c = key.charAt(reverse ? key.length() - 1 - i : i);
+                Builder<V> next = current.children.get(c);
+                if ( next == null )
+                {
+                    next = new Builder<>();
+                    current.children.put(c, next);
+                }
+                current = next;
+            }
+            current.value = entry.getValue();
+        }
+        this.root = build(new StringBuilder(), rootBuilder, 0, null);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V> Node<V> build(final StringBuilder label, final Builder<V> builder, final int length, final Node<V> parent)
+    {
+        // the node is created before its children, the children are filled in afterwards
+        final Node<V>[] children = new Node[builder.children.size()];
+        final char[] firstChars = new char[children.length];
+        int index = 0;
+        for ( final Character c : builder.children.keySet() )
+        {
+            firstChars[index++] = c.charValue();
+        }
+        final Node<V> node = new Node<>(label.toString().toCharArray(), firstChars, children, builder.value,
+                length, parent);
+        final Node<V> childParent = builder.value != null ? node : parent;
+        index = 0;
+        for ( final Map.Entry<Character, Builder<V>> entry : builder.children.entrySet() )
+        {
+            // compress chains of nodes without a value
+            final StringBuilder childLabel = new StringBuilder();
+            childLabel.append(entry.getKey().charValue());
+            Builder<V> child = entry.getValue();
+            while ( child.value == null && child.children.size() == 1 )
+            {
+                final Map.Entry<Character, Builder<V>> only = child.children.entrySet().iterator().next();
+                childLabel.append(only.getKey().charValue());
+                child = only.getValue();
+            }
+            children[index++] = build(childLabel, child, length + childLabel.length(), childParent);
+        }
+        return node;
+    }
+
+    /**
+     * Find the node of the longest key which is a prefix of the string, or
+     * a suffix of the string for a reversed tree.
+     *
+     * @param s The string
+     * @return The node or {@code null} if no key matches
+     */
+    public @Nullable Node<V> findLongestMatch(@NotNull final String s)
+    {
+        final int n = s.length();
+        Node<V> node = this.root;
+        Node<V> best = node.value != null ? node : null;
+        int pos = 0;
+        while ( pos < n )
+        {
+            final Node<V> child = node.getChild(charAt(s, pos));
+            if ( child == null || pos + child.label.length > n )
+            {
+                break;
+            }
+            for ( int i = 1; i < child.label.length; i++ )
+            {
+                if ( child.label[i] != charAt(s, pos + i) )
+                {
+                    return best;
+                }
+            }
+            pos += child.label.length;
+            node = child;
+            if ( node.value != null )
+            {
+                best = node;
+            }
+        }
+        return best;
+    }
+
+    private char charAt(final String s, final int pos)
+    {
+        return this.reverse ? s.charAt(s.length() - 1 - pos) : s.charAt(pos);
+    }
+}
@@ -53,6 +53,9 @@ public final class ServletRegistry
 
     private volatile List<PathResolver> activeResolvers = Collections.emptyList();
 
+    /** Index over the active resolvers, rebuilt together with them. */
+    private volatile PathResolverIndex resolverIndex = PathResolverIndex.EMPTY;
+
     private final Map<String, List<ServletHandler>> inactiveServletMappings = new HashMap<String, List<ServletHandler>>();
 
     private final Map<String, List<ServletHandler>> servletsByName = new ConcurrentHashMap<String, List<ServletHandler>>();
@@ -73,18 +76,15 @@ public final class ServletRegistry
      */
     public PathResolution resolve(@NotNull final String relativeRequestURI)
     {
-        final List<PathResolver> resolvers = this.activeResolvers;
-        for(final PathResolver entry : resolvers)
-        {
-            final PathResolution pr = entry.resolve(relativeRequestURI);
-            if ( pr != null )
-            {
-                // TODO - we should have all patterns under which this servlet is actively registered
-                pr.patterns = new String[] {entry.getPattern()};
-                return pr;
-            }
-        }
-        return null;
+        // TODO - we should have all patterns under which this servlet is actively registered
+        return this.resolverIndex.resolve(relativeRequestURI);
+    }
+
+    private void setActiveResolvers(final List<PathResolver> resolvers)
+    {
+        Collections.sort(resolvers);
+        this.resolverIndex = new PathResolverIndex(resolvers);
+        this.activeResolvers = resolvers;
     }
 
     private PathResolver findResolver(final List<PathResolver> resolvers, final String pattern)
@@ -172,8 +172,7 @@ public final class ServletRegistry
             {
                 addToNameMapping(handler);
             }
-            Collections.sort(resolvers);
-            this.activeResolvers = resolvers;
+            this.setActiveResolvers(resolvers);
             this.mapping = newMap;
         }
         else if ( !handler.getServletInfo().isResource() && handler.getServletInfo().getName() != null )
@@ -338,8 +337,7 @@ public final class ServletRegistry
                 }
             }
 
-            Collections.sort(resolvers);
-            this.activeResolvers = resolvers;
+            this.setActiveResolvers(resolvers);
             this.mapping = newMap;
 
             if ( cleanupHandler != null )
@@ -367,6 +365,7 @@ public final class ServletRegistry
     public synchronized void cleanup()
     {
         this.activeResolvers = Collections.emptyList();
+        this.resolverIndex = PathResolverIndex.EMPTY;
         this.inactiveServletMappings.clear();
         this.servletsByName.clear();
         this.mapping = Collections.emptyMap();
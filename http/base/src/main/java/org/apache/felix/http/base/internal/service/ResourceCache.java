@@ -0,0 +1,135 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.felix.http.base.internal.service;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * An in memory cache for the content of small resources. The cache is bounded
+ * by the total size of the cached content, the least recently used entries are
+ * evicted first. Entries are validated against the last modification time of
+ * the resource.
+ */
+final class ResourceCache
+{
+    /** Resources larger than this are not cached by default. */
+    public static final int DEFAULT_MAX_ENTRY_SIZE = 64 * 1024;
+
+    /** Default maximum total size of the cached content. */
+    public static final long DEFAULT_MAX_SIZE = 8 * 1024 * 1024;
+
+    private final long maxSize;
+
+    private final int maxEntrySize;
+
+    /** The entries in access order. */
+    private final Map<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long size;
+
+    private static final class Entry
+    {
+        public final long lastModified;
+
+        public final byte[] content;
+
+        public Entry(final long lastModified, final byte[] content)
+        {
+            this.lastModified = lastModified;
+            this.content = content;
+        }
+    }
+
+    public ResourceCache(final long maxSize, final int maxEntrySize)
+    {
+        this.maxSize = maxSize;
+        this.maxEntrySize = maxEntrySize;
+    }
+
+    /**
+     * The maximum size of a resource to be cached
+     * @return The size in bytes
+     */
+    public int getMaxEntrySize()
+    {
+        return this.maxEntrySize;
+    }
+
+    /**
+     * Get the cached content of a resource
+     * @param key The key of the resource
+     * @param lastModified The current last modification time of the resource
+     * @return The content or {@code null} if not cached or the resource has been modified.
+     */
+    public synchronized @Nullable byte[] get(@NotNull final String key, final long lastModified)
+    {
+        final Entry entry = this.entries.get(key);
+        if ( entry == null )
+        {
+            return null;
+        }
+        if ( entry.lastModified != lastModified )
+        {
+            this.entries.remove(key);
+            this.size -= entry.content.length;
+            return null;
+        }
+        return entry.content;
+    }
+
+    /**
+     * Cache the content of a resource. Content larger than the maximum entry size is ignored.
+     * @param key The key of the resource
+     * @param lastModified The last modification time of the resource
+     * @param content The content
+     */
+    public synchronized void put(@NotNull final String key, final long lastModified, @NotNull final byte[] content)
+    {
+        if ( content.length > this.maxEntrySize || content.length > this.maxSize )
+        {
+            return;
+        }
+        final Entry old = this.entries.put(key, new Entry(lastModified, content));
+        if ( old != null )
+        {
+            this.size -= old.content.length;
+        }
+        this.size += content.length;
+
+        final Iterator<Entry> i = this.entries.values().iterator();
+        while ( this.size > this.maxSize && i.hasNext() )
+        {
+            final Entry eldest = i.next();
+            i.remove();
+            this.size -= eldest.content.length;
+        }
+    }
+
+    /**
+     * The total size of the cached content
+     * @return The size in bytes
+     */
+    public synchronized long getSize()
+    {
+        return this.size;
+    }
+}
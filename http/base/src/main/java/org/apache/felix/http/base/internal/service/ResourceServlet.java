@@ -16,12 +16,15 @@
  */
 package org.apache.felix.http.base.internal.service;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLConnection;
+import java.nio.file.Files;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
@@ -30,11 +33,27 @@ import javax.servlet.http.HttpServletResponse;
 
 /**
  * The resource servlet
+ *
+ * Small resources are kept in a {@link ResourceCache} shared by all resource
+ * servlets, larger resources from the file system are streamed directly from
+ * the file. If the client accepts it, a precompressed sibling of a
+ * resource with the extension {@code .br} or {@code .gz} is served instead
+ * of the resource.
  */
 public final class ResourceServlet extends HttpServlet
 {
     private static final long serialVersionUID = 1L;
 
+    /** The cache for small resources. */
+    private static final ResourceCache CACHE = new ResourceCache(ResourceCache.DEFAULT_MAX_SIZE,
+            ResourceCache.DEFAULT_MAX_ENTRY_SIZE);
+
+    /** The content encodings of precompressed resources, in order of preference, and their extensions. */
+    private static final String[][] ENCODINGS = new String[][] {
+        {"br", ".br"},
+        {"gzip", ".gz"}
+    };
+
     /** The path of the resource registration. */
     private final String prefix;
 
@@ -72,29 +91,156 @@ public final class ResourceServlet extends HttpServlet
             res.setContentType(contentType);
         }
 
-        final long lastModified = getLastModified(url);
+        // use a precompressed variant if available
+        URL content = url;
+        String encoding = null;
+        final String acceptEncoding = req.getHeader("Accept-Encoding");
+        if (acceptEncoding != null)
+        {
+            res.addHeader("Vary", "Accept-Encoding");
+            for (final String[] enc : ENCODINGS)
+            {
+                if (acceptsEncoding(acceptEncoding, enc[0]))
+                {
+                    final URL variant = getServletContext().getResource(resName.concat(enc[1]));
+                    if (variant != null)
+                    {
+                        content = variant;
+                        encoding = enc[0];
+                        break;
+                    }
+                }
+            }
+        }
+
+        final File file = getFile(content);
+        final URLConnection conn = file == null ? content.openConnection() : null;
+        final long lastModified = file == null ? getLastModified(conn) : file.lastModified();
+        final long length = file == null ? getContentLength(conn) : file.length();
+
+        if (encoding != null)
+        {
+            res.setHeader("Content-Encoding", encoding);
+        }
+        String etag = null;
         if (lastModified != 0)
         {
             res.setDateHeader("Last-Modified", lastModified);
+            etag = "\"" + Long.toHexString(lastModified) + "-" + Long.toHexString(length)
+                    + (encoding == null ? "" : "-" + encoding) + "\"";
+            res.setHeader("ETag", etag);
+        }
+
+        final String ifNoneMatch = req.getHeader("If-None-Match");
+        final boolean modified;
+        if (etag != null && ifNoneMatch != null)
+        {
+            modified = !matchesETag(ifNoneMatch, etag);
+        }
+        else
+        {
+            modified = resourceModified(lastModified, req.getDateHeader("If-Modified-Since"));
         }
 
-        if (!resourceModified(lastModified, req.getDateHeader("If-Modified-Since")))
+        if (!modified)
         {
             res.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
         }
+        else if (file != null && length > CACHE.getMaxEntrySize())
+        {
+            transferFile(file, res);
+        }
         else
         {
-            copyResource(url, res);
+            copyResource(content, conn, lastModified, length, res);
+        }
+    }
+
+    /**
+     * Check whether the client accepts the content encoding
+     * @param acceptEncoding The value of the Accept-Encoding header
+     * @param encoding The encoding
+     * @return {@code true} if the encoding is listed without a quality value of 0
+     */
+    static boolean acceptsEncoding(final String acceptEncoding, final String encoding)
+    {
+        for (final String part : acceptEncoding.split(","))
+        {
+            final int sep = part.indexOf(';');
+            final String name = (sep == -1 ? part : part.substring(0, sep)).trim();
+            if (name.equalsIgnoreCase(encoding))
+            {
+                if (sep != -1)
+                {
+                    final String param = part.substring(sep + 1).trim();
+                    if (param.startsWith("q=") && param.substring(2).trim().matches("0(\\.0*)?"))
+                    {
+                        return false;
+                    }
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Check whether the If-None-Match header matches the entity tag
+     * @param ifNoneMatch The value of the If-None-Match header
+     * @param etag The entity tag
+     * @return {@code true} if the header matches
+     */
+    static boolean matchesETag(final String ifNoneMatch, final String etag)
+    {
+        for (final String part : ifNoneMatch.split(","))
+        {
+            String tag = part.trim();
+            if (tag.equals("*"))
+            {
+                return true;
+            }
+            // If-None-Match uses the weak comparison
+            if (tag.startsWith("W/"))
+            {
+                tag = tag.substring(2);
+            }
+            if (tag.equals(etag))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Get the file of a resource from the file system
+     * @param url The url of the resource
+     * @return The file or {@code null} if the resource is not a file
+     */
+    private File getFile(final URL url)
+    {
+        if (!"file".equals(url.getProtocol()))
+        {
+            return null;
+        }
+        File file;
+        try
+        {
+            file = new File(url.toURI());
+        }
+        catch (final URISyntaxException | IllegalArgumentException e)
+        {
+            file = new File(url.getPath());
         }
+        return file.isFile() ? file : null;
     }
 
-    private long getLastModified(final URL url)
+    private long getLastModified(final URLConnection conn)
     {
         long lastModified = 0;
 
         try
         {
-            final URLConnection conn = url.openConnection();
             lastModified = conn.getLastModified();
         }
         catch (final Exception e)
@@ -104,7 +250,7 @@ public final class ResourceServlet extends HttpServlet
 
         if (lastModified == 0)
         {
-            final String filepath = url.getPath();
+            final String filepath = conn.getURL().getPath();
             if (filepath != null)
             {
                 final File f = new File(filepath);
@@ -126,65 +272,83 @@ public final class ResourceServlet extends HttpServlet
         return resTimestamp == 0 || modSince == -1 || resTimestamp > modSince;
     }
 
-    private void copyResource(final URL url, final HttpServletResponse res) throws IOException
+    private void transferFile(final File file, final HttpServletResponse res) throws IOException
     {
-        URLConnection conn = null;
-        OutputStream os = null;
-        InputStream is = null;
-
-        try
+        try (final OutputStream os = res.getOutputStream())
         {
-            conn = url.openConnection();
-
-            is = conn.getInputStream();
-            os = res.getOutputStream();
             // FELIX-3987 content length should be set *before* any streaming is done
-            // as headers should be written before the content is actually written...
-            int len = getContentLength(conn);
-            if (len >= 0)
-            {
-                res.setContentLength(len);
-            }
+            res.setContentLengthLong(file.length());
+            Files.copy(file.toPath(), os);
+        }
+    }
 
-            byte[] buf = new byte[1024];
-            int n;
+    private void copyResource(final URL url, final URLConnection connection, final long lastModified,
+            final long length, final HttpServletResponse res) throws IOException
+    {
+        final String key = url.toExternalForm();
+        final boolean cacheable = lastModified != 0 && length >= 0 && length <= CACHE.getMaxEntrySize();
+        byte[] content = cacheable ? CACHE.get(key, lastModified) : null;
 
-            while ((n = is.read(buf, 0, buf.length)) >= 0)
+        if (content == null && cacheable)
+        {
+            final URLConnection conn = connection != null ? connection : url.openConnection();
+            final ByteArrayOutputStream buffer = new ByteArrayOutputStream((int) length);
+            try (final InputStream is = conn.getInputStream())
             {
-                os.write(buf, 0, n);
+                copy(is, buffer);
             }
+            content = buffer.toByteArray();
+            CACHE.put(key, lastModified, content);
         }
-        finally
+
+        try (final OutputStream os = res.getOutputStream())
         {
-            if (is != null)
+            if (content != null)
             {
-                is.close();
+                res.setContentLength(content.length);
+                os.write(content);
             }
-
-            if (os != null)
+            else
             {
-                os.close();
+                final URLConnection conn = connection != null ? connection : url.openConnection();
+                try (final InputStream is = conn.getInputStream())
+                {
+                    // FELIX-3987 content length should be set *before* any streaming is done
+                    // as headers should be written before the content is actually written...
+                    if (length >= 0)
+                    {
+                        res.setContentLengthLong(length);
+                    }
+                    copy(is, os);
+                }
             }
         }
     }
 
-    private int getContentLength(final URLConnection conn)
+    private static void copy(final InputStream is, final OutputStream os) throws IOException
     {
-        int length = -1;
+        final byte[] buf = new byte[8192];
+        int n;
+        while ((n = is.read(buf, 0, buf.length)) >= 0)
+        {
+            os.write(buf, 0, n);
+        }
+    }
 
-        length = conn.getContentLength();
+    private long getContentLength(final URLConnection conn)
+    {
+        long length = conn.getContentLengthLong();
         if (length < 0)
         {
             // Unknown, try whether it is a file, and if so, use the file
             // API to get the length of the content...
-            String path = conn.getURL().getPath();
+            final String path = conn.getURL().getPath();
             if (path != null)
             {
-                File f = new File(path);
-                // In case more than 2GB is streamed
-                if (f.length() < Integer.MAX_VALUE)
+                final File f = new File(path);
+                if (f.isFile())
                 {
-                    length = (int) f.length();
+                    length = f.length();
                 }
             }
         }
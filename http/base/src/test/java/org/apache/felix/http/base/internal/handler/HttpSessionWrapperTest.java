@@ -19,12 +19,18 @@
 
 package org.apache.felix.http.base.internal.handler;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
@@ -32,8 +38,13 @@ import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
 
 import javax.servlet.http.HttpSession;
+import javax.servlet.http.HttpSessionActivationListener;
+import javax.servlet.http.HttpSessionEvent;
 import javax.servlet.http.HttpSessionListener;
 
 import org.apache.felix.http.base.internal.HttpConfig;
@@ -48,6 +59,7 @@ import org.mockito.stubbing.Answer;
  */
 public class HttpSessionWrapperTest
 {
+    private static final Logger LOG = Logger.getLogger(HttpSessionWrapperTest.class.getName());
 
     /**
      * FELIX-5175 - sessions are incorrectly destroyed / destroyed too soon.
@@ -75,17 +87,231 @@ public class HttpSessionWrapperTest
 
     private HttpSession createMockSession(String sessionName, long lastAccessed, int maxInactive)
     {
-        String attrLastAccessed = String.format("org.apache.felix.http.session.context.lastaccessed.%s", sessionName);
-        String attrMaxInactive = String.format("org.apache.felix.http.session.context.maxinactive.%s", sessionName);
-
-        HttpSession session = mock(HttpSession.class);
-        when(session.getAttributeNames()).thenReturn(Collections.enumeration(Arrays.asList(attrLastAccessed)));
-        when(session.getAttribute(eq(attrLastAccessed))).thenReturn(lastAccessed);
-        when(session.getAttribute(eq(attrMaxInactive))).thenReturn(maxInactive);
+        final HttpSession session = createContainerSession(new ConcurrentHashMap<>());
+        final HttpSession contextSession = new HttpSessionWrapper(session, createContext(sessionName), new HttpConfig(), false);
+        contextSession.setMaxInactiveInterval(maxInactive);
+        HttpSessionWrapper.getContextSessionData(session, sessionName).lastAccessed = lastAccessed;
 
         return session;
     }
 
+    private HttpSession createContainerSession(final Map<String, Object> attributes)
+    {
+        final HttpSession containerSession = mock(HttpSession.class);
+        when(containerSession.getAttributeNames()).thenAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                return Collections.enumeration(new HashSet<>(attributes.keySet()));
+            }
+        });
+        when(containerSession.getAttribute(Mockito.anyString())).thenAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                return attributes.get(invocation.getArgument(0));
+            }
+        });
+        Mockito.doAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                attributes.put((String)invocation.getArgument(0), invocation.getArgument(1));
+                return null;
+            }
+        }).when(containerSession).setAttribute(Mockito.anyString(), Mockito.any());
+        Mockito.doAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                attributes.remove(invocation.getArgument(0));
+                return null;
+            }
+        }).when(containerSession).removeAttribute(Mockito.anyString());
+        return containerSession;
+    }
+
+    private ExtServletContext createContext(final String name)
+    {
+        final ExtServletContext context = mock(ExtServletContext.class);
+        when(context.getServletContextName()).thenReturn(name);
+        when(context.getHttpSessionListener()).thenReturn(mock(HttpSessionListener.class));
+        return context;
+    }
+
+    @Test
+    public void testContextSessionsAreSeparated()
+    {
+        final Map<String, Object> attributes = new ConcurrentHashMap<>();
+        final HttpSession containerSession = createContainerSession(attributes);
+        final HttpConfig config = new HttpConfig();
+
+        final HttpSession a = new HttpSessionWrapper(containerSession, createContext("a"), config, false);
+        final HttpSession b = new HttpSessionWrapper(containerSession, createContext("b"), config, false);
+        a.setAttribute("foo", "a");
+        b.setAttribute("foo", "b");
+        b.setAttribute("bar", "b");
+
+        // one attribute per context and the set of context names
+        assertEquals(3, attributes.size());
+        assertEquals(new HashSet<>(Arrays.asList("a", "b")), HttpSessionWrapper.getSessionContextNames(containerSession));
+        assertTrue(HttpSessionWrapper.hasSession("a", containerSession));
+        assertFalse(HttpSessionWrapper.hasSession("c", containerSession));
+
+        // a new request sees the attributes of its context only
+        final HttpSession a2 = new HttpSessionWrapper(containerSession, createContext("a"), config, false);
+        assertFalse(a2.isNew());
+        assertEquals("a", a2.getAttribute("foo"));
+        assertNull(a2.getAttribute("bar"));
+        assertEquals(Arrays.asList("foo"), Collections.list(a2.getAttributeNames()));
+
+        a2.invalidate();
+        assertFalse(HttpSessionWrapper.hasSession("a", containerSession));
+        assertEquals(Collections.singleton("b"), HttpSessionWrapper.getSessionContextNames(containerSession));
+        assertEquals(2, attributes.size());
+
+        b.invalidate();
+        assertTrue(attributes.isEmpty());
+    }
+
+    /**
+     * Per request session handling with 10 contexts holding 200 attributes
+     * each: the expiry check done by the dispatcher, creating the session
+     * wrapper and reading attributes. The time per request and the number of
+     * writes to the container session are logged.
+     */
+    @Test
+    public void testManyContextsAndAttributes()
+    {
+        final int contexts = 10;
+        final int attributesPerContext = 200;
+        final int requests = 20000;
+
+        final CountingAttributes attributes = new CountingAttributes();
+        final HttpSession containerSession = createContainerSession(attributes);
+        final HttpConfig config = new HttpConfig();
+        final ExtServletContext[] servletContexts = new ExtServletContext[contexts];
+        for(int c = 0; c < contexts; c++)
+        {
+            servletContexts[c] = createContext("context" + c);
+            final HttpSession session = new HttpSessionWrapper(containerSession, servletContexts[c], config, false);
+            session.setMaxInactiveInterval(1800);
+            for(int a = 0; a < attributesPerContext; a++)
+            {
+                session.setAttribute("attribute" + a, a);
+            }
+        }
+
+        // warm up before measuring
+        runRequests(containerSession, servletContexts, config, attributesPerContext, requests);
+        attributes.writes.set(0);
+        final long start = System.nanoTime();
+        runRequests(containerSession, servletContexts, config, attributesPerContext, requests);
+        final long elapsed = System.nanoTime() - start;
+
+        // reading does not change the container session
+        assertEquals(0, attributes.writes.get());
+        assertEquals(contexts, HttpSessionWrapper.getSessionContextNames(containerSession).size());
+        LOG.info(String.format("%d requests on %d contexts with %d attributes each: %d ms (%d ns per request), %d container session writes",
+                requests, contexts, attributesPerContext, TimeUnit.NANOSECONDS.toMillis(elapsed), elapsed / requests,
+                attributes.writes.get()));
+    }
+
+    private void runRequests(final HttpSession containerSession,
+            final ExtServletContext[] servletContexts,
+            final HttpConfig config,
+            final int attributesPerContext,
+            final int requests)
+    {
+        for(int i = 0; i < requests; i++)
+        {
+            assertTrue(HttpSessionWrapper.getExpiredSessionContextNames(containerSession).isEmpty());
+            final HttpSession session = new HttpSessionWrapper(containerSession, servletContexts[i % servletContexts.length], config, false);
+            assertEquals(i % attributesPerContext, session.getAttribute("attribute" + (i % attributesPerContext)));
+        }
+    }
+
+    @Test
+    public void testAccessMarksSessionChangedAfterHalfTheTimeout()
+    {
+        final CountingAttributes attributes = new CountingAttributes();
+        final HttpSession containerSession = createContainerSession(attributes);
+        final ExtServletContext context = createContext("a");
+        final HttpSession session = new HttpSessionWrapper(containerSession, context, new HttpConfig(), false);
+        session.setMaxInactiveInterval(60);
+        final HttpSessionWrapper.ContextSessionData data = HttpSessionWrapper.getContextSessionData(containerSession, "a");
+
+        // setting the same timeout again does not change the session
+        attributes.writes.set(0);
+        session.setMaxInactiveInterval(60);
+        assertEquals(0, attributes.writes.get());
+
+        // an access shortly after the last change does not change the session
+        new HttpSessionWrapper(containerSession, context, new HttpConfig(), false);
+        assertEquals(0, attributes.writes.get());
+
+        // an access after half the timeout writes the access time through
+        data.lastMarked -= 31000L;
+        new HttpSessionWrapper(containerSession, context, new HttpConfig(), false);
+        assertEquals(1, attributes.writes.get());
+        new HttpSessionWrapper(containerSession, context, new HttpConfig(), false);
+        assertEquals(1, attributes.writes.get());
+    }
+
+    /**
+     * Container session attributes counting the writes.
+     */
+    private static final class CountingAttributes extends ConcurrentHashMap<String, Object>
+    {
+        private static final long serialVersionUID = 1L;
+
+        final AtomicInteger writes = new AtomicInteger();
+
+        @Override
+        public Object put(final String key, final Object value)
+        {
+            writes.incrementAndGet();
+            return super.put(key, value);
+        }
+    }
+
+    @Test
+    public void testActivationIsForwardedToAttributes()
+    {
+        final HttpSession containerSession = createContainerSession(new ConcurrentHashMap<>());
+        final HttpSession session = new HttpSessionWrapper(containerSession, createContext("a"), new HttpConfig(), false);
+        final HttpSessionActivationListener listener = mock(HttpSessionActivationListener.class);
+        session.setAttribute("listener", listener);
+        session.setAttribute("value", "a");
+
+        // the container only knows about the session data
+        final HttpSessionActivationListener data = HttpSessionWrapper.getContextSessionData(containerSession, "a");
+        final HttpSessionEvent event = new HttpSessionEvent(containerSession);
+        data.sessionWillPassivate(event);
+        Mockito.verify(listener).sessionWillPassivate(event);
+        data.sessionDidActivate(event);
+        Mockito.verify(listener).sessionDidActivate(event);
+    }
+
+    @Test
+    public void testNotSerializableAttributesAreSkipped() throws Exception
+    {
+        final HttpSession containerSession = createContainerSession(new ConcurrentHashMap<>());
+        final HttpSession session = new HttpSessionWrapper(containerSession, createContext("a"), new HttpConfig(), false);
+        session.setAttribute("value", "a");
+        session.setAttribute("object", new Object());
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (final ObjectOutputStream out = new ObjectOutputStream(bytes))
+        {
+            out.writeObject(HttpSessionWrapper.getContextSessionData(containerSession, "a"));
+        }
+        final HttpSessionWrapper.ContextSessionData data;
+        try (final ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())))
+        {
+            data = (HttpSessionWrapper.ContextSessionData) in.readObject();
+        }
+
+        assertEquals(session.getCreationTime(), data.created);
+        assertEquals(Collections.singletonMap("value", "a"), data.attributes);
+    }
+
     /**
      * FELIX-5819 : Container session should not be invalidated
      */
@@ -18,20 +18,30 @@ package org.apache.felix.http.base.internal.registry;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
 import java.util.EventListener;
 
+import javax.servlet.DispatcherType;
+import javax.servlet.Filter;
 import javax.servlet.ServletContextListener;
 import javax.servlet.ServletException;
 
 import org.apache.felix.http.base.internal.context.ExtServletContext;
+import org.apache.felix.http.base.internal.handler.FilterHandler;
+import org.apache.felix.http.base.internal.handler.HttpServiceFilterHandler;
 import org.apache.felix.http.base.internal.handler.ListenerHandler;
+import org.apache.felix.http.base.internal.handler.ServletHandler;
 import org.apache.felix.http.base.internal.handler.WhiteboardListenerHandler;
+import org.apache.felix.http.base.internal.runtime.FilterInfo;
 import org.apache.felix.http.base.internal.runtime.ListenerInfo;
+import org.apache.felix.http.base.internal.runtime.ServletInfo;
 import org.apache.felix.http.base.internal.runtime.dto.FailedDTOHolder;
 import org.junit.Test;
 import org.mockito.ArgumentMatchers;
@@ -42,6 +52,7 @@ import org.osgi.framework.InvalidSyntaxException;
 import org.osgi.framework.ServiceObjects;
 import org.osgi.framework.ServiceReference;
 import org.osgi.service.http.runtime.dto.ServletContextDTO;
+import org.osgi.service.http.whiteboard.HttpWhiteboardConstants;
 
 public class FilterRegistryTest {
 
@@ -89,6 +100,75 @@ public class FilterRegistryTest {
         assertEmpty(dto, holder);
     }
 
+    @Test public void testFilterChains()
+    {
+        final FilterRegistry reg = new FilterRegistry();
+        final ServletHandler servlet = createServletHandler("servlet");
+
+        // no filters
+        assertEquals(0, reg.getFilterHandlers(servlet, DispatcherType.REQUEST, "/a").length);
+
+        final FilterHandler all = createFilterHandler(1L, new String[] {"/*"}, null, "REQUEST");
+        final FilterHandler byName = createFilterHandler(2L, null, new String[] {"servlet"}, "REQUEST");
+        final FilterHandler byPath = createFilterHandler(3L, new String[] {"/a/*"}, null, "REQUEST", "FORWARD");
+        reg.addFilter(all);
+        reg.addFilter(byName);
+
+        // chain does not depend on the uri and is reused
+        final FilterHandler[] chain = reg.getFilterHandlers(servlet, DispatcherType.REQUEST, "/a");
+        assertArrayEquals(new FilterHandler[] {all, byName}, chain);
+        assertSame(chain, reg.getFilterHandlers(servlet, DispatcherType.REQUEST, "/b"));
+        assertArrayEquals(new FilterHandler[] {all}, reg.getFilterHandlers(null, DispatcherType.REQUEST, "/a"));
+        assertEquals(0, reg.getFilterHandlers(servlet, DispatcherType.FORWARD, "/a").length);
+
+        // adding a filter invalidates the cached chains
+        reg.addFilter(byPath);
+        assertArrayEquals(new FilterHandler[] {all, byName, byPath}, reg.getFilterHandlers(servlet, DispatcherType.REQUEST, "/a/x"));
+        assertArrayEquals(new FilterHandler[] {all, byName}, reg.getFilterHandlers(servlet, DispatcherType.REQUEST, "/b"));
+        assertArrayEquals(new FilterHandler[] {byPath}, reg.getFilterHandlers(servlet, DispatcherType.FORWARD, "/a"));
+
+        // removing a filter invalidates the cached chains
+        reg.removeFilter(byName.getFilterInfo(), false);
+        assertArrayEquals(new FilterHandler[] {all, byPath}, reg.getFilterHandlers(servlet, DispatcherType.REQUEST, "/a/x"));
+        assertArrayEquals(new FilterHandler[] {all}, reg.getFilterHandlers(servlet, DispatcherType.REQUEST, "/b"));
+
+        // a servlet change drops the cached chains
+        final FilterHandler[] cached = reg.getFilterHandlers(servlet, DispatcherType.REQUEST, "/b");
+        assertSame(cached, reg.getFilterHandlers(servlet, DispatcherType.REQUEST, "/b"));
+        reg.servletsChanged();
+        final FilterHandler[] rebuilt = reg.getFilterHandlers(servlet, DispatcherType.REQUEST, "/b");
+        assertNotSame(cached, rebuilt);
+        assertArrayEquals(cached, rebuilt);
+    }
+
+    private static ServletHandler createServletHandler(final String name)
+    {
+        final ServletInfo info = mock(ServletInfo.class);
+        when(info.isResource()).thenReturn(false);
+        final ServletHandler handler = mock(ServletHandler.class);
+        when(handler.getServletInfo()).thenReturn(info);
+        when(handler.getName()).thenReturn(name);
+        return handler;
+    }
+
+    private static FilterHandler createFilterHandler(final long id,
+            final String[] patterns,
+            final String[] servletNames,
+            final String... dispatcher)
+    {
+        @SuppressWarnings("unchecked")
+        final ServiceReference<Filter> ref = mock(ServiceReference.class);
+        when(ref.getProperty(Constants.SERVICE_ID)).thenReturn(id);
+        when(ref.getProperty(Constants.SERVICE_RANKING)).thenReturn(0);
+        when(ref.getProperty(HttpWhiteboardConstants.HTTP_WHITEBOARD_FILTER_PATTERN)).thenReturn(patterns);
+        when(ref.getProperty(HttpWhiteboardConstants.HTTP_WHITEBOARD_FILTER_SERVLET)).thenReturn(servletNames);
+        when(ref.getProperty(HttpWhiteboardConstants.HTTP_WHITEBOARD_FILTER_DISPATCHER)).thenReturn(dispatcher);
+        when(ref.getPropertyKeys()).thenReturn(new String[0]);
+
+        final FilterInfo info = new FilterInfo(ref);
+        return new HttpServiceFilterHandler(mock(ExtServletContext.class), info, mock(Filter.class));
+    }
+
     private static ListenerInfo createListenerInfo(final long id, final int ranking, final Class<? extends EventListener> type) throws InvalidSyntaxException
     {
         final String[] typeNames = new String[1];
@@ -0,0 +1,128 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.felix.http.base.internal.registry;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+public class PathResolverIndexTest {
+
+    private static final String[] PATTERNS = new String[] {
+        "", "/", "/*", "/a", "/a/*", "/a/b", "/a/b/*", "/ab", "/ab/*", "/a/b/c/d",
+        "*.jsp", "*.gz", "*.tar.gz", "/x/y/z/*", "/static/*", "/static/index.html"
+    };
+
+    private static final String[] URIS = new String[] {
+        "", "/", "/a", "/a/", "/a/b", "/a/bc", "/a/b/c", "/a/b/c/d", "/a/b/c/d/e", "/ab", "/abc",
+        "/ab/c", "/foo.jsp", "/a/foo.jsp", "/x.tar.gz", "/x.gz", "/x/y", "/x/y/z", "/x/y/z/1.jsp",
+        "/static", "/static/", "/static/index.html", "/static/other.html", "/other", "noslash"
+    };
+
+    private List<PathResolver> createResolvers(final String... patterns)
+    {
+        final List<PathResolver> resolvers = new ArrayList<PathResolver>();
+        for(final String pattern : patterns)
+        {
+            resolvers.add(PathResolverFactory.createPatternMatcher(null, pattern));
+        }
+        Collections.sort(resolvers);
+        return resolvers;
+    }
+
+    private PathResolution resolveLinear(final List<PathResolver> resolvers, final String uri)
+    {
+        for(final PathResolver resolver : resolvers)
+        {
+            final PathResolution pr = resolver.resolve(uri);
+            if ( pr != null )
+            {
+                pr.patterns = new String[] {resolver.getPattern()};
+                return pr;
+            }
+        }
+        return null;
+    }
+
+    private void assertSameResolution(final List<PathResolver> resolvers, final String uri)
+    {
+        final PathResolution expected = resolveLinear(resolvers, uri);
+        final PathResolution actual = new PathResolverIndex(resolvers).resolve(uri);
+        if ( expected == null )
+        {
+            assertNull(uri, actual);
+        }
+        else
+        {
+            assertArrayEquals(uri, expected.patterns, actual.patterns);
+            assertEquals(uri, expected.servletPath, actual.servletPath);
+            assertEquals(uri, expected.pathInfo, actual.pathInfo);
+            assertEquals(uri, expected.requestURI, actual.requestURI);
+        }
+    }
+
+    @Test public void testAllPatterns()
+    {
+        final List<PathResolver> resolvers = createResolvers(PATTERNS);
+        for(final String uri : URIS)
+        {
+            assertSameResolution(resolvers, uri);
+        }
+    }
+
+    @Test public void testEachSubsetOfPatterns()
+    {
+        // every pattern on its own and all but one pattern
+        for(int i = 0; i < PATTERNS.length; i++)
+        {
+            final List<String> others = new ArrayList<String>();
+            for(int j = 0; j < PATTERNS.length; j++)
+            {
+                if ( i != j )
+                {
+                    others.add(PATTERNS[j]);
+                }
+            }
+            final List<PathResolver> single = createResolvers(PATTERNS[i]);
+            final List<PathResolver> allButOne = createResolvers(others.toArray(new String[others.size()]));
+            for(final String uri : URIS)
+            {
+                assertSameResolution(single, uri);
+                assertSameResolution(allButOne, uri);
+            }
+        }
+    }
+
+    @Test public void testEmpty()
+    {
+        assertNull(PathResolverIndex.EMPTY.resolve("/foo"));
+        assertNull(PathResolverIndex.EMPTY.resolve(""));
+    }
+
+    @Test public void testPatternsAreShared()
+    {
+        final PathResolverIndex index = new PathResolverIndex(createResolvers("/a/*"));
+        assertSame(index.resolve("/a/b").patterns, index.resolve("/a/c").patterns);
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.felix.http.base.internal.registry;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class RadixTreeTest {
+
+    private RadixTree<String> create(final boolean reverse, final String... keys)
+    {
+        final Map<String, String> entries = new HashMap<String, String>();
+        for(final String key : keys)
+        {
+            entries.put(key, key);
+        }
+        return new RadixTree<String>(entries, reverse);
+    }
+
+    @Test public void testLongestPrefix()
+    {
+        final RadixTree<String> tree = create(false, "/a", "/a/b/c", "/abc", "/b");
+
+        assertEquals("/a/b/c", tree.findLongestMatch("/a/b/c/d").getValue());
+        assertEquals("/a", tree.findLongestMatch("/a/b/c/d").getParent().getValue());
+        assertNull(tree.findLongestMatch("/a/b/c/d").getParent().getParent());
+        assertEquals("/a", tree.findLongestMatch("/a/b").getValue());
+        assertEquals("/abc", tree.findLongestMatch("/abcd").getValue());
+        assertEquals("/a", tree.findLongestMatch("/ab").getValue());
+        assertEquals(2, tree.findLongestMatch("/ab").getLength());
+        assertNull(tree.findLongestMatch("/c"));
+        assertNull(tree.findLongestMatch(""));
+    }
+
+    @Test public void testEmptyKey()
+    {
+        final RadixTree<String> tree = create(false, "", "/a");
+
+        assertEquals("", tree.findLongestMatch("").getValue());
+        assertEquals("", tree.findLongestMatch("/b").getValue());
+        assertEquals("", tree.findLongestMatch("/a").getParent().getValue());
+    }
+
+    @Test public void testLongestSuffix()
+    {
+        final RadixTree<String> tree = create(true, ".gz", ".tar.gz", ".jsp");
+
+        assertEquals(".tar.gz", tree.findLongestMatch("/foo.tar.gz").getValue());
+        assertEquals(".gz", tree.findLongestMatch("/foo.gz").getValue());
+        assertEquals(".jsp", tree.findLongestMatch("/foo.jsp").getValue());
+        assertNull(tree.findLongestMatch("/foo.jspx"));
+        assertNull(tree.findLongestMatch("gz"));
+    }
+}
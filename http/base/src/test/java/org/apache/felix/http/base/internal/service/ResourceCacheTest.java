@@ -0,0 +1,74 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.felix.http.base.internal.service;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class ResourceCacheTest
+{
+    @Test public void testGetAndPut()
+    {
+        final ResourceCache cache = new ResourceCache(100, 50);
+        assertNull(cache.get("a", 1L));
+
+        cache.put("a", 1L, new byte[] {1, 2, 3});
+        assertArrayEquals(new byte[] {1, 2, 3}, cache.get("a", 1L));
+        assertEquals(3, cache.getSize());
+
+        cache.put("a", 1L, new byte[] {4, 5});
+        assertArrayEquals(new byte[] {4, 5}, cache.get("a", 1L));
+        assertEquals(2, cache.getSize());
+    }
+
+    @Test public void testModifiedResource()
+    {
+        final ResourceCache cache = new ResourceCache(100, 50);
+        cache.put("a", 1L, new byte[10]);
+
+        assertNull(cache.get("a", 2L));
+        assertEquals(0, cache.getSize());
+        assertNull(cache.get("a", 1L));
+    }
+
+    @Test public void testLargeResourceIsNotCached()
+    {
+        final ResourceCache cache = new ResourceCache(100, 50);
+        cache.put("a", 1L, new byte[51]);
+
+        assertNull(cache.get("a", 1L));
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test public void testLeastRecentlyUsedIsEvicted()
+    {
+        final ResourceCache cache = new ResourceCache(100, 50);
+        cache.put("a", 1L, new byte[40]);
+        cache.put("b", 1L, new byte[40]);
+        // access a, b is the least recently used entry now
+        cache.get("a", 1L);
+        cache.put("c", 1L, new byte[40]);
+
+        assertEquals(80, cache.getSize());
+        assertNull(cache.get("b", 1L));
+        assertEquals(40, cache.get("a", 1L).length);
+        assertEquals(40, cache.get("c", 1L).length);
+    }
+}
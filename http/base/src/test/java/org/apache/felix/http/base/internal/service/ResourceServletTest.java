@@ -0,0 +1,211 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.felix.http.base.internal.service;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
+
+public class ResourceServletTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ResourceServlet servlet;
+
+    @Before public void setUp() throws Exception
+    {
+        final ServletContext context = mock(ServletContext.class);
+        when(context.getResource(anyString())).thenAnswer(invocation -> {
+            final File file = new File(folder.getRoot(), invocation.getArgument(0));
+            return file.isFile() ? file.toURI().toURL() : null;
+        });
+        when(context.getMimeType("/res/a.txt")).thenReturn("text/plain");
+        final ServletConfig config = mock(ServletConfig.class);
+        when(config.getServletContext()).thenReturn(context);
+
+        folder.newFolder("res");
+        servlet = new ResourceServlet("/res");
+        servlet.init(config);
+    }
+
+    @Test public void testCachedResource() throws Exception
+    {
+        final File file = write("res/a.txt", "hello");
+        assertEquals("hello", get("/a.txt", null, null, null));
+
+        // same modification time and length, the cached content is served
+        final long lastModified = file.lastModified();
+        write("res/a.txt", "world");
+        assertTrue(file.setLastModified(lastModified));
+        assertEquals("hello", get("/a.txt", null, null, null));
+
+        // once modified the resource is read again
+        assertTrue(file.setLastModified(lastModified + 2000));
+        assertEquals("world", get("/a.txt", null, null, null));
+    }
+
+    @Test public void testIfNoneMatch() throws Exception
+    {
+        write("res/a.txt", "hello");
+        final HttpServletResponse res = mock(HttpServletResponse.class);
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        when(res.getOutputStream()).thenReturn(outputStream(body));
+        servlet.doGet(request("/a.txt", null, null), res);
+        final ArgumentCaptor<String> etag = ArgumentCaptor.forClass(String.class);
+        verify(res).setHeader(eq("ETag"), etag.capture());
+        verify(res).setContentType("text/plain");
+
+        final HttpServletResponse notModified = mock(HttpServletResponse.class);
+        servlet.doGet(request("/a.txt", null, "\"0-0\", " + etag.getValue()), notModified);
+        verify(notModified).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        verify(notModified, never()).getOutputStream();
+
+        // another entity tag does not match
+        assertEquals("hello", get("/a.txt", null, "\"0-0\"", null));
+    }
+
+    @Test public void testPrecompressedVariant() throws Exception
+    {
+        write("res/a.txt", "hello");
+        write("res/a.txt.gz", "gzipped");
+
+        final HttpServletResponse res = mock(HttpServletResponse.class);
+        assertEquals("gzipped", get("/a.txt", "br, gzip", null, res));
+        verify(res).setContentType("text/plain");
+        verify(res).setHeader("Content-Encoding", "gzip");
+        verify(res).addHeader("Vary", "Accept-Encoding");
+
+        // the variant is not used if the client does not accept it
+        final HttpServletResponse identity = mock(HttpServletResponse.class);
+        assertEquals("hello", get("/a.txt", "br, gzip;q=0", null, identity));
+        verify(identity, never()).setHeader("Content-Encoding", "gzip");
+    }
+
+    @Test public void testLargeFile() throws Exception
+    {
+        final byte[] content = new byte[ResourceCache.DEFAULT_MAX_ENTRY_SIZE * 2];
+        for (int i = 0; i < content.length; i++)
+        {
+            content[i] = (byte) i;
+        }
+        Files.write(new File(folder.getRoot(), "res/large.bin").toPath(), content);
+
+        final HttpServletResponse res = mock(HttpServletResponse.class);
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        when(res.getOutputStream()).thenReturn(outputStream(body));
+        servlet.doGet(request("/large.bin", null, null), res);
+        verify(res).setContentLengthLong(content.length);
+        assertArrayEquals(content, body.toByteArray());
+    }
+
+    private File write(final String path, final String content) throws IOException
+    {
+        final File file = new File(folder.getRoot(), path);
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private String get(final String path, final String acceptEncoding, final String ifNoneMatch,
+            final HttpServletResponse response) throws Exception
+    {
+        final HttpServletResponse res = response != null ? response : mock(HttpServletResponse.class);
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        when(res.getOutputStream()).thenReturn(outputStream(body));
+        servlet.doGet(request(path, acceptEncoding, ifNoneMatch), res);
+        return new String(body.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static HttpServletRequest request(final String path, final String acceptEncoding, final String ifNoneMatch)
+    {
+        final HttpServletRequest req = mock(HttpServletRequest.class);
+        when(req.getPathInfo()).thenReturn(path);
+        when(req.getHeader("Accept-Encoding")).thenReturn(acceptEncoding);
+        when(req.getHeader("If-None-Match")).thenReturn(ifNoneMatch);
+        when(req.getDateHeader("If-Modified-Since")).thenReturn(-1L);
+        return req;
+    }
+
+    private static ServletOutputStream outputStream(final ByteArrayOutputStream body)
+    {
+        return new ServletOutputStream()
+        {
+            @Override
+            public void write(final int b)
+            {
+                body.write(b);
+            }
+
+            @Override
+            public boolean isReady()
+            {
+                return true;
+            }
+
+            @Override
+            public void setWriteListener(final WriteListener writeListener)
+            {
+                // not used
+            }
+        };
+    }
+
+    @Test public void testAcceptsEncoding()
+    {
+        assertTrue(ResourceServlet.acceptsEncoding("gzip", "gzip"));
+        assertTrue(ResourceServlet.acceptsEncoding("deflate, GZIP;q=0.5, br", "gzip"));
+        assertTrue(ResourceServlet.acceptsEncoding("gzip, deflate, br", "br"));
+        assertFalse(ResourceServlet.acceptsEncoding("gzip;q=0", "gzip"));
+        assertFalse(ResourceServlet.acceptsEncoding("gzip; q=0.000", "gzip"));
+        assertFalse(ResourceServlet.acceptsEncoding("gzip, deflate", "br"));
+        assertFalse(ResourceServlet.acceptsEncoding("", "gzip"));
+    }
+
+    @Test public void testMatchesETag()
+    {
+        assertTrue(ResourceServlet.matchesETag("\"1-2\"", "\"1-2\""));
+        assertTrue(ResourceServlet.matchesETag("\"0-0\", W/\"1-2\"", "\"1-2\""));
+        assertTrue(ResourceServlet.matchesETag("*", "\"1-2\""));
+        assertFalse(ResourceServlet.matchesETag("\"1-2-gzip\"", "\"1-2\""));
+    }
+}
@@ -0,0 +1,336 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.http.itest;
+
+import static javax.servlet.http.HttpServletResponse.SC_NOT_FOUND;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.ops4j.pax.exam.junit.PaxExam;
+import org.ops4j.pax.exam.spi.reactors.ExamReactorStrategy;
+import org.ops4j.pax.exam.spi.reactors.PerMethod;
+import org.osgi.framework.ServiceReference;
+import org.osgi.service.http.runtime.HttpServiceRuntime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Load test of request handling on pooled threads and on virtual threads
+ * for a servlet doing blocking calls. The throughput, the peak heap usage and
+ * the peak number of platform threads of both modes are logged.
+ */
+@RunWith(PaxExam.class)
+@ExamReactorStrategy(PerMethod.class)
+public class VirtualThreadLoadTest extends BaseIntegrationTest
+{
+    /** The logger. */
+    private static final Logger logger = LoggerFactory.getLogger(VirtualThreadLoadTest.class);
+
+    private static final int CLIENTS = 400;
+
+    private static final int REQUESTS_PER_CLIENT = 10;
+
+    /** Time in milliseconds the servlet blocks per request, simulating a downstream call */
+    private static final long SERVLET_DELAY = 50;
+
+    /** Custom runtime property identifying the configuration Jetty was started with */
+    private static final String MODE_PROPERTY = "virtualthreadloadtest.mode";
+
+    /** {@code Thread.isVirtual()}, {@code null} if not available */
+    private static final Method IS_VIRTUAL = findIsVirtual();
+
+    private static Method findIsVirtual()
+    {
+        try
+        {
+            return Thread.class.getMethod("isVirtual");
+        }
+        catch (final NoSuchMethodException e)
+        {
+            return null;
+        }
+    }
+
+    private static boolean isVirtualThread()
+    {
+        try
+        {
+            return IS_VIRTUAL != null && (Boolean) IS_VIRTUAL.invoke(Thread.currentThread());
+        }
+        catch (final Exception e)
+        {
+            return false;
+        }
+    }
+
+    private static boolean isVirtualThreadSupported()
+    {
+        try
+        {
+            ((ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null)).shutdown();
+            return true;
+        }
+        catch (final Exception e)
+        {
+            return false;
+        }
+    }
+
+    @After
+    public void resetHttpService() throws Exception
+    {
+        configureHttpService(null);
+    }
+
+    @Test
+    public void testLoadOnPooledThreads() throws Exception
+    {
+        final LoadResult result = runLoad(false);
+        assertEquals(CLIENTS * REQUESTS_PER_CLIENT, result.successful);
+        assertEquals("Requests must be handled on pooled threads", 0, result.virtualRequests);
+    }
+
+    @Test
+    public void testLoadOnVirtualThreads() throws Exception
+    {
+        assumeTrue("Virtual threads are not supported by this JVM", isVirtualThreadSupported());
+
+        final LoadResult result = runLoad(true);
+        assertEquals(CLIENTS * REQUESTS_PER_CLIENT, result.successful);
+        assertEquals("Requests must be handled on virtual threads", CLIENTS * REQUESTS_PER_CLIENT, result.virtualRequests);
+    }
+
+    @Test
+    public void testCompareThroughputAndMemory() throws Exception
+    {
+        assumeTrue("Virtual threads are not supported by this JVM", isVirtualThreadSupported());
+
+        final LoadResult pooled = runLoad(false);
+        final LoadResult virtual = runLoad(true);
+        assertEquals(CLIENTS * REQUESTS_PER_CLIENT, pooled.successful);
+        assertEquals(CLIENTS * REQUESTS_PER_CLIENT, virtual.successful);
+
+        logger.info("Pooled threads:  " + pooled);
+        logger.info("Virtual threads: " + virtual);
+        logger.info("Virtual/pooled: throughput x" + String.format("%.2f", virtual.throughput() / pooled.throughput())
+                + ", peak heap x" + String.format("%.2f", (double) virtual.peakHeap / pooled.peakHeap)
+                + ", peak platform threads x" + String.format("%.2f", (double) virtual.peakThreads / pooled.peakThreads));
+    }
+
+    /**
+     * The outcome of a load run.
+     */
+    private static final class LoadResult
+    {
+        final int successful;
+        final int virtualRequests;
+        final long elapsedMillis;
+        final long peakHeap;
+        final int peakThreads;
+
+        LoadResult(final int successful, final int virtualRequests, final long elapsedMillis, final long peakHeap, final int peakThreads)
+        {
+            this.successful = successful;
+            this.virtualRequests = virtualRequests;
+            this.elapsedMillis = elapsedMillis;
+            this.peakHeap = peakHeap;
+            this.peakThreads = peakThreads;
+        }
+
+        double throughput()
+        {
+            return successful * 1000d / Math.max(elapsedMillis, 1);
+        }
+
+        @Override
+        public String toString()
+        {
+            return successful + " requests in " + elapsedMillis + " ms (" + String.format("%.0f", throughput()) + " requests/s)"
+                    + ", peak heap=" + (peakHeap / (1024 * 1024)) + " MB"
+                    + ", peak platform threads=" + peakThreads;
+        }
+    }
+
+    /**
+     * Runs the load against a servlet counting the requests it handles on virtual threads,
+     * sampling the heap usage and the number of platform threads while the load runs.
+     * @return the result of the run
+     */
+    private LoadResult runLoad(final boolean virtualThreads) throws Exception
+    {
+        final AtomicInteger virtualRequests = new AtomicInteger();
+        final String mode = virtualThreads ? "virtual" : "pooled";
+        configureHttpService(createDictionary(
+                "org.osgi.service.http.port", "8080",
+                "org.apache.felix.http.jetty.virtualthreads", String.valueOf(virtualThreads),
+                "org.apache.felix.http.runtime.init." + MODE_PROPERTY, mode));
+        awaitJetty(mode);
+
+        register("/load", new TestServlet()
+        {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected void doGet(final HttpServletRequest req, final HttpServletResponse resp) throws ServletException, IOException
+            {
+                if (isVirtualThread())
+                {
+                    virtualRequests.incrementAndGet();
+                }
+                try
+                {
+                    Thread.sleep(SERVLET_DELAY);
+                }
+                catch (final InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+                resp.setContentType("text/plain");
+                resp.getWriter().print("ok");
+            }
+        });
+
+        final URL url = createURL("/load");
+        // warm up
+        assertContent("ok", url);
+        virtualRequests.set(0);
+
+        final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        final AtomicLong peakHeap = new AtomicLong();
+        memory.gc();
+        threads.resetPeakThreadCount();
+        final ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor();
+        sampler.scheduleAtFixedRate(() -> peakHeap.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max),
+                0, 10, TimeUnit.MILLISECONDS);
+
+        final ExecutorService clients = Executors.newFixedThreadPool(CLIENTS);
+        try
+        {
+            final long start = System.nanoTime();
+            final List<Future<Integer>> futures = new ArrayList<>();
+            for (int i = 0; i < CLIENTS; i++)
+            {
+                futures.add(clients.submit(() -> {
+                    int ok = 0;
+                    for (int r = 0; r < REQUESTS_PER_CLIENT; r++)
+                    {
+                        if (request(url))
+                        {
+                            ok++;
+                        }
+                    }
+                    return ok;
+                }));
+            }
+            int successful = 0;
+            for (final Future<Integer> future : futures)
+            {
+                successful += future.get(DEFAULT_TIMEOUT * 6, TimeUnit.MILLISECONDS);
+            }
+            final long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            return new LoadResult(successful, virtualRequests.get(), elapsedMillis, peakHeap.get(), threads.getPeakThreadCount());
+        }
+        finally
+        {
+            sampler.shutdownNow();
+            clients.shutdownNow();
+            unregister("/load");
+        }
+    }
+
+    private static boolean request(final URL url)
+    {
+        try
+        {
+            final HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+            try (InputStream is = conn.getInputStream())
+            {
+                return conn.getResponseCode() == HttpServletResponse.SC_OK && "ok".equals(slurpAsString(is));
+            }
+        }
+        catch (final IOException e)
+        {
+            return false;
+        }
+    }
+
+    /**
+     * Waits until Jetty is restarted with the configuration of the given mode:
+     * the configuration change restarts Jetty asynchronously, and the runtime
+     * service carrying the mode is only registered once the new server and
+     * its thread pool are started.
+     */
+    private void awaitJetty(final String mode) throws Exception
+    {
+        final String filter = String.format("(%s=%s)", MODE_PROPERTY, mode);
+        final long end = System.currentTimeMillis() + DEFAULT_TIMEOUT;
+        Collection<ServiceReference<HttpServiceRuntime>> refs = m_context.getServiceReferences(HttpServiceRuntime.class, filter);
+        while (refs.isEmpty() && System.currentTimeMillis() <= end)
+        {
+            Thread.sleep(100);
+            refs = m_context.getServiceReferences(HttpServiceRuntime.class, filter);
+        }
+        assertFalse("Jetty not restarted in " + mode + " mode", refs.isEmpty());
+
+        while (true)
+        {
+            try
+            {
+                assertResponseCode(SC_NOT_FOUND, createURL("/"));
+                return;
+            }
+            catch (final IOException e)
+            {
+                if (System.currentTimeMillis() > end)
+                {
+                    throw e;
+                }
+                Thread.sleep(100);
+            }
+        }
+    }
+}
@@ -0,0 +1,241 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.felix.http.jetty.internal;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.felix.http.base.internal.logger.SystemLogger;
+import org.eclipse.jetty.server.RequestLog;
+import org.eclipse.jetty.util.component.AbstractLifeCycle;
+
+/**
+ * A request log writer which does not write on the request thread. Entries are
+ * added to a {@link RequestLogRingBuffer} and written in batches by a single
+ * background thread. The thread is woken up once a batch is available,
+ * otherwise the pending entries are written after the flush interval.
+ * <p>
+ * If the buffer is full, the {@link DropPolicy} decides whether the entry is
+ * dropped or the request thread waits for free space.
+ */
+abstract class BufferedRequestLogWriter extends AbstractLifeCycle implements RequestLog.Writer {
+
+    /** What to do with an entry if the buffer is full */
+    enum DropPolicy {
+        /** Drop the new entry */
+        DROP("drop"),
+        /** Wait until there is space in the buffer */
+        BLOCK("block");
+
+        private final String value;
+
+        DropPolicy(String value) {
+            this.value = value;
+        }
+
+        static DropPolicy fromValue(String value, DropPolicy defaultPolicy) {
+            for (final DropPolicy policy : values()) {
+                if (policy.value.equalsIgnoreCase(value)) {
+                    return policy;
+                }
+            }
+            return defaultPolicy;
+        }
+    }
+
+    static final int DEFAULT_BATCH_SIZE = 256;
+
+    static final long DEFAULT_FLUSH_INTERVAL = 100;
+
+    private final RequestLogRingBuffer buffer;
+
+    private final DropPolicy policy;
+
+    private final int batchSize;
+
+    private final long flushIntervalNanos;
+
+    private final String name;
+
+    private final AtomicLong dropped = new AtomicLong();
+
+    private volatile Thread thread;
+
+    private volatile boolean running;
+
+    /** Set by the background thread while it waits for entries. */
+    private volatile boolean waiting;
+
+    /**
+     * Create a new writer
+     * @param name The name of the background thread
+     * @param queueSize The number of entries which can be buffered
+     * @param policy The policy if the buffer is full
+     * @param batchSize The maximum number of entries written at once
+     * @param flushInterval The maximum time in milliseconds an entry is buffered
+     */
+    BufferedRequestLogWriter(String name, int queueSize, DropPolicy policy, int batchSize, long flushInterval) {
+        this.name = name;
+        this.buffer = new RequestLogRingBuffer(queueSize);
+        this.policy = policy;
+        this.batchSize = Math.max(1, Math.min(batchSize, this.buffer.capacity()));
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushInterval);
+    }
+
+    /**
+     * Open the target, called on start before any entry is written.
+     * @throws IOException If opening fails
+     */
+    protected void open() throws IOException {
+        // nothing to do by default
+    }
+
+    /**
+     * Write entries, only called by the background thread.
+     * @param entries The entries
+     * @param count The number of entries
+     * @throws IOException If writing fails
+     */
+    protected abstract void writeEntries(String[] entries, int count) throws IOException;
+
+    /**
+     * Flush written entries, called by the background thread once the buffer is empty.
+     * @throws IOException If flushing fails
+     */
+    protected void flush() throws IOException {
+        // nothing to do by default
+    }
+
+    /**
+     * Close the target, called on stop after all entries have been written.
+     * @throws IOException If closing fails
+     */
+    protected void close() throws IOException {
+        // nothing to do by default
+    }
+
+    /**
+     * The number of entries dropped since the writer has been created
+     * @return The number of entries
+     */
+    long getDroppedCount() {
+        return this.dropped.get();
+    }
+
+    @Override
+    public void write(String requestEntry) throws IOException {
+        if (!this.running) {
+            this.dropped.incrementAndGet();
+            return;
+        }
+        while (!this.buffer.offer(requestEntry)) {
+            if (this.policy == DropPolicy.DROP || !this.running) {
+                this.dropped.incrementAndGet();
+                return;
+            }
+            LockSupport.unpark(this.thread);
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+        }
+        if (this.waiting && this.buffer.size() >= this.batchSize) {
+            LockSupport.unpark(this.thread);
+        }
+    }
+
+    @Override
+    protected void doStart() throws Exception {
+        open();
+        this.running = true;
+        final Thread t = new Thread(this::run, this.name);
+        t.setDaemon(true);
+        this.thread = t;
+        t.start();
+        super.doStart();
+    }
+
+    @Override
+    protected void doStop() throws Exception {
+        this.running = false;
+        final Thread t = this.thread;
+        if (t != null) {
+            LockSupport.unpark(t);
+            t.join(TimeUnit.SECONDS.toMillis(10));
+            this.thread = null;
+        }
+        try {
+            close();
+        } finally {
+            super.doStop();
+        }
+    }
+
+    private void run() {
+        try {
+            drain();
+        } catch (final RuntimeException e) {
+            SystemLogger.error("Request log writer thread stopped unexpectedly", e);
+        } finally {
+            // let request threads drop entries instead of waiting for free space forever
+            this.running = false;
+        }
+    }
+
+    private void drain() {
+        final String[] batch = new String[this.batchSize];
+        boolean unflushed = false;
+        long reportedDropped = 0;
+        while (true) {
+            final boolean stopping = !this.running;
+            final int count = this.buffer.drainTo(batch);
+            if (count > 0) {
+                try {
+                    writeEntries(batch, count);
+                } catch (final IOException | RuntimeException e) {
+                    SystemLogger.error("Error writing request log", e);
+                }
+                Arrays.fill(batch, 0, count, null);
+                unflushed = true;
+                if (count == batch.length) {
+                    continue;
+                }
+            }
+            if (unflushed) {
+                try {
+                    flush();
+                } catch (final IOException | RuntimeException e) {
+                    SystemLogger.error("Error flushing request log", e);
+                }
+                unflushed = false;
+            }
+            final long droppedCount = this.dropped.get();
+            if (droppedCount != reportedDropped) {
+                SystemLogger.warning("Dropped " + (droppedCount - reportedDropped) + " request log entries, the request log buffer is full.", null);
+                reportedDropped = droppedCount;
+            }
+            if (stopping && this.buffer.size() == 0) {
+                break;
+            }
+            this.waiting = true;
+            if (this.running && this.buffer.size() < this.batchSize) {
+                LockSupport.parkNanos(this, this.flushIntervalNanos);
+            }
+            this.waiting = false;
+        }
+    }
+}
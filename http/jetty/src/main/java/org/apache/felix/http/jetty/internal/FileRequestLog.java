@@ -22,9 +22,10 @@ import java.nio.file.Files;
 import java.nio.file.attribute.PosixFilePermissions;
 import java.util.Dictionary;
 import java.util.Hashtable;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.felix.http.base.internal.logger.SystemLogger;
-import org.eclipse.jetty.server.AsyncNCSARequestLog;
+import org.eclipse.jetty.server.AbstractNCSARequestLog;
 import org.eclipse.jetty.server.NCSARequestLog;
 import org.eclipse.jetty.server.RequestLog;
 import org.osgi.framework.BundleContext;
@@ -36,7 +37,7 @@ class FileRequestLog {
     public static final String DEFAULT_NAME = "file";
     public static final String SVC_PROP_FILEPATH = "filepath";
 
-    private final NCSARequestLog delegate;
+    private final AbstractNCSARequestLog delegate;
     private final String logFilePath;
     private final String serviceName;
     private ServiceRegistration<RequestLog> registration = null;
@@ -45,14 +46,21 @@ class FileRequestLog {
         logFilePath = config.getRequestLogFilePath();
         serviceName = config.getRequestLogFileServiceName() != null ? config.getRequestLogFileServiceName() : DEFAULT_NAME;
         if (config.isRequestLogFileAsync()) {
-            delegate = new AsyncNCSARequestLog(logFilePath, null);
+            delegate = new BufferedNCSARequestLog(new RotatingFileRequestLogWriter(new File(logFilePath),
+                    config.isRequestLogFileAppend(),
+                    config.getRequestLogFileMaxSize(),
+                    TimeUnit.MINUTES.toMillis(config.getRequestLogFileRotationInterval()),
+                    config.getRequestLogFileRetainDays(),
+                    config.getRequestLogAsyncQueueSize(),
+                    BufferedRequestLogWriter.DropPolicy.fromValue(config.getRequestLogAsyncPolicy(), BufferedRequestLogWriter.DropPolicy.DROP)));
         } else {
-            delegate = new NCSARequestLog(logFilePath);
+            final NCSARequestLog ncsaLog = new NCSARequestLog(logFilePath);
+            ncsaLog.setAppend(config.isRequestLogFileAppend());
+            ncsaLog.setRetainDays(config.getRequestLogFileRetainDays());
+            ncsaLog.setFilenameDateFormat(config.getRequestLogFilenameDateFormat());
+            delegate = ncsaLog;
         }
 
-        delegate.setAppend(config.isRequestLogFileAppend());
-        delegate.setRetainDays(config.getRequestLogFileRetainDays());
-        delegate.setFilenameDateFormat(config.getRequestLogFilenameDateFormat());
         delegate.setExtended(config.isRequestLogFileExtended());
         delegate.setIgnorePaths(config.getRequestLogFileIgnorePaths());
         delegate.setLogCookies(config.isRequestLogFileLogCookies());
@@ -101,4 +109,36 @@ class FileRequestLog {
         }
     }
 
+    /**
+     * NCSA request log writing through a {@link BufferedRequestLogWriter}.
+     */
+    static class BufferedNCSARequestLog extends AbstractNCSARequestLog {
+
+        private final BufferedRequestLogWriter writer;
+
+        BufferedNCSARequestLog(BufferedRequestLogWriter writer) {
+            super(writer);
+            this.writer = writer;
+        }
+
+        @Override
+        protected boolean isEnabled() {
+            return writer.isRunning();
+        }
+
+        @Override
+        protected synchronized void doStart() throws Exception {
+            writer.start();
+            super.doStart();
+        }
+
+        @Override
+        protected void doStop() throws Exception {
+            try {
+                super.doStop();
+            } finally {
+                writer.stop();
+            }
+        }
+    }
 }
@@ -87,6 +87,9 @@ public final class JettyConfig
     /** Felix specific property to control the maximum size of the jetty thread pool */
     public static final String FELIX_JETTY_THREADPOOL_MAX = "org.apache.felix.http.jetty.threadpool.max";
 
+    /** Felix specific property to run request handling on virtual threads if the JVM supports them. Default is false */
+    public static final String FELIX_JETTY_VIRTUAL_THREADS = "org.apache.felix.http.jetty.virtualthreads";
+
     /** Felix specific property to control the number of jetty acceptor threads */
     public static final String FELIX_JETTY_ACCEPTORS = "org.apache.felix.http.jetty.acceptors";
 
@@ -183,6 +186,15 @@ public final class JettyConfig
     /** Felix specific property to control the level of the log messages generated by the OSGi Log Service-based request log. Values must correspond to the constants defined in the LogService interface, default is 3 "INFO". */
     public static final String FELIX_HTTP_REQUEST_LOG_OSGI_LEVEL = "org.apache.felix.http.requestlog.osgi.level";
 
+    /** Felix specific property to enable asynchronous request logging to the OSGi Log Service */
+    public static final String FELIX_HTTP_REQUEST_LOG_OSGI_ASYNC = "org.apache.felix.http.requestlog.osgi.async";
+
+    /** Felix specific property to specify the number of entries buffered by an asynchronous request log. Default is 8192 */
+    public static final String FELIX_HTTP_REQUEST_LOG_ASYNC_QUEUE_SIZE = "org.apache.felix.http.requestlog.async.queuesize";
+
+    /** Felix specific property to specify what an asynchronous request log does if its buffer is full. Valid values are "drop" and "block". Default is "drop" */
+    public static final String FELIX_HTTP_REQUEST_LOG_ASYNC_POLICY = "org.apache.felix.http.requestlog.async.policy";
+
     /** Felix specific property to enable request logging to a file and provide the path to that file. Default is null meaning that the file log is disabled. */
     public static final String FELIX_HTTP_REQUEST_LOG_FILE_PATH = "org.apache.felix.http.requestlog.file.path";
 
@@ -192,6 +204,12 @@ public final class JettyConfig
     /** Felix specific property to enable file request logging to be asynchronous */
     public static final String FELIX_HTTP_REQUEST_LOG_FILE_ASYNC = "org.apache.felix.http.requestlog.file.async";
 
+    /** Felix specific property to specify the size in bytes after which an asynchronous request log file is rotated. Default is 0, meaning no size based rotation */
+    public static final String FELIX_HTTP_REQUEST_LOG_FILE_MAX_SIZE = "org.apache.felix.http.requestlog.file.maxsize";
+
+    /** Felix specific property to specify the interval in minutes after which an asynchronous request log file is rotated. Default is 1440 (one day), 0 disables time based rotation */
+    public static final String FELIX_HTTP_REQUEST_LOG_FILE_ROTATION_INTERVAL = "org.apache.felix.http.requestlog.file.rotationinterval";
+
     /** Felix specific property to enable request logging to append to the log file rather than overwriting */
     public static final String FELIX_HTTP_REQUEST_LOG_FILE_APPEND = "org.apache.felix.http.requestlog.file.append";
 
@@ -466,6 +484,11 @@ public final class JettyConfig
         return getIntProperty(FELIX_JETTY_THREADPOOL_MAX, -1);
     }
 
+    public boolean isUseVirtualThreads()
+    {
+        return getBooleanProperty(FELIX_JETTY_VIRTUAL_THREADS, false);
+    }
+
     public int getAcceptors()
     {
         return getIntProperty(FELIX_JETTY_ACCEPTORS, -1);
@@ -607,6 +630,26 @@ public final class JettyConfig
         return getIntProperty(FELIX_HTTP_REQUEST_LOG_OSGI_LEVEL, 3); // 3 == LogService.LOG_INFO
     }
 
+    public boolean isRequestLogOSGiAsync() {
+        return getBooleanProperty(FELIX_HTTP_REQUEST_LOG_OSGI_ASYNC, false);
+    }
+
+    public int getRequestLogAsyncQueueSize() {
+        return getIntProperty(FELIX_HTTP_REQUEST_LOG_ASYNC_QUEUE_SIZE, 8192);
+    }
+
+    public String getRequestLogAsyncPolicy() {
+        return getProperty(FELIX_HTTP_REQUEST_LOG_ASYNC_POLICY, "drop");
+    }
+
+    public long getRequestLogFileMaxSize() {
+        return getLongProperty(FELIX_HTTP_REQUEST_LOG_FILE_MAX_SIZE, 0);
+    }
+
+    public long getRequestLogFileRotationInterval() {
+        return getLongProperty(FELIX_HTTP_REQUEST_LOG_FILE_ROTATION_INTERVAL, 1440);
+    }
+
     public String getRequestLogFilePath() {
         return getProperty(FELIX_HTTP_REQUEST_LOG_FILE_PATH, null);
     }
@@ -257,7 +257,13 @@ public final class JettyService extends AbstractLifeCycle.AbstractLifeCycleListe
         {
 
             final int threadPoolMax = this.config.getThreadPoolMax();
-            if (threadPoolMax >= 0) {
+            final boolean virtualThreads = this.config.isUseVirtualThreads() && VirtualThreadPool.isSupported();
+            if (this.config.isUseVirtualThreads() && !virtualThreads) {
+                SystemLogger.warning("Virtual threads are not supported by this JVM, using a thread pool for request handling.", null);
+            }
+            if (virtualThreads) {
+                this.server = new Server( new VirtualThreadPool(threadPoolMax) );
+            } else if (threadPoolMax >= 0) {
                 this.server = new Server( new QueuedThreadPool(threadPoolMax) );
             } else {
                 this.server = new Server();
@@ -368,6 +374,9 @@ public final class JettyService extends AbstractLifeCycle.AbstractLifeCycleListe
                     message.append("minThreads=").append(sizedThreadPool.getMinThreads()).append(",");
                     message.append("maxThreads=").append(sizedThreadPool.getMaxThreads()).append(",");
                 }
+                if (threadPool instanceof VirtualThreadPool) {
+                    message.append("virtualThreads=true,");
+                }
                 Connector connector = this.server.getConnectors()[0];
                 if (connector instanceof ServerConnector) {
                     @SuppressWarnings("resource")
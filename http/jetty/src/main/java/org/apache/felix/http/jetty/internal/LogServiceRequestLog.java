@@ -38,17 +38,48 @@ class LogServiceRequestLog extends AbstractNCSARequestLog {
 
     private final String serviceName;
 
+    /** The writer if the log is asynchronous, {@code null} otherwise. */
+    private final BufferedRequestLogWriter asyncWriter;
+
     private ServiceRegistration<RequestLog> registration;
 
     LogServiceRequestLog(JettyConfig config) {
-        super(new RequestLogWriter());
+        this(config, config.isRequestLogOSGiAsync() ? createAsyncWriter(config) : null);
+    }
+
+    private LogServiceRequestLog(JettyConfig config, BufferedRequestLogWriter asyncWriter) {
+        super(asyncWriter != null ? asyncWriter : new RequestLogWriter());
         this.serviceName = config.getRequestLogOSGiServiceName();
+        this.asyncWriter = asyncWriter;
+    }
+
+    private static BufferedRequestLogWriter createAsyncWriter(JettyConfig config) {
+        return new BufferedRequestLogWriter("felix-http-requestlog-osgi",
+                config.getRequestLogAsyncQueueSize(),
+                BufferedRequestLogWriter.DropPolicy.fromValue(config.getRequestLogAsyncPolicy(), BufferedRequestLogWriter.DropPolicy.DROP),
+                BufferedRequestLogWriter.DEFAULT_BATCH_SIZE,
+                BufferedRequestLogWriter.DEFAULT_FLUSH_INTERVAL) {
+
+            @Override
+            protected void writeEntries(String[] entries, int count) {
+                for (int i = 0; i < count; i++) {
+                    SystemLogger.info(PREFIX + entries[i]);
+                }
+            }
+        };
     }
 
     public synchronized void register(BundleContext context) throws IllegalStateException {
         if (registration != null) {
             throw new IllegalStateException(getClass().getSimpleName() + " already registered");
         }
+        if (asyncWriter != null) {
+            try {
+                asyncWriter.start();
+            } catch (Exception e) {
+                SystemLogger.error("Error starting asynchronous OSGi Request Log", e);
+            }
+        }
         Dictionary<String, Object> svcProps = new Hashtable<>();
         svcProps.put(SVC_PROP_NAME, serviceName);
         this.registration = context.registerService(RequestLog.class, this, svcProps);
@@ -61,12 +92,23 @@ class LogServiceRequestLog extends AbstractNCSARequestLog {
             }
         } finally {
             registration = null;
+            if (asyncWriter != null) {
+                try {
+                    asyncWriter.stop();
+                } catch (Exception e) {
+                    SystemLogger.error("Error shutting down asynchronous OSGi Request Log", e);
+                }
+            }
         }
     }
 
     @Override
     public void write(String s) throws IOException {
-        SystemLogger.info(PREFIX + s);
+        if (asyncWriter != null) {
+            asyncWriter.write(s);
+        } else {
+            SystemLogger.info(PREFIX + s);
+        }
     }
 
     @Override
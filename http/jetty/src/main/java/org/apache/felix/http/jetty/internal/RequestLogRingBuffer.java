@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.felix.http.jetty.internal;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A bounded, lock-free ring buffer for request log entries with any number of
+ * producers and a single consumer.
+ * <p>
+ * Each slot carries a sequence number. A producer claims a slot by advancing
+ * the tail and publishes the entry by moving the sequence of the slot forward,
+ * the consumer releases a slot by moving its sequence one round further.
+ */
+class RequestLogRingBuffer {
+
+    private final String[] entries;
+
+    private final AtomicLongArray sequences;
+
+    private final int mask;
+
+    private final AtomicLong tail = new AtomicLong();
+
+    /** Only written by the consumer. */
+    private volatile long head;
+
+    /**
+     * Create a new buffer
+     * @param capacity The minimum capacity, rounded up to the next power of two
+     */
+    RequestLogRingBuffer(int capacity) {
+        int size = 1;
+        while (size < capacity) {
+            size <<= 1;
+        }
+        this.entries = new String[size];
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            this.sequences.set(i, i);
+        }
+        this.mask = size - 1;
+    }
+
+    int capacity() {
+        return this.entries.length;
+    }
+
+    /**
+     * Add an entry, can be called concurrently
+     * @param entry The entry
+     * @return {@code false} if the buffer is full
+     */
+    boolean offer(String entry) {
+        long pos = this.tail.get();
+        while (true) {
+            final int index = (int) (pos & this.mask);
+            final long diff = this.sequences.get(index) - pos;
+            if (diff == 0) {
+                if (this.tail.compareAndSet(pos, pos + 1)) {
+                    this.entries[index] = entry;
+                    this.sequences.lazySet(index, pos + 1);
+                    return true;
+                }
+                pos = this.tail.get();
+            } else if (diff < 0) {
+                return false;
+            } else {
+                pos = this.tail.get();
+            }
+        }
+    }
+
+    /**
+     * Remove the next entry, must only be called by the consumer
+     * @return The entry or {@code null} if the buffer is empty
+     */
+    String poll() {
+        final long pos = this.head;
+        final int index = (int) (pos & this.mask);
+        if (this.sequences.get(index) != pos + 1) {
+            return null;
+        }
+        final String entry = this.entries[index];
+        this.entries[index] = null;
+        this.sequences.lazySet(index, pos + this.entries.length);
+        this.head = pos + 1;
+        return entry;
+    }
+
+    /**
+     * Remove up to {@code batch.length} entries, must only be called by the consumer
+     * @param batch The array to fill
+     * @return The number of entries removed
+     */
+    int drainTo(String[] batch) {
+        int count = 0;
+        while (count < batch.length) {
+            final String entry = poll();
+            if (entry == null) {
+                break;
+            }
+            batch[count++] = entry;
+        }
+        return count;
+    }
+
+    /**
+     * The number of entries in the buffer, only an estimate while entries are added or removed
+     * @return The number of entries
+     */
+    int size() {
+        final long size = this.tail.get() - this.head;
+        return (int) Math.max(0, Math.min(size, this.entries.length));
+    }
+}
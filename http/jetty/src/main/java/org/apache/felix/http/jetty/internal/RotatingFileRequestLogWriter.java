@@ -0,0 +1,165 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.felix.http.jetty.internal;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.felix.http.base.internal.logger.SystemLogger;
+
+/**
+ * A buffered request log writer appending to a file. The file is rotated once
+ * it exceeds a maximum size or once the rotation interval has passed. Rotated
+ * files get the time of the rotation appended to their name and are deleted
+ * after the configured number of days.
+ */
+class RotatingFileRequestLogWriter extends BufferedRequestLogWriter {
+
+    private static final String EOL = System.lineSeparator();
+
+    /** The time in milliseconds to wait before retrying a failed rotation. */
+    private static final long ROTATION_RETRY_INTERVAL = TimeUnit.MINUTES.toMillis(1);
+
+    private final File file;
+
+    private final boolean append;
+
+    private final long maxFileSize;
+
+    private final long rotationInterval;
+
+    private final int retainDays;
+
+    private Writer writer;
+
+    /** The approximate size of the current file. */
+    private long size;
+
+    private long nextRotation;
+
+    /** No rotation is attempted before this time, set after a failed rotation. */
+    private long rotationRetry;
+
+    /**
+     * Create a new writer
+     * @param file The log file
+     * @param append Whether to append to an existing file on start
+     * @param maxFileSize The size in bytes after which the file is rotated, 0 to disable
+     * @param rotationInterval The interval in milliseconds after which the file is rotated, 0 to disable
+     * @param retainDays The number of days rotated files are kept, 0 to keep them forever
+     * @param queueSize The number of entries which can be buffered
+     * @param policy The policy if the buffer is full
+     */
+    RotatingFileRequestLogWriter(File file, boolean append, long maxFileSize, long rotationInterval, int retainDays,
+            int queueSize, DropPolicy policy) {
+        super("felix-http-requestlog", queueSize, policy, DEFAULT_BATCH_SIZE, DEFAULT_FLUSH_INTERVAL);
+        this.file = file.getAbsoluteFile();
+        this.append = append;
+        this.maxFileSize = maxFileSize;
+        this.rotationInterval = rotationInterval;
+        this.retainDays = retainDays;
+    }
+
+    @Override
+    protected void open() throws IOException {
+        openFile(this.append);
+    }
+
+    private void openFile(boolean appendToFile) throws IOException {
+        this.size = appendToFile && this.file.exists() ? this.file.length() : 0;
+        this.writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(this.file, appendToFile), StandardCharsets.UTF_8), 64 * 1024);
+        this.nextRotation = this.rotationInterval > 0 ? System.currentTimeMillis() + this.rotationInterval : Long.MAX_VALUE;
+    }
+
+    @Override
+    protected void writeEntries(String[] entries, int count) throws IOException {
+        if (this.writer == null) {
+            // a previous rotation failed to open the file again
+            openFile(true);
+        }
+        for (int i = 0; i < count; i++) {
+            this.writer.write(entries[i]);
+            this.writer.write(EOL);
+            // the size is only approximated by the number of characters
+            this.size += entries[i].length() + EOL.length();
+        }
+        final long now = System.currentTimeMillis();
+        if (now >= this.rotationRetry && ((this.maxFileSize > 0 && this.size >= this.maxFileSize) || now >= this.nextRotation)) {
+            rotate(now);
+        }
+    }
+
+    @Override
+    protected void flush() throws IOException {
+        if (this.writer != null) {
+            this.writer.flush();
+        }
+    }
+
+    @Override
+    protected void close() throws IOException {
+        if (this.writer != null) {
+            this.writer.close();
+            this.writer = null;
+        }
+    }
+
+    private void rotate(long now) throws IOException {
+        close();
+        final String suffix = new SimpleDateFormat("yyyy_MM_dd-HH_mm_ss").format(new Date());
+        File target = new File(this.file.getPath() + "." + suffix);
+        for (int i = 1; target.exists(); i++) {
+            target = new File(this.file.getPath() + "." + suffix + "." + i);
+        }
+        if (!this.file.renameTo(target)) {
+            // keep appending to the current file rather than truncating it
+            SystemLogger.warning("Unable to rotate request log " + this.file + " to " + target + ", retrying in "
+                    + TimeUnit.MILLISECONDS.toSeconds(ROTATION_RETRY_INTERVAL) + " seconds", null);
+            this.rotationRetry = now + ROTATION_RETRY_INTERVAL;
+            openFile(true);
+            return;
+        }
+        this.rotationRetry = 0;
+        openFile(false);
+        deleteExpiredFiles();
+    }
+
+    private void deleteExpiredFiles() {
+        final File dir = this.file.getParentFile();
+        if (this.retainDays <= 0 || dir == null) {
+            return;
+        }
+        final long expiry = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(this.retainDays);
+        final String prefix = this.file.getName() + ".";
+        final File[] rotated = dir.listFiles((d, name) -> name.startsWith(prefix));
+        if (rotated != null) {
+            for (final File f : rotated) {
+                if (f.lastModified() < expiry && !f.delete()) {
+                    SystemLogger.warning("Unable to delete expired request log " + f, null);
+                }
+            }
+        }
+    }
+}
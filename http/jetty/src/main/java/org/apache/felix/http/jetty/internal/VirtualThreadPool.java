@@ -0,0 +1,177 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.felix.http.jetty.internal;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.felix.http.base.internal.logger.SystemLogger;
+import org.eclipse.jetty.util.thread.Invocable;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+
+/**
+ * A thread pool running request handling on virtual threads.
+ * <p>
+ * Jetty starts its acceptor and selector loops from the thread starting the
+ * server; these keep running on the pooled platform threads. Blocking tasks
+ * dispatched from a Jetty thread, which includes the handling of requests,
+ * are executed on a new virtual thread each. No threads are reserved, so
+ * the selectors hand every blocking task to {@link #execute(Runnable)}
+ * instead of running it themselves.
+ * <p>
+ * Virtual threads are looked up by reflection, use {@link #isSupported()}
+ * to check whether the running JVM provides them.
+ */
+class VirtualThreadPool extends QueuedThreadPool
+{
+    /** Marks platform threads of this pool and virtual threads started by it. */
+    private static final ThreadLocal<Boolean> JETTY_THREAD = new ThreadLocal<>();
+
+    /** The factory method for virtual thread executors, {@code null} if not available. */
+    private static final Method NEW_VIRTUAL_THREAD_EXECUTOR = findVirtualThreadExecutorFactory();
+
+    private volatile ExecutorService virtualThreadExecutor;
+
+    private static Method findVirtualThreadExecutorFactory()
+    {
+        try
+        {
+            final Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            // virtual threads might be a disabled preview feature
+            ((ExecutorService) method.invoke(null)).shutdown();
+            return method;
+        }
+        catch (final Exception e)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * Check whether the JVM supports virtual threads
+     * @return {@code true} if virtual threads are available
+     */
+    public static boolean isSupported()
+    {
+        return NEW_VIRTUAL_THREAD_EXECUTOR != null;
+    }
+
+    /**
+     * Create a new pool
+     * @param maxThreads The maximum number of platform threads or -1 for the Jetty default
+     */
+    public VirtualThreadPool(final int maxThreads)
+    {
+        super();
+        if (maxThreads >= 0)
+        {
+            this.setMaxThreads(maxThreads);
+        }
+        this.setReservedThreads(0);
+        this.setName("jetty-vt");
+    }
+
+    @Override
+    protected void doStart() throws Exception
+    {
+        this.virtualThreadExecutor = (ExecutorService) NEW_VIRTUAL_THREAD_EXECUTOR.invoke(null);
+        super.doStart();
+    }
+
+    @Override
+    protected void doStop() throws Exception
+    {
+        try
+        {
+            super.doStop();
+        }
+        finally
+        {
+            final ExecutorService executor = this.virtualThreadExecutor;
+            this.virtualThreadExecutor = null;
+            if (executor != null)
+            {
+                stopExecutor(executor);
+            }
+        }
+    }
+
+    /**
+     * Shut down the virtual thread executor, waiting at most the stop timeout
+     * of this pool for running requests to complete before interrupting them.
+     */
+    private void stopExecutor(final ExecutorService executor) throws InterruptedException
+    {
+        executor.shutdown();
+        final long timeout = Math.max(this.getStopTimeout(), 0);
+        final boolean terminated;
+        try
+        {
+            terminated = executor.awaitTermination(timeout, TimeUnit.MILLISECONDS);
+        }
+        catch (final InterruptedException e)
+        {
+            executor.shutdownNow();
+            throw e;
+        }
+        if (!terminated)
+        {
+            SystemLogger.warning("Interrupting requests still running " + timeout + "ms after stopping " + this.getName(), null);
+            executor.shutdownNow();
+        }
+    }
+
+    @Override
+    public void execute(final Runnable job)
+    {
+        final ExecutorService executor = this.virtualThreadExecutor;
+        if (executor != null
+            && JETTY_THREAD.get() != null
+            && Invocable.getInvocationType(job) == Invocable.InvocationType.BLOCKING)
+        {
+            executor.execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    JETTY_THREAD.set(Boolean.TRUE);
+                    job.run();
+                }
+            });
+        }
+        else
+        {
+            super.execute(job);
+        }
+    }
+
+    @Override
+    protected Thread newThread(final Runnable runnable)
+    {
+        return super.newThread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                JETTY_THREAD.set(Boolean.TRUE);
+                runnable.run();
+            }
+        });
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.felix.http.jetty.internal;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.felix.http.jetty.internal.BufferedRequestLogWriter.DropPolicy;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compares the throughput and the time spent on the request threads for
+ * writing request log entries directly to a file with writing them through
+ * the buffered writer. Run with the perftest profile.
+ */
+public class BufferedRequestLogWriterIT {
+
+    private static final Logger logger = LoggerFactory.getLogger(BufferedRequestLogWriterIT.class);
+
+    private static final int RUNS = 5;
+
+    private static final int THREADS = 8;
+
+    private static final int ENTRIES = 20000;
+
+    private static final String ENTRY = "127.0.0.1 - - [01/Jan/2020:00:00:00 +0000] \"GET /index.html HTTP/1.1\" 200 1234 \"-\" \"load-test\"";
+
+    private File dir;
+
+    private interface Write {
+        void write() throws IOException;
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("requestlog").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        final File[] files = dir.listFiles();
+        if (files != null) {
+            for (final File f : files) {
+                f.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void measureThroughputAndLatency() throws Exception {
+        for (int runs = 0; runs < RUNS; runs++) {
+            // like the synchronous writer: write and flush each entry under a lock
+            final File syncFile = new File(dir, "sync" + runs + ".log");
+            final Writer syncWriter = Files.newBufferedWriter(syncFile.toPath(), StandardCharsets.UTF_8);
+            run("Synchronous run " + runs, () -> {
+                synchronized (syncWriter) {
+                    syncWriter.write(ENTRY);
+                    syncWriter.write(System.lineSeparator());
+                    syncWriter.flush();
+                }
+            });
+            syncWriter.close();
+
+            final File asyncFile = new File(dir, "async" + runs + ".log");
+            final RotatingFileRequestLogWriter asyncWriter = new RotatingFileRequestLogWriter(asyncFile,
+                    false, 0, 0, 0, 8192, DropPolicy.BLOCK);
+            asyncWriter.start();
+            run("Buffered run " + runs, () -> asyncWriter.write(ENTRY));
+            asyncWriter.stop();
+
+            assertEquals(THREADS * ENTRIES, Files.readAllLines(syncFile.toPath(), StandardCharsets.UTF_8).size());
+            assertEquals(THREADS * ENTRIES, Files.readAllLines(asyncFile.toPath(), StandardCharsets.UTF_8).size());
+        }
+    }
+
+    /**
+     * Writes the entries from all threads and logs the throughput and the
+     * latency percentiles of the single writes.
+     */
+    private static void run(final String name, final Write write) throws Exception {
+        final long[] latencies = new long[THREADS * ENTRIES];
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Thread> list = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            final int offset = t * ENTRIES;
+            final Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                    for (int i = 0; i < ENTRIES; i++) {
+                        final long begin = System.nanoTime();
+                        write.write();
+                        latencies[offset + i] = System.nanoTime() - begin;
+                    }
+                } catch (InterruptedException | IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            list.add(thread);
+            thread.start();
+        }
+        final long begin = System.nanoTime();
+        start.countDown();
+        for (final Thread thread : list) {
+            thread.join();
+        }
+        final long millis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin));
+        Arrays.sort(latencies);
+        final int count = latencies.length;
+        logger.info(name + ": " + count + " entries in " + millis + " ms (" + (count * 1000L / millis) + " entries/s)"
+                + ", p50=" + latencies[count / 2] + "ns"
+                + ", p99=" + latencies[(int) (count * 0.99)] + "ns"
+                + ", p99.9=" + latencies[(int) (count * 0.999)] + "ns"
+                + ", max=" + latencies[count - 1] + "ns");
+    }
+}
@@ -0,0 +1,251 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.felix.http.jetty.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.felix.http.jetty.internal.BufferedRequestLogWriter.DropPolicy;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BufferedRequestLogWriterTest {
+
+    private File dir;
+
+    /** Writer collecting the entries, optionally blocking until released. */
+    private static class CollectingWriter extends BufferedRequestLogWriter {
+
+        final List<String> entries = Collections.synchronizedList(new ArrayList<>());
+
+        final CountDownLatch release;
+
+        CollectingWriter(int queueSize, DropPolicy policy, CountDownLatch release) {
+            super("test-requestlog", queueSize, policy, 16, 10);
+            this.release = release;
+        }
+
+        @Override
+        protected void writeEntries(String[] batch, int count) throws IOException {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            entries.addAll(Arrays.asList(batch).subList(0, count));
+        }
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("requestlog").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        final File[] files = dir.listFiles();
+        if (files != null) {
+            for (final File f : files) {
+                f.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void testEntriesAreWrittenInOrder() throws Exception {
+        final CollectingWriter writer = new CollectingWriter(64, DropPolicy.BLOCK, new CountDownLatch(0));
+        writer.start();
+        for (int i = 0; i < 1000; i++) {
+            writer.write("entry " + i);
+        }
+        writer.stop();
+
+        assertEquals(1000, writer.entries.size());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals("entry " + i, writer.entries.get(i));
+        }
+        assertEquals(0, writer.getDroppedCount());
+    }
+
+    @Test
+    public void testDropPolicy() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final CollectingWriter writer = new CollectingWriter(16, DropPolicy.DROP, release);
+        writer.start();
+        // the background thread blocks on the first batch, fill the buffer and more
+        for (int i = 0; i < 100; i++) {
+            writer.write("entry " + i);
+        }
+        release.countDown();
+        writer.stop();
+
+        assertTrue(writer.getDroppedCount() > 0);
+        assertEquals(100, writer.entries.size() + writer.getDroppedCount());
+    }
+
+    @Test
+    public void testSizeBasedRotation() throws Exception {
+        final File file = new File(dir, "request.log");
+        final RotatingFileRequestLogWriter writer = new RotatingFileRequestLogWriter(file, true, 1000, 0, 0, 1024, DropPolicy.BLOCK);
+        writer.start();
+        final char[] line = new char[99];
+        Arrays.fill(line, 'x');
+        for (int i = 0; i < 25; i++) {
+            writer.write(new String(line));
+        }
+        writer.stop();
+
+        final File[] files = dir.listFiles();
+        assertTrue(files.length > 1);
+        long lines = 0;
+        for (final File f : files) {
+            assertTrue(f.getName().startsWith("request.log"));
+            lines += Files.readAllLines(f.toPath(), StandardCharsets.UTF_8).size();
+        }
+        assertEquals(25, lines);
+    }
+
+    @Test
+    public void testWriterSurvivesRuntimeException() throws Exception {
+        final CollectingWriter writer = new CollectingWriter(16, DropPolicy.BLOCK, new CountDownLatch(0)) {
+
+            private boolean failed;
+
+            @Override
+            protected void writeEntries(String[] batch, int count) throws IOException {
+                if (!failed) {
+                    failed = true;
+                    throw new IllegalStateException("failure");
+                }
+                super.writeEntries(batch, count);
+            }
+        };
+        writer.start();
+        writer.write("lost");
+        // more entries than the buffer holds, these would block forever without a drain thread
+        for (int i = 0; i < 100; i++) {
+            writer.write("entry " + i);
+        }
+        writer.stop();
+
+        assertEquals(0, writer.getDroppedCount());
+        assertTrue(writer.entries.contains("entry 99"));
+        assertFalse(writer.entries.contains("lost"));
+    }
+
+    @Test
+    public void testFailedRotationKeepsWriting() throws Exception {
+        final File sub = new File(dir, "sub");
+        assertTrue(sub.mkdir());
+        final File file = new File(sub, "request.log");
+        final Semaphore batches = new Semaphore(0);
+        final RotatingFileRequestLogWriter writer = new RotatingFileRequestLogWriter(file, true, 100, 0, 0, 1024, DropPolicy.BLOCK) {
+
+            @Override
+            protected void writeEntries(String[] entries, int count) throws IOException {
+                try {
+                    super.writeEntries(entries, count);
+                } finally {
+                    batches.release();
+                }
+            }
+        };
+        writer.start();
+        try {
+            // replace the directory by a file: the log can neither be renamed nor opened again
+            assertTrue(file.delete());
+            assertTrue(sub.delete());
+            assertTrue(sub.createNewFile());
+            final char[] line = new char[150];
+            Arrays.fill(line, 'x');
+            writer.write(new String(line));
+            assertTrue(batches.tryAcquire(10, TimeUnit.SECONDS));
+            writer.write("lost");
+            assertTrue(batches.tryAcquire(10, TimeUnit.SECONDS));
+
+            // once the directory is back, the log is opened again on the next batch
+            assertTrue(sub.delete());
+            assertTrue(sub.mkdir());
+            writer.write("written");
+            assertTrue(batches.tryAcquire(10, TimeUnit.SECONDS));
+        } finally {
+            writer.stop();
+        }
+
+        assertEquals(Collections.singletonList("written"), Files.readAllLines(file.toPath(), StandardCharsets.UTF_8));
+        assertEquals(1, sub.listFiles().length);
+        assertTrue(file.delete());
+    }
+
+    /**
+     * Writes from many request threads concurrently and checks that every
+     * entry is written once and intact.
+     */
+    @Test
+    public void testConcurrentWriters() throws Exception {
+        final int threads = 8;
+        final int entries = 5000;
+        final String entry = "127.0.0.1 - - [01/Jan/2020:00:00:00 +0000] \"GET /index.html HTTP/1.1\" 200 1234 \"-\" \"load-test\"";
+
+        final File file = new File(dir, "async.log");
+        final RotatingFileRequestLogWriter writer = new RotatingFileRequestLogWriter(file, false, 0, 0, 0, 8192, DropPolicy.BLOCK);
+        writer.start();
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Thread> list = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                    for (int i = 0; i < entries; i++) {
+                        writer.write(entry);
+                    }
+                } catch (InterruptedException | IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            list.add(thread);
+            thread.start();
+        }
+        start.countDown();
+        for (final Thread thread : list) {
+            thread.join(TimeUnit.SECONDS.toMillis(30));
+        }
+        writer.stop();
+
+        final List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        assertEquals(threads * entries, lines.size());
+        for (final String line : lines) {
+            assertEquals(entry, line);
+        }
+        assertEquals(0, writer.getDroppedCount());
+    }
+}
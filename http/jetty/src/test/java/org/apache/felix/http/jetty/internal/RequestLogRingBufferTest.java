@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.felix.http.jetty.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class RequestLogRingBufferTest {
+
+    @Test
+    public void testOfferAndPoll() {
+        final RequestLogRingBuffer buffer = new RequestLogRingBuffer(3);
+        assertEquals(4, buffer.capacity());
+        assertNull(buffer.poll());
+
+        for (int i = 0; i < 4; i++) {
+            assertTrue(buffer.offer("e" + i));
+        }
+        assertFalse(buffer.offer("full"));
+        assertEquals(4, buffer.size());
+
+        assertEquals("e0", buffer.poll());
+        assertTrue(buffer.offer("e4"));
+
+        final String[] batch = new String[10];
+        assertEquals(4, buffer.drainTo(batch));
+        assertEquals("e1", batch[0]);
+        assertEquals("e4", batch[3]);
+        assertNull(buffer.poll());
+        assertEquals(0, buffer.size());
+    }
+
+    @Test
+    public void testConcurrentProducers() throws Exception {
+        final RequestLogRingBuffer buffer = new RequestLogRingBuffer(64);
+        final int producers = 4;
+        final int entries = 10000;
+
+        final List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            final int id = p;
+            final Thread t = new Thread(() -> {
+                for (int i = 0; i < entries; i++) {
+                    while (!buffer.offer(id + ":" + i)) {
+                        Thread.yield();
+                    }
+                }
+            });
+            threads.add(t);
+            t.start();
+        }
+
+        final Set<String> received = new HashSet<>();
+        final int[] next = new int[producers];
+        while (received.size() < producers * entries) {
+            final String entry = buffer.poll();
+            if (entry == null) {
+                Thread.yield();
+                continue;
+            }
+            assertTrue(received.add(entry));
+            // entries of a single producer keep their order
+            final int sep = entry.indexOf(':');
+            final int producer = Integer.parseInt(entry.substring(0, sep));
+            assertEquals(next[producer]++, Integer.parseInt(entry.substring(sep + 1)));
+        }
+        for (final Thread t : threads) {
+            t.join();
+        }
+        assertNull(buffer.poll());
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.http.jetty.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.util.thread.Invocable;
+import org.junit.After;
+import org.junit.Test;
+
+public class VirtualThreadPoolTest {
+
+    private VirtualThreadPool pool;
+
+    @After
+    public void tearDown() throws Exception {
+        if (pool != null) {
+            pool.stop();
+        }
+    }
+
+    private static boolean isVirtual(final Thread thread) throws Exception {
+        final Method isVirtual = Thread.class.getMethod("isVirtual");
+        return (Boolean) isVirtual.invoke(thread);
+    }
+
+    @Test
+    public void testIsSupported() {
+        boolean supported;
+        try {
+            ((ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null)).shutdown();
+            supported = true;
+        } catch (final Exception e) {
+            supported = false;
+        }
+        assertEquals(supported, VirtualThreadPool.isSupported());
+    }
+
+    @Test
+    public void testConfiguration() {
+        final VirtualThreadPool pool = new VirtualThreadPool(42);
+        assertEquals(42, pool.getMaxThreads());
+        assertEquals(0, pool.getReservedThreads());
+        assertEquals("jetty-vt", pool.getName());
+    }
+
+    @Test
+    public void testBlockingJobFromPoolThreadRunsOnVirtualThread() throws Exception {
+        assumeTrue(VirtualThreadPool.isSupported());
+        pool = new VirtualThreadPool(-1);
+        pool.start();
+
+        final CompletableFuture<Thread> outer = new CompletableFuture<>();
+        final CompletableFuture<Thread> inner = new CompletableFuture<>();
+        pool.execute(() -> {
+            outer.complete(Thread.currentThread());
+            pool.execute(() -> inner.complete(Thread.currentThread()));
+        });
+
+        // jobs from foreign threads run on the platform threads of the pool
+        assertFalse(isVirtual(outer.get(5, TimeUnit.SECONDS)));
+        assertTrue(isVirtual(inner.get(5, TimeUnit.SECONDS)));
+    }
+
+    @Test
+    public void testNonBlockingJobFromPoolThreadRunsOnPlatformThread() throws Exception {
+        assumeTrue(VirtualThreadPool.isSupported());
+        pool = new VirtualThreadPool(-1);
+        pool.start();
+
+        final CompletableFuture<Thread> inner = new CompletableFuture<>();
+        pool.execute(() -> pool.execute(new NonBlockingJob(inner)));
+
+        assertFalse(isVirtual(inner.get(5, TimeUnit.SECONDS)));
+    }
+
+    @Test
+    public void testNestedJobOnVirtualThreadRunsOnVirtualThread() throws Exception {
+        assumeTrue(VirtualThreadPool.isSupported());
+        pool = new VirtualThreadPool(-1);
+        pool.start();
+
+        final CompletableFuture<Thread> nested = new CompletableFuture<>();
+        pool.execute(() -> pool.execute(() -> pool.execute(() -> nested.complete(Thread.currentThread()))));
+
+        assertTrue(isVirtual(nested.get(5, TimeUnit.SECONDS)));
+    }
+
+    private static class NonBlockingJob implements Runnable, Invocable {
+
+        private final CompletableFuture<Thread> thread;
+
+        NonBlockingJob(final CompletableFuture<Thread> thread) {
+            this.thread = thread;
+        }
+
+        @Override
+        public void run() {
+            thread.complete(Thread.currentThread());
+        }
+
+        @Override
+        public InvocationType getInvocationType() {
+            return InvocationType.NON_BLOCKING;
+        }
+    }
+}
@@ -59,6 +59,7 @@ public class Connection
     private final int m_requestLimit;
     private final ServiceRegistrationResolver m_resolver;
     private final Logger m_logger;
+    private final ConnectionSelector m_selector;
 
     /**
      * Constructs a connection with a default inactivity timeout and request limit.
@@ -84,10 +85,28 @@ public class Connection
      * @throws java.io.IOException If any I/O error occurs.
      */
     public Connection(final Socket socket, final int timeout, final int requestLimit, final ServiceRegistrationResolver resolver, final Logger logger) throws IOException
+    {
+        this(socket, timeout, requestLimit, resolver, logger, null);
+    }
+
+    /**
+     * Constructs a connection with the specified inactivity timeout and request limit,
+     * which is parked on the connection selector while waiting for the next request.
+     * @param socket The client socket.
+     * @param timeout The inactivity timeout of the connection in milliseconds.
+     * @param requestLimit The maximum number of consecutive requests.
+     * @param resolver resolves a request URI to a client or servlet registration via the HTTP Service.
+     * @param logger logger instance.
+     * @param selector The connection selector or <tt>null</tt>.
+     * @throws java.io.IOException If any I/O error occurs.
+     */
+    Connection(final Socket socket, final int timeout, final int requestLimit, final ServiceRegistrationResolver resolver, final Logger logger,
+        final ConnectionSelector selector) throws IOException
     {
         m_socket = socket;
         m_resolver = resolver;
         m_logger = logger;
+        m_selector = selector;
         m_socket.setSoTimeout(timeout);
         m_socket.setTcpNoDelay(true);
         m_requestLimit = requestLimit;
@@ -143,7 +162,10 @@ public class Connection
      * connection close, the inactivity timeout expires, the maximum request
      * limit was reached, or an I/O error occurred. When this method returns,
      * the associated socket will be closed, regardless of whether or not an
-     * expection was thrown.
+     * expection was thrown. If the connection is served by the connection
+     * selector, this method also returns when no more data is available for
+     * the next request; in that case the connection is parked on the selector
+     * instead of being closed.
      * @throws java.net.SocketTimeoutException If the inactivity timeout expired
      *         while trying to read from the socket.
      * @throws java.io.IOException If any I/O error occurs.
@@ -154,12 +176,26 @@ public class Connection
         HttpServletRequestImpl request = m_resolver.getServletRequest(m_socket);
         HttpServletResponseImpl response = m_resolver.getServletResponse(m_os);
 
+        boolean parked = false;
         try
         {
             // Loop until we close the connection.
             boolean close = false;
+            boolean first = true;
             while (!close)
             {
+                // If there is no data for the next request, then park the
+                // connection on the selector rather than waiting for it with
+                // this thread.
+                if (!first && (m_selector != null) && (m_is.available() == 0))
+                {
+                    m_os.flush();
+                    parked = true;
+                    m_selector.park(this);
+                    return;
+                }
+                first = false;
+
                 // Read the next request.
                 try
                 {
@@ -261,30 +297,50 @@ public class Connection
         }
         finally
         {
-            try
+            if (!parked)
             {
-                m_is.close();
-            }
-            catch (IOException ex)
-            {
-                m_logger.log(Logger.LOG_ERROR, "Error closing socket input stream.", ex);
-            }
-            try
-            {
-                m_os.close();
-            }
-            catch (IOException ex)
-            {
-                m_logger.log(Logger.LOG_ERROR, "Error closing socket output stream.", ex);
-            }
-            try
-            {
-                m_socket.close();
-            }
-            catch (IOException ex)
-            {
-                m_logger.log(Logger.LOG_ERROR, "Error closing socket.", ex);
+                close();
             }
         }
     }
+
+    /**
+     * Returns the client socket of this connection.
+     * @return The client socket.
+    **/
+    Socket getSocket()
+    {
+        return m_socket;
+    }
+
+    /**
+     * Closes the streams and the socket of this connection.
+    **/
+    void close()
+    {
+        try
+        {
+            m_is.close();
+        }
+        catch (IOException ex)
+        {
+            m_logger.log(Logger.LOG_ERROR, "Error closing socket input stream.", ex);
+        }
+        try
+        {
+            m_os.close();
+        }
+        catch (IOException ex)
+        {
+            m_logger.log(Logger.LOG_ERROR, "Error closing socket output stream.", ex);
+        }
+        try
+        {
+            m_socket.close();
+        }
+        catch (IOException ex)
+        {
+            m_logger.log(Logger.LOG_ERROR, "Error closing socket.", ex);
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,406 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.httplite.server;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.felix.httplite.osgi.Logger;
+import org.apache.felix.httplite.osgi.ServiceRegistrationResolver;
+
+/**
+ * This class implements a selector based front end for the web server. It
+ * accepts connections on a non-blocking server socket channel and parks
+ * idle connections on a selector; only connections with data available for
+ * reading are handed to the thread pool. This way idle persistent connections
+ * do not occupy a thread of the pool, so the number of open connections is not
+ * limited by the thread limit. Parked connections are closed after the
+ * connection inactivity timeout.
+**/
+class ConnectionSelector
+{
+    /**
+     * Interval for checking parked connections for inactivity.
+     */
+    private static final int SWEEP_INTERVAL = 1000;
+
+    private final ServerSocketChannel m_serverChannel;
+    private final Selector m_selector;
+    private final ThreadPool m_threadPool;
+    private final int m_connectionTimeout;
+    private final int m_connectionRequestLimit;
+    private final ServiceRegistrationResolver m_resolver;
+    private final Logger m_logger;
+
+    /**
+     * Connections to park on the selector with the next selection.
+     */
+    private final List m_parkList = new ArrayList();
+    /**
+     * Set when the selector is closed; guarded by the park list.
+     */
+    private boolean m_closed = false;
+
+    /**
+     * Constructs a connection selector listening on the specified address.
+     * @param bindAddr The address of the interface to bind to or <tt>null</tt>
+     *        to bind to all interfaces.
+     * @param port The port to listen on.
+     * @param threadPool The thread pool servicing readable connections.
+     * @param connectionTimeout The inactivity timeout of connections in milliseconds.
+     * @param connectionRequestLimit The maximum number of consecutive requests.
+     * @param resolver resolves a request URI to a client or servlet registration via the HTTP Service.
+     * @param logger Logger instance.
+     * @throws java.io.IOException If the server socket could not be opened.
+    **/
+    ConnectionSelector(final InetAddress bindAddr, final int port, final ThreadPool threadPool,
+        final int connectionTimeout, final int connectionRequestLimit,
+        final ServiceRegistrationResolver resolver, final Logger logger) throws IOException
+    {
+        m_threadPool = threadPool;
+        m_connectionTimeout = connectionTimeout;
+        m_connectionRequestLimit = connectionRequestLimit;
+        m_resolver = resolver;
+        m_logger = logger;
+        m_selector = Selector.open();
+        m_serverChannel = ServerSocketChannel.open();
+        try
+        {
+            if (bindAddr == null)
+            {
+                m_serverChannel.socket().bind(new InetSocketAddress(port));
+            }
+            else
+            {
+                m_serverChannel.socket().bind(new InetSocketAddress(bindAddr, port));
+            }
+            m_serverChannel.configureBlocking(false);
+            m_serverChannel.register(m_selector, SelectionKey.OP_ACCEPT);
+        }
+        catch (IOException ex)
+        {
+            closeSelector();
+            throw ex;
+        }
+    }
+
+    /**
+     * Parks a connection waiting for its next request on the selector. This
+     * method is called by threads in the thread pool once the connection has
+     * no more data available. If the selector is already closed, the connection
+     * is closed.
+     * @param connection The connection to park.
+    **/
+    void park(final Connection connection)
+    {
+        synchronized (m_parkList)
+        {
+            if (!m_closed)
+            {
+                m_parkList.add(connection);
+                m_selector.wakeup();
+                return;
+            }
+        }
+        connection.close();
+    }
+
+    /**
+     * Closes the selector, which will cause the selection loop to exit.
+    **/
+    void close()
+    {
+        synchronized (m_parkList)
+        {
+            m_closed = true;
+        }
+        m_selector.wakeup();
+    }
+
+    /**
+     * This method is the selection loop for accepting connections and for
+     * dispatching readable connections to the thread pool. It returns after
+     * the selector has been closed. This is only ever called by the server thread.
+     * @throws java.io.IOException If the selection fails.
+    **/
+    void select() throws IOException
+    {
+        final List readyList = new ArrayList();
+        long lastSweep = System.currentTimeMillis();
+        try
+        {
+            while (!isClosed())
+            {
+                registerParkedConnections();
+
+                m_selector.select(SWEEP_INTERVAL);
+
+                Iterator iter = m_selector.selectedKeys().iterator();
+                while (iter.hasNext())
+                {
+                    SelectionKey key = (SelectionKey) iter.next();
+                    iter.remove();
+                    if (!key.isValid())
+                    {
+                        continue;
+                    }
+                    if (key.isAcceptable())
+                    {
+                        acceptConnections();
+                    }
+                    else if (key.isReadable())
+                    {
+                        key.cancel();
+                        readyList.add(key.attachment());
+                    }
+                }
+
+                if (!readyList.isEmpty())
+                {
+                    // Deregister the cancelled keys, so the channels can be
+                    // switched back to blocking mode for servicing.
+                    m_selector.selectNow();
+                    for (int i = 0; i < readyList.size(); i++)
+                    {
+                        dispatch(((ParkedConnection) readyList.get(i)).m_connection);
+                    }
+                    readyList.clear();
+                }
+
+                long now = System.currentTimeMillis();
+                if ((m_connectionTimeout > 0) && ((now - lastSweep) >= SWEEP_INTERVAL))
+                {
+                    closeInactiveConnections(now);
+                    lastSweep = now;
+                }
+            }
+        }
+        finally
+        {
+            synchronized (m_parkList)
+            {
+                m_closed = true;
+            }
+            closeSelector();
+        }
+    }
+
+    private boolean isClosed()
+    {
+        synchronized (m_parkList)
+        {
+            return m_closed;
+        }
+    }
+
+    /**
+     * Accepts all pending connections and parks them until their first request
+     * arrives.
+    **/
+    private void acceptConnections()
+    {
+        SocketChannel channel;
+        while (true)
+        {
+            try
+            {
+                channel = m_serverChannel.accept();
+            }
+            catch (IOException ex)
+            {
+                m_logger.log(Logger.LOG_ERROR, "Error accepting connection.", ex);
+                return;
+            }
+            if (channel == null)
+            {
+                return;
+            }
+
+            try
+            {
+                // The accepted channel is in blocking mode, so the connection
+                // is set up exactly like a connection from a server socket.
+                Connection connection = new Connection(channel.socket(), m_connectionTimeout,
+                    m_connectionRequestLimit, m_resolver, m_logger, this);
+                m_logger.log(Logger.LOG_DEBUG, "Accepted a new connection.");
+                register(connection);
+            }
+            catch (IOException ex)
+            {
+                // The socket is closed in the connection constructor.
+                m_logger.log(Logger.LOG_ERROR, "Error creating connection.", ex);
+            }
+        }
+    }
+
+    /**
+     * Registers the connections parked by the thread pool threads.
+    **/
+    private void registerParkedConnections()
+    {
+        Object[] connections;
+        synchronized (m_parkList)
+        {
+            if (m_parkList.isEmpty())
+            {
+                return;
+            }
+            connections = m_parkList.toArray();
+            m_parkList.clear();
+        }
+        for (int i = 0; i < connections.length; i++)
+        {
+            register((Connection) connections[i]);
+        }
+    }
+
+    /**
+     * Registers a connection for reading with the selector.
+     * @param connection The connection.
+    **/
+    private void register(final Connection connection)
+    {
+        try
+        {
+            SocketChannel channel = connection.getSocket().getChannel();
+            channel.configureBlocking(false);
+            channel.register(m_selector, SelectionKey.OP_READ, new ParkedConnection(connection));
+        }
+        catch (IOException ex)
+        {
+            m_logger.log(Logger.LOG_DEBUG, "Unable to park connection.", ex);
+            connection.close();
+        }
+    }
+
+    /**
+     * Hands a readable connection to the thread pool.
+     * @param connection The connection.
+    **/
+    private void dispatch(final Connection connection)
+    {
+        try
+        {
+            connection.getSocket().getChannel().configureBlocking(true);
+            m_threadPool.addConnection(connection);
+        }
+        catch (IOException ex)
+        {
+            m_logger.log(Logger.LOG_DEBUG, "Unable to dispatch connection.", ex);
+            connection.close();
+        }
+        catch (IllegalStateException ex)
+        {
+            // The thread pool is stopping.
+            connection.close();
+        }
+    }
+
+    /**
+     * Closes parked connections which have been inactive for longer than the
+     * connection timeout.
+     * @param now The current time.
+    **/
+    private void closeInactiveConnections(final long now)
+    {
+        Iterator iter = m_selector.keys().iterator();
+        while (iter.hasNext())
+        {
+            SelectionKey key = (SelectionKey) iter.next();
+            Object attachment = key.attachment();
+            if (key.isValid() && (attachment instanceof ParkedConnection)
+                && ((now - ((ParkedConnection) attachment).m_parkTime) >= m_connectionTimeout))
+            {
+                key.cancel();
+                m_logger.log(Logger.LOG_INFO, "Connection closed due to inactivity.");
+                ((ParkedConnection) attachment).m_connection.close();
+            }
+        }
+    }
+
+    /**
+     * Closes the server socket, the selector, and all parked connections.
+    **/
+    private void closeSelector()
+    {
+        try
+        {
+            m_serverChannel.close();
+        }
+        catch (IOException ex)
+        {
+            m_logger.log(Logger.LOG_ERROR, "Error closing server socket.", ex);
+        }
+
+        if (m_selector.isOpen())
+        {
+            Iterator iter = m_selector.keys().iterator();
+            while (iter.hasNext())
+            {
+                Object attachment = ((SelectionKey) iter.next()).attachment();
+                if (attachment instanceof ParkedConnection)
+                {
+                    ((ParkedConnection) attachment).m_connection.close();
+                }
+            }
+            try
+            {
+                m_selector.close();
+            }
+            catch (IOException ex)
+            {
+                m_logger.log(Logger.LOG_ERROR, "Error closing selector.", ex);
+            }
+        }
+
+        Object[] connections;
+        synchronized (m_parkList)
+        {
+            connections = m_parkList.toArray();
+            m_parkList.clear();
+        }
+        for (int i = 0; i < connections.length; i++)
+        {
+            ((Connection) connections[i]).close();
+        }
+    }
+
+    /**
+     * A connection parked on the selector together with the time it has been
+     * parked.
+    **/
+    private static class ParkedConnection
+    {
+        private final Connection m_connection;
+        private final long m_parkTime = System.currentTimeMillis();
+
+        ParkedConnection(final Connection connection)
+        {
+            m_connection = connection;
+        }
+    }
+}
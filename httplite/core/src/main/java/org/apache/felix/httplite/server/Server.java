@@ -69,6 +69,11 @@ public class Server
      * The address of the host interface to bind http to. The default is to bind to all interfaces.
      */
     public static final String CONFIG_PROPERTY_HTTP_HOST = "org.apache.felix.http.host"; 
+    /**
+     * Flag to enable the selector based handling of connections. Idle persistent connections
+     * are parked on a selector instead of occupying a thread of the pool. The default is false.
+     */
+    public static final String CONFIG_PROPERTY_HTTP_NIO = "org.apache.felix.http.nio";
 
     /**
      * Default HTTP port to listen on.
@@ -101,10 +106,12 @@ public class Server
 
     private Thread m_serverThread;
     private ServerSocket m_serverSocket;
+    private ConnectionSelector m_connectionSelector;
     private final ThreadPool m_threadPool;
 
     private final int m_connectionTimeout;
     private final int m_connectionRequestLimit;
+    private final boolean m_useSelector;
     private ServiceRegistrationResolver m_resolver;
     private final Logger m_logger;
     
@@ -138,6 +145,10 @@ public class Server
      *       connections after which the connection is closed; the default value
      *       is 10000 milliseconds.
      *   </li>
+     *   <li><tt>org.apache.felix.http.nio</tt> - flag to park idle connections on a selector
+     *       rather than on a thread of the thread pool, so the number of open connections
+     *       is not limited by the thread limit; the default value is false.
+     *   </li>
      * </ul>
      * The configuration properties cannot be changed after construction. The
      * web server is not active until it is started.
@@ -163,6 +174,8 @@ public class Server
             : Integer.parseInt((String) configMap.get(Server.CONFIG_PROPERTY_CONNECTION_TIMEOUT_PROP));
         m_connectionRequestLimit = (configMap.get(Server.CONFIG_PROPERTY_CONNECTION_REQUESTLIMIT_PROP) == null) ? Connection.DEFAULT_CONNECTION_REQUESTLIMIT
             : Integer.parseInt((String) configMap.get(Server.CONFIG_PROPERTY_CONNECTION_REQUESTLIMIT_PROP));
+        m_useSelector = (configMap.get(Server.CONFIG_PROPERTY_HTTP_NIO) == null) ? false
+            : Boolean.valueOf((String) configMap.get(Server.CONFIG_PROPERTY_HTTP_NIO)).booleanValue();
     }
 
     /**
@@ -266,22 +279,38 @@ public class Server
         {
             // If inactive, then create server socket, server thread, and
             // set state to active.
-            if (m_bindAddr == null)
+            if (m_useSelector)
             {
-                m_serverSocket = new ServerSocket(m_port);
+                m_connectionSelector = new ConnectionSelector(m_bindAddr, m_port, m_threadPool,
+                    m_connectionTimeout, m_connectionRequestLimit, m_resolver, m_logger);
+
+                m_serverThread = new Thread(new Runnable()
+                {
+                    public void run()
+                    {
+                        selectConnections();
+                    }
+                }, "HttpServer");
             }
             else
             {
-                m_serverSocket = new ServerSocket(m_port, 0, m_bindAddr);
-            }
-
-            m_serverThread = new Thread(new Runnable()
-            {
-				public void run()
+                if (m_bindAddr == null)
+                {
+                    m_serverSocket = new ServerSocket(m_port);
+                }
+                else
                 {
-                    acceptConnections();
+                    m_serverSocket = new ServerSocket(m_port, 0, m_bindAddr);
                 }
-            }, "HttpServer");
+
+                m_serverThread = new Thread(new Runnable()
+                {
+                    public void run()
+                    {
+                        acceptConnections();
+                    }
+                }, "HttpServer");
+            }
             m_state = ACTIVE_STATE;
             m_serverThread.start();
         }
@@ -326,14 +355,21 @@ public class Server
                 }
                 gate = m_shutdownGate;
 
-                // Close the server socket, which will cause the server thread
-                // to exit its accept() loop.
-                try
+                // Close the server socket or the selector, which will cause
+                // the server thread to exit its accept() or select() loop.
+                if (m_connectionSelector != null)
                 {
-                    m_serverSocket.close();
+                    m_connectionSelector.close();
                 }
-                catch (IOException ex)
+                else
                 {
+                    try
+                    {
+                        m_serverSocket.close();
+                    }
+                    catch (IOException ex)
+                    {
+                    }
                 }
             }
         }
@@ -397,6 +433,35 @@ public class Server
         shutdown();
     }
 
+    /**
+     * This method is the main server loop when connections are handled by
+     * the connection selector. This is only ever called by the server thread.
+    **/
+    private void selectConnections()
+    {
+        // Start the thread pool.
+        m_threadPool.start();
+
+        m_logger.log(Logger.LOG_DEBUG, "Waiting for connections.");
+
+        // Accept and dispatch connections until the selector is closed.
+        try
+        {
+            m_connectionSelector.select();
+        }
+        catch (IOException ex)
+        {
+            if (!m_stopping)
+            {
+                m_logger.log(Logger.LOG_ERROR,
+                    "The call to select() terminated with an exception.", ex);
+            }
+        }
+
+        // Shutdown the server.
+        shutdown();
+    }
+
     /**
      * This method shuts down the server; it is only ever called by the
      * server thread.
@@ -427,6 +492,7 @@ public class Server
             // gate and set the state to inactive.
             m_shutdownGate.open();
             m_shutdownGate = null;
+            m_connectionSelector = null;
             m_state = INACTIVE_STATE;
         }
         m_logger.log(Logger.LOG_DEBUG, "Shutdown complete.");
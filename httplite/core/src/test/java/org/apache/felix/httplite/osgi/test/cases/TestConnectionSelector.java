@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.httplite.osgi.test.cases;
+
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.Socket;
+
+import javax.servlet.ServletException;
+
+import org.apache.felix.httplite.osgi.test.AbstractHttpliteTestCase;
+import org.apache.felix.httplite.osgi.test.BasicTestingServlet;
+import org.apache.felix.httplite.server.Server;
+import org.osgi.service.http.HttpService;
+import org.osgi.service.http.NamespaceException;
+
+
+/**
+ * Tests for the selector based connection handling.  The thread pool is limited
+ * to two threads, while far more connections are kept open.
+ *
+ */
+public class TestConnectionSelector extends AbstractHttpliteTestCase
+{
+
+    private static final int THREAD_LIMIT = 2;
+    private static final int CONNECTION_COUNT = 200;
+
+
+    protected void setUp() throws Exception
+    {
+        System.setProperty( Server.CONFIG_PROPERTY_HTTP_NIO, "true" );
+        System.setProperty( Server.CONFIG_PROPERTY_THREADPOOL_LIMIT_PROP, Integer.toString( THREAD_LIMIT ) );
+        super.setUp();
+    }
+
+
+    protected void tearDown() throws Exception
+    {
+        super.tearDown();
+        System.clearProperty( Server.CONFIG_PROPERTY_HTTP_NIO );
+        System.clearProperty( Server.CONFIG_PROPERTY_THREADPOOL_LIMIT_PROP );
+    }
+
+
+    /**
+     * Opens far more idle connections than there are threads and verifies that
+     * requests are still served and that every idle connection is served once
+     * it sends its request.
+     * 
+     * @throws ServletException
+     * @throws NamespaceException
+     * @throws IOException
+     */
+    public void testIdleConnectionsAboveThreadLimit() throws ServletException, NamespaceException, IOException
+    {
+        HttpService httpService = getHTTPService( registry.getBundleContext() );
+
+        BasicTestingServlet testServlet = new BasicTestingServlet();
+        httpService.registerServlet( "/test", testServlet, null, null );
+
+        Socket[] sockets = new Socket[CONNECTION_COUNT];
+        try
+        {
+            for ( int i = 0; i < sockets.length; ++i )
+            {
+                sockets[i] = new Socket( "localhost", DEFAULT_PORT );
+                sockets[i].setSoTimeout( 5000 );
+            }
+
+            // the idle connections do not occupy the threads of the pool
+            HttpURLConnection client = getConnection( DEFAULT_BASE_URL + "/test", "GET" );
+            client.setReadTimeout( 5000 );
+            client.connect();
+            assertEquals( 200, client.getResponseCode() );
+
+            for ( int i = 0; i < sockets.length; ++i )
+            {
+                OutputStream out = sockets[i].getOutputStream();
+                out.write( "GET /test HTTP/1.0\r\n\r\n".getBytes() );
+                out.flush();
+            }
+            for ( int i = 0; i < sockets.length; ++i )
+            {
+                BufferedReader in = new BufferedReader( new InputStreamReader( sockets[i].getInputStream() ) );
+                String statusLine = in.readLine();
+                assertNotNull( statusLine );
+                assertTrue( statusLine, statusLine.indexOf( " 200 " ) > 0 );
+            }
+            assertTrue( testServlet.isGetCalled() );
+        }
+        finally
+        {
+            for ( int i = 0; i < sockets.length; ++i )
+            {
+                if ( sockets[i] != null )
+                {
+                    sockets[i].close();
+                }
+            }
+        }
+    }
+}
@@ -18,7 +18,10 @@
  */
 package org.apache.felix.log;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Enumeration;
+import java.util.concurrent.ConcurrentLinkedDeque;
 
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleEvent;
@@ -41,16 +44,12 @@ import org.osgi.service.log.LogListener;
  */
 final class Log implements BundleListener, FrameworkListener, ServiceListener
 {
-    /** The first log entry. */
-    private LogNode m_head;
-    /** The last log entry. */
-    private LogNode m_tail;
-    /** The log size. */
-    private int m_size;
+    /** The most recent log entries, null if the log is not bounded. */
+    private final LogRingBuffer m_history;
+    /** The log entries if the log is not bounded, most recent first. */
+    private final ConcurrentLinkedDeque<LogEntry> m_unboundedHistory;
     /** The log listener thread. */
-    private LogListenerThread listenerThread;
-    /** The maximum size for the log. */
-    private final int m_maxSize;
+    private volatile LogListenerThread listenerThread;
     /** Whether or not to store debug messages. */
     private final boolean m_storeDebug;
 
@@ -61,14 +60,15 @@ final class Log implements BundleListener, FrameworkListener, ServiceListener
      */
     Log(final int maxSize, final boolean storeDebug)
     {
-        this.m_maxSize = maxSize;
+        this.m_history = maxSize > 0 ? new LogRingBuffer(maxSize) : null;
+        this.m_unboundedHistory = maxSize < 0 ? new ConcurrentLinkedDeque<LogEntry>() : null;
         this.m_storeDebug = storeDebug;
     }
 
     /**
      * Close the log.
      */
-    void close()
+    synchronized void close()
     {
         if (listenerThread != null)
         {
@@ -76,9 +76,14 @@ final class Log implements BundleListener, FrameworkListener, ServiceListener
             listenerThread = null;
         }
 
-        m_head = null;
-        m_tail = null;
-        m_size = 0;
+        if (m_history != null)
+        {
+            m_history.clear();
+        }
+        if (m_unboundedHistory != null)
+        {
+            m_unboundedHistory.clear();
+        }
     }
 
     void log(
@@ -89,57 +94,63 @@ final class Log implements BundleListener, FrameworkListener, ServiceListener
         final String message,
         final Throwable exception) {
 
+        if (!isLogged(level)) {
+            return;
+        }
         addEntry(new LogEntryImpl(name, bundle, sr, level, message, exception, getStackTraceElement()));
     }
 
+    void log(
+        final String name,
+        final Bundle bundle,
+        final LogLevel level,
+        final LoggerImpl formatter,
+        final String format,
+        final LoggerImpl.LogParameters parameters) {
+
+        if (!isLogged(level)) {
+            return;
+        }
+        addEntry(new LogEntryImpl(name, bundle, level, formatter, format, parameters, getStackTraceElement()));
+    }
+
+    /**
+     * Whether an entry of the given level would be stored or delivered to any listener.
+     * @param level the level of the entry
+     * @return <code>false</code> if the entry would be dropped
+     */
+    boolean isLogged(final LogLevel level)
+    {
+        if (listenerThread != null)
+        {
+            return true;
+        }
+        return (m_history != null || m_unboundedHistory != null)
+            && (m_storeDebug || level != LogLevel.DEBUG);
+    }
+
     /**
-     * Adds the entry to the log.
+     * Adds the entry to the log.  This method does not lock, so that
+     * concurrent logging threads do not contend with each other.
      * @param entry the entry to add to the log
      */
-    synchronized void addEntry(final LogEntry entry)
+    void addEntry(final LogEntry entry)
     {
-        if (m_maxSize != 0)
+        // add the entry to the historic log
+        if (m_storeDebug || entry.getLogLevel() != LogLevel.DEBUG)
         {
-            // add the entry to the historic log
-            if (m_storeDebug || entry.getLogLevel() != LogLevel.DEBUG)
+            if (m_history != null)
             {
-                // create a new node for the entry
-                LogNode node = new LogNode(entry);
-
-                // add to the front of the linked list
-                node.setNextNode(m_head);
-                if (m_head != null)
-                {
-                    m_head.setPreviousNode(node);
-                }
-
-                // and store the node
-                m_head = node;
-
-                // bump the size of the list
-                ++m_size;
-
-                // if no tail node - add the node to the tail
-                if (m_tail == null)
-                {
-                    m_tail = node;
-                }
+                m_history.add(entry);
             }
-
-            // ensure the historic log doesn't grow beyond a certain size
-            if (m_maxSize != -1)
+            else if (m_unboundedHistory != null)
             {
-                if (m_size > m_maxSize)
-                {
-                    LogNode last = m_tail.getPreviousNode();
-                    last.setNextNode(null);
-                    m_tail = last;
-                    --m_size;
-                }
+                m_unboundedHistory.addFirst(entry);
             }
         }
 
         // notify any listeners
+        final LogListenerThread listenerThread = this.listenerThread;
         if (listenerThread != null)
         {
             listenerThread.addEntry(entry);
@@ -185,9 +196,17 @@ final class Log implements BundleListener, FrameworkListener, ServiceListener
      * Returns an enumeration of all the entries in the log most recent first.
      * @return an enumeration of all the entries in the log most recent first
      */
-    synchronized Enumeration<LogEntry> getEntries()
+    Enumeration<LogEntry> getEntries()
     {
-        return new LogNodeEnumeration(m_head, m_tail);
+        if (m_history != null)
+        {
+            return m_history.entries();
+        }
+        if (m_unboundedHistory != null)
+        {
+            return Collections.enumeration(new ArrayList<>(m_unboundedHistory));
+        }
+        return Collections.emptyEnumeration();
     }
 
     /** The messages returned for the framework events. */
@@ -56,7 +56,13 @@ final class LogEntryImpl implements LogEntry
     private final LogLevel m_level;
     private final int m_legacyLevel;
     /** The message associated with this LogEntry object. */
-    private final String m_message;
+    private volatile String m_message;
+    /** The logger formatting the message on first access, if not formatted yet. */
+    private LoggerImpl m_formatter;
+    /** The format of the message, if not formatted yet. */
+    private String m_format;
+    /** The arguments of the message, if not formatted yet. */
+    private LoggerImpl.LogParameters m_parameters;
     /** The service reference associated with this LogEntry object. */
     private final ServiceReference<?> m_serviceReference;
     /** The system time in milliseconds when this LogEntry object was created. */
@@ -101,6 +107,30 @@ final class LogEntryImpl implements LogEntry
         this.m_stackTraceElement = stackTraceElement;
     }
 
+    /**
+     * Create a new instance whose message is only formatted when first read.
+     * @param name the name of the logger used to create the LogEntry
+     * @param bundle the bundle that created the LogEntry object
+     * @param level the severity level for this LogEntry object
+     * @param formatter the logger formatting the message
+     * @param format the format of the message
+     * @param parameters the arguments, service reference and exception of the message
+     */
+    LogEntryImpl(
+        final String name,
+        final Bundle bundle,
+        final LogLevel level,
+        final LoggerImpl formatter,
+        final String format,
+        final LoggerImpl.LogParameters parameters,
+        final StackTraceElement stackTraceElement)
+    {
+        this(name, bundle, parameters.sr, level, null, parameters.t, stackTraceElement);
+        this.m_formatter = formatter;
+        this.m_format = format;
+        this.m_parameters = parameters;
+    }
+
     @SuppressWarnings("deprecation")
     LogEntryImpl(
         final String name,
@@ -182,11 +212,36 @@ final class LogEntryImpl implements LogEntry
 
     /**
      * Returns the human readable message associated with this LogEntry object.
+     * If formatting the message fails, the message is the unformatted format
+     * followed by the error.
      * @return a string containing the message associated with this LogEntry object
      */
     public String getMessage()
     {
-        return m_message;
+        String message = m_message;
+        if (message == null)
+        {
+            synchronized (this)
+            {
+                if (m_message == null && m_formatter != null)
+                {
+                    try
+                    {
+                        m_message = m_formatter.format(m_format, m_parameters);
+                    }
+                    catch (RuntimeException e)
+                    {
+                        // the entry is formatted long after it was logged, do not fail every reader
+                        m_message = m_format + " (" + e + ")";
+                    }
+                    m_formatter = null;
+                    m_format = null;
+                    m_parameters = null;
+                }
+                message = m_message;
+            }
+        }
+        return message;
     }
 
     /**
@@ -249,7 +304,7 @@ final class LogEntryImpl implements LogEntry
             _toString = m_time + "#" + m_sequence + " [" + m_threadInfo + "] " + m_level +
                 " (" + m_legacyLevel + ") [" + m_bundle.getBundleId() + ":" + m_name + "] " +
                     m_stackTraceElement.getClassName() + ":" +
-                    m_stackTraceElement.getLineNumber() + " > " + m_message +
+                    m_stackTraceElement.getLineNumber() + " > " + getMessage() +
                         (m_exception != null ? "\n" + exceptionString(m_exception) : "");
         }
         return _toString;
@@ -19,8 +19,11 @@
 package org.apache.felix.log;
 
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.LockSupport;
 
 import org.osgi.service.log.LogEntry;
 import org.osgi.service.log.LogListener;
@@ -30,13 +33,21 @@ import org.osgi.service.log.LogListener;
  * any {@link LogListener} subscribers.  A subscriber can be added using the
  * {@link org.osgi.service.log.LogReaderService#addLogListener(LogListener)}
  * method.
+ * <p>
+ * Logging threads hand over entries through a lock-free queue, and the
+ * thread delivers all the entries queued so far to each listener in turn.
+ * The batching only saves waking up the thread per entry: as required by the
+ * {@link LogListener} API each listener is still called once per entry.
  */
 final class LogListenerThread extends Thread
 {
-    // The list of entries waiting to be delivered to the log listeners.
-    private final List<LogEntry> m_entriesToDeliver = new ArrayList<>();
+    // The maximum number of entries delivered in one batch.
+    private static final int MAX_BATCH_SIZE = 1024;
+
+    // The queue of entries waiting to be delivered to the log listeners.
+    private final Queue<LogEntry> m_entriesToDeliver = new ConcurrentLinkedQueue<>();
     // The list of listeners.
-    private final List<LogListener> m_listeners = new ArrayList<>();
+    private final List<LogListener> m_listeners = new CopyOnWriteArrayList<>();
 
     LogListenerThread() {
         super("FelixLogListener");
@@ -48,11 +59,8 @@ final class LogListenerThread extends Thread
      */
     void addEntry(final LogEntry entry)
     {
-        synchronized (m_entriesToDeliver)
-        {
-            m_entriesToDeliver.add(entry);
-            m_entriesToDeliver.notifyAll();
-        }
+        m_entriesToDeliver.offer(entry);
+        LockSupport.unpark(this);
     }
 
     /**
@@ -61,10 +69,7 @@ final class LogListenerThread extends Thread
      */
     void addListener(final LogListener listener)
     {
-        synchronized (m_listeners)
-        {
-            m_listeners.add(listener);
-        }
+        m_listeners.add(listener);
     }
 
     /**
@@ -73,10 +78,7 @@ final class LogListenerThread extends Thread
      */
     void removeListener(final LogListener listener)
     {
-        synchronized (m_listeners)
-        {
-            m_listeners.remove(listener);
-        }
+        m_listeners.remove(listener);
     }
 
     /**
@@ -85,10 +87,7 @@ final class LogListenerThread extends Thread
      */
     int getListenerCount()
     {
-        synchronized (m_listeners)
-        {
-            return m_listeners.size();
-        }
+        return m_listeners.size();
     }
 
     /**
@@ -96,10 +95,7 @@ final class LogListenerThread extends Thread
      */
     void shutdown()
     {
-        synchronized (m_entriesToDeliver)
-        {
-            interrupt();
-        }
+        interrupt();
     }
 
     /**
@@ -108,64 +104,40 @@ final class LogListenerThread extends Thread
      */
     public void run()
     {
+        final List<LogEntry> entriesToDeliver = new ArrayList<>();
         while (!isInterrupted())
         {
-            List<LogEntry> entriesToDeliver = new ArrayList<>();
-            synchronized (m_entriesToDeliver)
+            LogEntry entry;
+            while (entriesToDeliver.size() < MAX_BATCH_SIZE && (entry = m_entriesToDeliver.poll()) != null)
             {
-                if (m_entriesToDeliver.isEmpty())
-                {
-                    try
-                    {
-                        m_entriesToDeliver.wait();
-                    }
-                    catch (InterruptedException e)
-                    {
-                        // the interrupt-flag is cleared; so, let's play nice and
-                        // interrupt this thread again to stop it...
-                        interrupt();
-                    }
-                }
-                else
-                {
-                    // Copy all current entries and deliver them in a single go...
-                    entriesToDeliver.addAll(m_entriesToDeliver);
-                    m_entriesToDeliver.clear();
-                }
+                entriesToDeliver.add(entry);
             }
 
-            if (!entriesToDeliver.isEmpty())
+            if (entriesToDeliver.isEmpty())
             {
-                // Take a snapshot of all current listeners and deliver all
-                // pending messages to them...
-                List<LogListener> listeners = new ArrayList<>();
-                synchronized (m_listeners)
-                {
-                    listeners.addAll(m_listeners);
-                }
+                // woken up by addEntry() or shutdown()
+                LockSupport.park(this);
+                continue;
+            }
 
-                Iterator<LogEntry> entriesIt = entriesToDeliver.iterator();
-                while (entriesIt.hasNext())
+            // Deliver the whole batch to each listener in turn, the list of
+            // listeners iterates over a snapshot of the current listeners
+            for (LogListener listener : m_listeners)
+            {
+                for (LogEntry e : entriesToDeliver)
                 {
-                    LogEntry entry = entriesIt.next();
-
-                    Iterator<LogListener> listenerIt = listeners.iterator();
-                    while (listenerIt.hasNext())
+                    try
                     {
-                        LogListener listener = listenerIt.next();
-
-                        try
-                        {
-                            listener.logged(entry);
-                        }
-                        catch (Throwable t)
-                        {
-                            System.err.println("Logger failed to log with " + t.getMessage());
-                            t.printStackTrace(System.err);
-                        }
+                        listener.logged(e);
+                    }
+                    catch (Throwable t)
+                    {
+                        System.err.println("Logger failed to log with " + t.getMessage());
+                        t.printStackTrace(System.err);
                     }
                 }
             }
+            entriesToDeliver.clear();
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,164 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.osgi.service.log.LogEntry;
+
+/**
+ * Fixed size history of the most recent log entries.  Entries can be added
+ * concurrently by any number of threads without locking: each entry claims
+ * the next sequence number and is stored in the slot this sequence maps to,
+ * overwriting the oldest entry once the buffer is full.  The slots are
+ * allocated by segments as entries get added, so a large history does not
+ * take any memory until it is actually filled.
+ */
+final class LogRingBuffer
+{
+    /** The largest number of slots. */
+    private static final int MAX_CAPACITY = 1 << 30;
+    /** The number of slots of a segment, as a power of two. */
+    private static final int SEGMENT_SHIFT = 14;
+
+    /** The segments of slots, allocated on first use. */
+    private final AtomicReferenceArray<AtomicReferenceArray<Slot>> m_segments;
+    /** The number of slots of each segment, as a power of two. */
+    private final int m_segmentShift;
+    /** The mask mapping a sequence to its slot. */
+    private final int m_mask;
+    /** The number of entries kept. */
+    private final int m_size;
+    /** The sequence of the next entry. */
+    private final AtomicLong m_sequence = new AtomicLong();
+
+    /**
+     * Create a new instance.
+     * @param size the number of entries to keep
+     */
+    LogRingBuffer(final int size)
+    {
+        int capacity = size <= 1 ? 1 : Integer.highestOneBit(Math.min(size, MAX_CAPACITY) - 1) << 1;
+        m_segmentShift = Math.min(SEGMENT_SHIFT, Integer.numberOfTrailingZeros(capacity));
+        m_segments = new AtomicReferenceArray<>(capacity >>> m_segmentShift);
+        m_mask = capacity - 1;
+        m_size = Math.min(size, capacity);
+    }
+
+    /**
+     * Adds an entry, overwriting the oldest one if the buffer is full.
+     * @param entry the entry to add
+     */
+    void add(final LogEntry entry)
+    {
+        final long sequence = m_sequence.getAndIncrement();
+        final int index = (int) (sequence & m_mask);
+        final AtomicReferenceArray<Slot> slots = segment(index);
+        final int offset = offset(index);
+        final Slot slot = new Slot(sequence, entry);
+        Slot current;
+        do
+        {
+            current = slots.get(offset);
+            if (current != null && current.m_sequence > sequence)
+            {
+                // a more recent entry already took this slot
+                return;
+            }
+        }
+        while (!slots.compareAndSet(offset, current, slot));
+    }
+
+    /**
+     * Returns a snapshot of the entries, most recent first.  Entries which
+     * are still being added by another thread are not included.
+     * @return an enumeration of the entries, most recent first
+     */
+    Enumeration<LogEntry> entries()
+    {
+        final long end = m_sequence.get();
+        final long start = Math.max(0, end - m_size);
+        final List<LogEntry> entries = new ArrayList<>((int) Math.min(end - start, 1 << SEGMENT_SHIFT));
+        for (long sequence = end - 1; sequence >= start; --sequence)
+        {
+            final int index = (int) (sequence & m_mask);
+            final AtomicReferenceArray<Slot> slots = m_segments.get(index >>> m_segmentShift);
+            final Slot slot = slots == null ? null : slots.get(offset(index));
+            if (slot != null && slot.m_sequence == sequence)
+            {
+                entries.add(slot.m_entry);
+            }
+        }
+        return Collections.enumeration(entries);
+    }
+
+    /**
+     * Removes all the entries.
+     */
+    void clear()
+    {
+        for (int i = 0; i < m_segments.length(); i++)
+        {
+            m_segments.set(i, null);
+        }
+    }
+
+    /**
+     * Returns the segment holding the given slot, allocating it if needed.
+     */
+    private AtomicReferenceArray<Slot> segment(final int index)
+    {
+        final int segment = index >>> m_segmentShift;
+        AtomicReferenceArray<Slot> slots = m_segments.get(segment);
+        while (slots == null)
+        {
+            m_segments.compareAndSet(segment, null, new AtomicReferenceArray<Slot>(1 << m_segmentShift));
+            slots = m_segments.get(segment);
+        }
+        return slots;
+    }
+
+    /**
+     * Returns the position of the given slot in its segment.
+     */
+    private int offset(final int index)
+    {
+        return index & ((1 << m_segmentShift) - 1);
+    }
+
+    /**
+     * An entry together with the sequence it was stored with.
+     */
+    private static final class Slot
+    {
+        final long m_sequence;
+        final LogEntry m_entry;
+
+        Slot(final long sequence, final LogEntry entry)
+        {
+            m_sequence = sequence;
+            m_entry = entry;
+        }
+    }
+}
@@ -23,6 +23,7 @@ import java.util.Dictionary;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.osgi.framework.Bundle;
 import org.osgi.service.log.FormatterLogger;
@@ -36,6 +37,8 @@ public class LoggerAdminImpl implements LoggerAdmin {
     private final LoggerContext m_rootContext;
     private final ConcurrentMap<String, LoggerContext> m_contexts = new ConcurrentHashMap<>();
     private final ConcurrentMap<LoggerKey, Logger> _loggers = new ConcurrentHashMap<>();
+    // incremented whenever log levels change, so that loggers resolve their level again
+    private final AtomicLong m_generation = new AtomicLong();
 
     public LoggerAdminImpl(final String defaultLogLevelString, final Log log) {
         m_rootContext = new RootLoggerContextImpl(defaultLogLevelString, this);
@@ -74,8 +77,19 @@ public class LoggerAdminImpl implements LoggerAdmin {
     }
 
     public void keepLoggerContext(String name, LoggerContextImpl loggerContext) {
-        if (loggerContext instanceof RootLoggerContextImpl) return;
-        m_contexts.put(name, loggerContext);
+        // the context must be visible before loggers resolve their level again
+        if (!(loggerContext instanceof RootLoggerContextImpl)) {
+            m_contexts.put(name, loggerContext);
+        }
+        levelsChanged();
+    }
+
+    long getGeneration() {
+        return m_generation.get();
+    }
+
+    void levelsChanged() {
+        m_generation.incrementAndGet();
     }
 
     @SuppressWarnings("unchecked")
@@ -102,6 +102,7 @@ public class LoggerContextImpl implements LoggerContext {
         _lock.lock();
         try {
             _levels = null;
+            _loggerAdminImpl.levelsChanged();
         }
         finally {
             _lock.unlock();
@@ -39,6 +39,9 @@ public class LoggerImpl implements Logger {
     protected final Log m_log;
     protected final LoggerAdminImpl m_loggerAdmin;
 
+    // the effective level, resolved again once the logger configuration changed
+    private volatile EffectiveLevel m_effectiveLevel;
+
     public LoggerImpl(final String name, final Bundle bundle, final Log log, final LoggerAdminImpl loggerAdmin) {
         m_name = name;
         m_bundle = bundle;
@@ -51,9 +54,20 @@ public class LoggerImpl implements Logger {
         return m_name;
     }
 
+    LogLevel getEffectiveLogLevel() {
+        EffectiveLevel effectiveLevel = m_effectiveLevel;
+        long generation = m_loggerAdmin.getGeneration();
+        if (effectiveLevel == null || effectiveLevel.generation != generation) {
+            effectiveLevel = new EffectiveLevel(
+                generation, m_loggerAdmin.getLoggerContext(m_bundle, m_name).getEffectiveLogLevel(m_name));
+            m_effectiveLevel = effectiveLevel;
+        }
+        return effectiveLevel.level;
+    }
+
     @Override
     public boolean isTraceEnabled() {
-        return m_loggerAdmin.getLoggerContext(m_bundle, m_name).getEffectiveLogLevel(m_name).implies(LogLevel.TRACE);
+        return getEffectiveLogLevel().implies(LogLevel.TRACE);
     }
 
     void trace(String message, ServiceReference<?> serviceReference, Throwable t) {
@@ -68,20 +82,20 @@ public class LoggerImpl implements Logger {
 
     @Override
     public void trace(String format, Object arg) {
-        LogParameters logParameters = getLogParameters(arg);
-        trace(format(format, logParameters), logParameters.sr, logParameters.t);
+        if (!isTraceEnabled()) return;
+        log(LogLevel.TRACE, format, getLogParameters(arg));
     }
 
     @Override
     public void trace(String format, Object arg1, Object arg2) {
-        LogParameters logParameters = getLogParameters(arg1, arg2);
-        trace(format(format, logParameters), logParameters.sr, logParameters.t);
+        if (!isTraceEnabled()) return;
+        log(LogLevel.TRACE, format, getLogParameters(arg1, arg2));
     }
 
     @Override
     public void trace(String format, Object... arguments) {
-        LogParameters logParameters = getLogParameters(arguments);
-        trace(format(format, logParameters), logParameters.sr, logParameters.t);
+        if (!isTraceEnabled()) return;
+        log(LogLevel.TRACE, format, getLogParameters(arguments));
     }
 
     @Override
@@ -93,7 +107,7 @@ public class LoggerImpl implements Logger {
 
     @Override
     public boolean isDebugEnabled() {
-        return m_loggerAdmin.getLoggerContext(m_bundle, m_name).getEffectiveLogLevel(m_name).implies(LogLevel.DEBUG);
+        return getEffectiveLogLevel().implies(LogLevel.DEBUG);
     }
 
     void debug(String message, ServiceReference<?> serviceReference, Throwable t) {
@@ -108,20 +122,20 @@ public class LoggerImpl implements Logger {
 
     @Override
     public void debug(String format, Object arg) {
-        LogParameters logParameters = getLogParameters(arg);
-        debug(format(format, logParameters), logParameters.sr, logParameters.t);
+        if (!isDebugEnabled()) return;
+        log(LogLevel.DEBUG, format, getLogParameters(arg));
     }
 
     @Override
     public void debug(String format, Object arg1, Object arg2) {
-        LogParameters logParameters = getLogParameters(arg1, arg2);
-        debug(format(format, logParameters), logParameters.sr, logParameters.t);
+        if (!isDebugEnabled()) return;
+        log(LogLevel.DEBUG, format, getLogParameters(arg1, arg2));
     }
 
     @Override
     public void debug(String format, Object... arguments) {
-        LogParameters logParameters = getLogParameters(arguments);
-        debug(format(format, logParameters), logParameters.sr, logParameters.t);
+        if (!isDebugEnabled()) return;
+        log(LogLevel.DEBUG, format, getLogParameters(arguments));
     }
 
     @Override
@@ -133,7 +147,7 @@ public class LoggerImpl implements Logger {
 
     @Override
     public boolean isInfoEnabled() {
-        return m_loggerAdmin.getLoggerContext(m_bundle, m_name).getEffectiveLogLevel(m_name).implies(LogLevel.INFO);
+        return getEffectiveLogLevel().implies(LogLevel.INFO);
     }
 
     void info(String message, ServiceReference<?> serviceReference, Throwable t) {
@@ -148,20 +162,20 @@ public class LoggerImpl implements Logger {
 
     @Override
     public void info(String format, Object arg) {
-        LogParameters logParameters = getLogParameters(arg);
-        info(format(format, logParameters), logParameters.sr, logParameters.t);
+        if (!isInfoEnabled()) return;
+        log(LogLevel.INFO, format, getLogParameters(arg));
     }
 
     @Override
     public void info(String format, Object arg1, Object arg2) {
-        LogParameters logParameters = getLogParameters(arg1, arg2);
-        info(format(format, logParameters), logParameters.sr, logParameters.t);
+        if (!isInfoEnabled()) return;
+        log(LogLevel.INFO, format, getLogParameters(arg1, arg2));
     }
 
     @Override
     public void info(String format, Object... arguments) {
-        LogParameters logParameters = getLogParameters(arguments);
-        info(format(format, logParameters), logParameters.sr, logParameters.t);
+        if (!isInfoEnabled()) return;
+        log(LogLevel.INFO, format, getLogParameters(arguments));
     }
 
     @Override
@@ -173,7 +187,7 @@ public class LoggerImpl implements Logger {
 
     @Override
     public boolean isWarnEnabled() {
-        return m_loggerAdmin.getLoggerContext(m_bundle, m_name).getEffectiveLogLevel(m_name).implies(LogLevel.WARN);
+        return getEffectiveLogLevel().implies(LogLevel.WARN);
     }
 
     void warn(String message, ServiceReference<?> serviceReference, Throwable t) {
@@ -188,20 +202,20 @@ public class LoggerImpl implements Logger {
 
     @Override
     public void warn(String format, Object arg) {
-        LogParameters logParameters = getLogParameters(arg);
-        warn(format(format, logParameters), logParameters.sr, logParameters.t);
+        if (!isWarnEnabled()) return;
+        log(LogLevel.WARN, format, getLogParameters(arg));
     }
 
     @Override
     public void warn(String format, Object arg1, Object arg2) {
-        LogParameters logParameters = getLogParameters(arg1, arg2);
-        warn(format(format, logParameters), logParameters.sr, logParameters.t);
+        if (!isWarnEnabled()) return;
+        log(LogLevel.WARN, format, getLogParameters(arg1, arg2));
     }
 
     @Override
     public void warn(String format, Object... arguments) {
-        LogParameters logParameters = getLogParameters(arguments);
-        warn(format(format, logParameters), logParameters.sr, logParameters.t);
+        if (!isWarnEnabled()) return;
+        log(LogLevel.WARN, format, getLogParameters(arguments));
     }
 
     @Override
@@ -213,7 +227,7 @@ public class LoggerImpl implements Logger {
 
     @Override
     public boolean isErrorEnabled() {
-        return m_loggerAdmin.getLoggerContext(m_bundle, m_name).getEffectiveLogLevel(m_name).implies(LogLevel.ERROR);
+        return getEffectiveLogLevel().implies(LogLevel.ERROR);
     }
 
     void error(String message, ServiceReference<?> serviceReference, Throwable t) {
@@ -228,20 +242,20 @@ public class LoggerImpl implements Logger {
 
     @Override
     public void error(String format, Object arg) {
-        LogParameters logParameters = getLogParameters(arg);
-        error(format(format, logParameters), logParameters.sr, logParameters.t);
+        if (!isErrorEnabled()) return;
+        log(LogLevel.ERROR, format, getLogParameters(arg));
     }
 
     @Override
     public void error(String format, Object arg1, Object arg2) {
-        LogParameters logParameters = getLogParameters(arg1, arg2);
-        error(format(format, logParameters), logParameters.sr, logParameters.t);
+        if (!isErrorEnabled()) return;
+        log(LogLevel.ERROR, format, getLogParameters(arg1, arg2));
     }
 
     @Override
     public void error(String format, Object... arguments) {
-        LogParameters logParameters = getLogParameters(arguments);
-        error(format(format, logParameters), logParameters.sr, logParameters.t);
+        if (!isErrorEnabled()) return;
+        log(LogLevel.ERROR, format, getLogParameters(arguments));
     }
 
     @Override
@@ -262,20 +276,24 @@ public class LoggerImpl implements Logger {
 
     @Override
     public void audit(String format, Object arg) {
-        LogParameters logParameters = getLogParameters(arg);
-        audit(format(format, logParameters), logParameters.sr, logParameters.t);
+        log(LogLevel.AUDIT, format, getLogParameters(arg));
     }
 
     @Override
     public void audit(String format, Object arg1, Object arg2) {
-        LogParameters logParameters = getLogParameters(arg1, arg2);
-        audit(format(format, logParameters), logParameters.sr, logParameters.t);
+        log(LogLevel.AUDIT, format, getLogParameters(arg1, arg2));
     }
 
     @Override
     public void audit(String format, Object... arguments) {
-        LogParameters logParameters = getLogParameters(arguments);
-        audit(format(format, logParameters), logParameters.sr, logParameters.t);
+        log(LogLevel.AUDIT, format, getLogParameters(arguments));
+    }
+
+    /**
+     * Log a message whose formatting is deferred until it is first read.
+     */
+    void log(LogLevel level, String format, LogParameters logParameters) {
+        m_log.log(m_name, m_bundle, level, this, format, logParameters);
     }
 
     public void log(
@@ -366,6 +384,15 @@ public class LoggerImpl implements Logger {
         return sb.toString();
     }
 
+    static class EffectiveLevel {
+        EffectiveLevel(long generation, LogLevel level) {
+            this.generation = generation;
+            this.level = level;
+        }
+        final long generation;
+        final LogLevel level;
+    }
+
     static class LogParameters {
         public LogParameters(Object[] args, ServiceReference<?> sr, Throwable t) {
             this.args = args;
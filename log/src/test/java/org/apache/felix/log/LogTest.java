@@ -0,0 +1,293 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.log;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.osgi.framework.Bundle;
+import org.osgi.service.log.FormatterLogger;
+import org.osgi.service.log.LogEntry;
+import org.osgi.service.log.LogLevel;
+import org.osgi.service.log.LogListener;
+import org.osgi.service.log.Logger;
+import org.osgi.service.log.admin.LoggerContext;
+
+public class LogTest
+{
+    // reports the timings of the contention test, not to be confused with the OSGi Logger
+    private static final java.util.logging.Logger REPORT = java.util.logging.Logger.getLogger(LogTest.class.getName());
+
+    @Test
+    public void testHistoryKeepsMostRecentEntries()
+    {
+        final Log log = new Log(3, false);
+        for (int i = 0; i < 5; i++)
+        {
+            log.log("test", null, null, LogLevel.INFO, "message " + i, null);
+        }
+        log.log("test", null, null, LogLevel.DEBUG, "debug", null);
+
+        assertEquals("[message 4, message 3, message 2]", messages(log.getEntries()).toString());
+        log.close();
+        assertFalse(log.getEntries().hasMoreElements());
+    }
+
+    @Test
+    public void testNoOrUnboundedHistory()
+    {
+        final Log none = new Log(0, true);
+        none.log("test", null, null, LogLevel.INFO, "message", null);
+        assertFalse(none.getEntries().hasMoreElements());
+
+        final Log unbounded = new Log(-1, true);
+        for (int i = 0; i < 1000; i++)
+        {
+            unbounded.log("test", null, null, LogLevel.DEBUG, "message " + i, null);
+        }
+        assertEquals(1000, Collections.list(unbounded.getEntries()).size());
+        assertEquals("message 999", unbounded.getEntries().nextElement().getMessage());
+    }
+
+    @Test
+    public void testDisabledLevelsAndLazyFormatting()
+    {
+        final Log log = new Log(10, true);
+        final LoggerAdminImpl loggerAdmin = new LoggerAdminImpl("INFO", log);
+        final Logger logger = loggerAdmin.getLogger(bundle(), "test", Logger.class);
+        final AtomicInteger formatted = new AtomicInteger();
+        final Object argument = new Object()
+        {
+            @Override
+            public String toString()
+            {
+                return "argument " + formatted.incrementAndGet();
+            }
+        };
+
+        // disabled levels neither format nor store anything
+        logger.debug("debug {}", argument);
+        assertFalse(log.getEntries().hasMoreElements());
+
+        // enabled levels only format when the message is read
+        logger.info("info {}", argument);
+        assertEquals(0, formatted.get());
+        final LogEntry entry = log.getEntries().nextElement();
+        assertEquals("info argument 1", entry.getMessage());
+        assertEquals("info argument 1", entry.getMessage());
+        assertEquals(1, formatted.get());
+
+        // the cached level follows configuration changes
+        assertFalse(logger.isDebugEnabled());
+        loggerAdmin.getLoggerContext(null).setLogLevels(
+            Collections.singletonMap(Logger.ROOT_LOGGER_NAME, LogLevel.DEBUG));
+        assertTrue(logger.isDebugEnabled());
+        loggerAdmin.getLoggerContext(null).clear();
+        assertFalse(logger.isDebugEnabled());
+    }
+
+    @Test
+    public void testInvalidFormat()
+    {
+        final Log log = new Log(10, true);
+        final LoggerAdminImpl loggerAdmin = new LoggerAdminImpl("INFO", log);
+        final FormatterLogger logger = loggerAdmin.getLogger(bundle(), "test", FormatterLogger.class);
+
+        logger.info("value %d", "not a number");
+        final LogEntry entry = log.getEntries().nextElement();
+        final String message = entry.getMessage();
+        assertTrue(message, message.startsWith("value %d ("));
+        assertTrue(message, message.contains("IllegalFormatConversionException"));
+        assertSame(message, entry.getMessage());
+    }
+
+    @Test
+    public void testBundleLoggerContextLevels()
+    {
+        final Log log = new Log(10, true);
+        final LoggerAdminImpl loggerAdmin = new LoggerAdminImpl("INFO", log);
+        final Logger logger = loggerAdmin.getLogger(bundle(), "test", Logger.class);
+        assertFalse(logger.isDebugEnabled());
+
+        // a context created for the bundle applies to its existing loggers
+        final LoggerContext context = loggerAdmin.getLoggerContext("test.bundle");
+        context.setLogLevels(Collections.singletonMap("test", LogLevel.DEBUG));
+        assertTrue(loggerAdmin.getLoggerContextNames().contains("test.bundle"));
+        assertTrue(logger.isDebugEnabled());
+        assertFalse(logger.isTraceEnabled());
+
+        context.setLogLevels(Collections.singletonMap("test", LogLevel.WARN));
+        assertFalse(logger.isInfoEnabled());
+        assertTrue(logger.isWarnEnabled());
+
+        // once cleared, the root context applies again
+        context.clear();
+        assertTrue(logger.isInfoEnabled());
+        assertFalse(logger.isDebugEnabled());
+    }
+
+    @Test
+    public void testLargeHistory()
+    {
+        // slots are only allocated as entries are added
+        final Log log = new Log(Integer.MAX_VALUE, false);
+        for (int i = 0; i < 20000; i++)
+        {
+            log.addEntry(new LogEntryImpl("test", null, null, LogLevel.INFO, "message " + i, null, null));
+        }
+        final List<String> messages = messages(log.getEntries());
+        assertEquals(20000, messages.size());
+        assertEquals("message 19999", messages.get(0));
+        assertEquals("message 0", messages.get(19999));
+        log.close();
+    }
+
+    /**
+     * Logs from many threads concurrently, with a listener attached, and
+     * checks every entry is delivered once.
+     */
+    @Test
+    public void testContention() throws Exception
+    {
+        final int threads = Math.max(4, Runtime.getRuntime().availableProcessors());
+        final int entriesPerThread = 20000;
+        final Log log = new Log(100, false);
+        final AtomicInteger delivered = new AtomicInteger();
+        final CountDownLatch allDelivered = new CountDownLatch(1);
+        log.addListener(new LogListener()
+        {
+            @Override
+            public void logged(final LogEntry entry)
+            {
+                if (delivered.incrementAndGet() == threads * entriesPerThread)
+                {
+                    allDelivered.countDown();
+                }
+            }
+        });
+
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Thread> loggers = new ArrayList<>();
+        for (int t = 0; t < threads; t++)
+        {
+            final Thread thread = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        start.await();
+                    }
+                    catch (InterruptedException e)
+                    {
+                        return;
+                    }
+                    for (int i = 0; i < entriesPerThread; i++)
+                    {
+                        log.addEntry(new LogEntryImpl("test", null, null, LogLevel.INFO, "message", null, null));
+                    }
+                }
+            };
+            thread.start();
+            loggers.add(thread);
+        }
+
+        final long begin = System.nanoTime();
+        start.countDown();
+        for (Thread thread : loggers)
+        {
+            thread.join();
+        }
+        final long logged = System.nanoTime() - begin;
+        assertTrue("Entries not delivered", allDelivered.await(30, TimeUnit.SECONDS));
+        final long deliveredAll = System.nanoTime() - begin;
+        assertEquals(100, Collections.list(log.getEntries()).size());
+
+        // no entry is delivered twice: once the listener thread is gone no
+        // further deliveries can happen
+        final Thread listenerThread = listenerThread(log);
+        log.close();
+        listenerThread.join(TimeUnit.SECONDS.toMillis(30));
+        assertFalse("Listener thread still running", listenerThread.isAlive());
+        assertEquals(threads * entriesPerThread, delivered.get());
+
+        final int total = threads * entriesPerThread;
+        REPORT.info(String.format("%d threads logged %d entries in %d ms (%d entries/s), all delivered after %d ms",
+            threads, total, TimeUnit.NANOSECONDS.toMillis(logged), total * TimeUnit.SECONDS.toNanos(1) / logged,
+            TimeUnit.NANOSECONDS.toMillis(deliveredAll)));
+    }
+
+    private static Thread listenerThread(final Log log) throws Exception
+    {
+        final Field field = Log.class.getDeclaredField("listenerThread");
+        field.setAccessible(true);
+        return (Thread) field.get(log);
+    }
+
+    private static Bundle bundle()
+    {
+        return (Bundle) Proxy.newProxyInstance(LogTest.class.getClassLoader(), new Class<?>[] {Bundle.class},
+            new InvocationHandler()
+            {
+                @Override
+                public Object invoke(final Object proxy, final Method method, final Object[] args)
+                {
+                    switch (method.getName())
+                    {
+                        case "getBundleId":
+                            return Long.valueOf(1);
+                        case "getSymbolicName":
+                            return "test.bundle";
+                        case "hashCode":
+                            return Integer.valueOf(System.identityHashCode(proxy));
+                        case "equals":
+                            return Boolean.valueOf(proxy == args[0]);
+                        default:
+                            return null;
+                    }
+                }
+            });
+    }
+
+    private static List<String> messages(final Enumeration<LogEntry> entries)
+    {
+        final List<String> messages = new ArrayList<>();
+        while (entries.hasMoreElements())
+        {
+            messages.add(entries.nextElement().getMessage());
+        }
+        return messages;
+    }
+}
@@ -516,6 +516,8 @@ public class ComponentCommands implements ServiceTrackerCustomizer<Object, Servi
         }
 
         if (bindings != null) {
+            // the DTOs are shared snapshots, sort a copy
+            bindings = bindings.clone();
             Arrays.sort(bindings, serviceRefDtoComparator);
             builder.append(MessageFormat.format(" {0,choice,0#(no active bindings)|1#(1 binding):|1<({0} bindings):}", bindings.length));
             for (ServiceReferenceDTO svcDto : bindings) {
@@ -21,6 +21,7 @@ package org.apache.felix.scr.impl;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Dictionary;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -73,20 +74,34 @@ public class ComponentRegistry
 
     /**
      * The map of known components indexed by component name. The values are
-     * either null (for name reservations) or implementations
-     * of the {@link ComponentHolder} interface.
+     * the registered implementations of the {@link ComponentHolder} interface.
      * <p>
-     * The {@link #checkComponentName(String)} will first add an entry to this
-     * map with null value to reserve the name. After setting up
+     * The {@link #checkComponentName(String)} will first add the name to
+     * {@link #m_componentNameReservations} to reserve the name. After setting up
      * the component, the {@link #registerComponentHolder(String, ComponentHolder)}
-     * method replaces the value of the named entry with the actual
+     * method moves the reservation into this map with the actual
      * {@link ComponentHolder}.
+     * <p>
+     * Lookups are done without locking, modifications of this map and of the
+     * reservations are guarded by {@link #m_componentHoldersLock}.
      *
      * @see #checkComponentName(String)
      * @see #registerComponentHolder(String, ComponentHolder)
      * @see #unregisterComponentHolder(String)
      */
-    private final Map<ComponentRegistryKey, ComponentHolder<?>> m_componentHoldersByName;
+    private final ConcurrentMap<ComponentRegistryKey, ComponentHolder<?>> m_componentHoldersByName;
+
+    /**
+     * The names reserved by {@link #checkComponentName(Bundle, String)} for
+     * which no {@link ComponentHolder} has been registered yet.
+     */
+    private final Set<ComponentRegistryKey> m_componentNameReservations;
+
+    /**
+     * Lock guarding modifications of {@link #m_componentHoldersByName},
+     * {@link #m_componentNameReservations} and {@link #m_componentHoldersByPid}.
+     */
+    private final Object m_componentHoldersLock = new Object();
 
     /**
      * The map of known components indexed by component configuration pid. The values are
@@ -100,12 +115,14 @@ public class ComponentRegistry
      * {@link #getComponentHoldersByPid(String)} method which returns an iterator over all
      * components that are using the given pid for configuration.
      * <p>
+     * The Sets stored as values are never modified but replaced on registration
+     * changes, so they can be used by readers without locking.
      *
      * @see #registerComponentHolder(String, ComponentHolder)
      * @see #unregisterComponentHolder(String)
      * @see RegionConfigurationSupport#configurationEvent(org.osgi.service.cm.ConfigurationEvent)
      */
-    private final Map<String, Set<ComponentHolder<?>>> m_componentHoldersByPid;
+    private final ConcurrentMap<String, Set<ComponentHolder<?>>> m_componentHoldersByPid;
 
     /**
      * Map of components by component ID. This map indexed by the component
@@ -115,14 +132,14 @@ public class ComponentRegistry
      * @see #registerComponentId(AbstractComponentManager)
      * @see #unregisterComponentId(long)
      */
-    private final Map<Long, AbstractComponentManager<?>> m_componentsById;
+    private final ConcurrentMap<Long, AbstractComponentManager<?>> m_componentsById;
 
     /**
      * Counter to setup the component IDs as issued by the
      * {@link #registerComponentId(AbstractComponentManager)} method. This
      * counter is only incremented.
      */
-    private long m_componentCounter = -1;
+    private final AtomicLong m_componentCounter = new AtomicLong( -1 );
 
     private final Map<ServiceReference<?>, List<Entry<?, ?>>> m_missingDependencies = new HashMap<>( );
 
@@ -134,9 +151,10 @@ public class ComponentRegistry
     {
         m_configuration = scrConfiguration;
         m_logger = logger;
-        m_componentHoldersByName = new HashMap<>();
-        m_componentHoldersByPid = new HashMap<>();
-        m_componentsById = new HashMap<>();
+        m_componentHoldersByName = new ConcurrentHashMap<>();
+        m_componentNameReservations = new HashSet<>();
+        m_componentHoldersByPid = new ConcurrentHashMap<>();
+        m_componentsById = new ConcurrentHashMap<>();
 
     }
 
@@ -153,13 +171,8 @@ public class ComponentRegistry
      */
     final long registerComponentId( final AbstractComponentManager<?> componentManager )
     {
-        long componentId;
-        synchronized ( m_componentsById )
-        {
-            componentId = ++m_componentCounter;
-
-            m_componentsById.put( componentId, componentManager );
-        }
+        final long componentId = m_componentCounter.incrementAndGet();
+        m_componentsById.put( componentId, componentManager );
 
         return componentId;
     }
@@ -175,10 +188,7 @@ public class ComponentRegistry
      */
     final void unregisterComponentId( final long componentId )
     {
-        synchronized ( m_componentsById )
-        {
-            m_componentsById.remove( componentId );
-        }
+        m_componentsById.remove( componentId );
     }
 
 
@@ -203,16 +213,13 @@ public class ComponentRegistry
         final ComponentRegistryKey key = new ComponentRegistryKey( bundle, name );
         ComponentHolder<?> existingRegistration = null;
         boolean present;
-        synchronized ( m_componentHoldersByName )
+        synchronized ( m_componentHoldersLock )
         {
-            present = m_componentHoldersByName.containsKey( key );
+            existingRegistration = m_componentHoldersByName.get( key );
+            present = existingRegistration != null || m_componentNameReservations.contains( key );
             if ( !present )
             {
-                m_componentHoldersByName.put( key, null );
-            }
-            else
-            {
-                existingRegistration = m_componentHoldersByName.get( key );
+                m_componentNameReservations.add( key );
             }
         }
 
@@ -260,7 +267,7 @@ public class ComponentRegistry
         m_logger.log(Level.DEBUG,
                 "Registering component with pid {0} for bundle {1}", null,
                 componentHolder.getComponentMetadata().getConfigurationPid(), key.getBundleId());
-        synchronized ( m_componentHoldersByName )
+        synchronized ( m_componentHoldersLock )
         {
             // only register the component if there is a m_registration for it !
             if ( m_componentHoldersByName.get( key ) != null )
@@ -270,11 +277,9 @@ public class ComponentRegistry
                     + "' has already been registered." );
             }
 
+            m_componentNameReservations.remove( key );
             m_componentHoldersByName.put( key, componentHolder );
-        }
 
-        synchronized (m_componentHoldersByPid)
-        {
             // See if the component declares a specific configuration pid (112.4.4 configuration-pid)
             List<String> configurationPids = componentHolder.getComponentMetadata().getConfigurationPid();
 
@@ -282,14 +287,12 @@ public class ComponentRegistry
             {
                 // Since several components may refer to the same configuration pid, we have to
                 // store the component holder in a Set, in order to be able to lookup every
-                // components from a given pid.
+                // components from a given pid. The set is copied so that concurrent
+                // readers never see it change.
                 Set<ComponentHolder<?>> set = m_componentHoldersByPid.get( configurationPid );
-                if ( set == null )
-                {
-                    set = new HashSet<>();
-                    m_componentHoldersByPid.put( configurationPid, set );
-                }
-                set.add( componentHolder );
+                Set<ComponentHolder<?>> newSet = ( set == null ) ? new HashSet<ComponentHolder<?>>() : new HashSet<>( set );
+                newSet.add( componentHolder );
+                m_componentHoldersByPid.put( configurationPid, Collections.unmodifiableSet( newSet ) );
             }
         }
         this.updateChangeCount();
@@ -301,10 +304,7 @@ public class ComponentRegistry
      */
     public final ComponentHolder<?> getComponentHolder( final Bundle bundle, final String name )
     {
-        synchronized ( m_componentHoldersByName )
-        {
-            return m_componentHoldersByName.get( new ComponentRegistryKey( bundle, name ) );
-        }
+        return m_componentHoldersByName.get( new ComponentRegistryKey( bundle, name ) );
     }
 
     /**
@@ -317,19 +317,16 @@ public class ComponentRegistry
     {
         String pid = targetedPid.getServicePid();
         Set<ComponentHolder<?>> componentHoldersUsingPid = new HashSet<>();
-        synchronized (m_componentHoldersByPid)
+        Set<ComponentHolder<?>> set = m_componentHoldersByPid.get(pid);
+        // only return the entry if non-null and not a reservation
+        if (set != null)
         {
-            Set<ComponentHolder<?>> set = m_componentHoldersByPid.get(pid);
-            // only return the entry if non-null and not a reservation
-            if (set != null)
+            for (ComponentHolder<?> holder: set)
             {
-                for (ComponentHolder<?> holder: set)
+                Bundle bundle = holder.getActivator().getBundleContext().getBundle();
+                if (targetedPid.matchesTarget(bundle))
                 {
-                    Bundle bundle = holder.getActivator().getBundleContext().getBundle();
-                    if (targetedPid.matchesTarget(bundle))
-                    {
-                        componentHoldersUsingPid.add( holder );
-                    }
+                    componentHoldersUsingPid.add( holder );
                 }
             }
         }
@@ -337,26 +334,12 @@ public class ComponentRegistry
     }
 
     /**
-     * Returns an array of all values currently stored in the component holders
-     * map. The entries in the array are either String types for component
-     * name reservations or {@link ComponentHolder} instances for actual
-     * holders of components.
+     * Returns a list of all {@link ComponentHolder} instances currently
+     * registered. Name reservations are not included.
      */
     public final List<ComponentHolder<?>> getComponentHolders()
     {
-    	List<ComponentHolder<?>> all = new ArrayList<>();
-        synchronized ( m_componentHoldersByName )
-        {
-            for (ComponentHolder<?> holder: m_componentHoldersByName.values())
-            {
-                // Ignore name reservations
-                if (holder != null)
-                {
-                    all.add(holder);
-                }
-            }
-        }
-        return all;
+        return new ArrayList<>( m_componentHoldersByName.values() );
     }
 
     public final List<ComponentHolder<?>> getComponentHolders(Bundle...bundles)
@@ -410,31 +393,38 @@ public class ComponentRegistry
     final void unregisterComponentHolder( final ComponentRegistryKey key )
     {
         ComponentHolder<?> component;
-        synchronized ( m_componentHoldersByName )
+        synchronized ( m_componentHoldersLock )
         {
+            m_componentNameReservations.remove( key );
             component = m_componentHoldersByName.remove( key );
-        }
 
-        if (component != null) {
-            m_logger.log(Level.DEBUG,
-                    "Unregistering component with pid {0} for bundle {1}", null,
-                    component.getComponentMetadata().getConfigurationPid(), key.getBundleId());
-            synchronized (m_componentHoldersByPid)
+            if ( component != null )
             {
                 List<String> configurationPids = component.getComponentMetadata().getConfigurationPid();
                 for ( String configurationPid: configurationPids )
                 {
                     Set<ComponentHolder<?>> componentsForPid = m_componentHoldersByPid.get( configurationPid );
-                    if ( componentsForPid != null )
+                    if ( componentsForPid != null && componentsForPid.contains( component ) )
                     {
-                        componentsForPid.remove( component );
-                        if ( componentsForPid.size() == 0 )
+                        if ( componentsForPid.size() == 1 )
                         {
                             m_componentHoldersByPid.remove( configurationPid );
                         }
+                        else
+                        {
+                            Set<ComponentHolder<?>> newSet = new HashSet<>( componentsForPid );
+                            newSet.remove( component );
+                            m_componentHoldersByPid.put( configurationPid, Collections.unmodifiableSet( newSet ) );
+                        }
                     }
                 }
             }
+        }
+
+        if (component != null) {
+            m_logger.log(Level.DEBUG,
+                    "Unregistering component with pid {0} for bundle {1}", null,
+                    component.getComponentMetadata().getConfigurationPid(), key.getBundleId());
             this.updateChangeCount();
         }
     }
@@ -723,11 +713,22 @@ public class ComponentRegistry
         this.registration = reg;
     }
 
+    /**
+     * Returns the current change count. The change count is incremented on
+     * every call to {@link #updateChangeCount()}, regardless of whether the
+     * runtime service is registered yet, and can therefore be used to
+     * validate cached runtime DTOs.
+     */
+    public long getChangeCount()
+    {
+        return this.changeCount.get();
+    }
+
     public void updateChangeCount()
     {
+        final long count = this.changeCount.incrementAndGet();
         if ( registration != null )
         {
-            final long count = this.changeCount.incrementAndGet();
 
             final Timer timer;
             synchronized ( this.changeCountTimerLock ) {
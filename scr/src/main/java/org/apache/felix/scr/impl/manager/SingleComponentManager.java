@@ -691,6 +691,8 @@ public class SingleComponentManager<S> extends AbstractComponentManager<S> imple
         {
             // clear the current properties to force using the configuration data
             m_properties = null;
+            // the properties of the runtime DTOs change even if the state does not
+            m_container.getActivator().updateChangeCount();
 
 
             // reactivate the component to ensure it is provided with the
@@ -19,13 +19,16 @@
 package org.apache.felix.scr.impl.runtime;
 
 import java.lang.ref.SoftReference;
+import java.lang.reflect.Array;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.felix.scr.impl.ComponentRegistry;
 import org.apache.felix.scr.impl.manager.ComponentHolder;
@@ -62,6 +65,32 @@ public class ServiceComponentRuntimeImpl implements ServiceComponentRuntime, Ser
 
     private volatile SoftReference<ConcurrentHashMap<Long, ServiceReferenceDTO[]>> dtoCache = new SoftReference<>(new ConcurrentHashMap<Long, ServiceReferenceDTO[]>());
 
+    /**
+     * Counts the bundle events. Description DTOs contain the state of the
+     * declaring bundle, which does not move the registry change count.
+     */
+    private final AtomicLong bundleChangeCount = new AtomicLong();
+
+    /**
+     * Counts the service events. Configuration DTOs contain the bound and the
+     * registered services, which do not always move the registry change count.
+     */
+    private final AtomicLong serviceChangeCount = new AtomicLong();
+
+    /**
+     * The description DTOs of all registered components, rebuilt once the
+     * registry change count or the bundle change count moved. The DTOs are
+     * shared by all callers and must not be modified.
+     */
+    private volatile DescriptionSnapshot descriptions;
+
+    /**
+     * The configuration DTOs per component holder, rebuilt once the registry
+     * change count or the service change count moved. The DTOs are shared by
+     * all callers and must not be modified.
+     */
+    private final ConcurrentHashMap<ComponentHolder<?>, ConfigurationSnapshot> configurations = new ConcurrentHashMap<>();
+
     public ServiceComponentRuntimeImpl(final BundleContext context, final ComponentRegistry componentRegistry)
     {
         this.context = context;
@@ -76,20 +105,17 @@ public class ServiceComponentRuntimeImpl implements ServiceComponentRuntime, Ser
     @Override
     public Collection<ComponentDescriptionDTO> getComponentDescriptionDTOs(Bundle... bundles)
     {
-        List<ComponentHolder<?>> holders;
+        final DescriptionSnapshot snapshot = getDescriptions();
         if (bundles == null || bundles.length == 0)
         {
-            holders = componentRegistry.getComponentHolders();
-        }
-        else
-        {
-            holders = componentRegistry.getComponentHolders(bundles);
+            return snapshot.all;
         }
 
+        List<ComponentHolder<?>> holders = componentRegistry.getComponentHolders(bundles);
         List<ComponentDescriptionDTO> result = new ArrayList<>(holders.size());
         for (ComponentHolder<?> holder: holders)
         {
-            ComponentDescriptionDTO dto = holderToDescription(holder);
+            ComponentDescriptionDTO dto = snapshot.get(holder);
             if ( dto != null )
             {
                 result.add(dto);
@@ -107,7 +133,7 @@ public class ServiceComponentRuntimeImpl implements ServiceComponentRuntime, Ser
         ComponentHolder<?> holder = componentRegistry.getComponentHolder(bundle, name);
         if ( holder != null )
         {
-            return holderToDescription(holder);
+            return getDescriptions().get(holder);
         }
         else
         {
@@ -128,19 +154,29 @@ public class ServiceComponentRuntimeImpl implements ServiceComponentRuntime, Ser
         try
         {
             ComponentHolder<?> holder = getHolderFromDescription( description);
+            // the service change count is read first, so that a change during the
+            // creation of the DTOs is picked up by the next call
+            final long serviceChangeCount = this.serviceChangeCount.get();
+            final DescriptionSnapshot descriptions = getDescriptions();
             // Get a fully filled out valid description DTO
-            description = holderToDescription(holder);
+            description = descriptions.get(holder);
             if ( description == null)
             {
                 return Collections.emptyList();
             }
-            List<? extends ComponentManager<?>> managers = holder.getComponents();
-            List<ComponentConfigurationDTO> result = new ArrayList<>(managers.size());
-            for (ComponentManager<?> manager: managers)
+            ConfigurationSnapshot snapshot = configurations.get(holder);
+            if ( snapshot == null || !snapshot.isCurrent(descriptions.changeCount, serviceChangeCount, description) )
             {
-                result.add(managerToConfiguration(manager, description));
+                List<? extends ComponentManager<?>> managers = holder.getComponents();
+                List<ComponentConfigurationDTO> result = new ArrayList<>(managers.size());
+                for (ComponentManager<?> manager: managers)
+                {
+                    result.add(managerToConfiguration(manager, description));
+                }
+                snapshot = new ConfigurationSnapshot(descriptions.changeCount, serviceChangeCount, description, result);
+                configurations.put(holder, snapshot);
             }
-            return result;
+            return snapshot.dtos;
         }
         catch ( IllegalStateException ise)
         {
@@ -346,6 +382,63 @@ public class ServiceComponentRuntimeImpl implements ServiceComponentRuntime, Ser
         return componentRegistry.getComponentHolder(b, name);
     }
 
+    /**
+     * Returns the description DTOs of all registered components. If the
+     * registry or a bundle changed since the last snapshot, a new snapshot is
+     * created: the DTOs of holders which are still registered and whose
+     * bundle did not change are taken over, only the others are created.
+     */
+    private DescriptionSnapshot getDescriptions()
+    {
+        // the counts are read first, so that a change during the creation of
+        // the snapshot is picked up by the next call
+        final long changeCount = componentRegistry.getChangeCount();
+        final long bundleChangeCount = this.bundleChangeCount.get();
+        DescriptionSnapshot snapshot = this.descriptions;
+        if ( snapshot == null || snapshot.changeCount != changeCount || snapshot.bundleChangeCount != bundleChangeCount )
+        {
+            final List<ComponentHolder<?>> holders = componentRegistry.getComponentHolders();
+            final Map<ComponentHolder<?>, ComponentDescriptionDTO> dtos = new IdentityHashMap<>(holders.size());
+            final List<ComponentDescriptionDTO> all = new ArrayList<>(holders.size());
+            for ( final ComponentHolder<?> holder : holders )
+            {
+                ComponentDescriptionDTO dto = snapshot == null ? null : snapshot.get(holder);
+                if ( dto == null || !isCurrent(dto.bundle, holder.getActivator().getBundleContext()) )
+                {
+                    dto = holderToDescription(holder);
+                }
+                if ( dto != null )
+                {
+                    dtos.put(holder, dto);
+                    all.add(dto);
+                }
+            }
+            configurations.keySet().retainAll(dtos.keySet());
+            snapshot = new DescriptionSnapshot(changeCount, bundleChangeCount, dtos, all);
+            this.descriptions = snapshot;
+        }
+        return snapshot;
+    }
+
+    private boolean isCurrent( final BundleDTO dto, final BundleContext bundleContext )
+    {
+        if ( bundleContext == null )
+        {
+            return false;
+        }
+        try
+        {
+            final Bundle bundle = bundleContext.getBundle();
+            return bundle != null
+                && bundle.getState() == dto.state
+                && bundle.getLastModified() == dto.lastModified;
+        }
+        catch ( IllegalStateException e )
+        {
+            return false;
+        }
+    }
+
     private ComponentDescriptionDTO holderToDescription( ComponentHolder<?> holder )
     {
         ComponentDescriptionDTO dto = new ComponentDescriptionDTO();
@@ -369,9 +462,9 @@ public class ServiceComponentRuntimeImpl implements ServiceComponentRuntime, Ser
         dto.properties = deepCopy(m.getProperties());
         dto.references = refsToDTO(m.getDependencies());
         dto.scope = m.getServiceMetadata() == null? null: m.getServiceMetadata().getScope().name();
-        dto.serviceInterfaces = m.getServiceMetadata() == null? EMPTY: m.getServiceMetadata().getProvides();
+        dto.serviceInterfaces = m.getServiceMetadata() == null? EMPTY: m.getServiceMetadata().getProvides().clone();
         // DS 1.4
-        dto.factoryProperties = m.isFactory() ? m.getFactoryProperties() : null;
+        dto.factoryProperties = m.isFactory() ? copyArrays(m.getFactoryProperties()) : null;
         dto.activationFields = (m.getActivationFields() == null ? EMPTY : m.getActivationFields().toArray(new String[m.getActivationFields().size()]));
         dto.init = m.getNumberOfConstructorParameters();
         return dto;
@@ -382,11 +475,37 @@ public class ServiceComponentRuntimeImpl implements ServiceComponentRuntime, Ser
         HashMap<String, Object> result = new HashMap<>(source.size());
         for (Map.Entry<String, Object> entry: source.entrySet())
         {
-            result.put(entry.getKey(), convert(entry.getValue()));
+            result.put(entry.getKey(), copyArray(convert(entry.getValue())));
+        }
+        return result;
+    }
+
+    private Map<String, Object> copyArrays(Map<String, Object> source)
+    {
+        HashMap<String, Object> result = new HashMap<>(source.size());
+        for (Map.Entry<String, Object> entry: source.entrySet())
+        {
+            result.put(entry.getKey(), copyArray(entry.getValue()));
         }
         return result;
     }
 
+    /**
+     * Returns a copy of the value if it is an array, so that DTOs never share
+     * an array with the metadata.
+     */
+    private static Object copyArray(Object value)
+    {
+        if (value != null && value.getClass().isArray())
+        {
+            int length = Array.getLength(value);
+            Object copy = Array.newInstance(value.getClass().getComponentType(), length);
+            System.arraycopy(value, 0, copy, 0, length);
+            return copy;
+        }
+        return value;
+    }
+
     Object convert(Object source)
     {
         if (source.getClass().isArray())
@@ -479,6 +598,7 @@ public class ServiceComponentRuntimeImpl implements ServiceComponentRuntime, Ser
 
     @Override
     public void bundleChanged(final BundleEvent event) {
+        bundleChangeCount.incrementAndGet();
         ConcurrentHashMap<Long, ServiceReferenceDTO[]> cache = dtoCache.get();
         if (cache != null)
         {
@@ -488,6 +608,7 @@ public class ServiceComponentRuntimeImpl implements ServiceComponentRuntime, Ser
 
     @Override
     public void serviceChanged(final ServiceEvent event) {
+        serviceChangeCount.incrementAndGet();
         if (event.getServiceReference() != null) {
             ConcurrentHashMap<Long, ServiceReferenceDTO[]> cache = dtoCache.get();
             if (cache != null)
@@ -499,5 +620,57 @@ public class ServiceComponentRuntimeImpl implements ServiceComponentRuntime, Ser
         }
     }
 
+    /**
+     * The description DTOs of all registered components at a given registry
+     * and bundle change count.
+     */
+    private static final class DescriptionSnapshot
+    {
+        final long changeCount;
+        final long bundleChangeCount;
+        final Map<ComponentHolder<?>, ComponentDescriptionDTO> dtos;
+        final Collection<ComponentDescriptionDTO> all;
+
+        DescriptionSnapshot(final long changeCount, final long bundleChangeCount,
+            final Map<ComponentHolder<?>, ComponentDescriptionDTO> dtos, final List<ComponentDescriptionDTO> all)
+        {
+            this.changeCount = changeCount;
+            this.bundleChangeCount = bundleChangeCount;
+            this.dtos = dtos;
+            this.all = Collections.unmodifiableList(all);
+        }
 
+        ComponentDescriptionDTO get(final ComponentHolder<?> holder)
+        {
+            return dtos.get(holder);
+        }
+    }
+
+    /**
+     * The configuration DTOs of a component at a given registry and service
+     * change count.
+     */
+    private static final class ConfigurationSnapshot
+    {
+        final long changeCount;
+        final long serviceChangeCount;
+        final ComponentDescriptionDTO description;
+        final Collection<ComponentConfigurationDTO> dtos;
+
+        ConfigurationSnapshot(final long changeCount, final long serviceChangeCount,
+            final ComponentDescriptionDTO description, final List<ComponentConfigurationDTO> dtos)
+        {
+            this.changeCount = changeCount;
+            this.serviceChangeCount = serviceChangeCount;
+            this.description = description;
+            this.dtos = Collections.unmodifiableList(dtos);
+        }
+
+        boolean isCurrent(final long changeCount, final long serviceChangeCount, final ComponentDescriptionDTO description)
+        {
+            return this.changeCount == changeCount
+                && this.serviceChangeCount == serviceChangeCount
+                && this.description == description;
+        }
+    }
 }
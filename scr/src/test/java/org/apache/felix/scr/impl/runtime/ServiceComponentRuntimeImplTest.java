@@ -20,16 +20,31 @@ package org.apache.felix.scr.impl.runtime;
 
 import java.lang.reflect.Method;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 
+import org.apache.felix.scr.impl.ComponentRegistry;
+import org.apache.felix.scr.impl.logger.ScrLogger;
+import org.apache.felix.scr.impl.manager.ComponentActivator;
+import org.apache.felix.scr.impl.manager.ComponentHolder;
+import org.apache.felix.scr.impl.manager.ComponentManager;
+import org.apache.felix.scr.impl.metadata.ComponentMetadata;
+import org.apache.felix.scr.impl.metadata.DSVersion;
+import org.apache.felix.scr.impl.metadata.PropertyMetadata;
 import org.mockito.Mockito;
 import org.osgi.dto.DTO;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleEvent;
 import org.osgi.framework.Constants;
+import org.osgi.framework.ServiceEvent;
 import org.osgi.framework.ServiceReference;
+import org.osgi.framework.Version;
 import org.osgi.framework.dto.BundleDTO;
 import org.osgi.framework.dto.ServiceReferenceDTO;
+import org.osgi.service.component.runtime.dto.ComponentConfigurationDTO;
+import org.osgi.service.component.runtime.dto.ComponentDescriptionDTO;
 
 import junit.framework.TestCase;
 
@@ -64,6 +79,141 @@ public class ServiceComponentRuntimeImplTest extends TestCase
         assertEquals(real.properties, dto.properties);
     }
 
+    public void testDescriptionSnapshots() throws Exception
+    {
+        Bundle b1 = bundle(1);
+        Bundle b2 = bundle(2);
+        ComponentRegistry registry = new ComponentRegistry(null, Mockito.mock(ScrLogger.class));
+        ComponentHolder<?> h1 = holder(b1, "one");
+        ComponentHolder<?> h2 = holder(b2, "two");
+        register(registry, b1, "one", h1);
+        register(registry, b2, "two", h2);
+        ServiceComponentRuntimeImpl scr = new ServiceComponentRuntimeImpl(Mockito.mock(BundleContext.class), registry);
+
+        // unchanged counts return the same snapshot
+        Collection<ComponentDescriptionDTO> first = scr.getComponentDescriptionDTOs();
+        assertEquals(2, first.size());
+        assertSame(first, scr.getComponentDescriptionDTOs());
+        ComponentDescriptionDTO one = scr.getComponentDescriptionDTO(b1, "one");
+        ComponentDescriptionDTO two = scr.getComponentDescriptionDTO(b2, "two");
+        assertEquals("one", one.name);
+        assertTrue(first.contains(one));
+        assertEquals(Arrays.asList("a", "b"), Arrays.asList((String[]) one.properties.get("values")));
+
+        // a registry change keeps the descriptions of unchanged components
+        ComponentHolder<?> h3 = holder(b2, "three");
+        register(registry, b2, "three", h3);
+        Collection<ComponentDescriptionDTO> second = scr.getComponentDescriptionDTOs();
+        assertNotSame(first, second);
+        assertEquals(3, second.size());
+        assertSame(one, scr.getComponentDescriptionDTO(b1, "one"));
+        assertSame(two, scr.getComponentDescriptionDTO(b2, "two"));
+        assertEquals(1, scr.getComponentDescriptionDTOs(b1).size());
+        assertEquals(2, scr.getComponentDescriptionDTOs(b2).size());
+
+        // only the descriptions of the updated bundle are created again
+        Mockito.when(b2.getLastModified()).thenReturn(2000L);
+        scr.bundleChanged(new BundleEvent(BundleEvent.UPDATED, b2));
+        assertSame(one, scr.getComponentDescriptionDTO(b1, "one"));
+        ComponentDescriptionDTO updated = scr.getComponentDescriptionDTO(b2, "two");
+        assertNotSame(two, updated);
+        assertEquals(2000L, updated.bundle.lastModified);
+
+        // unregistered components are gone
+        unregister(registry, b2, "three");
+        assertNull(scr.getComponentDescriptionDTO(b2, "three"));
+        assertEquals(2, scr.getComponentDescriptionDTOs().size());
+    }
+
+    public void testConfigurationSnapshots() throws Exception
+    {
+        Bundle b = bundle(1);
+        ComponentRegistry registry = new ComponentRegistry(null, Mockito.mock(ScrLogger.class));
+        ComponentHolder<?> h = holder(b, "one");
+        ComponentManager<?> manager = Mockito.mock(ComponentManager.class);
+        Mockito.when(manager.getId()).thenReturn(5L);
+        Mockito.when(manager.getSpecState()).thenReturn(ComponentConfigurationDTO.UNSATISFIED_REFERENCE);
+        Mockito.when(manager.getProperties()).thenReturn(new HashMap<String, Object>());
+        Mockito.doReturn(Collections.singletonList(manager)).when(h).getComponents();
+        register(registry, b, "one", h);
+        BundleContext context = Mockito.mock(BundleContext.class);
+        Mockito.when(context.getBundle(1L)).thenReturn(b);
+        ServiceComponentRuntimeImpl scr = new ServiceComponentRuntimeImpl(context, registry);
+
+        ComponentDescriptionDTO description = scr.getComponentDescriptionDTO(b, "one");
+        Collection<ComponentConfigurationDTO> first = scr.getComponentConfigurationDTOs(description);
+        assertEquals(1, first.size());
+        ComponentConfigurationDTO configuration = first.iterator().next();
+        assertEquals(5L, configuration.id);
+        assertSame(description, configuration.description);
+        assertSame(first, scr.getComponentConfigurationDTOs(description));
+
+        // a service event may change the bound services
+        ServiceReference<?> sr = Mockito.mock(ServiceReference.class);
+        Mockito.when(sr.getProperty(Constants.SERVICE_BUNDLEID)).thenReturn(1L);
+        scr.serviceChanged(new ServiceEvent(ServiceEvent.REGISTERED, sr));
+        Collection<ComponentConfigurationDTO> second = scr.getComponentConfigurationDTOs(description);
+        assertNotSame(first, second);
+        assertSame(second, scr.getComponentConfigurationDTOs(description));
+
+        // a state change moves the registry change count
+        Mockito.when(manager.getSpecState()).thenReturn(ComponentConfigurationDTO.ACTIVE);
+        registry.updateChangeCount();
+        Collection<ComponentConfigurationDTO> third = scr.getComponentConfigurationDTOs(description);
+        assertNotSame(second, third);
+        assertEquals(ComponentConfigurationDTO.ACTIVE, third.iterator().next().state);
+    }
+
+    private static Bundle bundle(long id)
+    {
+        Bundle b = Mockito.mock(Bundle.class);
+        Mockito.when(b.getBundleId()).thenReturn(id);
+        Mockito.when(b.getState()).thenReturn(Bundle.ACTIVE);
+        Mockito.when(b.getLastModified()).thenReturn(1000L);
+        Mockito.when(b.getVersion()).thenReturn(Version.emptyVersion);
+        return b;
+    }
+
+    private static ComponentHolder<?> holder(Bundle b, String name)
+    {
+        BundleContext bc = Mockito.mock(BundleContext.class);
+        Mockito.when(bc.getBundle()).thenReturn(b);
+        ComponentActivator activator = Mockito.mock(ComponentActivator.class);
+        Mockito.when(activator.getBundleContext()).thenReturn(bc);
+
+        ComponentMetadata metadata = new ComponentMetadata(DSVersion.DS13);
+        metadata.setName(name);
+        metadata.setImplementationClassName("foo.bar.SomeClass");
+        PropertyMetadata values = new PropertyMetadata();
+        values.setName("values");
+        values.setType("String");
+        values.setValues("a\nb");
+        metadata.addProperty(values);
+        metadata.validate();
+
+        ComponentHolder<?> holder = Mockito.mock(ComponentHolder.class);
+        Mockito.when(holder.getActivator()).thenReturn(activator);
+        Mockito.when(holder.getComponentMetadata()).thenReturn(metadata);
+        return holder;
+    }
+
+    private static void register(ComponentRegistry registry, Bundle b, String name, ComponentHolder<?> holder) throws Exception
+    {
+        Method check = ComponentRegistry.class.getDeclaredMethod("checkComponentName", Bundle.class, String.class);
+        check.setAccessible(true);
+        Object key = check.invoke(registry, b, name);
+        Method register = ComponentRegistry.class.getDeclaredMethod("registerComponentHolder", key.getClass(), ComponentHolder.class);
+        register.setAccessible(true);
+        register.invoke(registry, key, holder);
+    }
+
+    private static void unregister(ComponentRegistry registry, Bundle b, String name) throws Exception
+    {
+        Method unregister = ComponentRegistry.class.getDeclaredMethod("unregisterComponentHolder", Bundle.class, String.class);
+        unregister.setAccessible(true);
+        unregister.invoke(registry, b, name);
+    }
+
     public void testConvert()
     {
         ServiceComponentRuntimeImpl scr = new ServiceComponentRuntimeImpl(Mockito.mock(BundleContext.class), null);